@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.killbill.billing.account.api.AccountData;
+import org.killbill.billing.account.api.boilerplate.AccountDataImp;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.catalog.api.boilerplate.PlanImp;
+import org.killbill.billing.entitlement.api.Subscription;
+import org.killbill.billing.entitlement.api.boilerplate.SubscriptionImp;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.invoice.api.boilerplate.InvoiceImp;
+import org.killbill.billing.invoice.api.boilerplate.InvoiceItemImp;
+import org.killbill.billing.payment.api.PaymentTransaction;
+import org.killbill.billing.payment.api.boilerplate.PaymentTransactionImp;
+import org.killbill.billing.plugin.notification.util.LocaleUtils;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.tenant.api.boilerplate.TenantUserApiImp;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.callcontext.boilerplate.TenantContextImp;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Synthetic Kill Bill objects, built with the API boilerplate classes (mocks would dominate the measurements).
+ */
+final class BenchmarkFixtures {
+
+    private static final ImmutableMap<String, Currency> CURRENCIES = ImmutableMap.of("en_US", Currency.USD,
+                                                                                     "fr_FR", Currency.EUR,
+                                                                                     "de_DE", Currency.EUR,
+                                                                                     "ja_JP", Currency.JPY);
+
+    private static final LocalDate INVOICE_DATE = new LocalDate(2026, 1, 1);
+
+    // Mostly subscription charges, with their taxes and a few usage items, as for a typical B2B invoice
+    private static final InvoiceItemType[] ITEM_TYPES = {InvoiceItemType.RECURRING,
+                                                         InvoiceItemType.TAX,
+                                                         InvoiceItemType.RECURRING,
+                                                         InvoiceItemType.TAX,
+                                                         InvoiceItemType.USAGE};
+
+    private BenchmarkFixtures() {}
+
+    static AccountData createAccount(final String locale) {
+        return new AccountDataImp.Builder<>().withExternalKey("benchmark")
+                                             .withName("Sylvie Dupond")
+                                             .withFirstNameLength(7)
+                                             .withEmail("sylvie@example.com")
+                                             .withBillCycleDayLocal(1)
+                                             .withCurrency(getCurrency(locale))
+                                             .withTimeZone(DateTimeZone.UTC)
+                                             .withLocale(locale)
+                                             .withAddress1("1234 Trumpet street")
+                                             .withCompanyName("SauvonsLaTerre")
+                                             .withCity("San Francisco")
+                                             .withStateOrProvince("CA")
+                                             .withPostalCode("94110")
+                                             .withCountry("USA")
+                                             .withPhone("(415) 255-7654")
+                                             .build();
+    }
+
+    static Invoice createInvoice(final Currency currency, final int itemCount) {
+        final List<InvoiceItem> items = new ArrayList<InvoiceItem>(itemCount);
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < itemCount; i++) {
+            final BigDecimal amount = new BigDecimal(10 + i % 90).add(new BigDecimal("0.99"));
+            final String planName = "plan-" + (i % 20) + "-monthly";
+            items.add(new InvoiceItemImp.Builder<>().withId(UUID.randomUUID())
+                                                    .withInvoiceItemType(ITEM_TYPES[i % ITEM_TYPES.length])
+                                                    .withStartDate(INVOICE_DATE)
+                                                    .withEndDate(INVOICE_DATE.plusMonths(1))
+                                                    .withAmount(amount)
+                                                    .withCurrency(currency)
+                                                    .withPlanName(planName)
+                                                    .withPrettyPlanName(planName)
+                                                    .withDescription("Item " + i)
+                                                    .build());
+            total = total.add(amount);
+        }
+        return new InvoiceImp.Builder<>().withId(UUID.randomUUID())
+                                         .withInvoiceItems(items)
+                                         .withNumberOfItems(items.size())
+                                         .withInvoiceNumber(1234)
+                                         .withInvoiceDate(INVOICE_DATE)
+                                         .withTargetDate(INVOICE_DATE)
+                                         .withCurrency(currency)
+                                         .withChargedAmount(total)
+                                         .withOriginalChargedAmount(total)
+                                         .withPaidAmount(total)
+                                         .withBalance(BigDecimal.ZERO)
+                                         .build();
+    }
+
+    static Subscription createSubscription() {
+        return new SubscriptionImp.Builder<>().withChargedThroughDate(INVOICE_DATE.plusMonths(1))
+                                              .withLastActivePlan(new PlanImp.Builder<>().withName("plan-0-monthly").build())
+                                              .build();
+    }
+
+    static PaymentTransaction createPaymentTransaction(final Currency currency) {
+        return new PaymentTransactionImp.Builder<>().withEffectiveDate(new DateTime(2026, 1, 2, 0, 0, DateTimeZone.UTC))
+                                                    .withAmount(new BigDecimal("123.45"))
+                                                    .withCurrency(currency)
+                                                    .withProcessedAmount(new BigDecimal("123.45"))
+                                                    .withProcessedCurrency(currency)
+                                                    .build();
+    }
+
+    /**
+     * @return a context without tenant, i.e. using the templates and translations shipped with the plugin
+     */
+    static TenantContext createTenantContext() {
+        return new TenantContextImp.Builder<>().build();
+    }
+
+    static TenantUserApi createTenantUserApi() {
+        return new TenantUserApiImp.Builder<>().build();
+    }
+
+    static Locale toLocale(final String locale) {
+        return LocaleUtils.toLocale(locale);
+    }
+
+    static Currency getCurrency(final String locale) {
+        final Currency currency = CURRENCIES.get(locale);
+        return currency == null ? Currency.USD : currency;
+    }
+}
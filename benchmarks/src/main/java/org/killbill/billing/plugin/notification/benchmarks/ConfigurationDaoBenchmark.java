@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.notification.dao.ConfigurationDao;
+import org.killbill.billing.plugin.notification.dao.gen.tables.pojos.EmailNotificationsConfiguration;
+import org.killbill.commons.embeddeddb.EmbeddedDB;
+import org.killbill.commons.embeddeddb.h2.H2EmbeddedDB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Resources;
+
+/**
+ * Event type registrations lookups, for each storage model: rows with varchar ids, per account bitmasks and rows with
+ * binary ids.
+ * <p>
+ * Runs against an embedded H2 database, so the absolute numbers are only indicative of MySQL or PostgreSQL ones: compare
+ * the storage models with each other. The size of each table is printed at the end of the setup.
+ * <p>
+ * The registrations cache is disabled, so that each lookup hits the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConfigurationDaoBenchmark {
+
+    private static final List<ExtBusEventType> EVENT_TYPES = ImmutableList.of(ExtBusEventType.INVOICE_CREATION,
+                                                                               ExtBusEventType.INVOICE_PAYMENT_SUCCESS,
+                                                                               ExtBusEventType.INVOICE_PAYMENT_FAILED);
+
+    private static final Map<ConfigurationDao.StorageModel, String> TABLES = ImmutableMap.of(ConfigurationDao.StorageModel.ROWS, "EMAIL_NOTIFICATIONS_CONFIGURATION",
+                                                                                             ConfigurationDao.StorageModel.BITMASK, "EMAIL_NOTIFICATIONS_SUBSCRIPTIONS",
+                                                                                             ConfigurationDao.StorageModel.BINARY_IDS, "EMAIL_NOTIFICATIONS_CONFIGURATION_BIN");
+
+    @Param
+    private ConfigurationDao.StorageModel storageModel;
+
+    // Registered accounts, also the size of the bulk lookup
+    @Param({"50000"})
+    private int accountCount;
+
+    private EmbeddedDB embeddedDB;
+    private ConfigurationDao dao;
+    private UUID kbTenantId;
+    private List<UUID> kbAccountIds;
+
+    @Setup
+    public void setUp() throws Exception {
+        System.setProperty("org.jooq.no-logo", "true");
+        System.setProperty("org.jooq.no-tips", "true");
+
+        embeddedDB = new H2EmbeddedDB();
+        embeddedDB.initialize();
+        embeddedDB.start();
+        embeddedDB.executeScript(Resources.toString(Resources.getResource("ddl-h2.sql"), Charsets.UTF_8));
+        embeddedDB.executeScript(Resources.toString(Resources.getResource("ddl.sql"), Charsets.UTF_8));
+
+        dao = new ConfigurationDao(embeddedDB.getDataSource(), 0, ConfigurationDao.DEFAULT_EVENT_TYPES_CACHE_TTL_MS, storageModel);
+
+        kbTenantId = UUID.randomUUID();
+        kbAccountIds = new ArrayList<UUID>(accountCount);
+        for (int i = 0; i < accountCount; i++) {
+            kbAccountIds.add(UUID.randomUUID());
+        }
+        final DateTime now = new DateTime(2026, 1, 1, 0, 0, DateTimeZone.UTC);
+        for (final List<UUID> batch : Iterables.partition(kbAccountIds, ConfigurationDao.DEFAULT_BATCH_SIZE)) {
+            final Map<UUID, List<ExtBusEventType>> eventTypesPerAccount = new LinkedHashMap<UUID, List<ExtBusEventType>>();
+            for (final UUID kbAccountId : batch) {
+                eventTypesPerAccount.put(kbAccountId, EVENT_TYPES);
+            }
+            dao.updateConfigurations(eventTypesPerAccount, kbTenantId, now, ConfigurationDao.DEFAULT_BATCH_SIZE);
+        }
+
+        printTableSize();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        embeddedDB.stop();
+    }
+
+    /**
+     * Per event registration check, i.e. what the listener does for each event on a cache miss.
+     */
+    @Benchmark
+    public boolean isEventTypeRegistered() throws Exception {
+        final UUID kbAccountId = kbAccountIds.get(ThreadLocalRandom.current().nextInt(kbAccountIds.size()));
+        return dao.isEventTypeRegistered(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_PAYMENT_FAILED);
+    }
+
+    /**
+     * Bulk lookup of all the registered accounts, as made by GET /v1?kbAccountId=...
+     */
+    @Benchmark
+    public List<EmailNotificationsConfiguration> getEventTypes() throws Exception {
+        return dao.getEventTypes(kbAccountIds, kbTenantId);
+    }
+
+    @Benchmark
+    public List<EmailNotificationsConfiguration> getEventTypesFirstPage() throws Exception {
+        return dao.getEventTypesPage(kbTenantId, null, 1000);
+    }
+
+    private void printTableSize() throws Exception {
+        final String table = TABLES.get(storageModel);
+        try (final Connection connection = embeddedDB.getDataSource().getConnection();
+             final PreparedStatement statement = connection.prepareStatement("SELECT DISK_SPACE_USED(?)")) {
+            statement.setString(1, table);
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                System.out.printf("%n%s: %d registrations of %d accounts use %d KB in %s (including indexes)%n",
+                                  storageModel, accountCount * EVENT_TYPES.size(), accountCount, resultSet.getLong(1) / 1024, table);
+            }
+        }
+    }
+}
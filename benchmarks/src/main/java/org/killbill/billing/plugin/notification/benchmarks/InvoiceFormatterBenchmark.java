@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.benchmarks;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.api.formatters.InvoiceItemFormatter;
+import org.killbill.billing.plugin.notification.generator.ResourceBundleFactory;
+import org.killbill.billing.plugin.notification.generator.formatters.DefaultInvoiceFormatter;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Invoice items formatting, accessed like the shipped templates do: the end date is read twice per item, and
+ * {@code passes} is the number of item sections in the template (e.g. a summary and a detailed table).
+ * Run it with {@code -prof gc} to see the allocations per render.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Duser.language=en", "-Duser.country=US"})
+public class InvoiceFormatterBenchmark {
+
+    @Param({"1000", "10000"})
+    private int itemCount;
+
+    @Param({"1", "2"})
+    private int passes;
+
+    private Map<String, String> text;
+    private Locale locale;
+    private Invoice invoice;
+
+    @Setup
+    public void setUp() throws Exception {
+        final ResourceBundleFactory bundleFactory = new ResourceBundleFactory(BenchmarkFixtures.createTenantUserApi());
+        final TenantContext context = BenchmarkFixtures.createTenantContext();
+        locale = BenchmarkFixtures.toLocale("en_US");
+        text = bundleFactory.createTranslationMap(locale, ResourceBundleFactory.ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        invoice = BenchmarkFixtures.createInvoice(BenchmarkFixtures.getCurrency("en_US"), itemCount);
+    }
+
+    @Benchmark
+    public void formatItems(final Blackhole blackhole) {
+        // One formatter per render
+        final DefaultInvoiceFormatter formatter = new DefaultInvoiceFormatter(text, invoice, locale);
+        for (int i = 0; i < passes; i++) {
+            for (final InvoiceItem item : formatter.getInvoiceItems()) {
+                final InvoiceItemFormatter itemFormatter = (InvoiceItemFormatter) item;
+                blackhole.consume(itemFormatter.getPrettyPlanName());
+                blackhole.consume(itemFormatter.getFormattedStartDate());
+                if (itemFormatter.getFormattedEndDate() != null) {
+                    blackhole.consume(itemFormatter.getFormattedEndDate());
+                }
+                blackhole.consume(itemFormatter.getFormattedAmount());
+            }
+        }
+    }
+}
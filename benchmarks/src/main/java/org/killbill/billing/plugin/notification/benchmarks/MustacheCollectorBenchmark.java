@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.account.api.AccountData;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.plugin.notification.email.EmailContent;
+import org.killbill.billing.plugin.notification.generator.ResourceBundleFactory;
+import org.killbill.billing.plugin.notification.generator.TemplateRenderer;
+import org.killbill.billing.plugin.notification.templates.MustacheTemplateEngine;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.samskivert.mustache.DefaultCollector;
+
+/**
+ * Invoice creation emails rendered with the jmustache reflection based collector, against the method handles based
+ * one used by the plugin. Run it with {@code -prof gc} to compare the allocations per render.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Duser.language=en", "-Duser.country=US"})
+public class MustacheCollectorBenchmark {
+
+    @Param({"reflection", "methodHandles"})
+    private String collector;
+
+    @Param({"1", "1000", "10000"})
+    private int itemCount;
+
+    private TemplateRenderer renderer;
+    private AccountData account;
+    private Invoice invoice;
+    private TenantContext context;
+
+    @Setup
+    public void setUp() {
+        final MustacheTemplateEngine templateEngine = "reflection".equals(collector) ?
+                                                      new MustacheTemplateEngine(MustacheTemplateEngine.DEFAULT_MAX_CACHE_WEIGHT, new DefaultCollector()) :
+                                                      new MustacheTemplateEngine();
+        final TenantUserApi tenantUserApi = BenchmarkFixtures.createTenantUserApi();
+        renderer = new TemplateRenderer(templateEngine, new ResourceBundleFactory(tenantUserApi), tenantUserApi);
+        account = BenchmarkFixtures.createAccount("en_US");
+        invoice = BenchmarkFixtures.createInvoice(account.getCurrency(), itemCount);
+        context = BenchmarkFixtures.createTenantContext();
+    }
+
+    @Benchmark
+    public EmailContent render() throws Exception {
+        return renderer.generateEmailForInvoiceCreation(account, invoice, context);
+    }
+}
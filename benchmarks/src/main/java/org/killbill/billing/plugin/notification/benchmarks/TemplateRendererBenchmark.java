@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.benchmarks;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.account.api.AccountData;
+import org.killbill.billing.entitlement.api.Subscription;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.api.formatters.InvoiceItemFormatter;
+import org.killbill.billing.payment.api.PaymentTransaction;
+import org.killbill.billing.plugin.notification.email.EmailContent;
+import org.killbill.billing.plugin.notification.generator.ResourceBundleFactory;
+import org.killbill.billing.plugin.notification.generator.TemplateRenderer;
+import org.killbill.billing.plugin.notification.generator.formatters.DefaultInvoiceFormatter;
+import org.killbill.billing.plugin.notification.templates.MustacheTemplateEngine;
+import org.killbill.billing.plugin.notification.templates.TemplateType;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Rendering of every template, from the Kill Bill objects to the email body: translations lookup, invoice formatting
+ * and Mustache execution.
+ * <p>
+ * Templates and translations are the ones shipped with the plugin, already cached after the warmup, as in steady state.
+ * Only English translations are shipped: the other locales fall back to them, but still use their own date and money
+ * formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Duser.language=en", "-Duser.country=US"})
+public class TemplateRendererBenchmark {
+
+    @Param({"1", "50", "1000", "10000"})
+    private int itemCount;
+
+    @Param({"en_US", "fr_FR", "de_DE", "ja_JP"})
+    private String locale;
+
+    // All the template types by default
+    @Param
+    private TemplateType templateType;
+
+    private TemplateRenderer renderer;
+    private ResourceBundleFactory bundleFactory;
+    private AccountData account;
+    private Invoice invoice;
+    private Subscription subscription;
+    private PaymentTransaction paymentTransaction;
+    private TenantContext context;
+
+    @Setup
+    public void setUp() {
+        final TenantUserApi tenantUserApi = BenchmarkFixtures.createTenantUserApi();
+        bundleFactory = new ResourceBundleFactory(tenantUserApi);
+        renderer = new TemplateRenderer(new MustacheTemplateEngine(), bundleFactory, tenantUserApi);
+        account = BenchmarkFixtures.createAccount(locale);
+        invoice = BenchmarkFixtures.createInvoice(account.getCurrency(), itemCount);
+        subscription = BenchmarkFixtures.createSubscription();
+        paymentTransaction = BenchmarkFixtures.createPaymentTransaction(account.getCurrency());
+        context = BenchmarkFixtures.createTenantContext();
+    }
+
+    @Benchmark
+    public EmailContent render() throws Exception {
+        switch (templateType) {
+            case UPCOMING_INVOICE:
+                return renderer.generateEmailForUpComingInvoice(account, invoice, context);
+            case SUCCESSFUL_PAYMENT:
+                return renderer.generateEmailForSuccessfulPayment(account, invoice, context);
+            case FAILED_PAYMENT:
+                return renderer.generateEmailForFailedPayment(account, invoice, context);
+            case PAYMENT_REFUND:
+                return renderer.generateEmailForPaymentRefund(account, paymentTransaction, context);
+            case SUBSCRIPTION_CANCELLATION_REQUESTED:
+                return renderer.generateEmailForSubscriptionCancellationRequested(account, subscription, context);
+            case SUBSCRIPTION_CANCELLATION_EFFECTIVE:
+                return renderer.generateEmailForSubscriptionCancellationEffective(account, subscription, context);
+            case INVOICE_CREATION:
+                return renderer.generateEmailForInvoiceCreation(account, invoice, context);
+            default:
+                throw new IllegalStateException("Unexpected template type " + templateType);
+        }
+    }
+
+    /**
+     * Invoice formatting alone, i.e. without the template execution: run it with a single template type
+     * (e.g. {@code -p templateType=INVOICE_CREATION}), as it doesn't depend on it.
+     */
+    @Benchmark
+    public void formatInvoice(final Blackhole blackhole) throws Exception {
+        final Locale accountLocale = BenchmarkFixtures.toLocale(locale);
+        final Map<String, String> text = bundleFactory.createTranslationMap(accountLocale, ResourceBundleFactory.ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        final DefaultInvoiceFormatter formatter = new DefaultInvoiceFormatter(text, invoice, accountLocale);
+        blackhole.consume(formatter.getFormattedChargedAmount());
+        blackhole.consume(formatter.getFormattedBalance());
+        for (final InvoiceItem item : formatter.getInvoiceItems()) {
+            final InvoiceItemFormatter itemFormatter = (InvoiceItemFormatter) item;
+            blackhole.consume(itemFormatter.getFormattedAmount());
+            blackhole.consume(itemFormatter.getFormattedStartDate());
+            blackhole.consume(itemFormatter.getFormattedEndDate());
+        }
+    }
+}
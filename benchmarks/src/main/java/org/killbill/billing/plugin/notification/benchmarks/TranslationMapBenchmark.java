@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.benchmarks;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.plugin.notification.generator.ResourceBundleFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Translations handed to each render: the shared immutable snapshot, against a copy of the bundle, as done before the
+ * snapshots were introduced. Run it with {@code -prof gc} to compare the allocations per render.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Duser.language=en", "-Duser.country=US"})
+public class TranslationMapBenchmark {
+
+    private ResourceBundleFactory bundleFactory;
+    private TenantContext context;
+
+    @Setup
+    public void setUp() {
+        bundleFactory = new ResourceBundleFactory(BenchmarkFixtures.createTenantUserApi());
+        context = BenchmarkFixtures.createTenantContext();
+    }
+
+    @Benchmark
+    public Map<String, String> snapshot() throws Exception {
+        return bundleFactory.createTranslationMap(Locale.US, ResourceBundleFactory.ResourceBundleType.TEMPLATE_TRANSLATION, context);
+    }
+
+    @Benchmark
+    public Map<String, String> bundleCopy() throws Exception {
+        final ResourceBundle bundle = bundleFactory.createBundle(Locale.US, ResourceBundleFactory.ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        final Map<String, String> text = new HashMap<String, String>();
+        final Enumeration<String> keys = bundle.getKeys();
+        while (keys.hasMoreElements()) {
+            final String key = keys.nextElement();
+            text.put(key, bundle.getString(key));
+        }
+        return text;
+    }
+}
@@ -33,7 +33,7 @@ public interface InvoiceFormatterFactory {
     /**
      * Create an {@link InvoiceFormatter} instance for a given {@link Invoice}.
      * 
-     * @param translator the available translations
+     * @param translator the available translations (immutable, shared across renders)
      * @param invoice the invoice
      * @param locale the desired locale
      * @param context the tenant context
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import org.joda.time.DateTime;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.types.ULong;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.notification.dao.gen.tables.pojos.EmailNotificationsConfiguration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+/**
+ * Storage of {@link ConfigurationDao.StorageModel#BINARY_IDS}: same layout as email_notifications_configuration, in
+ * email_notifications_configuration_bin, with the ids stored as binary(16) (uuid on PostgreSQL). Its unique
+ * (kb_tenant_id, kb_account_id, event_type) index covers the lookups of the registrations of an account.
+ */
+class BinaryIdConfigurationStorage extends ConfigurationStorage {
+
+    private static final Table<Record> EMAIL_NOTIFICATIONS_CONFIGURATION_BIN = DSL.table("email_notifications_configuration_bin");
+
+    private static final String RECORD_ID = "RECORD_ID";
+    private static final String KB_ACCOUNT_ID = "KB_ACCOUNT_ID";
+    private static final String KB_TENANT_ID = "KB_TENANT_ID";
+    private static final String EVENT_TYPE = "EVENT_TYPE";
+    private static final String CREATED_AT = "CREATED_AT";
+
+    // Read by index, as the case of the column labels depends on the database
+    private static final List<Field<?>> CONFIGURATION_FIELDS = ImmutableList.<Field<?>>of(DSL.field(RECORD_ID),
+                                                                                          DSL.field(KB_ACCOUNT_ID),
+                                                                                          DSL.field(KB_TENANT_ID),
+                                                                                          DSL.field(EVENT_TYPE),
+                                                                                          DSL.field(CREATED_AT));
+
+    private final EventTypeRowsWriter<Record> rowsWriter;
+
+    BinaryIdConfigurationStorage(final DataSource dataSource) throws SQLException {
+        super(dataSource);
+        this.rowsWriter = new EventTypeRowsWriter<Record>(EMAIL_NOTIFICATIONS_CONFIGURATION_BIN, this::toId, BinaryIdConfigurationStorage::fromId);
+    }
+
+    @Override
+    List<EmailNotificationsConfiguration> getEventTypes(final List<UUID> kbAccountIds, final UUID kbTenantId) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<List<EmailNotificationsConfiguration>>() {
+                           @Override
+                           public List<EmailNotificationsConfiguration> withConnection(final Connection conn) throws SQLException {
+                               final DSLContext context = DSL.using(conn, dialect, settings);
+                               final List<EmailNotificationsConfiguration> configurations = new ArrayList<EmailNotificationsConfiguration>();
+                               for (final List<UUID> chunk : Iterables.partition(kbAccountIds, ConfigurationDao.DEFAULT_BATCH_SIZE)) {
+                                   for (final Record record : context.select(CONFIGURATION_FIELDS)
+                                                                     .from(EMAIL_NOTIFICATIONS_CONFIGURATION_BIN)
+                                                                     .where(DSL.field(KB_TENANT_ID).equal(toId(kbTenantId)))
+                                                                     .and(DSL.field(KB_ACCOUNT_ID).in(toIds(chunk)))
+                                                                     .orderBy(DSL.field(RECORD_ID).asc())
+                                                                     .fetch()) {
+                                       configurations.add(toConfiguration(record));
+                                   }
+                               }
+                               return configurations;
+                           }
+                       });
+    }
+
+    @Override
+    List<EmailNotificationsConfiguration> getEventTypesPage(final UUID kbTenantId, @Nullable final Long afterRecordId, final int limit) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<List<EmailNotificationsConfiguration>>() {
+                           @Override
+                           public List<EmailNotificationsConfiguration> withConnection(final Connection conn) throws SQLException {
+                               final List<EmailNotificationsConfiguration> configurations = new ArrayList<EmailNotificationsConfiguration>();
+                               for (final Record record : DSL.using(conn, dialect, settings)
+                                                             .select(CONFIGURATION_FIELDS)
+                                                             .from(EMAIL_NOTIFICATIONS_CONFIGURATION_BIN)
+                                                             .where(DSL.field(KB_TENANT_ID).equal(toId(kbTenantId)))
+                                                             .and(DSL.field(RECORD_ID).greaterThan(afterRecordId == null ? 0L : afterRecordId))
+                                                             .orderBy(DSL.field(RECORD_ID).asc())
+                                                             .limit(limit)
+                                                             .fetch()) {
+                                   configurations.add(toConfiguration(record));
+                               }
+                               return configurations;
+                           }
+                       });
+    }
+
+    @Override
+    List<EmailNotificationsConfiguration> getEventTypesPerAccount(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        return getConfigurations(kbAccountId, kbTenantId, null);
+    }
+
+    @Override
+    List<EmailNotificationsConfiguration> getEventTypesPerAccount(final UUID kbAccountId, final UUID kbTenantId, final ExtBusEventType eventType) throws SQLException {
+        return getConfigurations(kbAccountId, kbTenantId, eventType);
+    }
+
+    @Override
+    Set<ExtBusEventType> loadRegisteredEventTypes(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<Set<ExtBusEventType>>() {
+                           @Override
+                           public Set<ExtBusEventType> withConnection(final Connection conn) throws SQLException {
+                               // Only reads the covering index
+                               final EnumSet<ExtBusEventType> eventTypes = EnumSet.noneOf(ExtBusEventType.class);
+                               for (final String eventType : DSL.using(conn, dialect, settings)
+                                                                .select(DSL.field(EVENT_TYPE, String.class))
+                                                                .from(EMAIL_NOTIFICATIONS_CONFIGURATION_BIN)
+                                                                .where(DSL.field(KB_TENANT_ID).equal(toId(kbTenantId)))
+                                                                .and(DSL.field(KB_ACCOUNT_ID).equal(toId(kbAccountId)))
+                                                                .fetch(0, String.class)) {
+                                   eventTypes.add(ExtBusEventType.valueOf(eventType));
+                               }
+                               return eventTypes;
+                           }
+                       });
+    }
+
+    @Override
+    ConfigurationUpdateResult applyChanges(final DSLContext context,
+                                           final Map<UUID, ? extends Collection<ExtBusEventType>> eventTypesPerAccount,
+                                           final UUID kbTenantId,
+                                           final DateTime utcNow,
+                                           final int batchSize) {
+        return rowsWriter.applyChanges(context, eventTypesPerAccount, kbTenantId, toTimestamp(utcNow), batchSize);
+    }
+
+    @Override
+    void deleteConfiguration(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        execute(dataSource.getConnection(),
+                new WithConnectionCallback<Void>() {
+                    @Override
+                    public Void withConnection(final Connection conn) throws SQLException {
+                        DSL.using(conn, dialect, settings)
+                           .delete(EMAIL_NOTIFICATIONS_CONFIGURATION_BIN)
+                           .where(DSL.field(KB_TENANT_ID).equal(toId(kbTenantId)))
+                           .and(DSL.field(KB_ACCOUNT_ID).equal(toId(kbAccountId)))
+                           .execute();
+                        return null;
+                    }
+                });
+    }
+
+    private List<EmailNotificationsConfiguration> getConfigurations(final UUID kbAccountId, final UUID kbTenantId, @Nullable final ExtBusEventType eventType) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<List<EmailNotificationsConfiguration>>() {
+                           @Override
+                           public List<EmailNotificationsConfiguration> withConnection(final Connection conn) throws SQLException {
+                               final List<EmailNotificationsConfiguration> configurations = new ArrayList<EmailNotificationsConfiguration>();
+                               for (final Record record : DSL.using(conn, dialect, settings)
+                                                             .select(CONFIGURATION_FIELDS)
+                                                             .from(EMAIL_NOTIFICATIONS_CONFIGURATION_BIN)
+                                                             .where(DSL.field(KB_TENANT_ID).equal(toId(kbTenantId)))
+                                                             .and(DSL.field(KB_ACCOUNT_ID).equal(toId(kbAccountId)))
+                                                             .and(eventType == null ? DSL.noCondition() : DSL.field(EVENT_TYPE).equal(eventType.toString()))
+                                                             .orderBy(DSL.field(RECORD_ID).asc())
+                                                             .fetch()) {
+                                   configurations.add(toConfiguration(record));
+                               }
+                               return configurations;
+                           }
+                       });
+    }
+
+    /**
+     * Ids are bound as uuid on PostgreSQL, and as binary(16) (most significant bits first) elsewhere.
+     */
+    private Object toId(final UUID id) {
+        if (dialect.family() == SQLDialect.POSTGRES) {
+            return id;
+        }
+        return toBytes(id);
+    }
+
+    private List<Object> toIds(final List<UUID> ids) {
+        final List<Object> values = new ArrayList<Object>(ids.size());
+        for (final UUID id : ids) {
+            values.add(toId(id));
+        }
+        return values;
+    }
+
+    static byte[] toBytes(final UUID id) {
+        return ByteBuffer.allocate(16)
+                         .putLong(id.getMostSignificantBits())
+                         .putLong(id.getLeastSignificantBits())
+                         .array();
+    }
+
+    static UUID fromId(final Object value) {
+        if (value instanceof UUID) {
+            return (UUID) value;
+        } else if (value instanceof byte[]) {
+            final ByteBuffer buffer = ByteBuffer.wrap((byte[]) value);
+            return new UUID(buffer.getLong(), buffer.getLong());
+        } else {
+            return UUID.fromString(value.toString());
+        }
+    }
+
+    private static EmailNotificationsConfiguration toConfiguration(final Record record) {
+        return new EmailNotificationsConfiguration(ULong.valueOf(record.get(0, Long.class)),
+                                                   fromId(record.get(1)).toString(),
+                                                   fromId(record.get(2)).toString(),
+                                                   record.get(3, String.class),
+                                                   record.get(4, Timestamp.class));
+    }
+}
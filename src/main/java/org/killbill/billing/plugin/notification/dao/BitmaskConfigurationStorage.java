@@ -0,0 +1,260 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import org.joda.time.DateTime;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Query;
+import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.types.ULong;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.notification.dao.gen.tables.pojos.EmailNotificationsConfiguration;
+
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+/**
+ * Storage of {@link ConfigurationDao.StorageModel#BITMASK}: a single row per account in
+ * email_notifications_subscriptions, with the event types stored as a bitmask (see {@link EventTypeBitmask}).
+ * <p>
+ * Configurations are returned one per event type as before, but all of them carry the record id and creation date
+ * of the account row. As a consequence, the limit of {@link #getEventTypesPage(UUID, Long, int)} is a number of
+ * accounts.
+ */
+class BitmaskConfigurationStorage extends ConfigurationStorage {
+
+    private static final Table<Record> EMAIL_NOTIFICATIONS_SUBSCRIPTIONS = DSL.table("email_notifications_subscriptions");
+
+    private static final String RECORD_ID = "RECORD_ID";
+    private static final String KB_ACCOUNT_ID = "KB_ACCOUNT_ID";
+    private static final String KB_TENANT_ID = "KB_TENANT_ID";
+    private static final String EVENT_TYPES = "EVENT_TYPES";
+    private static final String CREATED_AT = "CREATED_AT";
+    private static final String UPDATED_AT = "UPDATED_AT";
+
+    // Read by index, as the case of the column labels depends on the database
+    private static final List<Field<?>> SUBSCRIPTION_FIELDS = ImmutableList.<Field<?>>of(DSL.field(RECORD_ID),
+                                                                                         DSL.field(KB_ACCOUNT_ID),
+                                                                                         DSL.field(KB_TENANT_ID),
+                                                                                         DSL.field(EVENT_TYPES),
+                                                                                         DSL.field(CREATED_AT));
+
+    BitmaskConfigurationStorage(final DataSource dataSource) throws SQLException {
+        super(dataSource);
+    }
+
+    @Override
+    List<EmailNotificationsConfiguration> getEventTypes(final List<UUID> kbAccountIds, final UUID kbTenantId) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<List<EmailNotificationsConfiguration>>() {
+                           @Override
+                           public List<EmailNotificationsConfiguration> withConnection(final Connection conn) throws SQLException {
+                               final DSLContext context = DSL.using(conn, dialect, settings);
+                               final List<EmailNotificationsConfiguration> configurations = new ArrayList<EmailNotificationsConfiguration>();
+                               for (final List<UUID> chunk : Lists.partition(kbAccountIds, ConfigurationDao.DEFAULT_BATCH_SIZE)) {
+                                   for (final Record record : context.select(SUBSCRIPTION_FIELDS)
+                                                                     .from(EMAIL_NOTIFICATIONS_SUBSCRIPTIONS)
+                                                                     .where(DSL.field(KB_TENANT_ID).equal(kbTenantId.toString()))
+                                                                     .and(DSL.field(KB_ACCOUNT_ID).in(Lists.<UUID, String>transform(chunk, Functions.toStringFunction())))
+                                                                     .orderBy(DSL.field(RECORD_ID).asc())
+                                                                     .fetch()) {
+                                       addConfigurations(record, configurations);
+                                   }
+                               }
+                               return configurations;
+                           }
+                       });
+    }
+
+    @Override
+    List<EmailNotificationsConfiguration> getEventTypesPage(final UUID kbTenantId, @Nullable final Long afterRecordId, final int limit) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<List<EmailNotificationsConfiguration>>() {
+                           @Override
+                           public List<EmailNotificationsConfiguration> withConnection(final Connection conn) throws SQLException {
+                               final List<EmailNotificationsConfiguration> configurations = new ArrayList<EmailNotificationsConfiguration>();
+                               for (final Record record : DSL.using(conn, dialect, settings)
+                                                             .select(SUBSCRIPTION_FIELDS)
+                                                             .from(EMAIL_NOTIFICATIONS_SUBSCRIPTIONS)
+                                                             .where(DSL.field(KB_TENANT_ID).equal(kbTenantId.toString()))
+                                                             .and(DSL.field(RECORD_ID).greaterThan(afterRecordId == null ? 0L : afterRecordId))
+                                                             .orderBy(DSL.field(RECORD_ID).asc())
+                                                             .limit(limit)
+                                                             .fetch()) {
+                                   addConfigurations(record, configurations);
+                               }
+                               return configurations;
+                           }
+                       });
+    }
+
+    @Override
+    List<EmailNotificationsConfiguration> getEventTypesPerAccount(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        final List<EmailNotificationsConfiguration> configurations = new ArrayList<EmailNotificationsConfiguration>();
+        final Record record = getSubscription(kbAccountId, kbTenantId);
+        if (record != null) {
+            addConfigurations(record, configurations);
+        }
+        return configurations;
+    }
+
+    @Override
+    List<EmailNotificationsConfiguration> getEventTypesPerAccount(final UUID kbAccountId, final UUID kbTenantId, final ExtBusEventType eventType) throws SQLException {
+        final List<EmailNotificationsConfiguration> configurations = new ArrayList<EmailNotificationsConfiguration>();
+        for (final EmailNotificationsConfiguration configuration : getEventTypesPerAccount(kbAccountId, kbTenantId)) {
+            if (eventType.toString().equals(configuration.getEventType())) {
+                configurations.add(configuration);
+            }
+        }
+        return configurations;
+    }
+
+    @Override
+    Set<ExtBusEventType> loadRegisteredEventTypes(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        final Record record = getSubscription(kbAccountId, kbTenantId);
+        return EventTypeBitmask.fromBitmask(record == null ? 0L : record.get(3, Long.class));
+    }
+
+    @Override
+    ConfigurationUpdateResult applyChanges(final DSLContext context,
+                                           final Map<UUID, ? extends Collection<ExtBusEventType>> eventTypesPerAccount,
+                                           final UUID kbTenantId,
+                                           final DateTime utcNow,
+                                           final int batchSize) {
+        int inserted = 0;
+        int deleted = 0;
+        final List<Query> batch = new ArrayList<Query>(batchSize);
+        for (final List<UUID> kbAccountIds : Iterables.partition(eventTypesPerAccount.keySet(), batchSize)) {
+            final Map<String, Long> existingBitmasks = new HashMap<String, Long>();
+            for (final Record2<String, Long> record : context.select(DSL.field(KB_ACCOUNT_ID, String.class), DSL.field(EVENT_TYPES, Long.class))
+                                                             .from(EMAIL_NOTIFICATIONS_SUBSCRIPTIONS)
+                                                             .where(DSL.field(KB_TENANT_ID).equal(kbTenantId.toString()))
+                                                             .and(DSL.field(KB_ACCOUNT_ID).in(Lists.<UUID, String>transform(kbAccountIds, Functions.toStringFunction())))
+                                                             .fetch()) {
+                existingBitmasks.put(record.value1(), record.value2());
+            }
+
+            for (final UUID kbAccountId : kbAccountIds) {
+                final Long existingBitmask = existingBitmasks.get(kbAccountId.toString());
+                final long currentBitmask = existingBitmask == null ? 0L : existingBitmask;
+                final long requestedBitmask = EventTypeBitmask.toBitmask(eventTypesPerAccount.get(kbAccountId));
+                if (currentBitmask == requestedBitmask) {
+                    continue;
+                }
+
+                if (requestedBitmask == 0L) {
+                    // No row for accounts without any event type
+                    batch.add(context.delete(EMAIL_NOTIFICATIONS_SUBSCRIPTIONS)
+                                     .where(DSL.field(KB_ACCOUNT_ID).equal(kbAccountId.toString()))
+                                     .and(DSL.field(KB_TENANT_ID).equal(kbTenantId.toString())));
+                } else if (existingBitmask == null) {
+                    batch.add(context.insertInto(EMAIL_NOTIFICATIONS_SUBSCRIPTIONS,
+                                                 DSL.field(KB_ACCOUNT_ID),
+                                                 DSL.field(KB_TENANT_ID),
+                                                 DSL.field(EVENT_TYPES),
+                                                 DSL.field(CREATED_AT),
+                                                 DSL.field(UPDATED_AT))
+                                     .values(kbAccountId.toString(),
+                                             kbTenantId.toString(),
+                                             requestedBitmask,
+                                             toTimestamp(utcNow),
+                                             toTimestamp(utcNow)));
+                } else {
+                    batch.add(context.update(EMAIL_NOTIFICATIONS_SUBSCRIPTIONS)
+                                     .set(DSL.field(EVENT_TYPES), (Object) requestedBitmask)
+                                     .set(DSL.field(UPDATED_AT), (Object) toTimestamp(utcNow))
+                                     .where(DSL.field(KB_ACCOUNT_ID).equal(kbAccountId.toString()))
+                                     .and(DSL.field(KB_TENANT_ID).equal(kbTenantId.toString())));
+                }
+                inserted += Long.bitCount(requestedBitmask & ~currentBitmask);
+                deleted += Long.bitCount(currentBitmask & ~requestedBitmask);
+
+                if (batch.size() >= batchSize) {
+                    context.batch(batch).execute();
+                    batch.clear();
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            context.batch(batch).execute();
+        }
+        return new ConfigurationUpdateResult(eventTypesPerAccount.size(), inserted, deleted);
+    }
+
+    @Override
+    void deleteConfiguration(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        execute(dataSource.getConnection(),
+                new WithConnectionCallback<Void>() {
+                    @Override
+                    public Void withConnection(final Connection conn) throws SQLException {
+                        DSL.using(conn, dialect, settings)
+                           .delete(EMAIL_NOTIFICATIONS_SUBSCRIPTIONS)
+                           .where(DSL.field(KB_ACCOUNT_ID).equal(kbAccountId.toString()))
+                           .and(DSL.field(KB_TENANT_ID).equal(kbTenantId.toString()))
+                           .execute();
+                        return null;
+                    }
+                });
+    }
+
+    @Nullable
+    private Record getSubscription(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<Record>() {
+                           @Override
+                           public Record withConnection(final Connection conn) throws SQLException {
+                               return DSL.using(conn, dialect, settings)
+                                         .select(SUBSCRIPTION_FIELDS)
+                                         .from(EMAIL_NOTIFICATIONS_SUBSCRIPTIONS)
+                                         .where(DSL.field(KB_TENANT_ID).equal(kbTenantId.toString()))
+                                         .and(DSL.field(KB_ACCOUNT_ID).equal(kbAccountId.toString()))
+                                         .fetchOne();
+                           }
+                       });
+    }
+
+    private static void addConfigurations(final Record record, final List<EmailNotificationsConfiguration> configurations) {
+        final ULong recordId = ULong.valueOf(record.get(0, Long.class));
+        final String kbAccountId = record.get(1, String.class);
+        final String kbTenantId = record.get(2, String.class);
+        final Timestamp createdAt = record.get(4, Timestamp.class);
+        for (final ExtBusEventType eventType : EventTypeBitmask.fromBitmask(record.get(3, Long.class))) {
+            configurations.add(new EmailNotificationsConfiguration(recordId, kbAccountId, kbTenantId, eventType.toString(), createdAt));
+        }
+    }
+}
@@ -21,24 +21,42 @@ package org.killbill.billing.plugin.notification.dao;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
 
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
 import org.jooq.impl.DSL;
 import org.killbill.billing.notification.plugin.api.ExtBusEventType;
 import org.killbill.billing.plugin.dao.PluginDao;
 
 import org.killbill.billing.plugin.notification.dao.gen.Tables;
 import org.killbill.billing.plugin.notification.dao.gen.tables.pojos.EmailNotificationsConfiguration;
+import org.killbill.billing.plugin.notification.dao.gen.tables.records.EmailNotificationsConfigurationRecord;
+import org.killbill.billing.plugin.notification.util.VersionedCache;
 
 import com.google.common.base.Functions;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 public class ConfigurationDao extends PluginDao
 {
@@ -47,12 +65,157 @@ public class ConfigurationDao extends PluginDao
     protected static final String EVENT_TYPE = "EVENT_TYPE";
     protected static final String CREATED_AT = "CREATED_AT";
     protected static final String KB_TENANT_ID = "KB_TENANT_ID";
-    
+
+    // Accounts per lookup query, and statements per JDBC batch
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    public static final long DEFAULT_EVENT_TYPES_CACHE_MAX_SIZE = 100000;
+    public static final long DEFAULT_EVENT_TYPES_CACHE_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    // Each model has its own table: switching requires converting the registrations, see src/main/resources/conversion
+    public enum StorageModel {
+        // One row per (account, event type) in email_notifications_configuration
+        ROWS,
+        // One row per account in email_notifications_subscriptions, see EventTypeBitmask
+        BITMASK,
+        // One row per (account, event type) in email_notifications_configuration_bin, with binary ids
+        BINARY_IDS
+    }
+
+    private static final EventTypeRowsWriter<EmailNotificationsConfigurationRecord> ROWS_WRITER =
+            new EventTypeRowsWriter<EmailNotificationsConfigurationRecord>(Tables.EMAIL_NOTIFICATIONS_CONFIGURATION, UUID::toString, id -> UUID.fromString(id.toString()));
+
+    // Event types registered per (tenant, account), including accounts without any (empty set)
+    private final VersionedCache<AccountKey, Set<ExtBusEventType>> eventTypesCache;
+    // Null for StorageModel.ROWS
+    private final ConfigurationStorage storage;
+
     public ConfigurationDao(final DataSource dataSource) throws SQLException {
+        this(dataSource, DEFAULT_EVENT_TYPES_CACHE_MAX_SIZE, DEFAULT_EVENT_TYPES_CACHE_TTL_MS);
+    }
+
+    /**
+     * @param dataSource               the data source
+     * @param eventTypesCacheMaxSize   max number of accounts in the event types cache
+     * @param eventTypesCacheTtlMs     TTL of the event types cache entries: entries are invalidated on updates made
+     *                                 through this instance, the TTL bounds the staleness of updates made by other nodes
+     */
+    public ConfigurationDao(final DataSource dataSource, final long eventTypesCacheMaxSize, final long eventTypesCacheTtlMs) throws SQLException {
+        this(dataSource, eventTypesCacheMaxSize, eventTypesCacheTtlMs, StorageModel.ROWS);
+    }
+
+    /**
+     * @param storageModel where the configurations are stored: the API is the same for all models
+     */
+    public ConfigurationDao(final DataSource dataSource, final long eventTypesCacheMaxSize, final long eventTypesCacheTtlMs, final StorageModel storageModel) throws SQLException {
+        this(dataSource, eventTypesCacheMaxSize, eventTypesCacheTtlMs, storageModel, Ticker.systemTicker());
+    }
+
+    ConfigurationDao(final DataSource dataSource, final long eventTypesCacheMaxSize, final long eventTypesCacheTtlMs, final Ticker ticker) throws SQLException {
+        this(dataSource, eventTypesCacheMaxSize, eventTypesCacheTtlMs, StorageModel.ROWS, ticker);
+    }
+
+    ConfigurationDao(final DataSource dataSource, final long eventTypesCacheMaxSize, final long eventTypesCacheTtlMs, final StorageModel storageModel, final Ticker ticker) throws SQLException {
         super(dataSource);
+        this.storage = createStorage(dataSource, storageModel);
+        this.eventTypesCache = new VersionedCache<AccountKey, Set<ExtBusEventType>>(CacheBuilder.newBuilder()
+                                                                                                .maximumSize(eventTypesCacheMaxSize)
+                                                                                                .expireAfterWrite(eventTypesCacheTtlMs, TimeUnit.MILLISECONDS)
+                                                                                                .ticker(ticker)
+                                                                                                .recordStats()
+                                                                                                .<AccountKey, Set<ExtBusEventType>>build());
+    }
+
+    @Nullable
+    private static ConfigurationStorage createStorage(final DataSource dataSource, final StorageModel storageModel) throws SQLException {
+        switch (storageModel) {
+            case BITMASK:
+                return new BitmaskConfigurationStorage(dataSource);
+            case BINARY_IDS:
+                return new BinaryIdConfigurationStorage(dataSource);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Whether the account registered for the event type, without hitting the database when the account
+     * registrations are cached (registered or not).
+     */
+    public boolean isEventTypeRegistered(final UUID kbAccountId, final UUID kbTenantId, final ExtBusEventType eventType) throws SQLException {
+        return getRegisteredEventTypes(kbAccountId, kbTenantId).contains(eventType);
+    }
+
+    public Set<ExtBusEventType> getRegisteredEventTypes(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        // Registrations loaded while being updated aren't cached
+        return eventTypesCache.get(new AccountKey(kbTenantId, kbAccountId),
+                                   () -> Sets.immutableEnumSet(loadRegisteredEventTypes(kbAccountId, kbTenantId)));
+    }
+
+    private Set<ExtBusEventType> loadRegisteredEventTypes(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        if (storage != null) {
+            return storage.loadRegisteredEventTypes(kbAccountId, kbTenantId);
+        }
+
+        final EnumSet<ExtBusEventType> registeredEventTypes = EnumSet.noneOf(ExtBusEventType.class);
+        for (final EmailNotificationsConfiguration configuration : getEventTypesPerAccount(kbAccountId, kbTenantId)) {
+            registeredEventTypes.add(ExtBusEventType.valueOf(configuration.getEventType()));
+        }
+        return registeredEventTypes;
+    }
+
+    public CacheStats getEventTypesCacheStats() {
+        return eventTypesCache.stats();
+    }
+
+    private void invalidateEventTypes(final UUID kbAccountId, final UUID kbTenantId) {
+        eventTypesCache.invalidate(new AccountKey(kbTenantId, kbAccountId));
     }
 
+    /**
+     * The ids are looked up in chunks of {@link #DEFAULT_BATCH_SIZE}: rows are ordered by record id within each chunk
+     * only, i.e. grouped by position of the account in the list.
+     */
     public List<EmailNotificationsConfiguration> getEventTypes(final List<UUID> kbAccountIds, final UUID kbTenantId) throws SQLException {
+        if (storage != null) {
+            return storage.getEventTypes(kbAccountIds, kbTenantId);
+        }
+
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<List<EmailNotificationsConfiguration>>() {
+                           @Override
+                           public List<EmailNotificationsConfiguration> withConnection(final Connection conn) throws SQLException {
+                               final DSLContext context = DSL.using(conn, dialect, settings);
+                               final List<EmailNotificationsConfiguration> configurations = new ArrayList<EmailNotificationsConfiguration>();
+                               for (final List<UUID> chunk : Lists.partition(kbAccountIds, DEFAULT_BATCH_SIZE)) {
+                                   // Map rows one at a time, rather than materializing a Result and copying it
+                                   try (final Cursor<EmailNotificationsConfigurationRecord> cursor = context.selectFrom(Tables.EMAIL_NOTIFICATIONS_CONFIGURATION)
+                                                                                                          .where(DSL.field(KB_TENANT_ID).equal(kbTenantId.toString()))
+                                                                                                          .and(DSL.field(KB_ACCOUNT_ID).in(Lists.<UUID, String>transform(chunk, Functions.toStringFunction())))
+                                                                                                          .orderBy(DSL.field(RECORD_ID).asc())
+                                                                                                          .fetchSize(DEFAULT_BATCH_SIZE)
+                                                                                                          .fetchLazy()) {
+                                       for (final EmailNotificationsConfigurationRecord record : cursor) {
+                                           configurations.add(record.into(EmailNotificationsConfiguration.class));
+                                       }
+                                   }
+                               }
+                               return configurations;
+                           }
+                       });
+    }
+
+    /**
+     * Page through the configurations of a tenant, by record id (keyset pagination).
+     *
+     * @param afterRecordId record id of the last row of the previous page, null for the first page
+     * @param limit         max number of rows to return
+     */
+    public List<EmailNotificationsConfiguration> getEventTypesPage(final UUID kbTenantId, @Nullable final Long afterRecordId, final int limit) throws SQLException {
+        if (storage != null) {
+            return storage.getEventTypesPage(kbTenantId, afterRecordId, limit);
+        }
+
         return execute(dataSource.getConnection(),
                        new WithConnectionCallback<List<EmailNotificationsConfiguration>>() {
                            @Override
@@ -60,14 +223,19 @@ public class ConfigurationDao extends PluginDao
                                return DSL.using(conn, dialect, settings)
                                          .selectFrom(Tables.EMAIL_NOTIFICATIONS_CONFIGURATION)
                                          .where(DSL.field(KB_TENANT_ID).equal(kbTenantId.toString()))
-                                         .and(DSL.field(KB_ACCOUNT_ID).in(Lists.<UUID, String>transform(kbAccountIds, Functions.toStringFunction())))
+                                         .and(DSL.field(RECORD_ID).greaterThan(afterRecordId == null ? 0L : afterRecordId))
                                          .orderBy(DSL.field(RECORD_ID).asc())
+                                         .limit(limit)
                                          .fetch().into(EmailNotificationsConfiguration.class);
                            }
                        });
     }
 
     public List<EmailNotificationsConfiguration> getEventTypesPerAccount(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        if (storage != null) {
+            return storage.getEventTypesPerAccount(kbAccountId, kbTenantId);
+        }
+
         return execute(dataSource.getConnection(),
                        new WithConnectionCallback<List<EmailNotificationsConfiguration>>() {
                            @Override
@@ -83,6 +251,10 @@ public class ConfigurationDao extends PluginDao
     }
 
     public List<EmailNotificationsConfiguration> getEventTypesPerAccount(final UUID kbAccountId, final UUID kbTenantId, final ExtBusEventType eventType) throws SQLException {
+        if (storage != null) {
+            return storage.getEventTypesPerAccount(kbAccountId, kbTenantId, eventType);
+        }
+
         return execute(dataSource.getConnection(),
                        new WithConnectionCallback<List<EmailNotificationsConfiguration>>() {
                            @Override
@@ -103,50 +275,77 @@ public class ConfigurationDao extends PluginDao
         return foundEventType.size() == 0 ? null : foundEventType.get(0);
     }
 
-    public void updateConfigurationPerAccount(final UUID kbAccountId,
-                                          final UUID kbTenantId,
-                                          final List<ExtBusEventType> eventTypes,
-                                          final DateTime utcNow) throws SQLException {
-        this.updateConfiguration(kbAccountId,kbTenantId,eventTypes,utcNow);
+    public ConfigurationUpdateResult updateConfigurationPerAccount(final UUID kbAccountId,
+                                                                   final UUID kbTenantId,
+                                                                   final List<ExtBusEventType> eventTypes,
+                                                                   final DateTime utcNow) throws SQLException {
+        return updateConfigurations(ImmutableMap.<UUID, List<ExtBusEventType>>of(kbAccountId, eventTypes), kbTenantId, utcNow);
     }
 
-    private void updateConfiguration(final UUID kbAccountId,
-                                final UUID kbTenantId,
-                                final List<ExtBusEventType> eventTypes,
-                                final DateTime utcNow) throws SQLException {
+    public ConfigurationUpdateResult updateConfigurations(final Map<UUID, ? extends Collection<ExtBusEventType>> eventTypesPerAccount,
+                                                          final UUID kbTenantId,
+                                                          final DateTime utcNow) throws SQLException {
+        return updateConfigurations(eventTypesPerAccount, kbTenantId, utcNow, DEFAULT_BATCH_SIZE);
+    }
 
-        execute(dataSource.getConnection(),
-            new WithConnectionCallback<Void>() {
-                @Override
-                public Void withConnection(final Connection conn) throws SQLException {
-                    DSL.using(conn, dialect, settings).transaction(context -> {
-                                                    DSL.using(context)
-                                                       .delete(Tables.EMAIL_NOTIFICATIONS_CONFIGURATION)
-                                                       .where(DSL.field(KB_ACCOUNT_ID).equal(kbAccountId.toString()))
-                                                       .and(DSL.field(KB_TENANT_ID).equal(kbTenantId.toString()))
-                                                       .execute();
-
-                                                    for (ExtBusEventType eventType : eventTypes) {
-                                                        DSL.using(context)
-                                                           .insertInto(Tables.EMAIL_NOTIFICATIONS_CONFIGURATION,
-                                                                       DSL.field(KB_ACCOUNT_ID),
-                                                                       DSL.field(EVENT_TYPE),
-                                                                       DSL.field(CREATED_AT),
-                                                                       DSL.field(KB_TENANT_ID))
-                                                           .values(kbAccountId.toString(),
-                                                                   eventType.toString(),
-                                                                   toTimestamp(utcNow),
-                                                                   kbTenantId.toString())
-                                                           .execute();
-                                                        }
-                                                    }
-                    );
-                    return null;
-                }
-            });
+    /**
+     * Set the event types of many accounts in a single transaction.
+     * <p>
+     * The existing registrations are compared against the requested event types, and only the differences are
+     * written, using JDBC batches (see {@link EventTypeRowsWriter}).
+     *
+     * @param eventTypesPerAccount the event types, per account (an empty collection removes all registrations)
+     * @param kbTenantId           the tenant id
+     * @param utcNow               creation date of the new rows
+     * @param batchSize            max number of accounts per lookup query, and of statements per JDBC batch
+     * @return what was written
+     */
+    public ConfigurationUpdateResult updateConfigurations(final Map<UUID, ? extends Collection<ExtBusEventType>> eventTypesPerAccount,
+                                                          final UUID kbTenantId,
+                                                          final DateTime utcNow,
+                                                          final int batchSize) throws SQLException {
+        try {
+            return execute(dataSource.getConnection(),
+                           new WithConnectionCallback<ConfigurationUpdateResult>() {
+                               @Override
+                               public ConfigurationUpdateResult withConnection(final Connection conn) throws SQLException {
+                                   return DSL.using(conn, dialect, settings)
+                                             .transactionResult(configuration -> applyChanges(DSL.using(configuration), eventTypesPerAccount, kbTenantId, utcNow, batchSize));
+                               }
+                           });
+        } finally {
+            for (final UUID kbAccountId : eventTypesPerAccount.keySet()) {
+                invalidateEventTypes(kbAccountId, kbTenantId);
+            }
+        }
+    }
+
+    private ConfigurationUpdateResult applyChanges(final DSLContext context,
+                                                   final Map<UUID, ? extends Collection<ExtBusEventType>> eventTypesPerAccount,
+                                                   final UUID kbTenantId,
+                                                   final DateTime utcNow,
+                                                   final int batchSize) {
+        if (storage != null) {
+            return storage.applyChanges(context, eventTypesPerAccount, kbTenantId, utcNow, batchSize);
+        }
+
+        return ROWS_WRITER.applyChanges(context, eventTypesPerAccount, kbTenantId, toTimestamp(utcNow), batchSize);
     }
 
     public void deleteConfiguration(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        try {
+            doDeleteConfiguration(kbAccountId, kbTenantId);
+        } finally {
+            invalidateEventTypes(kbAccountId, kbTenantId);
+        }
+    }
+
+    private void doDeleteConfiguration(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        if (storage != null) {
+            storage.deleteConfiguration(kbAccountId, kbTenantId);
+            return;
+        }
+
         execute(dataSource.getConnection(),
                 new WithConnectionCallback<Void>() {
                     @Override
@@ -163,4 +362,40 @@ public class ConfigurationDao extends PluginDao
                 });
     }
 
+    private static final class AccountKey {
+
+        private final UUID kbTenantId;
+        private final UUID kbAccountId;
+
+        private AccountKey(final UUID kbTenantId, final UUID kbAccountId) {
+            this.kbTenantId = kbTenantId;
+            this.kbAccountId = kbAccountId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final AccountKey that = (AccountKey) o;
+            return Objects.equal(kbTenantId, that.kbTenantId) &&
+                   Objects.equal(kbAccountId, that.kbAccountId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(kbTenantId, kbAccountId);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("kbTenantId", kbTenantId)
+                              .add("kbAccountId", kbAccountId)
+                              .toString();
+        }
+    }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import org.joda.time.DateTime;
+import org.jooq.DSLContext;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.dao.PluginDao;
+import org.killbill.billing.plugin.notification.dao.gen.tables.pojos.EmailNotificationsConfiguration;
+
+/**
+ * Storage of the event type registrations other than {@link ConfigurationDao.StorageModel#ROWS}, which
+ * {@link ConfigurationDao} implements itself. Caching and cache invalidation are left to {@link ConfigurationDao}.
+ */
+abstract class ConfigurationStorage extends PluginDao {
+
+    ConfigurationStorage(final DataSource dataSource) throws SQLException {
+        super(dataSource);
+    }
+
+    abstract List<EmailNotificationsConfiguration> getEventTypes(List<UUID> kbAccountIds, UUID kbTenantId) throws SQLException;
+
+    abstract List<EmailNotificationsConfiguration> getEventTypesPage(UUID kbTenantId, @Nullable Long afterRecordId, int limit) throws SQLException;
+
+    abstract List<EmailNotificationsConfiguration> getEventTypesPerAccount(UUID kbAccountId, UUID kbTenantId) throws SQLException;
+
+    abstract List<EmailNotificationsConfiguration> getEventTypesPerAccount(UUID kbAccountId, UUID kbTenantId, ExtBusEventType eventType) throws SQLException;
+
+    abstract Set<ExtBusEventType> loadRegisteredEventTypes(UUID kbAccountId, UUID kbTenantId) throws SQLException;
+
+    /**
+     * Write the differences between the stored and the requested event types, within the caller's transaction.
+     */
+    abstract ConfigurationUpdateResult applyChanges(DSLContext context,
+                                                    Map<UUID, ? extends Collection<ExtBusEventType>> eventTypesPerAccount,
+                                                    UUID kbTenantId,
+                                                    DateTime utcNow,
+                                                    int batchSize);
+
+    abstract void deleteConfiguration(UUID kbAccountId, UUID kbTenantId) throws SQLException;
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Outcome of a configuration update: only the event types which actually changed are written.
+ */
+public class ConfigurationUpdateResult {
+
+    private final int accounts;
+    private final int insertedEventTypes;
+    private final int deletedEventTypes;
+
+    public ConfigurationUpdateResult(final int accounts, final int insertedEventTypes, final int deletedEventTypes) {
+        this.accounts = accounts;
+        this.insertedEventTypes = insertedEventTypes;
+        this.deletedEventTypes = deletedEventTypes;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public int getInsertedEventTypes() {
+        return insertedEventTypes;
+    }
+
+    public int getDeletedEventTypes() {
+        return deletedEventTypes;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("accounts", accounts)
+                          .add("insertedEventTypes", insertedEventTypes)
+                          .add("deletedEventTypes", deletedEventTypes)
+                          .toString();
+    }
+}
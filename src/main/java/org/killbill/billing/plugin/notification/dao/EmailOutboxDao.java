@@ -0,0 +1,309 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.joda.time.DateTime;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Table;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.dao.PluginDao;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Rendered emails waiting for delivery.
+ * <p>
+ * Rows are claimed in batches by setting a claim token and pushing {@code next_attempt_at} past the claim timeout:
+ * several nodes can poll the table concurrently, and rows claimed by a node which died become due again once the
+ * claim expires.
+ */
+public class EmailOutboxDao extends PluginDao {
+
+    public static final String STATUS_PENDING = "PENDING";
+    // Max attempts reached, kept for inspection
+    public static final String STATUS_FAILED = "FAILED";
+
+    protected static final Table<Record> EMAIL_NOTIFICATIONS_OUTBOX = DSL.table("email_notifications_outbox");
+
+    protected static final String RECORD_ID = "RECORD_ID";
+    protected static final String KB_ACCOUNT_ID = "KB_ACCOUNT_ID";
+    protected static final String KB_TENANT_ID = "KB_TENANT_ID";
+    protected static final String EVENT_TYPE = "EVENT_TYPE";
+    protected static final String RECIPIENTS = "RECIPIENTS";
+    protected static final String CC_RECIPIENTS = "CC_RECIPIENTS";
+    protected static final String SUBJECT = "SUBJECT";
+    protected static final String BODY = "BODY";
+    protected static final String IS_HTML = "IS_HTML";
+    protected static final String STATUS = "STATUS";
+    protected static final String ATTEMPTS = "ATTEMPTS";
+    protected static final String NEXT_ATTEMPT_AT = "NEXT_ATTEMPT_AT";
+    protected static final String CLAIM_TOKEN = "CLAIM_TOKEN";
+    protected static final String LAST_ERROR = "LAST_ERROR";
+    protected static final String CREATED_AT = "CREATED_AT";
+    protected static final String UPDATED_AT = "UPDATED_AT";
+
+    // Never part of an email address
+    private static final char RECIPIENTS_SEPARATOR = '\n';
+
+    // Read by index, as the case of the column labels depends on the database
+    private static final List<Field<?>> ENTRY_FIELDS = ImmutableList.<Field<?>>of(DSL.field(RECORD_ID),
+                                                                                  DSL.field(KB_ACCOUNT_ID),
+                                                                                  DSL.field(KB_TENANT_ID),
+                                                                                  DSL.field(EVENT_TYPE),
+                                                                                  DSL.field(RECIPIENTS),
+                                                                                  DSL.field(CC_RECIPIENTS),
+                                                                                  DSL.field(SUBJECT),
+                                                                                  DSL.field(BODY),
+                                                                                  DSL.field(IS_HTML),
+                                                                                  DSL.field(ATTEMPTS));
+
+    public EmailOutboxDao(final DataSource dataSource) throws SQLException {
+        super(dataSource);
+    }
+
+    /**
+     * Check whether the outbox table exists (its migration may not have been run after an upgrade).
+     *
+     * @return false if the table can't be queried
+     */
+    public boolean isInstalled() {
+        try {
+            return execute(dataSource.getConnection(),
+                           new WithConnectionCallback<Boolean>() {
+                               @Override
+                               public Boolean withConnection(final Connection conn) throws SQLException {
+                                   DSL.using(conn, dialect, settings)
+                                      .selectOne()
+                                      .from(EMAIL_NOTIFICATIONS_OUTBOX)
+                                      .where(DSL.falseCondition())
+                                      .fetch();
+                                   return true;
+                               }
+                           });
+        } catch (final SQLException | DataAccessException e) {
+            return false;
+        }
+    }
+
+    public void insert(final UUID kbAccountId,
+                       final UUID kbTenantId,
+                       final ExtBusEventType eventType,
+                       final List<String> to,
+                       final List<String> cc,
+                       final String subject,
+                       final String body,
+                       final boolean html,
+                       final DateTime nextAttemptAt,
+                       final String lastError,
+                       final DateTime utcNow) throws SQLException {
+        execute(dataSource.getConnection(),
+                new WithConnectionCallback<Void>() {
+                    @Override
+                    public Void withConnection(final Connection conn) throws SQLException {
+                        DSL.using(conn, dialect, settings)
+                           .insertInto(EMAIL_NOTIFICATIONS_OUTBOX,
+                                       DSL.field(KB_ACCOUNT_ID),
+                                       DSL.field(KB_TENANT_ID),
+                                       DSL.field(EVENT_TYPE),
+                                       DSL.field(RECIPIENTS),
+                                       DSL.field(CC_RECIPIENTS),
+                                       DSL.field(SUBJECT),
+                                       DSL.field(BODY),
+                                       DSL.field(IS_HTML),
+                                       DSL.field(STATUS),
+                                       DSL.field(ATTEMPTS),
+                                       DSL.field(NEXT_ATTEMPT_AT),
+                                       DSL.field(LAST_ERROR),
+                                       DSL.field(CREATED_AT),
+                                       DSL.field(UPDATED_AT))
+                           .values(kbAccountId.toString(),
+                                   kbTenantId.toString(),
+                                   eventType.toString(),
+                                   joinRecipients(to),
+                                   cc == null || cc.isEmpty() ? null : joinRecipients(cc),
+                                   subject,
+                                   body,
+                                   fromBoolean(html),
+                                   STATUS_PENDING,
+                                   0,
+                                   toTimestamp(nextAttemptAt),
+                                   lastError,
+                                   toTimestamp(utcNow),
+                                   toTimestamp(utcNow))
+                           .execute();
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Claim due entries. Claimed entries aren't returned by other calls until the claim expires, unless they are
+     * rescheduled.
+     *
+     * @param batchSize  max number of entries to claim
+     * @param claimUntil when the claim expires, if the entry is neither deleted nor rescheduled by then
+     * @param utcNow     current time
+     * @return the claimed entries, with their attempts count incremented
+     */
+    public List<EmailOutboxEntry> claimBatch(final int batchSize, final DateTime claimUntil, final DateTime utcNow) throws SQLException {
+        final String claimToken = UUID.randomUUID().toString();
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<List<EmailOutboxEntry>>() {
+                           @Override
+                           public List<EmailOutboxEntry> withConnection(final Connection conn) throws SQLException {
+                               final List<Long> candidateIds = DSL.using(conn, dialect, settings)
+                                                                  .select(DSL.field(RECORD_ID, Long.class))
+                                                                  .from(EMAIL_NOTIFICATIONS_OUTBOX)
+                                                                  .where(DSL.field(STATUS).equal(STATUS_PENDING))
+                                                                  .and(DSL.field(NEXT_ATTEMPT_AT).lessOrEqual(toTimestamp(utcNow)))
+                                                                  .orderBy(DSL.field(RECORD_ID).asc())
+                                                                  .limit(batchSize)
+                                                                  .fetch(0, Long.class);
+                               if (candidateIds.isEmpty()) {
+                                   return ImmutableList.<EmailOutboxEntry>of();
+                               }
+
+                               // Re-check the predicate: another node may have claimed some of the candidates in the meantime
+                               final int claimed = DSL.using(conn, dialect, settings)
+                                                      .update(EMAIL_NOTIFICATIONS_OUTBOX)
+                                                      .set(DSL.field(CLAIM_TOKEN), (Object) claimToken)
+                                                      .set(DSL.field(ATTEMPTS, Integer.class), DSL.field(ATTEMPTS, Integer.class).add(1))
+                                                      .set(DSL.field(NEXT_ATTEMPT_AT), (Object) toTimestamp(claimUntil))
+                                                      .set(DSL.field(UPDATED_AT), (Object) toTimestamp(utcNow))
+                                                      .where(DSL.field(RECORD_ID).in(candidateIds))
+                                                      .and(DSL.field(STATUS).equal(STATUS_PENDING))
+                                                      .and(DSL.field(NEXT_ATTEMPT_AT).lessOrEqual(toTimestamp(utcNow)))
+                                                      .execute();
+                               if (claimed == 0) {
+                                   return ImmutableList.<EmailOutboxEntry>of();
+                               }
+
+                               final ImmutableList.Builder<EmailOutboxEntry> entries = ImmutableList.builder();
+                               for (final Record record : DSL.using(conn, dialect, settings)
+                                                             .select(ENTRY_FIELDS)
+                                                             .from(EMAIL_NOTIFICATIONS_OUTBOX)
+                                                             .where(DSL.field(CLAIM_TOKEN).equal(claimToken))
+                                                             .orderBy(DSL.field(RECORD_ID).asc())
+                                                             .fetch()) {
+                                   entries.add(toEntry(record));
+                               }
+                               return entries.build();
+                           }
+                       });
+    }
+
+    /**
+     * Delivery failed: make the entry due again at the specified time.
+     */
+    public void reschedule(final Long recordId, final DateTime nextAttemptAt, final String lastError, final DateTime utcNow) throws SQLException {
+        update(recordId, STATUS_PENDING, nextAttemptAt, lastError, utcNow);
+    }
+
+    /**
+     * Delivery failed for the last time: the entry is kept, but won't be claimed anymore.
+     */
+    public void markFailed(final Long recordId, final String lastError, final DateTime utcNow) throws SQLException {
+        update(recordId, STATUS_FAILED, utcNow, lastError, utcNow);
+    }
+
+    /**
+     * Delivery succeeded.
+     */
+    public void delete(final Long recordId) throws SQLException {
+        execute(dataSource.getConnection(),
+                new WithConnectionCallback<Void>() {
+                    @Override
+                    public Void withConnection(final Connection conn) throws SQLException {
+                        DSL.using(conn, dialect, settings)
+                           .delete(EMAIL_NOTIFICATIONS_OUTBOX)
+                           .where(DSL.field(RECORD_ID).equal(recordId))
+                           .execute();
+                        return null;
+                    }
+                });
+    }
+
+    public int countByStatus(final String status) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<Integer>() {
+                           @Override
+                           public Integer withConnection(final Connection conn) throws SQLException {
+                               return DSL.using(conn, dialect, settings)
+                                         .selectCount()
+                                         .from(EMAIL_NOTIFICATIONS_OUTBOX)
+                                         .where(DSL.field(STATUS).equal(status))
+                                         .fetchOne(0, Integer.class);
+                           }
+                       });
+    }
+
+    private void update(final Long recordId, final String status, final DateTime nextAttemptAt, final String lastError, final DateTime utcNow) throws SQLException {
+        execute(dataSource.getConnection(),
+                new WithConnectionCallback<Void>() {
+                    @Override
+                    public Void withConnection(final Connection conn) throws SQLException {
+                        DSL.using(conn, dialect, settings)
+                           .update(EMAIL_NOTIFICATIONS_OUTBOX)
+                           .set(DSL.field(STATUS), (Object) status)
+                           .set(DSL.field(NEXT_ATTEMPT_AT), (Object) toTimestamp(nextAttemptAt))
+                           .set(DSL.field(CLAIM_TOKEN), (Object) null)
+                           .set(DSL.field(LAST_ERROR), (Object) lastError)
+                           .set(DSL.field(UPDATED_AT), (Object) toTimestamp(utcNow))
+                           .where(DSL.field(RECORD_ID).equal(recordId))
+                           .execute();
+                        return null;
+                    }
+                });
+    }
+
+    private static EmailOutboxEntry toEntry(final Record record) {
+        return new EmailOutboxEntry(record.get(0, Long.class),
+                                    UUID.fromString(record.get(1, String.class)),
+                                    UUID.fromString(record.get(2, String.class)),
+                                    ExtBusEventType.valueOf(record.get(3, String.class)),
+                                    splitRecipients(record.get(4, String.class)),
+                                    splitRecipients(record.get(5, String.class)),
+                                    record.get(6, String.class),
+                                    record.get(7, String.class),
+                                    record.get(8, Integer.class) != 0,
+                                    record.get(9, Integer.class));
+    }
+
+    private static String joinRecipients(final List<String> recipients) {
+        return Joiner.on(RECIPIENTS_SEPARATOR).join(recipients);
+    }
+
+    private static List<String> splitRecipients(final String recipients) {
+        if (Strings.isNullOrEmpty(recipients)) {
+            return ImmutableList.<String>of();
+        }
+        return Splitter.on(RECIPIENTS_SEPARATOR).omitEmptyStrings().splitToList(recipients);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A rendered email stored in the outbox: delivering it again only requires a resend.
+ */
+public class EmailOutboxEntry {
+
+    private final Long recordId;
+    private final UUID kbAccountId;
+    private final UUID kbTenantId;
+    private final ExtBusEventType eventType;
+    private final List<String> to;
+    private final List<String> cc;
+    private final String subject;
+    private final String body;
+    private final boolean html;
+    private final int attempts;
+
+    public EmailOutboxEntry(final Long recordId, final UUID kbAccountId, final UUID kbTenantId, final ExtBusEventType eventType,
+                            final List<String> to, final List<String> cc, final String subject, final String body,
+                            final boolean html, final int attempts) {
+        this.recordId = recordId;
+        this.kbAccountId = kbAccountId;
+        this.kbTenantId = kbTenantId;
+        this.eventType = eventType;
+        this.to = to;
+        this.cc = cc;
+        this.subject = subject;
+        this.body = body;
+        this.html = html;
+        this.attempts = attempts;
+    }
+
+    public Long getRecordId() {
+        return recordId;
+    }
+
+    public UUID getKbAccountId() {
+        return kbAccountId;
+    }
+
+    public UUID getKbTenantId() {
+        return kbTenantId;
+    }
+
+    public ExtBusEventType getEventType() {
+        return eventType;
+    }
+
+    public List<String> getTo() {
+        return to;
+    }
+
+    public List<String> getCc() {
+        return cc;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public boolean isHtml() {
+        return html;
+    }
+
+    /**
+     * @return number of delivery attempts made by the outbox worker, including the current one
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    @Override
+    public String toString() {
+        // Recipients and content are left out on purpose
+        return MoreObjects.toStringHelper(this)
+                          .add("recordId", recordId)
+                          .add("kbAccountId", kbAccountId)
+                          .add("kbTenantId", kbTenantId)
+                          .add("eventType", eventType)
+                          .add("attempts", attempts)
+                          .toString();
+    }
+}
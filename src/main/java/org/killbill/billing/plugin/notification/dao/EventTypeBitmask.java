@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Encoding of a set of event types as a long, as stored in email_notifications_subscriptions.
+ * <p>
+ * The bits are assigned explicitly rather than from the enum ordinals, which aren't stable across API versions:
+ * the list is append-only, and has to match the migrations.
+ */
+public final class EventTypeBitmask {
+
+    private static final List<String> EVENT_TYPES_BY_BIT = ImmutableList.of("ACCOUNT_CREATION",
+                                                                            "ACCOUNT_CHANGE",
+                                                                            "BLOCKING_STATE",
+                                                                            "BROADCAST_SERVICE",
+                                                                            "SUBSCRIPTION_CREATION",
+                                                                            "SUBSCRIPTION_PHASE",
+                                                                            "SUBSCRIPTION_CHANGE",
+                                                                            "SUBSCRIPTION_CANCEL",
+                                                                            "SUBSCRIPTION_UNCANCEL",
+                                                                            "SUBSCRIPTION_BCD_CHANGE",
+                                                                            "SUBSCRIPTION_QUANTITY",
+                                                                            "SUBSCRIPTION_EXPIRED",
+                                                                            "ENTITLEMENT_CREATION",
+                                                                            "ENTITLEMENT_CANCEL",
+                                                                            "BUNDLE_PAUSE",
+                                                                            "BUNDLE_RESUME",
+                                                                            "OVERDUE_CHANGE",
+                                                                            "INVOICE_CREATION",
+                                                                            "INVOICE_ADJUSTMENT",
+                                                                            "INVOICE_NOTIFICATION",
+                                                                            "INVOICE_PAYMENT_SUCCESS",
+                                                                            "INVOICE_PAYMENT_FAILED",
+                                                                            "PAYMENT_SUCCESS",
+                                                                            "PAYMENT_FAILED",
+                                                                            "TAG_CREATION",
+                                                                            "TAG_DELETION",
+                                                                            "CUSTOM_FIELD_CREATION",
+                                                                            "CUSTOM_FIELD_DELETION",
+                                                                            "TENANT_CONFIG_CHANGE",
+                                                                            "TENANT_CONFIG_DELETION");
+
+    private static final Map<ExtBusEventType, Long> BITS = new EnumMap<ExtBusEventType, Long>(ExtBusEventType.class);
+
+    static {
+        // Bit 63 is left alone, to keep the stored values positive
+        for (int bit = 0; bit < EVENT_TYPES_BY_BIT.size() && bit < 63; bit++) {
+            final ExtBusEventType eventType = lookup(EVENT_TYPES_BY_BIT.get(bit));
+            if (eventType != null) {
+                BITS.put(eventType, 1L << bit);
+            }
+        }
+    }
+
+    private EventTypeBitmask() {
+    }
+
+    public static boolean isSupported(final ExtBusEventType eventType) {
+        return BITS.containsKey(eventType);
+    }
+
+    public static long toBitmask(final Collection<ExtBusEventType> eventTypes) {
+        long bitmask = 0;
+        for (final ExtBusEventType eventType : eventTypes) {
+            final Long bit = BITS.get(eventType);
+            if (bit == null) {
+                throw new IllegalArgumentException("No bit assigned to event type " + eventType);
+            }
+            bitmask |= bit;
+        }
+        return bitmask;
+    }
+
+    public static long toBit(final ExtBusEventType eventType) {
+        return toBitmask(EnumSet.of(eventType));
+    }
+
+    /**
+     * @return the event types, in ExtBusEventType order (bits of event types unknown to this API version are ignored)
+     */
+    public static Set<ExtBusEventType> fromBitmask(final long bitmask) {
+        final EnumSet<ExtBusEventType> eventTypes = EnumSet.noneOf(ExtBusEventType.class);
+        for (final Map.Entry<ExtBusEventType, Long> entry : BITS.entrySet()) {
+            if ((bitmask & entry.getValue()) != 0) {
+                eventTypes.add(entry.getKey());
+            }
+        }
+        return eventTypes;
+    }
+
+    private static ExtBusEventType lookup(final String name) {
+        for (final ExtBusEventType eventType : ExtBusEventType.values()) {
+            if (eventType.name().equals(name)) {
+                return eventType;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+
+/**
+ * Updates the event type registrations of a table with one row per (account, event type), i.e. the tables of
+ * {@link ConfigurationDao.StorageModel#ROWS} and {@link ConfigurationDao.StorageModel#BINARY_IDS}, which only differ
+ * by the type of their id columns.
+ * <p>
+ * The existing rows are compared against the requested event types: rows of unchanged event types are kept
+ * (as well as their record id), and only the differences are written, using JDBC batches.
+ *
+ * @param <R> the record type of the table
+ */
+final class EventTypeRowsWriter<R extends Record> {
+
+    private static final String KB_ACCOUNT_ID = "KB_ACCOUNT_ID";
+    private static final String KB_TENANT_ID = "KB_TENANT_ID";
+    private static final String EVENT_TYPE = "EVENT_TYPE";
+    private static final String CREATED_AT = "CREATED_AT";
+
+    private final Table<R> table;
+    private final Function<UUID, Object> toId;
+    private final Function<Object, UUID> fromId;
+
+    /**
+     * @param table  the table
+     * @param toId   binds an id to the type of the id columns
+     * @param fromId reads an id column value
+     */
+    EventTypeRowsWriter(final Table<R> table, final Function<UUID, Object> toId, final Function<Object, UUID> fromId) {
+        this.table = table;
+        this.toId = toId;
+        this.fromId = fromId;
+    }
+
+    /**
+     * Write the differences between the stored and the requested event types, within the caller's transaction.
+     *
+     * @param batchSize max number of accounts per lookup query, and of statements per JDBC batch
+     */
+    ConfigurationUpdateResult applyChanges(final DSLContext context,
+                                           final Map<UUID, ? extends Collection<ExtBusEventType>> eventTypesPerAccount,
+                                           final UUID kbTenantId,
+                                           final Timestamp createdAt,
+                                           final int batchSize) {
+        final Object tenantId = toId.apply(kbTenantId);
+
+        int inserted = 0;
+        int deleted = 0;
+        final List<Query> batch = new ArrayList<Query>(batchSize);
+        for (final List<UUID> kbAccountIds : Iterables.partition(eventTypesPerAccount.keySet(), batchSize)) {
+            final List<Object> accountIds = new ArrayList<Object>(kbAccountIds.size());
+            for (final UUID kbAccountId : kbAccountIds) {
+                accountIds.add(toId.apply(kbAccountId));
+            }
+
+            final Map<UUID, Set<String>> existingEventTypes = new HashMap<UUID, Set<String>>();
+            for (final Record2<Object, String> record : context.select(DSL.field(KB_ACCOUNT_ID), DSL.field(EVENT_TYPE, String.class))
+                                                               .from(table)
+                                                               .where(DSL.field(KB_TENANT_ID).equal(tenantId))
+                                                               .and(DSL.field(KB_ACCOUNT_ID).in(accountIds))
+                                                               .fetch()) {
+                existingEventTypes.computeIfAbsent(fromId.apply(record.value1()), k -> new HashSet<String>())
+                                  .add(record.value2());
+            }
+
+            for (final UUID kbAccountId : kbAccountIds) {
+                final Object accountId = toId.apply(kbAccountId);
+                final Set<String> currentEventTypes = MoreObjects.firstNonNull(existingEventTypes.get(kbAccountId), ImmutableSet.<String>of());
+                final Set<String> requestedEventTypes = new HashSet<String>();
+                for (final ExtBusEventType eventType : eventTypesPerAccount.get(kbAccountId)) {
+                    requestedEventTypes.add(eventType.toString());
+                }
+
+                final Set<String> eventTypesToDelete = Sets.difference(currentEventTypes, requestedEventTypes);
+                if (!eventTypesToDelete.isEmpty()) {
+                    batch.add(context.delete(table)
+                                     .where(DSL.field(KB_TENANT_ID).equal(tenantId))
+                                     .and(DSL.field(KB_ACCOUNT_ID).equal(accountId))
+                                     .and(DSL.field(EVENT_TYPE).in(eventTypesToDelete)));
+                    deleted += eventTypesToDelete.size();
+                }
+
+                for (final String eventType : Sets.difference(requestedEventTypes, currentEventTypes)) {
+                    batch.add(context.insertInto(table,
+                                                 DSL.field(KB_ACCOUNT_ID),
+                                                 DSL.field(KB_TENANT_ID),
+                                                 DSL.field(EVENT_TYPE),
+                                                 DSL.field(CREATED_AT))
+                                     .values(accountId,
+                                             tenantId,
+                                             eventType,
+                                             createdAt));
+                    inserted++;
+                }
+
+                if (batch.size() >= batchSize) {
+                    context.batch(batch).execute();
+                    batch.clear();
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            context.batch(batch).execute();
+        }
+        return new ConfigurationUpdateResult(eventTypesPerAccount.size(), inserted, deleted);
+    }
+}
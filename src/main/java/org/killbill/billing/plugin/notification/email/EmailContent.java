@@ -19,21 +19,68 @@
 
 package org.killbill.billing.plugin.notification.email;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
 public class EmailContent {
 
-    private String subject;
-    private String body;
+    private final String subject;
+    // Renders the body when it's sent, for streamed contents
+    private final BodyWriter bodyWriter;
+
+    private volatile String body;
 
     public EmailContent(String subject, String body) {
         this.subject = subject;
         this.body = body;
+        this.bodyWriter = null;
+    }
+
+    public EmailContent(final String subject, final BodyWriter bodyWriter) {
+        this.subject = subject;
+        this.bodyWriter = bodyWriter;
     }
 
     public String getSubject() {
         return subject;
     }
 
+    /**
+     * @return the body, rendered on the first call for streamed contents (e.g. to be stored in the outbox)
+     */
     public String getBody() {
+        if (body == null && bodyWriter != null) {
+            final StringWriter writer = new StringWriter();
+            try {
+                bodyWriter.writeTo(writer);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            body = writer.toString();
+        }
         return body;
     }
+
+    /**
+     * @return true if the body is rendered by {@link #writeBody(Writer)}, instead of being built upfront
+     */
+    public boolean isStreamed() {
+        return bodyWriter != null;
+    }
+
+    public void writeBody(final Writer writer) throws IOException {
+        final String renderedBody = body;
+        if (renderedBody != null) {
+            writer.write(renderedBody);
+        } else if (bodyWriter != null) {
+            bodyWriter.writeTo(writer);
+        }
+    }
+
+    public interface BodyWriter {
+
+        void writeTo(Writer writer) throws IOException;
+    }
 }
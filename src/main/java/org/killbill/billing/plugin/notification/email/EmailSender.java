@@ -19,8 +19,11 @@
 
 package org.killbill.billing.plugin.notification.email;
 
+import java.io.Closeable;
 import java.util.List;
 
+import javax.mail.MessagingException;
+import javax.mail.Session;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 
@@ -30,12 +33,13 @@ import org.apache.commons.mail.HtmlEmail;
 import org.apache.commons.mail.SimpleEmail;
 import org.killbill.billing.osgi.libs.killbill.OSGIConfigPropertiesService;
 import org.killbill.billing.plugin.notification.exception.EmailNotificationException;
+import org.killbill.billing.plugin.notification.metrics.EmailNotificationMetrics;
+import org.killbill.billing.plugin.notification.setup.EmailNotificationActivator;
+import org.killbill.billing.plugin.notification.util.ConfigPropertiesUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.amazonaws.regions.Regions;
 import com.amazonaws.services.simpleemail.AmazonSimpleEmailService;
-import com.amazonaws.services.simpleemail.AmazonSimpleEmailServiceClientBuilder;
 import com.amazonaws.services.simpleemail.model.Body;
 import com.amazonaws.services.simpleemail.model.Content;
 import com.amazonaws.services.simpleemail.model.Destination;
@@ -50,7 +54,7 @@ import static org.killbill.billing.plugin.notification.exception.EmailNotificati
 import static org.killbill.billing.plugin.notification.exception.EmailNotificationErrorCode.SMTP_HOSTNAME_REQUIRED;
 import static org.killbill.billing.plugin.notification.exception.EmailNotificationErrorCode.SUBJECT_REQUIRED;
 
-public class EmailSender {
+public class EmailSender implements Closeable {
 
     private static final Joiner JOINER_ON_COMMA = Joiner.on(", ");
 
@@ -71,6 +75,19 @@ public class EmailSender {
 
     private static final String DEFAULT_AWS_REGION = "us-east-1";
 
+    // Max number of idle connections kept per SMTP server configuration (0 to open a new connection for each email)
+    private static final String SMTP_POOL_MAX_IDLE_CONNECTIONS_PROP = EmailNotificationActivator.PROPERTY_PREFIX + "smtp.pool.maxIdleConnections";
+    private static final String SMTP_POOL_MAX_IDLE_TIME_PROP = EmailNotificationActivator.PROPERTY_PREFIX + "smtp.pool.maxIdleTime";
+    private static final String SMTP_POOL_MAX_MESSAGES_PER_CONNECTION_PROP = EmailNotificationActivator.PROPERTY_PREFIX + "smtp.pool.maxMessagesPerConnection";
+
+    private static final String SES_MAX_CONNECTIONS_PROP = EmailNotificationActivator.PROPERTY_PREFIX + "ses.maxConnections";
+    private static final String SES_REQUEST_TIMEOUT_PROP = EmailNotificationActivator.PROPERTY_PREFIX + "ses.requestTimeout";
+    // Optional, e.g. VPC endpoint
+    private static final String SES_ENDPOINT_PROP = EmailNotificationActivator.PROPERTY_PREFIX + "ses.endpoint";
+    // Optional, the default AWS credentials chain is used otherwise
+    private static final String SES_ACCESS_KEY_PROP = EmailNotificationActivator.PROPERTY_PREFIX + "ses.accessKey";
+    private static final String SES_SECRET_KEY_PROP = EmailNotificationActivator.PROPERTY_PREFIX + "ses.secretKey";
+
     private final boolean useSmtpAuth;
     private final int useSmtpPort;
     private final String smtpUserName;
@@ -85,6 +102,12 @@ public class EmailSender {
 
     private final boolean sendEmailsViaSES;
 
+    private final SmtpTransportPool smtpTransportPool;
+
+    private final SesClientCache sesClientCache;
+
+    private EmailNotificationMetrics metrics = EmailNotificationMetrics.NOOP;
+
     public EmailSender(final OSGIConfigPropertiesService configProperties) {
         this(configProperties.getString(SERVER_NAME_PROP),
              (configProperties.getString(SERVER_PORT_PROP) != null ? Integer.parseInt(configProperties.getString(SERVER_PORT_PROP)) : 25),
@@ -95,13 +118,36 @@ public class EmailSender {
              (configProperties.getString(IS_USE_SSL_PROP) != null && Boolean.parseBoolean(configProperties.getString(IS_USE_SSL_PROP))),
              (configProperties.getString(DEBUG_LOG_ONLY) != null && Boolean.parseBoolean(configProperties.getString(DEBUG_LOG_ONLY))),
              (configProperties.getString(AWS_REGION_PROP) != null ? configProperties.getString(AWS_REGION_PROP) : DEFAULT_AWS_REGION),
-             (configProperties.getString(EMAIL_NOTIFICATION_VIA_SES) != null && Boolean.parseBoolean(configProperties.getString(EMAIL_NOTIFICATION_VIA_SES))));
+             (configProperties.getString(EMAIL_NOTIFICATION_VIA_SES) != null && Boolean.parseBoolean(configProperties.getString(EMAIL_NOTIFICATION_VIA_SES))),
+             new SmtpTransportPool(ConfigPropertiesUtils.getIntProperty(configProperties, SMTP_POOL_MAX_IDLE_CONNECTIONS_PROP, SmtpTransportPool.DEFAULT_MAX_IDLE_CONNECTIONS),
+                                   ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, SMTP_POOL_MAX_IDLE_TIME_PROP, SmtpTransportPool.DEFAULT_MAX_IDLE_TIME_MS),
+                                   ConfigPropertiesUtils.getIntProperty(configProperties, SMTP_POOL_MAX_MESSAGES_PER_CONNECTION_PROP, SmtpTransportPool.DEFAULT_MAX_MESSAGES_PER_CONNECTION)),
+             new SesClientCache(ConfigPropertiesUtils.getIntProperty(configProperties, SES_MAX_CONNECTIONS_PROP, SesClientCache.DEFAULT_MAX_CONNECTIONS),
+                                (int) ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, SES_REQUEST_TIMEOUT_PROP, SesClientCache.DEFAULT_REQUEST_TIMEOUT_MS),
+                                configProperties.getString(SES_ENDPOINT_PROP),
+                                configProperties.getString(SES_ACCESS_KEY_PROP),
+                                configProperties.getString(SES_SECRET_KEY_PROP)));
     }
 
     public EmailSender(final String smtpServerName, final int useSmtpPort, final String smtpUserName,
                        final String smtpUserPassword, final String from, final boolean useSmtpAuth,
                        final boolean useSSL, final boolean logOnly, final String awsRegion,
                        final boolean sendEmailsViaSES) {
+        this(smtpServerName, useSmtpPort, smtpUserName, smtpUserPassword, from, useSmtpAuth, useSSL, logOnly, awsRegion, sendEmailsViaSES, new SmtpTransportPool());
+    }
+
+    public EmailSender(final String smtpServerName, final int useSmtpPort, final String smtpUserName,
+                       final String smtpUserPassword, final String from, final boolean useSmtpAuth,
+                       final boolean useSSL, final boolean logOnly, final String awsRegion,
+                       final boolean sendEmailsViaSES, final SmtpTransportPool smtpTransportPool) {
+        this(smtpServerName, useSmtpPort, smtpUserName, smtpUserPassword, from, useSmtpAuth, useSSL, logOnly, awsRegion, sendEmailsViaSES, smtpTransportPool, new SesClientCache());
+    }
+
+    public EmailSender(final String smtpServerName, final int useSmtpPort, final String smtpUserName,
+                       final String smtpUserPassword, final String from, final boolean useSmtpAuth,
+                       final boolean useSSL, final boolean logOnly, final String awsRegion,
+                       final boolean sendEmailsViaSES, final SmtpTransportPool smtpTransportPool,
+                       final SesClientCache sesClientCache) {
         this.useSmtpAuth = useSmtpAuth;
         this.useSmtpPort = useSmtpPort;
         this.smtpUserName = smtpUserName;
@@ -112,6 +158,8 @@ public class EmailSender {
         this.logOnly = logOnly;
         this.awsRegion = awsRegion;
         this.sendEmailsViaSES = sendEmailsViaSES;
+        this.smtpTransportPool = smtpTransportPool;
+        this.sesClientCache = sesClientCache;
 
         if (sendEmailsViaSES) {
             logger.info("Emails will be sent using AWS SES");
@@ -151,11 +199,7 @@ public class EmailSender {
         email.setHtmlMsg(htmlBody);
         email.setCharset("utf-8");
 
-        if (sendEmailsViaSES) {
-            sendEmailViaSES(to, cc, subject, htmlBody, smtp);
-        } else {
-            sendEmailViaSMTP(to, cc, subject, email, precheckSmtp(smtp));
-        }
+        sendEmail(to, cc, subject, htmlBody, email, smtp);
     }
 
     public void sendPlainTextEmail(final List<String> to, final List<String> cc, final String subject,
@@ -171,11 +215,59 @@ public class EmailSender {
         email.setCharset("utf-8");
         email.setMsg(body);
 
-        if (sendEmailsViaSES) {
-            sendEmailViaSES(to, cc, subject, body, smtp);
-        } else {
-            sendEmailViaSMTP(to, cc, subject, email, precheckSmtp(smtp));
+        sendEmail(to, cc, subject, body, email, smtp);
+    }
+
+    public void sendHTMLEmail(final List<String> to, final List<String> cc, final EmailContent content,
+                              final SmtpProperties smtp)
+            throws EmailException, EmailNotificationException {
+        if (!isStreamedViaSMTP(content)) {
+            sendHTMLEmail(to, cc, content.getSubject(), content.getBody(), smtp);
+            return;
+        }
+
+        logger.debug("Sending email to={}, cc={}, subject={}, body streamed", to, JOINER_ON_COMMA.join(cc), content.getSubject());
+        sendEmail(to, cc, content.getSubject(), null, new StreamingEmail(content, true), smtp);
+    }
+
+    public void sendPlainTextEmail(final List<String> to, final List<String> cc, final EmailContent content,
+                                   final SmtpProperties smtp)
+            throws EmailException, EmailNotificationException {
+        if (!isStreamedViaSMTP(content)) {
+            sendPlainTextEmail(to, cc, content.getSubject(), content.getBody(), smtp);
+            return;
+        }
+
+        logger.debug("Sending email to={}, cc={}, subject={}, body streamed", to, JOINER_ON_COMMA.join(cc), content.getSubject());
+        sendEmail(to, cc, content.getSubject(), null, new StreamingEmail(content, false), smtp);
+    }
+
+    // SES requests need the whole body
+    private boolean isStreamedViaSMTP(final EmailContent content) {
+        return content.isStreamed() && !sendEmailsViaSES;
+    }
+
+    private void sendEmail(final List<String> to, final List<String> cc, final String subject,
+                           final String body, final Email email, final SmtpProperties smtp)
+            throws EmailException, EmailNotificationException {
+        final long startNanos = System.nanoTime();
+        String outcome = EmailNotificationMetrics.OUTCOME_FAILED;
+        try {
+            if (sendEmailsViaSES) {
+                sendEmailViaSES(to, cc, subject, body, smtp);
+            } else {
+                sendEmailViaSMTP(to, cc, subject, email, precheckSmtp(smtp));
+            }
+            outcome = EmailNotificationMetrics.OUTCOME_SENT;
+        } finally {
+            metrics.recordTiming("email.send",
+                                 System.nanoTime() - startNanos,
+                                 EmailNotificationMetrics.TAG_TRANSPORT, sendEmailsViaSES ? "ses" : "smtp",
+                                 EmailNotificationMetrics.TAG_OUTCOME, outcome);
         }
+        metrics.recordValue("email.recipients",
+                            (to == null ? 0 : to.size()) + (cc == null ? 0 : cc.size()),
+                            EmailNotificationMetrics.TAG_TRANSPORT, sendEmailsViaSES ? "ses" : "smtp");
     }
 
     private void sendEmailViaSMTP(final List<String> to, final List<String> cc, final String subject,
@@ -213,8 +305,26 @@ public class EmailSender {
         email.setStartTLSEnabled(smtp.isUseSSL());
         email.setStartTLSRequired(smtp.isUseSSL());
 
+        // Share the session across emails sent to the same server (must be done after the server configuration)
+        Session session = smtpTransportPool.getSession(smtp);
+        if (session != null) {
+            email.setMailSession(session);
+        } else {
+            session = email.getMailSession();
+        }
+
         logger.info("Sending email to={}, cc={}, subject={}", to, cc, subject);
-        email.send();
+        // Similar to email.send(), but on a pooled connection
+        email.buildMimeMessage();
+        try {
+            smtpTransportPool.send(smtp, session, email.getMimeMessage());
+        } catch (final MessagingException e) {
+            // Template errors aren't SMTP failures, and wouldn't be fixed by retrying the email
+            if (email instanceof StreamingEmail && ((StreamingEmail) email).getRenderFailure() != null) {
+                throw ((StreamingEmail) email).getRenderFailure();
+            }
+            throw new EmailException("Sending the email to the following server failed : " + smtp.getHost() + ":" + smtp.getPort(), e);
+        }
     }
 
     private void sendEmailViaSES(final List<String> to, final List<String> cc, final String subject,
@@ -227,12 +337,7 @@ public class EmailSender {
             return;
         }
 
-        final Regions region = Regions.valueOf(awsRegion.replace("-", "_").toUpperCase());
-
-        logger.debug("Creating AWS SES client...");
-        final AmazonSimpleEmailService client = AmazonSimpleEmailServiceClientBuilder.standard()
-                                                                                     .withRegion(region)
-                                                                                     .build();
+        final AmazonSimpleEmailService client = sesClientCache.getClient(awsRegion);
         final SendEmailRequest request = new SendEmailRequest()
                 .withDestination(new Destination().withToAddresses(to).withCcAddresses(cc))
                 .withMessage(new Message()
@@ -250,6 +355,25 @@ public class EmailSender {
         logger.info("Email sent successfully to={}, cc={}, subject={}", to, cc, subject);
     }
 
+    /**
+     * Publish the delivery timings (none by default).
+     *
+     * @param metrics the plugin metrics
+     */
+    public void setMetrics(final EmailNotificationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SmtpTransportPool getSmtpTransportPool() {
+        return smtpTransportPool;
+    }
+
+    @Override
+    public void close() {
+        smtpTransportPool.close();
+        sesClientCache.close();
+    }
+
     private void validateEmailFields(final List<String> to, final List<String> cc, final String subject,
                                      final SmtpProperties smtp) throws EmailNotificationException {
 
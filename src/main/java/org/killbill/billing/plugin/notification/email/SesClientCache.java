@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.email;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.simpleemail.AmazonSimpleEmailService;
+import com.amazonaws.services.simpleemail.AmazonSimpleEmailServiceClientBuilder;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+
+/**
+ * Long-lived SES clients, per region and credential source.
+ * <p>
+ * Clients are thread-safe, and each owns an HTTP connection pool: they must be reused across emails, and shut down
+ * when the plugin stops (see {@link #close()}).
+ */
+public class SesClientCache implements Closeable {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 50;
+    public static final int DEFAULT_REQUEST_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(10);
+
+    private static final Logger logger = LoggerFactory.getLogger(SesClientCache.class);
+
+    private static final String DEFAULT_CREDENTIALS_CHAIN = "DefaultAWSCredentialsProviderChain";
+
+    private final int maxConnections;
+    private final int requestTimeoutMs;
+    private final String endpoint;
+    private final String accessKeyId;
+    private final String secretKey;
+
+    private final ConcurrentMap<ClientKey, AmazonSimpleEmailService> clients = new ConcurrentHashMap<ClientKey, AmazonSimpleEmailService>();
+
+    public SesClientCache() {
+        this(DEFAULT_MAX_CONNECTIONS, DEFAULT_REQUEST_TIMEOUT_MS, null, null, null);
+    }
+
+    /**
+     * @param maxConnections   max number of HTTP connections per client
+     * @param requestTimeoutMs timeout of each SES request
+     * @param endpoint         SES endpoint to use instead of the regional one (e.g. VPC endpoint), optional
+     * @param accessKeyId      access key id, optional (the default AWS credentials chain is used otherwise)
+     * @param secretKey        secret key, required with the access key id
+     */
+    public SesClientCache(final int maxConnections, final int requestTimeoutMs, @Nullable final String endpoint,
+                          @Nullable final String accessKeyId, @Nullable final String secretKey) {
+        this.maxConnections = maxConnections;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.endpoint = endpoint;
+        this.accessKeyId = accessKeyId;
+        this.secretKey = secretKey;
+    }
+
+    public AmazonSimpleEmailService getClient(final String awsRegion) {
+        final Regions region = Regions.valueOf(awsRegion.replace("-", "_").toUpperCase());
+        final ClientKey key = new ClientKey(region, endpoint, accessKeyId == null ? DEFAULT_CREDENTIALS_CHAIN : accessKeyId);
+
+        AmazonSimpleEmailService client = clients.get(key);
+        if (client == null) {
+            client = clients.computeIfAbsent(key, this::createClient);
+        }
+        return client;
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    @Override
+    public void close() {
+        final Iterator<AmazonSimpleEmailService> iterator = clients.values().iterator();
+        while (iterator.hasNext()) {
+            final AmazonSimpleEmailService client = iterator.next();
+            iterator.remove();
+            client.shutdown();
+        }
+    }
+
+    private AmazonSimpleEmailService createClient(final ClientKey key) {
+        logger.info("Creating AWS SES client for {}", key);
+
+        final ClientConfiguration clientConfiguration = new ClientConfiguration().withMaxConnections(maxConnections)
+                                                                                 .withRequestTimeout(requestTimeoutMs);
+        final AWSCredentialsProvider credentialsProvider = accessKeyId == null ?
+                                                           DefaultAWSCredentialsProviderChain.getInstance() :
+                                                           new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKeyId, secretKey));
+
+        final AmazonSimpleEmailServiceClientBuilder builder = AmazonSimpleEmailServiceClientBuilder.standard()
+                                                                                                   .withClientConfiguration(clientConfiguration)
+                                                                                                   .withCredentials(credentialsProvider);
+        // The region and the endpoint configuration are mutually exclusive
+        if (key.endpoint != null) {
+            builder.withEndpointConfiguration(new EndpointConfiguration(key.endpoint, key.region.getName()));
+        } else {
+            builder.withRegion(key.region);
+        }
+        return builder.build();
+    }
+
+    private static final class ClientKey {
+
+        private final Regions region;
+        private final String endpoint;
+        // Never the secret
+        private final String credentialSource;
+
+        private ClientKey(final Regions region, @Nullable final String endpoint, final String credentialSource) {
+            this.region = region;
+            this.endpoint = endpoint;
+            this.credentialSource = credentialSource;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final ClientKey that = (ClientKey) o;
+            return region == that.region &&
+                   Objects.equal(endpoint, that.endpoint) &&
+                   Objects.equal(credentialSource, that.credentialSource);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(region, endpoint, credentialSource);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("region", region)
+                              .add("endpoint", endpoint)
+                              .add("credentialSource", credentialSource)
+                              .toString();
+        }
+    }
+}
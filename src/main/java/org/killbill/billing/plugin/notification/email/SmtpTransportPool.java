@@ -0,0 +1,397 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.email;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Pool of connected SMTP transports, per distinct SMTP server configuration.
+ * <p>
+ * Each message otherwise requires a new TCP connection, TLS handshake and authentication. Transports are validated
+ * (NOOP) when borrowed, and closed after {@code maxIdleTimeMs} of inactivity or {@code maxMessagesPerConnection}
+ * messages. With {@code maxIdleConnections} set to 0, a new connection is opened for each message.
+ * <p>
+ * Idle connections are also closed in the background, together with the pools of the SMTP configurations which are no
+ * longer used (e.g. after a tenant changed its SMTP server).
+ */
+public class SmtpTransportPool implements Closeable {
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 4;
+    public static final long DEFAULT_MAX_IDLE_TIME_MS = TimeUnit.SECONDS.toMillis(30);
+    public static final int DEFAULT_MAX_MESSAGES_PER_CONNECTION = 100;
+
+    private static final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+    private final int maxIdleConnections;
+    private final long maxIdleTimeNanos;
+    private final int maxMessagesPerConnection;
+    private final Ticker ticker;
+
+    private final ConcurrentMap<PoolKey, Pool> pools = new ConcurrentHashMap<PoolKey, Pool>();
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+
+    private volatile boolean isClosed = false;
+    private ScheduledExecutorService evictor;
+
+    public SmtpTransportPool() {
+        this(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_MAX_IDLE_TIME_MS, DEFAULT_MAX_MESSAGES_PER_CONNECTION);
+    }
+
+    public SmtpTransportPool(final int maxIdleConnections, final long maxIdleTimeMs, final int maxMessagesPerConnection) {
+        this(maxIdleConnections, maxIdleTimeMs, maxMessagesPerConnection, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    SmtpTransportPool(final int maxIdleConnections, final long maxIdleTimeMs, final int maxMessagesPerConnection, final Ticker ticker) {
+        this.maxIdleConnections = maxIdleConnections;
+        this.maxIdleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleTimeMs);
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Get the mail session previously registered for that SMTP configuration, if any.
+     * <p>
+     * Sessions are immutable once created: sharing them avoids re-reading the JavaMail provider configuration for each message.
+     */
+    public Session getSession(final SmtpProperties smtp) {
+        final Pool pool = pools.get(PoolKey.of(smtp));
+        return pool == null ? null : pool.session;
+    }
+
+    /**
+     * Send a message using a pooled transport.
+     *
+     * @param smtp    the SMTP configuration
+     * @param session the mail session for that configuration, used to open new transports
+     * @param message the message to send
+     * @throws MessagingException if the message could not be sent
+     */
+    public void send(final SmtpProperties smtp, final Session session, final MimeMessage message) throws MessagingException {
+        final Pool pool = getPool(PoolKey.of(smtp), session);
+
+        // Transport#send does this for us
+        message.saveChanges();
+
+        // Not null while it must be closed on failure: the connection state is unknown after any error (e.g. a
+        // RuntimeException thrown while writing the message)
+        PooledTransport transport = borrow(pool);
+        try {
+            try {
+                transport.transport.sendMessage(message, message.getAllRecipients());
+            } catch (final SendFailedException e) {
+                // Rejected by the server (e.g. invalid recipients): retrying won't help
+                throw e;
+            } catch (final MessagingException e) {
+                if (!transport.reused) {
+                    throw e;
+                }
+
+                // The server may have dropped the connection since it was validated: retry once, on a new connection
+                logger.info("Failed to send email on a pooled SMTP connection, retrying on a new connection: {}", e.getMessage());
+                destroy(transport);
+                // Already closed, if the new connection fails
+                transport = null;
+                transport = connect(pool);
+                transport.transport.sendMessage(message, message.getAllRecipients());
+            }
+
+            transport.messagesSent++;
+            release(pool, transport);
+            transport = null;
+        } finally {
+            if (transport != null) {
+                destroy(transport);
+            }
+        }
+    }
+
+    /**
+     * Close the connections idle for more than {@code maxIdleTimeMs}, and drop the pools which haven't been used since.
+     * <p>
+     * Called periodically in the background.
+     */
+    public void evictIdle() {
+        for (final Map.Entry<PoolKey, Pool> entry : pools.entrySet()) {
+            final Pool pool = entry.getValue();
+            evictExpired(pool);
+            if (pool.idle.isEmpty() &&
+                ticker.read() - pool.lastUsedNanos > maxIdleTimeNanos &&
+                pools.remove(entry.getKey(), pool)) {
+                // Connections released concurrently, see release()
+                drain(pool);
+            }
+        }
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    public long getClosedCount() {
+        return closed.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailures.get();
+    }
+
+    public int getIdleCount() {
+        int idle = 0;
+        for (final Pool pool : pools.values()) {
+            idle += pool.idle.size();
+        }
+        return idle;
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+        synchronized (this) {
+            if (evictor != null) {
+                evictor.shutdownNow();
+                evictor = null;
+            }
+        }
+        for (final Pool pool : pools.values()) {
+            drain(pool);
+        }
+    }
+
+    private Pool getPool(final PoolKey key, final Session session) {
+        Pool pool = pools.get(key);
+        if (pool == null) {
+            startEvictor();
+            final Pool newPool = new Pool(key, session, maxIdleConnections);
+            pool = MoreObjects.firstNonNull(pools.putIfAbsent(key, newPool), newPool);
+        }
+        pool.lastUsedNanos = ticker.read();
+        return pool;
+    }
+
+    // Started with the first pool, so that unused instances don't hold a thread
+    private synchronized void startEvictor() {
+        if (evictor != null || isClosed) {
+            return;
+        }
+        final long evictionIntervalMs = Math.max(TimeUnit.SECONDS.toMillis(1), TimeUnit.NANOSECONDS.toMillis(maxIdleTimeNanos));
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("email-notifications-smtp-evictor-%d")
+                                                                                       .setDaemon(true)
+                                                                                       .build());
+        evictor.scheduleWithFixedDelay(this::evictIdleSafely, evictionIntervalMs, evictionIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void evictIdleSafely() {
+        try {
+            evictIdle();
+        } catch (final RuntimeException e) {
+            // Don't cancel the next runs
+            logger.warn("Failed to evict idle SMTP connections", e);
+        }
+    }
+
+    private PooledTransport borrow(final Pool pool) throws MessagingException {
+        PooledTransport transport;
+        // Most recently used first, so that extra connections can expire
+        while ((transport = pool.idle.pollFirst()) != null) {
+            if (isExpired(transport)) {
+                destroy(transport);
+            } else if (!transport.transport.isConnected()) {
+                // isConnected() sends a NOOP on an open SMTP connection
+                validationFailures.incrementAndGet();
+                destroy(transport);
+            } else {
+                reused.incrementAndGet();
+                transport.reused = true;
+                return transport;
+            }
+        }
+        return connect(pool);
+    }
+
+    private PooledTransport connect(final Pool pool) throws MessagingException {
+        final Transport transport = pool.session.getTransport();
+        // Host, port and credentials (through the session Authenticator) are read from the session
+        transport.connect();
+        created.incrementAndGet();
+        return new PooledTransport(transport, ticker.read());
+    }
+
+    private void release(final Pool pool, final PooledTransport transport) {
+        transport.lastUsedNanos = ticker.read();
+        transport.reused = false;
+        if (isClosed ||
+            maxIdleConnections == 0 ||
+            transport.messagesSent >= maxMessagesPerConnection ||
+            !pool.idle.offerFirst(transport)) {
+            destroy(transport);
+        } else if (isClosed || pools.get(pool.key) != pool) {
+            // Closed or evicted since it was borrowed: the idle connections wouldn't be seen anymore
+            drain(pool);
+            return;
+        }
+
+        evictExpired(pool);
+    }
+
+    // Expire the least recently used connections
+    private void evictExpired(final Pool pool) {
+        PooledTransport oldest;
+        while ((oldest = pool.idle.peekLast()) != null && isExpired(oldest)) {
+            if (pool.idle.removeLastOccurrence(oldest)) {
+                destroy(oldest);
+            }
+        }
+    }
+
+    private void drain(final Pool pool) {
+        PooledTransport transport;
+        while ((transport = pool.idle.pollFirst()) != null) {
+            destroy(transport);
+        }
+    }
+
+    private boolean isExpired(final PooledTransport transport) {
+        return ticker.read() - transport.lastUsedNanos > maxIdleTimeNanos;
+    }
+
+    private void destroy(final PooledTransport transport) {
+        closed.incrementAndGet();
+        try {
+            transport.transport.close();
+        } catch (final MessagingException e) {
+            logger.debug("Failed to close SMTP connection", e);
+        }
+    }
+
+    private static final class Pool {
+
+        private final PoolKey key;
+        private final Session session;
+        private final BlockingDeque<PooledTransport> idle;
+        private volatile long lastUsedNanos;
+
+        private Pool(final PoolKey key, final Session session, final int maxIdleConnections) {
+            this.key = key;
+            this.session = session;
+            // LinkedBlockingDeque doesn't support a capacity of 0 (nothing is ever offered in that case)
+            this.idle = new LinkedBlockingDeque<PooledTransport>(Math.max(1, maxIdleConnections));
+        }
+    }
+
+    private static final class PooledTransport {
+
+        private final Transport transport;
+        private long lastUsedNanos;
+        private int messagesSent = 0;
+        private boolean reused = false;
+
+        private PooledTransport(final Transport transport, final long lastUsedNanos) {
+            this.transport = transport;
+            this.lastUsedNanos = lastUsedNanos;
+        }
+    }
+
+    private static final class PoolKey {
+
+        private final String host;
+        private final int port;
+        private final boolean useAuthentication;
+        private final String userName;
+        private final String password;
+        private final boolean useSSL;
+
+        private PoolKey(final String host, final int port, final boolean useAuthentication, final String userName, final String password, final boolean useSSL) {
+            this.host = host;
+            this.port = port;
+            this.useAuthentication = useAuthentication;
+            this.userName = userName;
+            this.password = password;
+            this.useSSL = useSSL;
+        }
+
+        private static PoolKey of(final SmtpProperties smtp) {
+            return new PoolKey(smtp.getHost(), smtp.getPort(), smtp.isUseAuthentication(), smtp.getUserName(), smtp.getPassword(), smtp.isUseSSL());
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final PoolKey that = (PoolKey) o;
+            return port == that.port &&
+                   useAuthentication == that.useAuthentication &&
+                   useSSL == that.useSSL &&
+                   Objects.equal(host, that.host) &&
+                   Objects.equal(userName, that.userName) &&
+                   Objects.equal(password, that.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(host, port, useAuthentication, userName, password, useSSL);
+        }
+
+        @Override
+        public String toString() {
+            // Don't log the password
+            return MoreObjects.toStringHelper(this)
+                              .add("host", host)
+                              .add("port", port)
+                              .add("useAuthentication", useAuthentication)
+                              .add("userName", userName)
+                              .add("useSSL", useSSL)
+                              .toString();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.email;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.activation.DataHandler;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+
+/**
+ * Email whose body is rendered while the message is written to the SMTP connection, instead of being built as a
+ * String first.
+ * <p>
+ * The transfer encoding is always quoted-printable: otherwise javax.mail would render the body once more, to pick the
+ * encoding from its content.
+ */
+class StreamingEmail extends Email {
+
+    private final EmailContent content;
+    private final String contentType;
+
+    // Set if the template failed while the message was written
+    private volatile RuntimeException renderFailure;
+
+    StreamingEmail(final EmailContent content, final boolean html) {
+        this.content = content;
+        this.contentType = (html ? "text/html" : "text/plain") + "; charset=utf-8";
+        setCharset("utf-8");
+    }
+
+    @Override
+    public Email setMsg(final String msg) {
+        throw new UnsupportedOperationException("The body is rendered from the email content");
+    }
+
+    @Override
+    public void buildMimeMessage() throws EmailException {
+        super.buildMimeMessage();
+
+        final MimeMessage message = getMimeMessage();
+        try {
+            // Clears the content headers, set explicitly so that they aren't computed from the body
+            message.setDataHandler(new BodyDataHandler());
+            message.setHeader("Content-Type", contentType);
+            message.setHeader("Content-Transfer-Encoding", "quoted-printable");
+        } catch (final MessagingException e) {
+            throw new EmailException(e);
+        }
+    }
+
+    RuntimeException getRenderFailure() {
+        return renderFailure;
+    }
+
+    private final class BodyDataHandler extends DataHandler {
+
+        private BodyDataHandler() {
+            super(content, contentType);
+        }
+
+        @Override
+        public void writeTo(final OutputStream os) throws IOException {
+            // The stream is owned, and closed, by javax.mail
+            final Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+            try {
+                content.writeBody(writer);
+            } catch (final RuntimeException e) {
+                renderFailure = e;
+                throw new IOException("Unable to render the email body", e);
+            }
+            writer.flush();
+        }
+
+        // Not used when sending the message
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content.getBody().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -31,7 +31,10 @@ public enum EmailNotificationErrorCode {
     SMTP_HOSTNAME_REQUIRED(1000006, "Host name is required, but none is provided."),
     SMTP_AUTHENTICATION_REQUIRED(1000007, "Authentication credentials are required, but none is provided."),
 
-    EMAIL_ADDRESS_INVALID(1000010, "Email address %s is malformed."),;
+    EMAIL_ADDRESS_INVALID(1000010, "Email address %s is malformed."),
+
+    FETCH_TIMEOUT(1000020, "Timed out after %s ms fetching %s."),
+    FETCH_FAILED(1000021, "Failed fetching %s."),;
 
 
     private final int code;
@@ -24,11 +24,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
+import java.util.Optional;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
 
 import org.killbill.billing.plugin.notification.setup.EmailNotificationActivator;
 import org.killbill.billing.plugin.notification.util.LocaleUtils;
@@ -40,6 +49,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
 
 public class ResourceBundleFactory {
 
@@ -48,6 +58,10 @@ public class ResourceBundleFactory {
     private final Logger logger = LoggerFactory.getLogger(ResourceBundleFactory.class);
 
     private final TenantUserApi tenantApi;
+    // Parsed per (tenant, locale, bundle type) bundles, with null meaning no (valid) tenant override
+    private final TenantKeyValueCache<Translations> tenantBundleCache;
+    // Bundles shipped with the plugin never change
+    private final ConcurrentMap<String, Optional<Translations>> globalBundleCache = new ConcurrentHashMap<String, Optional<Translations>>();
 
     public enum ResourceBundleType {
         TEMPLATE_TRANSLATION("Translation"),
@@ -71,48 +85,93 @@ public class ResourceBundleFactory {
     }
 
     public ResourceBundleFactory(final TenantUserApi tenantApi) {
+        this(tenantApi, TemplateRenderer.DEFAULT_CACHE_MAX_SIZE, TemplateRenderer.DEFAULT_CACHE_TTL_MS);
+    }
+
+    public ResourceBundleFactory(final TenantUserApi tenantApi, final long cacheMaxSize, final long cacheTtlMs) {
         this.tenantApi = tenantApi;
+        this.tenantBundleCache = new TenantKeyValueCache<Translations>(cacheMaxSize, cacheTtlMs, TimeUnit.MILLISECONDS);
     }
 
     public ResourceBundle createBundle(final Locale locale, final ResourceBundleType type, final TenantContext tenantContext) throws TenantApiException {
+        final Translations translations = getTranslations(locale, type, tenantContext);
+        return translations == null ? null : translations.getBundle();
+    }
+
+    /**
+     * Get an immutable snapshot of the bundle entries, built once when the bundle is loaded, and shared across renders.
+     *
+     * @param locale        the locale
+     * @param type          the bundle type
+     * @param tenantContext the tenant context
+     * @return the translations, or null if no bundle exists for that locale
+     * @throws TenantApiException if the tenant bundle cannot be retrieved
+     */
+    public Map<String, String> createTranslationMap(final Locale locale, final ResourceBundleType type, final TenantContext tenantContext) throws TenantApiException {
+        final Translations translations = getTranslations(locale, type, tenantContext);
+        return translations == null ? null : translations.getTranslationMap();
+    }
+
+    private Translations getTranslations(final Locale locale, final ResourceBundleType type, final TenantContext tenantContext) throws TenantApiException {
         if (tenantContext.getTenantId() == null) {
             return getGlobalBundle(locale, type);
         }
-        final String bundle = getTenantBundleForType(locale, type, tenantContext);
-        if (bundle != null) {
-            try {
-                return new PropertyResourceBundle(new InputStreamReader(new ByteArrayInputStream(bundle.getBytes(Charsets.UTF_8)), "UTF-8"));
-            } catch (IOException e) {
-                logger.warn("Failed to de-serialize the property bundle for tenant {} and locale {}", tenantContext.getTenantId(), locale);
-                // Fall through...
+        final String tenantKey = getTenantKeyForType(locale, type);
+        if (tenantKey != null) {
+            final Translations tenantBundle = tenantBundleCache.get(tenantContext.getTenantId(), tenantKey, () -> getTenantBundle(tenantKey, locale, tenantContext));
+            if (tenantBundle != null) {
+                return tenantBundle;
             }
         }
         return getGlobalBundle(locale, type);
     }
 
-    private String getTenantBundleForType(final Locale locale, final ResourceBundleType type, final TenantContext tenantContext) throws TenantApiException {
-        String tenantKey;
+    /**
+     * Invalidate the cached tenant bundles, upon TENANT_CONFIG_CHANGE or TENANT_CONFIG_DELETION events.
+     *
+     * @param tenantId  the tenant id
+     * @param tenantKey the modified tenant key, or null if unknown
+     */
+    public void invalidateTenantCaches(final UUID tenantId, @Nullable final String tenantKey) {
+        tenantBundleCache.invalidate(tenantId, tenantKey);
+    }
+
+    private String getTenantKeyForType(final Locale locale, final ResourceBundleType type) {
         switch (type) {
             case CATALOG_TRANSLATION:
-                tenantKey = LocaleUtils.localeString(locale, TenantKV.TenantKey.CATALOG_TRANSLATION_.name());
-                break;
+                return LocaleUtils.localeString(locale, TenantKV.TenantKey.CATALOG_TRANSLATION_.name());
             case TEMPLATE_TRANSLATION:
-                tenantKey = LocaleUtils.localeString(locale, type.getTranslationKey());
-                break;
+                return LocaleUtils.localeString(locale, type.getTranslationKey());
             default:
                 return null;
         }
-        if (tenantKey !=  null) {
-            final List<String> result = tenantApi.getTenantValuesForKey(tenantKey, tenantContext);
-            if (result.size() == 1) {
-                return result.get(0);
-            }
+    }
+
+    private Translations getTenantBundle(final String tenantKey, final Locale locale, final TenantContext tenantContext) throws TenantApiException {
+        final List<String> result = tenantApi.getTenantValuesForKey(tenantKey, tenantContext);
+        if (result.size() != 1) {
+            return null;
+        }
+
+        try {
+            return Translations.of(new PropertyResourceBundle(new InputStreamReader(new ByteArrayInputStream(result.get(0).getBytes(Charsets.UTF_8)), "UTF-8")));
+        } catch (IOException e) {
+            logger.warn("Failed to de-serialize the property bundle for tenant {} and locale {}", tenantContext.getTenantId(), locale);
+            return null;
         }
-        return null;
     }
 
+    private Translations getGlobalBundle(final Locale locale, final ResourceBundleType bundleType) {
+        final String cacheKey = bundleType + "_" + locale;
+        Optional<Translations> bundle = globalBundleCache.get(cacheKey);
+        if (bundle == null) {
+            bundle = Optional.ofNullable(Translations.of(loadGlobalBundle(locale, bundleType)));
+            globalBundleCache.put(cacheKey, bundle);
+        }
+        return bundle.orElse(null);
+    }
 
-    private ResourceBundle getGlobalBundle(final Locale locale, final ResourceBundleType bundleType) {
+    private ResourceBundle loadGlobalBundle(final Locale locale, final ResourceBundleType bundleType) {
         final String bundlePath = DEFAULT_TRANSLATION_PATH_PREFIX + bundleType.getResourceName();
         try {
             // Try to loadDefaultCatalog the bundle from the classpath first
@@ -140,11 +199,8 @@ public class ResourceBundleFactory {
                 return null;
             }
 
-            final InputStream inputStream = url.openStream();
-            if (inputStream == null) {
-                return null;
-            } else {
-                return new PropertyResourceBundle(inputStream);
+            try (final InputStream inputStream = url.openStream()) {
+                return inputStream == null ? null : new PropertyResourceBundle(inputStream);
             }
         } catch (IllegalArgumentException iae) {
             return null;
@@ -154,4 +210,37 @@ public class ResourceBundleFactory {
             return null;
         }
     }
+
+    private static final class Translations {
+
+        private final ResourceBundle bundle;
+        private final Map<String, String> translationMap;
+
+        private Translations(final ResourceBundle bundle, final Map<String, String> translationMap) {
+            this.bundle = bundle;
+            this.translationMap = translationMap;
+        }
+
+        private static Translations of(@Nullable final ResourceBundle bundle) {
+            if (bundle == null) {
+                return null;
+            }
+
+            final ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+            final Enumeration<String> keys = bundle.getKeys();
+            while (keys.hasMoreElements()) {
+                final String key = keys.nextElement();
+                builder.put(key, bundle.getString(key));
+            }
+            return new Translations(bundle, builder.build());
+        }
+
+        public ResourceBundle getBundle() {
+            return bundle;
+        }
+
+        public Map<String, String> getTranslationMap() {
+            return translationMap;
+        }
+    }
 }
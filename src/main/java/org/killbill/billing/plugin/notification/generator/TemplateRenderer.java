@@ -21,13 +21,15 @@ package org.killbill.billing.plugin.notification.generator;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
-import java.util.ResourceBundle;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
@@ -41,6 +43,7 @@ import org.killbill.billing.plugin.notification.email.EmailContent;
 import org.killbill.billing.plugin.notification.exception.EmailNotificationException;
 import org.killbill.billing.plugin.notification.generator.formatters.DefaultInvoiceFormatter;
 import org.killbill.billing.plugin.notification.generator.formatters.PaymentFormatter;
+import org.killbill.billing.plugin.notification.metrics.EmailNotificationMetrics;
 import org.killbill.billing.plugin.notification.templates.TemplateEngine;
 import org.killbill.billing.plugin.notification.templates.TemplateType;
 import org.killbill.billing.plugin.notification.util.IOUtils;
@@ -58,19 +61,37 @@ import static org.killbill.billing.plugin.notification.exception.EmailNotificati
 public class TemplateRenderer {
 
     private static final String DEFAULT_TEMPLATE_PATH_PREFIX = "org/killbill/billing/plugin/notification/templates/";
-    
+
+    public static final long DEFAULT_CACHE_MAX_SIZE = 10000;
+    public static final long DEFAULT_CACHE_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+
     private final TemplateEngine templateEngine;
     private final ResourceBundleFactory bundleFactory;
     private final TenantUserApi tenantApi;
+    // Per (tenant, locale, template type) template text, with null meaning no tenant override
+    private final TenantKeyValueCache<String> tenantTemplateCache;
+    // Templates shipped with the plugin never change
+    private final ConcurrentMap<String, String> defaultTemplateCache = new ConcurrentHashMap<String, String>();
 
     private ServiceTracker<InvoiceFormatterFactory, InvoiceFormatterFactory> invoiceFormatterTracker;
+    private EmailNotificationMetrics metrics = EmailNotificationMetrics.NOOP;
+    private boolean streamingBodies = false;
 
     public TemplateRenderer(final TemplateEngine templateEngine,
                             final ResourceBundleFactory bundleFactory,
                             final TenantUserApi tenantApi) {
+        this(templateEngine, bundleFactory, tenantApi, DEFAULT_CACHE_MAX_SIZE, DEFAULT_CACHE_TTL_MS);
+    }
+
+    public TemplateRenderer(final TemplateEngine templateEngine,
+                            final ResourceBundleFactory bundleFactory,
+                            final TenantUserApi tenantApi,
+                            final long cacheMaxSize,
+                            final long cacheTtlMs) {
         this.templateEngine = templateEngine;
         this.bundleFactory = bundleFactory;
         this.tenantApi = tenantApi;
+        this.tenantTemplateCache = new TenantKeyValueCache<String>(cacheMaxSize, cacheTtlMs, TimeUnit.MILLISECONDS);
     }
 
     public EmailContent generateEmailForUpComingInvoice(final AccountData account, final Invoice invoice, final TenantContext context) throws IOException, TenantApiException, EmailNotificationException {
@@ -102,6 +123,22 @@ public class TemplateRenderer {
     }
 
     private EmailContent getEmailContent(final TemplateType templateType, final AccountData account, @Nullable Subscription subscription, @Nullable final Invoice invoice, @Nullable final PaymentTransaction paymentTransaction, final TenantContext context) throws IOException, TenantApiException, EmailNotificationException {
+        final long startNanos = System.nanoTime();
+        final EmailContent emailContent = renderEmailContent(templateType, account, subscription, invoice, paymentTransaction, context);
+        // Failed renders are accounted for in the events outcomes
+        metrics.recordTiming("template.render",
+                             System.nanoTime() - startNanos,
+                             EmailNotificationMetrics.TAG_TEMPLATE_TYPE, templateType,
+                             EmailNotificationMetrics.TAG_TENANT, context.getTenantId());
+        if (!emailContent.isStreamed()) {
+            metrics.recordValue("template.bodySize",
+                                emailContent.getBody() == null ? 0 : emailContent.getBody().length(),
+                                EmailNotificationMetrics.TAG_TEMPLATE_TYPE, templateType);
+        }
+        return emailContent;
+    }
+
+    private EmailContent renderEmailContent(final TemplateType templateType, final AccountData account, @Nullable Subscription subscription, @Nullable final Invoice invoice, @Nullable final PaymentTransaction paymentTransaction, final TenantContext context) throws IOException, TenantApiException, EmailNotificationException {
 
         final String accountLocale = Strings.emptyToNull(account.getLocale());
         final Locale locale = accountLocale == null ? Locale.getDefault() : LocaleUtils.toLocale(accountLocale);
@@ -133,25 +170,22 @@ public class TemplateRenderer {
             throw new EmailNotificationException(TEMPLATE_INVALID, accountLocale);
         }
 
-        final String body = templateEngine.executeTemplateText(templateText, data);
         final String subject = text.get(templateType.getSubjectKeyName());
+        if (streamingBodies) {
+            return new EmailContent(subject, writer -> templateEngine.executeTemplate(templateText, data, writer));
+        }
+        final String body = templateEngine.executeTemplateText(templateText, data);
         return new EmailContent(subject, body);
     }
 
     private Map<String, String> getTranslationMap(final String accountLocale, final ResourceBundleFactory.ResourceBundleType bundleType, final TenantContext context) throws TenantApiException, EmailNotificationException {
-        final ResourceBundle translationBundle = accountLocale != null ?
-                bundleFactory.createBundle(LocaleUtils.toLocale(accountLocale), bundleType, context) : null;
+        // Immutable snapshot, shared across renders
+        final Map<String, String> text = accountLocale != null ?
+                bundleFactory.createTranslationMap(LocaleUtils.toLocale(accountLocale), bundleType, context) : null;
 
-        if (translationBundle == null){
+        if (text == null){
             throw new EmailNotificationException(TRANSLATION_INVALID, accountLocale);
         }
-
-        final Map<String, String> text = new HashMap<String, String>();
-        Enumeration<String> keys = translationBundle.getKeys();
-        while (keys.hasMoreElements()) {
-            final String key = keys.nextElement();
-            text.put(key, translationBundle.getString(key));
-        }
         return text;
     }
 
@@ -163,18 +197,28 @@ public class TemplateRenderer {
             return getDefaultTemplate(defaultTemplateName);
         }
 
-        // TODO Caching strategy
         final String templateTenantKey = LocaleUtils.localeString(locale, templateType.getTemplateKey());
-        final List<String> result = tenantApi.getTenantValuesForKey(templateTenantKey, context);
-        if(result.size() > 0) {
-        	 return result.get(result.size()-1);
+        final String tenantTemplate = tenantTemplateCache.get(context.getTenantId(), templateTenantKey, () -> {
+            final List<String> result = tenantApi.getTenantValuesForKey(templateTenantKey, context);
+            return result.isEmpty() ? null : result.get(result.size() - 1);
+        });
+        return tenantTemplate != null ? tenantTemplate : getDefaultTemplate(defaultTemplateName);
+    }
+
+    private String getDefaultTemplate(final String templateName) {
+        final String cachedTemplate = defaultTemplateCache.get(templateName);
+        if (cachedTemplate != null) {
+            return cachedTemplate;
         }
-        else {
-        	return getDefaultTemplate(defaultTemplateName);
+
+        final String template = loadDefaultTemplate(templateName);
+        if (template != null) {
+            defaultTemplateCache.put(templateName, template);
         }
+        return template;
     }
 
-    private String getDefaultTemplate(final String templateName) {
+    private String loadDefaultTemplate(final String templateName) {
         try{
             final URL url = this.getClass().getClassLoader().getResource(templateName);
 
@@ -198,6 +242,20 @@ public class TemplateRenderer {
         }
     }
 
+    /**
+     * Invalidate the cached tenant data, upon TENANT_CONFIG_CHANGE or TENANT_CONFIG_DELETION events.
+     *
+     * @param tenantId  the tenant id
+     * @param tenantKey the modified tenant key (event metadata), or null if unknown
+     */
+    public void invalidateTenantCaches(final UUID tenantId, @Nullable final String tenantKey) {
+        if (tenantId == null) {
+            return;
+        }
+        tenantTemplateCache.invalidate(tenantId, tenantKey);
+        bundleFactory.invalidateTenantCaches(tenantId, tenantKey);
+    }
+
     /**
      * Configure a custom {@link InvoiceFormatterFactory} via some other plugin.
      *
@@ -210,4 +268,23 @@ public class TemplateRenderer {
         this.invoiceFormatterTracker = invoiceFormatterTracker;
     }
 
+    /**
+     * Publish the rendering timings and the body sizes (none by default).
+     *
+     * @param metrics the plugin metrics
+     */
+    public void setMetrics(final EmailNotificationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Render the bodies when the emails are written to the SMTP connection (disabled by default). Template errors are
+     * then reported when sending the email.
+     *
+     * @param streamingBodies true to defer the rendering of the bodies
+     */
+    public void setStreamingBodies(final boolean streamingBodies) {
+        this.streamingBodies = streamingBodies;
+    }
+
 }
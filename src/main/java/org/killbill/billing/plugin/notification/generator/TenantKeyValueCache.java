@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.generator;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.notification.util.VersionedCache;
+import org.killbill.billing.tenant.api.TenantApiException;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Cache of values derived from the tenant key-value store, keyed by (tenant, tenant key).
+ * <p>
+ * Missing values are cached as well, so that tenants without any override don't hit the key-value store either.
+ * Entries are invalidated when the plugin is notified of a change of the matching tenant key
+ * (see {@link #invalidate(UUID, String)}), and expire after a TTL as a backstop. A value loaded while its key is
+ * invalidated isn't cached.
+ *
+ * @param <V> the cached value type
+ */
+public class TenantKeyValueCache<V> {
+
+    public interface Loader<V> {
+
+        @Nullable
+        V load() throws TenantApiException;
+    }
+
+    private final VersionedCache<CacheKey, Optional<V>> cache;
+
+    public TenantKeyValueCache(final long maxSize, final long ttl, final TimeUnit ttlUnit) {
+        this(maxSize, ttl, ttlUnit, Ticker.systemTicker());
+    }
+
+    TenantKeyValueCache(final long maxSize, final long ttl, final TimeUnit ttlUnit, final Ticker ticker) {
+        this.cache = new VersionedCache<CacheKey, Optional<V>>(CacheBuilder.newBuilder()
+                                                                           .maximumSize(maxSize)
+                                                                           .expireAfterWrite(ttl, ttlUnit)
+                                                                           .ticker(ticker)
+                                                                           .recordStats()
+                                                                           .<CacheKey, Optional<V>>build());
+    }
+
+    @Nullable
+    public V get(final UUID tenantId, final String tenantKey, final Loader<V> loader) throws TenantApiException {
+        return cache.get(new CacheKey(tenantId, tenantKey), () -> Optional.ofNullable(loader.load())).orElse(null);
+    }
+
+    /**
+     * Invalidate the entries for a given tenant key.
+     *
+     * @param tenantId  the tenant id
+     * @param tenantKey the tenant key which was modified, or null to invalidate all entries of that tenant
+     */
+    public void invalidate(final UUID tenantId, @Nullable final String tenantKey) {
+        if (tenantKey != null) {
+            cache.invalidate(new CacheKey(tenantId, tenantKey));
+            return;
+        }
+
+        cache.invalidateIf(key -> key.tenantId.equals(tenantId));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static final class CacheKey {
+
+        private final UUID tenantId;
+        private final String tenantKey;
+
+        private CacheKey(final UUID tenantId, final String tenantKey) {
+            this.tenantId = tenantId;
+            this.tenantKey = tenantKey;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final CacheKey that = (CacheKey) o;
+            return Objects.equal(tenantId, that.tenantId) &&
+                   Objects.equal(tenantKey, that.tenantKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(tenantId, tenantKey);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("tenantId", tenantId)
+                              .add("tenantKey", tenantKey)
+                              .toString();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.generator.formatters;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.joda.money.CurrencyUnit;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+
+/**
+ * Currency formatters, configured once per (locale, currency code).
+ * <p>
+ * {@link DecimalFormat} isn't thread-safe: each key has a small pool of instances, cloned from a fully configured
+ * prototype, which are borrowed for the duration of a single format call.
+ */
+final class CurrencyFormatterPool {
+
+    // Max number of idle formatters kept per (locale, currency code)
+    static final int DEFAULT_MAX_IDLE_PER_KEY = 16;
+    // Locales come from account data: don't let the number of keys grow without bound
+    static final int DEFAULT_MAX_KEYS = 1024;
+
+    private final int maxIdlePerKey;
+    private final int maxKeys;
+    private final ConcurrentMap<PoolKey, Pool> pools = new ConcurrentHashMap<PoolKey, Pool>();
+
+    CurrencyFormatterPool() {
+        this(DEFAULT_MAX_IDLE_PER_KEY, DEFAULT_MAX_KEYS);
+    }
+
+    CurrencyFormatterPool(final int maxIdlePerKey, final int maxKeys) {
+        this.maxIdlePerKey = maxIdlePerKey;
+        this.maxKeys = maxKeys;
+    }
+
+    String format(final BigDecimal amount, final String currencyCode, final Locale locale) {
+        final Pool pool = getPool(currencyCode, locale);
+        final DecimalFormat numberFormatter = pool.borrow();
+        try {
+            // Format the BigDecimal itself: going through doubleValue() loses precision on large amounts
+            return numberFormatter.format(amount);
+        } finally {
+            pool.release(numberFormatter);
+        }
+    }
+
+    int size() {
+        return pools.size();
+    }
+
+    private Pool getPool(final String currencyCode, final Locale locale) {
+        final PoolKey key = new PoolKey(locale, currencyCode);
+        Pool pool = pools.get(key);
+        if (pool == null) {
+            // Invalid currency codes fail here, and are never cached
+            final Pool newPool = new Pool(createFormatter(currencyCode, locale), maxIdlePerKey);
+            if (pools.size() >= maxKeys) {
+                pools.clear();
+            }
+            pool = MoreObjects.firstNonNull(pools.putIfAbsent(key, newPool), newPool);
+        }
+        return pool;
+    }
+
+    private static DecimalFormat createFormatter(final String currencyCode, final Locale locale) {
+        final CurrencyUnit currencyUnit = CurrencyUnit.of(currencyCode);
+
+        final DecimalFormat numberFormatter = (DecimalFormat) DecimalFormat.getCurrencyInstance(locale);
+        final DecimalFormatSymbols dfs = numberFormatter.getDecimalFormatSymbols();
+        dfs.setInternationalCurrencySymbol(currencyUnit.getCode());
+
+        try {
+            final java.util.Currency currency = java.util.Currency.getInstance(currencyCode);
+            dfs.setCurrencySymbol(currency.getSymbol(locale));
+        } catch (final IllegalArgumentException e) {
+            dfs.setCurrencySymbol(currencyUnit.getSymbol(locale));
+        }
+
+        numberFormatter.setDecimalFormatSymbols(dfs);
+        numberFormatter.setMinimumFractionDigits(currencyUnit.getDecimalPlaces());
+        numberFormatter.setMaximumFractionDigits(currencyUnit.getDecimalPlaces());
+        // Same rounding as Kill Bill invoice amounts (the DecimalFormat default is HALF_EVEN)
+        numberFormatter.setRoundingMode(RoundingMode.HALF_UP);
+        return numberFormatter;
+    }
+
+    private static final class Pool {
+
+        // Never used directly, only cloned
+        private final DecimalFormat prototype;
+        private final BlockingQueue<DecimalFormat> idle;
+
+        private Pool(final DecimalFormat prototype, final int maxIdle) {
+            this.prototype = prototype;
+            this.idle = new ArrayBlockingQueue<DecimalFormat>(maxIdle);
+        }
+
+        private DecimalFormat borrow() {
+            final DecimalFormat numberFormatter = idle.poll();
+            return numberFormatter != null ? numberFormatter : (DecimalFormat) prototype.clone();
+        }
+
+        private void release(final DecimalFormat numberFormatter) {
+            // Dropped if the pool is already full
+            idle.offer(numberFormatter);
+        }
+    }
+
+    private static final class PoolKey {
+
+        private final Locale locale;
+        private final String currencyCode;
+
+        private PoolKey(final Locale locale, final String currencyCode) {
+            this.locale = locale;
+            this.currencyCode = currencyCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final PoolKey that = (PoolKey) o;
+            return Objects.equal(locale, that.locale) &&
+                   Objects.equal(currencyCode, that.currencyCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(locale, currencyCode);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("locale", locale)
+                              .add("currencyCode", currencyCode)
+                              .toString();
+        }
+    }
+}
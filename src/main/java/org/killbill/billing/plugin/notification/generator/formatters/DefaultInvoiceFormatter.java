@@ -20,7 +20,6 @@
 package org.killbill.billing.plugin.notification.generator.formatters;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
@@ -29,7 +28,6 @@ import java.util.UUID;
 
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
-import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.invoice.api.Invoice;
@@ -54,12 +52,15 @@ public class DefaultInvoiceFormatter implements InvoiceFormatter {
     private final Locale locale;
     private final DateTimeFormatter dateFormatter;
 
+    // Built on first access: templates may iterate over the items several times
+    private List<InvoiceItem> formattedItems;
+
     public DefaultInvoiceFormatter(final Map<String, String> translator,
                                    final Invoice invoice,
                                    final Locale locale) {
         this.translator = translator;
         this.invoice = invoice;
-        this.dateFormatter = DateTimeFormat.mediumDate().withLocale(locale);
+        this.dateFormatter = LocaleFormatters.forLocale(locale).getDateFormatter();
         this.locale = locale;
     }
 
@@ -70,11 +71,15 @@ public class DefaultInvoiceFormatter implements InvoiceFormatter {
 
     @Override
     public List<InvoiceItem> getInvoiceItems() {
-        final List<InvoiceItem> formatters = new ArrayList<InvoiceItem>();
-        for (final InvoiceItem item : invoice.getInvoiceItems()) {
-            formatters.add(new DefaultInvoiceItemFormatter(translator, item, dateFormatter, locale));
+        if (formattedItems == null) {
+            final List<InvoiceItem> items = invoice.getInvoiceItems();
+            final ImmutableList.Builder<InvoiceItem> formatters = ImmutableList.builderWithExpectedSize(items.size());
+            for (final InvoiceItem item : items) {
+                formatters.add(createInvoiceItemFormatter(item));
+            }
+            formattedItems = formatters.build();
         }
-        return formatters;
+        return formattedItems;
     }
 
     @Override
@@ -89,11 +94,13 @@ public class DefaultInvoiceFormatter implements InvoiceFormatter {
 
     @Override
     public boolean addInvoiceItem(final InvoiceItem item) {
+        formattedItems = null;
         return invoice.addInvoiceItem(item);
     }
 
     @Override
     public boolean addInvoiceItems(final Collection<InvoiceItem> items) {
+        formattedItems = null;
         return invoice.addInvoiceItems(items);
     }
 
@@ -281,6 +288,16 @@ public class DefaultInvoiceFormatter implements InvoiceFormatter {
         return getFormattedAmountByLocaleAndInvoiceCurrency(getRefundedAmount(), getCurrency().toString(), locale);
     }
 
+    /**
+     * Create the view of an invoice item, called once per item and render.
+     *
+     * @param item the invoice item
+     * @return the formatted item
+     */
+    protected InvoiceItem createInvoiceItemFormatter(final InvoiceItem item) {
+        return new DefaultInvoiceItemFormatter(translator, item, dateFormatter, locale);
+    }
+
     // Expose the fields for children classes. This is useful for further customization of the invoices
 
     protected Map<String, String> getTranslator() {
@@ -39,6 +39,9 @@ import static org.killbill.billing.plugin.notification.generator.formatters.Form
 
 /**
  * Format invoice item fields
+ * <p>
+ * The translated names and the formatted amounts and dates are computed on first access, as templates may use them
+ * more than once (e.g. {@code {{#formattedEndDate}} - {{formattedEndDate}}{{/formattedEndDate}}}).
  */
 public class DefaultInvoiceItemFormatter implements InvoiceItemFormatter {
 
@@ -47,6 +50,18 @@ public class DefaultInvoiceItemFormatter implements InvoiceItemFormatter {
     private final DateTimeFormatter dateFormatter;
     private final Locale locale;
 
+    private String formattedAmount;
+    private String formattedStartDate;
+    private String formattedEndDate;
+    private String formattedCreatedDate;
+    private String formattedUpdatedDate;
+    private String planName;
+    private String prettyPlanName;
+    private String phaseName;
+    private String prettyPhaseName;
+    private String usageName;
+    private String prettyUsageName;
+
     public DefaultInvoiceItemFormatter(final Map<String, String> translator,
                                        final InvoiceItem item,
                                        final DateTimeFormatter dateFormatter,
@@ -64,7 +79,10 @@ public class DefaultInvoiceItemFormatter implements InvoiceItemFormatter {
 
     @Override
     public String getFormattedAmount() {
-        return getFormattedAmountByLocaleAndInvoiceCurrency(getAmount(), getCurrency().toString(), locale);
+        if (formattedAmount == null) {
+            formattedAmount = getFormattedAmountByLocaleAndInvoiceCurrency(getAmount(), getCurrency().toString(), locale);
+        }
+        return formattedAmount;
     }
 
     @Override
@@ -89,7 +107,10 @@ public class DefaultInvoiceItemFormatter implements InvoiceItemFormatter {
 
     @Override
     public String getFormattedStartDate() {
-        return item.getStartDate().toString(dateFormatter);
+        if (formattedStartDate == null) {
+            formattedStartDate = item.getStartDate().toString(dateFormatter);
+        }
+        return formattedStartDate;
     }
 
     @Override
@@ -99,7 +120,10 @@ public class DefaultInvoiceItemFormatter implements InvoiceItemFormatter {
 
     @Override
     public String getFormattedEndDate() {
-        return item.getEndDate() == null ? null : item.getEndDate().toString(dateFormatter);
+        if (formattedEndDate == null && item.getEndDate() != null) {
+            formattedEndDate = item.getEndDate().toString(dateFormatter);
+        }
+        return formattedEndDate;
     }
 
     @Override
@@ -139,32 +163,50 @@ public class DefaultInvoiceItemFormatter implements InvoiceItemFormatter {
 
     @Override
     public String getPlanName() {
-        return MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getPlanName())), Strings.nullToEmpty(item.getPlanName()));
+        if (planName == null) {
+            planName = MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getPlanName())), Strings.nullToEmpty(item.getPlanName()));
+        }
+        return planName;
     }
 
     @Override
     public String getPrettyPlanName() {
-        return MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getPhaseName())), Strings.nullToEmpty( item.getPrettyPlanName()));
+        if (prettyPlanName == null) {
+            prettyPlanName = MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getPhaseName())), Strings.nullToEmpty( item.getPrettyPlanName()));
+        }
+        return prettyPlanName;
     }
 
     @Override
     public String getPhaseName() {
-        return MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getPhaseName())), Strings.nullToEmpty(item.getPhaseName()));
+        if (phaseName == null) {
+            phaseName = MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getPhaseName())), Strings.nullToEmpty(item.getPhaseName()));
+        }
+        return phaseName;
     }
 
     @Override
     public String getPrettyPhaseName() {
-        return MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getPhaseName())), Strings.nullToEmpty( item.getPrettyPhaseName()));
+        if (prettyPhaseName == null) {
+            prettyPhaseName = MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getPhaseName())), Strings.nullToEmpty( item.getPrettyPhaseName()));
+        }
+        return prettyPhaseName;
     }
 
     @Override
     public String getUsageName() {
-        return MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getUsageName())), Strings.nullToEmpty(item.getUsageName()));
+        if (usageName == null) {
+            usageName = MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getUsageName())), Strings.nullToEmpty(item.getUsageName()));
+        }
+        return usageName;
     }
 
     @Override
     public String getPrettyUsageName() {
-        return MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getPhaseName())), Strings.nullToEmpty( item.getPrettyUsageName()));
+        if (prettyUsageName == null) {
+            prettyUsageName = MoreObjects.firstNonNull(Strings.emptyToNull(translator.get(item.getPhaseName())), Strings.nullToEmpty( item.getPrettyUsageName()));
+        }
+        return prettyUsageName;
     }
 
     @Override
@@ -178,7 +220,10 @@ public class DefaultInvoiceItemFormatter implements InvoiceItemFormatter {
     }
 
     public String getFormattedCreatedDate() {
-        return getCreatedDate().toString(dateFormatter);
+        if (formattedCreatedDate == null) {
+            formattedCreatedDate = getCreatedDate().toString(dateFormatter);
+        }
+        return formattedCreatedDate;
     }
 
     @Override
@@ -187,7 +232,10 @@ public class DefaultInvoiceItemFormatter implements InvoiceItemFormatter {
     }
 
     public String getFormattedUpdatedDate() {
-        return getUpdatedDate().toString(dateFormatter);
+        if (formattedUpdatedDate == null) {
+            formattedUpdatedDate = getUpdatedDate().toString(dateFormatter);
+        }
+        return formattedUpdatedDate;
     }
 
     @Override
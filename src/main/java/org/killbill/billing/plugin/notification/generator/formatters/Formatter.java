@@ -19,33 +19,12 @@
 package org.killbill.billing.plugin.notification.generator.formatters;
 
 import java.math.BigDecimal;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.util.Locale;
 
-import org.joda.money.CurrencyUnit;
-
 public abstract class Formatter {
 
     // Returns the formatted amount with the correct currency symbol
     public static String getFormattedAmountByLocaleAndInvoiceCurrency(final BigDecimal amount, final String currencyCode, final Locale locale) {
-        final CurrencyUnit currencyUnit = CurrencyUnit.of(currencyCode);
-
-        final DecimalFormat numberFormatter = (DecimalFormat) DecimalFormat.getCurrencyInstance(locale);
-        final DecimalFormatSymbols dfs = numberFormatter.getDecimalFormatSymbols();
-        dfs.setInternationalCurrencySymbol(currencyUnit.getCode());
-
-        try {
-            final java.util.Currency currency = java.util.Currency.getInstance(currencyCode);
-            dfs.setCurrencySymbol(currency.getSymbol(locale));
-        } catch (final IllegalArgumentException e) {
-            dfs.setCurrencySymbol(currencyUnit.getSymbol(locale));
-        }
-
-        numberFormatter.setDecimalFormatSymbols(dfs);
-        numberFormatter.setMinimumFractionDigits(currencyUnit.getDecimalPlaces());
-        numberFormatter.setMaximumFractionDigits(currencyUnit.getDecimalPlaces());
-
-        return numberFormatter.format(amount.doubleValue());
+        return LocaleFormatters.formatAmount(amount, currencyCode, locale);
     }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.generator.formatters;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Registry of the date, date-time and money formatters used to render emails, shared by all formatters of a given locale.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class LocaleFormatters {
+
+    // Locales come from account data: don't let the number of entries grow without bound
+    private static final int MAX_LOCALES = 1024;
+
+    private static final ConcurrentMap<Locale, LocaleFormatters> REGISTRY = new ConcurrentHashMap<Locale, LocaleFormatters>();
+    private static final CurrencyFormatterPool CURRENCY_FORMATTERS = new CurrencyFormatterPool();
+
+    private final Locale locale;
+    private final DateTimeFormatter dateFormatter;
+    private final DateTimeFormatter dateTimeFormatter;
+
+    private LocaleFormatters(final Locale locale) {
+        this.locale = locale;
+        this.dateFormatter = DateTimeFormat.mediumDate().withLocale(locale);
+        this.dateTimeFormatter = DateTimeFormat.mediumDateTime().withLocale(locale);
+    }
+
+    public static LocaleFormatters forLocale(final Locale locale) {
+        LocaleFormatters formatters = REGISTRY.get(locale);
+        if (formatters == null) {
+            final LocaleFormatters newFormatters = new LocaleFormatters(locale);
+            if (REGISTRY.size() >= MAX_LOCALES) {
+                REGISTRY.clear();
+            }
+            formatters = MoreObjects.firstNonNull(REGISTRY.putIfAbsent(locale, newFormatters), newFormatters);
+        }
+        return formatters;
+    }
+
+    /**
+     * Initialize the formatters of a given locale ahead of the first email (locale data, currency symbols, etc.).
+     *
+     * @param locale the locale
+     */
+    public static void warmUp(final Locale locale) {
+        final LocaleFormatters formatters = forLocale(locale);
+        new LocalDate(2000, 1, 1).toString(formatters.getDateFormatter());
+        new DateTime(2000, 1, 1, 0, 0, DateTimeZone.UTC).toString(formatters.getDateTimeFormatter());
+
+        final Currency currency;
+        try {
+            currency = Currency.getInstance(locale);
+        } catch (final IllegalArgumentException e) {
+            // No country, hence no default currency
+            return;
+        }
+        if (currency != null) {
+            formatters.formatAmount(BigDecimal.ONE, currency.getCurrencyCode());
+        }
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    public DateTimeFormatter getDateFormatter() {
+        return dateFormatter;
+    }
+
+    public DateTimeFormatter getDateTimeFormatter() {
+        return dateTimeFormatter;
+    }
+
+    // Returns the formatted amount with the correct currency symbol
+    public String formatAmount(final BigDecimal amount, final String currencyCode) {
+        return formatAmount(amount, currencyCode, locale);
+    }
+
+    static String formatAmount(final BigDecimal amount, final String currencyCode, final Locale locale) {
+        return CURRENCY_FORMATTERS.format(amount, currencyCode, locale);
+    }
+}
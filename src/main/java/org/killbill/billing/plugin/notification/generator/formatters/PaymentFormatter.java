@@ -24,7 +24,6 @@ import java.util.Locale;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.payment.api.PaymentTransaction;
@@ -44,7 +43,7 @@ public class PaymentFormatter implements PaymentTransaction {
 
     public PaymentFormatter(final PaymentTransaction paymentTransaction, final Locale locale) {
         this.paymentTransaction = paymentTransaction;
-        this.dateFormatter = DateTimeFormat.mediumDate().withLocale(locale);
+        this.dateFormatter = LocaleFormatters.forLocale(locale).getDateFormatter();
         this.locale = locale;
     }
 
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.http;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * One element of the bulk update body: the complete list of event types the account should be registered for.
+ */
+class AccountEventTypes {
+
+    private final UUID kbAccountId;
+    private final List<ExtBusEventType> eventTypes;
+
+    @JsonCreator
+    AccountEventTypes(@JsonProperty("kbAccountId") final UUID kbAccountId,
+                      @JsonProperty("eventTypes") final List<ExtBusEventType> eventTypes) {
+        this.kbAccountId = kbAccountId;
+        this.eventTypes = eventTypes == null ? ImmutableList.<ExtBusEventType>of() : eventTypes;
+    }
+
+    UUID getKbAccountId() {
+        return kbAccountId;
+    }
+
+    List<ExtBusEventType> getEventTypes() {
+        return eventTypes;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.killbill.billing.plugin.notification.dao.ConfigurationUpdateResult;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Response of the bulk update: each batch is committed in its own transaction, so a failed batch doesn't roll back
+ * the previous ones.
+ */
+public class BulkUpdateResult {
+
+    private final List<BatchResult> batches = new ArrayList<BatchResult>();
+    private int accounts;
+    private int insertedEventTypes;
+    private int deletedEventTypes;
+    private int failedBatches;
+    private String error;
+
+    void addBatch(final ConfigurationUpdateResult result) {
+        batches.add(new BatchResult(batches.size(), result.getAccounts(), result.getInsertedEventTypes(), result.getDeletedEventTypes(), null));
+        accounts += result.getAccounts();
+        insertedEventTypes += result.getInsertedEventTypes();
+        deletedEventTypes += result.getDeletedEventTypes();
+    }
+
+    void addFailedBatch(final int batchAccounts, final String batchError) {
+        batches.add(new BatchResult(batches.size(), batchAccounts, 0, 0, batchError));
+        failedBatches++;
+    }
+
+    void setError(final String error) {
+        this.error = error;
+    }
+
+    public List<BatchResult> getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return number of accounts successfully updated
+     */
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public int getInsertedEventTypes() {
+        return insertedEventTypes;
+    }
+
+    public int getDeletedEventTypes() {
+        return deletedEventTypes;
+    }
+
+    public int getFailedBatches() {
+        return failedBatches;
+    }
+
+    /**
+     * @return why the body couldn't be read entirely, if so (the batches before the error are still committed)
+     */
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("batches", batches.size())
+                          .add("accounts", accounts)
+                          .add("insertedEventTypes", insertedEventTypes)
+                          .add("deletedEventTypes", deletedEventTypes)
+                          .add("failedBatches", failedBatches)
+                          .add("error", error)
+                          .toString();
+    }
+
+    public static class BatchResult {
+
+        private final int batch;
+        private final int accounts;
+        private final int insertedEventTypes;
+        private final int deletedEventTypes;
+        private final String error;
+
+        BatchResult(final int batch, final int accounts, final int insertedEventTypes, final int deletedEventTypes, final String error) {
+            this.batch = batch;
+            this.accounts = accounts;
+            this.insertedEventTypes = insertedEventTypes;
+            this.deletedEventTypes = deletedEventTypes;
+            this.error = error;
+        }
+
+        public int getBatch() {
+            return batch;
+        }
+
+        public int getAccounts() {
+            return accounts;
+        }
+
+        public int getInsertedEventTypes() {
+            return insertedEventTypes;
+        }
+
+        public int getDeletedEventTypes() {
+            return deletedEventTypes;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
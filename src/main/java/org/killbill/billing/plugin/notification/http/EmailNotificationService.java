@@ -19,30 +19,56 @@
 
 package org.killbill.billing.plugin.notification.http;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.joda.time.DateTime;
+import org.jooby.MediaType;
 import org.jooby.Result;
 import org.jooby.Results;
 import org.jooby.Status;
+import org.jooq.types.ULong;
 import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.core.resources.jooby.PluginAppBuilder;
 import org.killbill.billing.plugin.notification.dao.gen.tables.pojos.EmailNotificationsConfiguration;
 import org.killbill.billing.plugin.notification.dao.ConfigurationDao;
+import org.killbill.billing.plugin.notification.dao.ConfigurationUpdateResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
 public final class EmailNotificationService
 {
     private static final Logger logger = LoggerFactory.getLogger(EmailNotificationService.class);
 
+    public static final int MAX_PAGE_SIZE = 10000;
+
+    private static final ObjectReader ACCOUNT_EVENT_TYPES_READER = new ObjectMapper().readerFor(AccountEventTypes.class);
+
     private EmailNotificationService(){}
 
     public static Result getEventTypes(final ConfigurationDao dao, final List<UUID> kbAccountId, final UUID kbTenantId)
     {
         logger.debug(String.format("Enters get event types for %s accounts - %s",kbAccountId.size(),kbTenantId));
 
+        if (kbAccountId.size() > ConfigurationDao.DEFAULT_BATCH_SIZE)
+        {
+            return streamEventTypes(dao, kbAccountId, kbTenantId);
+        }
+
         List<EmailNotificationsConfiguration> eventTypes = null;
         try {
             eventTypes = dao.getEventTypes(kbAccountId, kbTenantId);
@@ -54,6 +80,121 @@ public final class EmailNotificationService
         return eventTypes == null  || eventTypes.size() == 0? Results.with(Status.NOT_FOUND) : Results.json(eventTypes);
     }
 
+    /**
+     * Large lists are looked up and serialized chunk by chunk, while the response is written.
+     */
+    private static Result streamEventTypes(final ConfigurationDao dao, final List<UUID> kbAccountId, final UUID kbTenantId)
+    {
+        final Iterator<List<UUID>> chunks = Lists.partition(kbAccountId, ConfigurationDao.DEFAULT_BATCH_SIZE).iterator();
+        // Look up until the first match, to be able to return a 404 when there is none
+        List<EmailNotificationsConfiguration> eventTypes = ImmutableList.<EmailNotificationsConfiguration>of();
+        try {
+            while (eventTypes.isEmpty() && chunks.hasNext()) {
+                eventTypes = dao.getEventTypes(chunks.next(), kbTenantId);
+            }
+        } catch (SQLException e) {
+            logger.error(e.getMessage());
+            return Results.with(e.getMessage(), Status.SERVER_ERROR);
+        }
+
+        if (eventTypes.isEmpty())
+        {
+            return Results.with(Status.NOT_FOUND);
+        }
+
+        try {
+            return streamJson(eventTypes, () -> chunks.hasNext() ? dao.getEventTypes(chunks.next(), kbTenantId) : null);
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            return Results.with(e.getMessage(), Status.SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Page through all the configurations of the tenant: to get the next page, pass the record id of the last
+     * configuration returned. The page is looked up and streamed in chunks, so large pages don't use more memory.
+     */
+    public static Result getTenantEventTypes(final ConfigurationDao dao, final UUID kbTenantId,
+                                             @Nullable final Long afterRecordId, final int limit)
+    {
+        logger.debug(String.format("Enters get event types after %s - %s",afterRecordId,kbTenantId));
+
+        if (limit <= 0)
+        {
+            return Results.with("Invalid limit " + limit,Status.BAD_REQUEST);
+        }
+
+        final int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        try {
+            final List<EmailNotificationsConfiguration> firstChunk = dao.getEventTypesPage(kbTenantId, afterRecordId, Math.min(pageSize, ConfigurationDao.DEFAULT_BATCH_SIZE));
+            return streamJson(firstChunk, new KeysetChunks(dao, kbTenantId, firstChunk, pageSize));
+        } catch (SQLException | IOException e) {
+            logger.error(e.getMessage());
+            return Results.with(e.getMessage(), Status.SERVER_ERROR);
+        }
+    }
+
+    private static Result streamJson(final List<EmailNotificationsConfiguration> firstChunk, final EventTypesJsonInputStream.Chunks remainingChunks) throws IOException
+    {
+        return Results.ok(new EventTypesJsonInputStream(firstChunk, remainingChunks, PluginAppBuilder.DEFAULT_OBJECT_MAPPER))
+                      .type(MediaType.json);
+    }
+
+    // The limit of the page queries is a number of rows, and a row may hold several configurations (e.g. with the
+    // BITMASK storage, one per event type of the account): rows are counted by record id
+    private static final class KeysetChunks implements EventTypesJsonInputStream.Chunks
+    {
+        private final ConfigurationDao dao;
+        private final UUID kbTenantId;
+        private int remaining;
+        private List<EmailNotificationsConfiguration> previousChunk;
+        private int previousChunkSize;
+        private int previousChunkRows;
+
+        private KeysetChunks(final ConfigurationDao dao, final UUID kbTenantId, final List<EmailNotificationsConfiguration> firstChunk, final int pageSize)
+        {
+            this.dao = dao;
+            this.kbTenantId = kbTenantId;
+            this.previousChunk = firstChunk;
+            this.previousChunkSize = Math.min(pageSize, ConfigurationDao.DEFAULT_BATCH_SIZE);
+            this.previousChunkRows = countRows(firstChunk);
+            this.remaining = pageSize - previousChunkRows;
+        }
+
+        @Override
+        public List<EmailNotificationsConfiguration> next() throws SQLException
+        {
+            // A short chunk means the end of the table has been reached
+            if (remaining <= 0 || previousChunkRows < previousChunkSize)
+            {
+                return null;
+            }
+
+            final Long afterRecordId = previousChunk.get(previousChunk.size() - 1).getRecordId().longValue();
+            previousChunkSize = Math.min(remaining, ConfigurationDao.DEFAULT_BATCH_SIZE);
+            previousChunk = dao.getEventTypesPage(kbTenantId, afterRecordId, previousChunkSize);
+            previousChunkRows = countRows(previousChunk);
+            remaining -= previousChunkRows;
+            return previousChunk;
+        }
+
+        // Configurations are sorted by record id
+        private static int countRows(final List<EmailNotificationsConfiguration> configurations)
+        {
+            int rows = 0;
+            ULong previousRecordId = null;
+            for (final EmailNotificationsConfiguration configuration : configurations)
+            {
+                if (!configuration.getRecordId().equals(previousRecordId))
+                {
+                    rows++;
+                    previousRecordId = configuration.getRecordId();
+                }
+            }
+            return rows;
+        }
+    }
+
     public static Result getEventTypesPerAccount(final ConfigurationDao dao, final UUID kbAccountId, final UUID kbTenantId)
     {
         logger.debug(String.format("Enters get event types %s - %s",kbAccountId,kbTenantId));
@@ -109,4 +250,81 @@ public final class EmailNotificationService
         return Results.with(Status.CREATED);
     }
 
+    /**
+     * Update the event types of many accounts, reading the body incrementally: either a JSON array or
+     * newline-delimited JSON objects, e.g. {"kbAccountId":"...","eventTypes":["INVOICE_CREATION"]}.
+     * <p>
+     * At most batchSize parsed accounts are kept in memory, and each batch is written in its own transaction. The
+     * memory used by the body itself depends on the stream (see EmailNotificationServlet#doBulkUpdateEventTypes).
+     */
+    public static Result doBulkUpdateEventTypes(final ConfigurationDao dao, final InputStream body,
+                                                final UUID kbTenantId, final int batchSize,
+                                                final DateTime utcNow)
+    {
+        logger.debug(String.format("Enters bulk update event types - %s",kbTenantId));
+
+        if (kbTenantId == null)
+        {
+            return Results.with("No tenant specified",Status.NOT_FOUND);
+        }
+        if (batchSize <= 0)
+        {
+            return Results.with("Invalid batch size " + batchSize,Status.BAD_REQUEST);
+        }
+
+        final BulkUpdateResult result = new BulkUpdateResult();
+        // Latest entry wins if an account is listed twice in the same batch
+        final Map<UUID, List<ExtBusEventType>> batch = new LinkedHashMap<UUID, List<ExtBusEventType>>();
+        int element = 0;
+        try (final MappingIterator<AccountEventTypes> iterator = ACCOUNT_EVENT_TYPES_READER.readValues(body)) {
+            while (iterator.hasNextValue()) {
+                final AccountEventTypes accountEventTypes = iterator.nextValue();
+                if (accountEventTypes.getKbAccountId() == null)
+                {
+                    result.setError(String.format("No account specified for element %s", element));
+                    break;
+                }
+                batch.put(accountEventTypes.getKbAccountId(), accountEventTypes.getEventTypes());
+                element++;
+
+                if (batch.size() >= batchSize)
+                {
+                    writeBatch(dao, batch, kbTenantId, batchSize, utcNow, result);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn(String.format("Unable to read element %s of the bulk update", element), e);
+            result.setError(String.format("Unable to read element %s: %s", element, e.getMessage()));
+        }
+
+        // Like the batches already written, the accounts read before a malformed element are updated
+        if (!batch.isEmpty())
+        {
+            writeBatch(dao, batch, kbTenantId, batchSize, utcNow, result);
+        }
+
+        logger.info(String.format("Bulk update of event types - %s: %s",kbTenantId,result));
+
+        final Result response = Results.json(result);
+        if (result.getError() != null)
+        {
+            return response.status(Status.BAD_REQUEST);
+        }
+        return result.getFailedBatches() > 0 ? response.status(Status.SERVER_ERROR) : response;
+    }
+
+    private static void writeBatch(final ConfigurationDao dao, final Map<UUID, List<ExtBusEventType>> batch,
+                                   final UUID kbTenantId, final int batchSize, final DateTime utcNow,
+                                   final BulkUpdateResult result)
+    {
+        try {
+            final ConfigurationUpdateResult updateResult = dao.updateConfigurations(batch, kbTenantId, utcNow, batchSize);
+            result.addBatch(updateResult);
+        } catch (SQLException e) {
+            logger.error(e.getMessage());
+            result.addFailedBatch(batch.size(), e.getMessage());
+        }
+        batch.clear();
+    }
+
 }
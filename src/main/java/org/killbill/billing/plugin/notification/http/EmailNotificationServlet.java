@@ -19,6 +19,9 @@
 
 package org.killbill.billing.plugin.notification.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -27,8 +30,11 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.jooby.MediaType;
+import org.jooby.Request;
 import org.jooby.Result;
 import org.jooby.Results;
+import org.jooby.Upload;
 import org.jooby.mvc.Body;
 import org.jooby.mvc.GET;
 import org.jooby.mvc.Local;
@@ -46,6 +52,9 @@ import org.slf4j.LoggerFactory;
 @Path("/v1")
 public class EmailNotificationServlet {
 
+    // Name of the multipart/form-data part of the bulk updates
+    public static final String BULK_UPDATE_FILE_PART = "file";
+
     private static final Logger logger = LoggerFactory.getLogger(EmailNotificationServlet.class);
 
     private ConfigurationDao dao;
@@ -102,4 +111,44 @@ public class EmailNotificationServlet {
 
         return EmailNotificationService.doUpdateEventTypePerAccount(this.dao, kbAccountId, kbTenantId, eventTypes, this.clock.getClock().getUTCNow());
     }
+
+    /**
+     * The accounts are either uploaded as the {@value #BULK_UPDATE_FILE_PART} part of a multipart/form-data request,
+     * or sent as the request body. Uploads are parsed from the file Jooby spools them to. Jooby 1.x only hands
+     * request bodies over as a whole though, so these are read into memory first: use uploads for large updates.
+     */
+    @POST
+    @Path("/accounts")
+    public Result doBulkUpdateEventTypes(final Request request,
+                                         @Local @Named("killbill_tenant") final Tenant tenant,
+                                         final Optional<Integer> batchSize) throws Exception {
+        final UUID kbTenantId = tenant.getId();
+
+        if (request.is(MediaType.multipart)) {
+            try (final Upload upload = request.file(BULK_UPDATE_FILE_PART);
+                 final InputStream body = Files.newInputStream(upload.file().toPath())) {
+                return EmailNotificationService.doBulkUpdateEventTypes(this.dao, body, kbTenantId,
+                                                                       batchSize.orElse(ConfigurationDao.DEFAULT_BATCH_SIZE),
+                                                                       this.clock.getClock().getUTCNow());
+            }
+        }
+
+        // Read as raw bytes, so that the JSON body parser doesn't bind the whole payload
+        final byte[] body = request.body().to(byte[].class, MediaType.octetstream);
+
+        return EmailNotificationService.doBulkUpdateEventTypes(this.dao, new ByteArrayInputStream(body), kbTenantId,
+                                                               batchSize.orElse(ConfigurationDao.DEFAULT_BATCH_SIZE),
+                                                               this.clock.getClock().getUTCNow());
+    }
+
+    @GET
+    @Path("/configurations")
+    public Result getTenantEventTypes(@Local @Named("killbill_tenant") final Tenant tenant,
+                                      final Optional<Long> afterRecordId,
+                                      final Optional<Integer> limit) {
+        final UUID kbTenantId = tenant.getId();
+
+        return EmailNotificationService.getTenantEventTypes(this.dao, kbTenantId, afterRecordId.orElse(null),
+                                                            limit.orElse(ConfigurationDao.DEFAULT_BATCH_SIZE));
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.notification.dao.gen.tables.pojos.EmailNotificationsConfiguration;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JSON array of configurations, produced as the response is written: the next chunk is only looked up once the
+ * previous one has been consumed.
+ * <p>
+ * Each chunk is read on its own connection, so nothing is left open if the client goes away.
+ */
+class EventTypesJsonInputStream extends InputStream {
+
+    interface Chunks {
+
+        /**
+         * @return the next configurations, null when there are no more
+         */
+        @Nullable
+        List<EmailNotificationsConfiguration> next() throws SQLException;
+    }
+
+    private final Chunks chunks;
+    private final ObjectMapper objectMapper;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final JsonGenerator generator;
+
+    private List<EmailNotificationsConfiguration> pending;
+    private byte[] current = new byte[0];
+    private int position;
+    private boolean done;
+
+    EventTypesJsonInputStream(final List<EmailNotificationsConfiguration> firstConfigurations,
+                              final Chunks remainingChunks,
+                              final ObjectMapper objectMapper) throws IOException {
+        this.chunks = remainingChunks;
+        this.objectMapper = objectMapper;
+        this.pending = firstConfigurations;
+        this.generator = objectMapper.getFactory().createGenerator(buffer);
+        this.generator.writeStartArray();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        final int read = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (position >= current.length) {
+            if (done) {
+                return false;
+            }
+            fill();
+        }
+        return true;
+    }
+
+    private void fill() throws IOException {
+        buffer.reset();
+        if (pending == null) {
+            try {
+                pending = chunks.next();
+            } catch (final SQLException e) {
+                // Headers are gone already: all we can do is truncating the response
+                throw new IOException("Unable to retrieve the event types", e);
+            }
+        }
+
+        if (pending == null) {
+            generator.writeEndArray();
+            generator.close();
+            done = true;
+        } else {
+            for (final EmailNotificationsConfiguration configuration : pending) {
+                objectMapper.writeValue(generator, configuration);
+            }
+            generator.flush();
+            pending = null;
+        }
+
+        current = buffer.toByteArray();
+        position = 0;
+    }
+}
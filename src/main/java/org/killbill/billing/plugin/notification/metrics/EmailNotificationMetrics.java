@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.killbill.commons.metrics.api.Gauge;
+import org.killbill.commons.metrics.api.MetricRegistry;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+
+/**
+ * Timers, counters and histograms of the email pipeline, published to the Kill Bill metric registry.
+ * <p>
+ * The metrics API doesn't support tags: they are encoded in the metric name, Graphite style, e.g.
+ * {@code killbill-email-notifications.render;eventType=INVOICE_CREATION;tenant=<tenantId>}.
+ * <p>
+ * The registry is looked up on each update, as it may become available after the plugin started: updates made while
+ * there is no registry are dropped. Gauges are registered by the first lookup which finds a registry (and again if the
+ * registry changes).
+ */
+public class EmailNotificationMetrics {
+
+    public static final EmailNotificationMetrics NOOP = new EmailNotificationMetrics(() -> null);
+
+    public static final String PREFIX = "killbill-email-notifications.";
+
+    public static final String TAG_EVENT_TYPE = "eventType";
+    public static final String TAG_TEMPLATE_TYPE = "templateType";
+    public static final String TAG_TENANT = "tenant";
+    public static final String TAG_TRANSPORT = "transport";
+    public static final String TAG_OUTCOME = "outcome";
+
+    public static final String OUTCOME_SENT = "sent";
+    // Nothing to send, e.g. no email address on the account
+    public static final String OUTCOME_SKIPPED = "skipped";
+    // The account didn't register for the event type
+    public static final String OUTCOME_FILTERED = "filtered";
+    public static final String OUTCOME_FAILED = "failed";
+    // Will be sent again, by the bus or the outbox
+    public static final String OUTCOME_RETRIED = "retried";
+
+    private static final String UNKNOWN_TAG_VALUE = "none";
+    // Reserved by the name encoding
+    private static final CharMatcher TAG_RESERVED_CHARS = CharMatcher.anyOf(";= ");
+
+    private final Supplier<MetricRegistry> registrySupplier;
+    private final Map<String, Gauge<?>> gauges = new ConcurrentHashMap<String, Gauge<?>>();
+
+    // Registry the gauges are registered with
+    private volatile MetricRegistry gaugesRegistry;
+
+    public EmailNotificationMetrics(final Supplier<MetricRegistry> registrySupplier) {
+        this.registrySupplier = registrySupplier;
+    }
+
+    /**
+     * @param name gauge name, without the plugin prefix
+     */
+    public void registerGauge(final String name, final Gauge<?> gauge) {
+        final String metricName = metricName(name);
+        synchronized (gauges) {
+            gauges.put(metricName, gauge);
+            if (gaugesRegistry != null) {
+                register(gaugesRegistry, metricName, gauge);
+            }
+        }
+        // Registered right away if the registry is already available
+        getRegistry();
+    }
+
+    public void unregisterGauges() {
+        synchronized (gauges) {
+            if (gaugesRegistry != null) {
+                for (final String metricName : gauges.keySet()) {
+                    gaugesRegistry.remove(metricName);
+                }
+            }
+            gauges.clear();
+            gaugesRegistry = null;
+        }
+    }
+
+    public void recordTiming(final String name, final long durationNanos, final Object... tags) {
+        final MetricRegistry registry = getRegistry();
+        if (registry != null) {
+            registry.timer(metricName(name, tags)).update(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void increment(final String name, final Object... tags) {
+        final MetricRegistry registry = getRegistry();
+        if (registry != null) {
+            registry.counter(metricName(name, tags)).inc(1);
+        }
+    }
+
+    public void recordValue(final String name, final long value, final Object... tags) {
+        final MetricRegistry registry = getRegistry();
+        if (registry != null) {
+            registry.histogram(metricName(name, tags)).update(value);
+        }
+    }
+
+    private MetricRegistry getRegistry() {
+        final MetricRegistry registry = registrySupplier.get();
+        if (registry != null && registry != gaugesRegistry) {
+            synchronized (gauges) {
+                if (registry != gaugesRegistry) {
+                    for (final Map.Entry<String, Gauge<?>> gauge : gauges.entrySet()) {
+                        register(registry, gauge.getKey(), gauge.getValue());
+                    }
+                    gaugesRegistry = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    private static <T> void register(final MetricRegistry registry, final String metricName, final Gauge<T> gauge) {
+        registry.gauge(metricName, gauge);
+    }
+
+    /**
+     * @param name metric name, without the plugin prefix
+     * @param tags tag names and values, alternatively
+     * @return the metric name, with the tags encoded
+     */
+    static String metricName(final String name, final Object... tags) {
+        Preconditions.checkArgument(tags.length % 2 == 0, "Tags must be name/value pairs: %s", tags.length);
+        final StringBuilder metricName = new StringBuilder(PREFIX).append(name);
+        for (int i = 0; i < tags.length; i += 2) {
+            metricName.append(';')
+                      .append(tags[i])
+                      .append('=')
+                      .append(tagValue(tags[i + 1]));
+        }
+        return metricName.toString();
+    }
+
+    private static String tagValue(@Nullable final Object value) {
+        if (value == null) {
+            return UNKNOWN_TAG_VALUE;
+        }
+        return TAG_RESERVED_CHARS.replaceFrom(value.toString(), '_');
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.plugin.notification.util.VersionedCache;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Accounts and their CC emails, keyed by (tenant, account), so that the events of a single invoice run
+ * (e.g. INVOICE_CREATION then INVOICE_PAYMENT_SUCCESS) only look the account up once.
+ * <p>
+ * Entries are invalidated on ACCOUNT_CHANGE events (see {@link #invalidate(UUID, UUID)}). Adding or removing an
+ * account email doesn't trigger any event though: the TTL bounds how long such changes can be missed. Lookups
+ * overlapping with an invalidation (the bus dispatches ACCOUNT_CHANGE on another thread) aren't cached.
+ */
+class AccountCache {
+
+    static final long DEFAULT_MAX_SIZE = 10000;
+    static final long DEFAULT_TTL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final VersionedCache<AccountKey, Account> accounts;
+    private final VersionedCache<AccountKey, List<String>> ccEmails;
+
+    AccountCache(final long maxSize, final long ttlMs) {
+        this(maxSize, ttlMs, Ticker.systemTicker());
+    }
+
+    AccountCache(final long maxSize, final long ttlMs, final Ticker ticker) {
+        this.accounts = buildCache(maxSize, ttlMs, ticker);
+        this.ccEmails = buildCache(maxSize, ttlMs, ticker);
+    }
+
+    @Nullable
+    Account getAccountIfPresent(final UUID tenantId, final UUID accountId) {
+        return accounts.getIfPresent(new AccountKey(tenantId, accountId));
+    }
+
+    <E extends Exception> Account getAccount(final UUID tenantId, final UUID accountId, final VersionedCache.Loader<Account, E> loader) throws E {
+        return accounts.get(new AccountKey(tenantId, accountId), loader);
+    }
+
+    @Nullable
+    List<String> getCcEmailsIfPresent(final UUID tenantId, final UUID accountId) {
+        return ccEmails.getIfPresent(new AccountKey(tenantId, accountId));
+    }
+
+    <E extends Exception> List<String> getCcEmails(final UUID tenantId, final UUID accountId, final VersionedCache.Loader<List<String>, E> loader) throws E {
+        return ccEmails.get(new AccountKey(tenantId, accountId), loader);
+    }
+
+    void invalidate(final UUID tenantId, final UUID accountId) {
+        final AccountKey key = new AccountKey(tenantId, accountId);
+        accounts.invalidate(key);
+        ccEmails.invalidate(key);
+    }
+
+    long size() {
+        return accounts.size();
+    }
+
+    CacheStats accountStats() {
+        return accounts.stats();
+    }
+
+    private static <V> VersionedCache<AccountKey, V> buildCache(final long maxSize, final long ttlMs, final Ticker ticker) {
+        return new VersionedCache<AccountKey, V>(CacheBuilder.newBuilder()
+                                                             .maximumSize(maxSize)
+                                                             .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                                                             .ticker(ticker)
+                                                             .recordStats()
+                                                             .<AccountKey, V>build());
+    }
+
+    private static final class AccountKey {
+
+        private final UUID tenantId;
+        private final UUID accountId;
+
+        private AccountKey(final UUID tenantId, final UUID accountId) {
+            this.tenantId = tenantId;
+            this.accountId = accountId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final AccountKey that = (AccountKey) o;
+            return Objects.equal(tenantId, that.tenantId) &&
+                   Objects.equal(accountId, that.accountId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(tenantId, accountId);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("tenantId", tenantId)
+                              .add("accountId", accountId)
+                              .toString();
+        }
+    }
+}
@@ -20,6 +20,8 @@
 package org.killbill.billing.plugin.notification.setup;
 
 import java.util.Hashtable;
+import java.util.Locale;
+import java.util.Map;
 
 import javax.servlet.Servlet;
 import javax.servlet.http.HttpServlet;
@@ -33,16 +35,37 @@ import org.killbill.billing.plugin.core.resources.jooby.PluginApp;
 import org.killbill.billing.plugin.core.resources.jooby.PluginAppBuilder;
 import org.killbill.billing.plugin.notification.api.InvoiceFormatterFactory;
 import org.killbill.billing.plugin.notification.dao.ConfigurationDao;
+import org.killbill.billing.plugin.notification.generator.formatters.LocaleFormatters;
 import org.killbill.billing.plugin.notification.http.EmailNotificationServlet;
+import org.killbill.billing.plugin.notification.metrics.EmailNotificationMetrics;
+import org.killbill.billing.plugin.notification.util.ConfigPropertiesUtils;
+import org.killbill.billing.plugin.notification.util.LocaleUtils;
+import org.killbill.commons.metrics.api.Gauge;
+import org.killbill.commons.metrics.api.MetricRegistry;
 import org.osgi.framework.BundleContext;
 import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
 
 public class EmailNotificationActivator extends KillbillActivatorBase {
 
     public static final String PLUGIN_NAME = "killbill-email-notifications";
     public static final String PROPERTY_PREFIX = "org.killbill.billing.plugin.email-notifications.";
 
-    private OSGIKillbillEventDispatcher.OSGIKillbillEventHandler emailNotificationListener;
+    // Comma separated list of locales (e.g. en_US,fr_FR), on top of the default one, to initialize at startup
+    private static final String WARMUP_LOCALES_PROPERTY = PROPERTY_PREFIX + "formatters.warmupLocales";
+    private static final String EVENT_TYPES_CACHE_MAX_SIZE_PROPERTY = PROPERTY_PREFIX + "eventTypes.cache.maxSize";
+    private static final String EVENT_TYPES_CACHE_TTL_PROPERTY = PROPERTY_PREFIX + "eventTypes.cache.ttl";
+    // ROWS (default), BITMASK or BINARY_IDS: see ConfigurationDao.StorageModel
+    private static final String EVENT_TYPES_STORAGE_PROPERTY = PROPERTY_PREFIX + "eventTypes.storage";
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailNotificationActivator.class);
+
+    private EmailNotificationListener emailNotificationListener;
+    private EmailNotificationMetrics metrics;
     private EmailNotificationConfigurationHandler emailNotificationConfigurationHandler;
     private ServiceTracker<InvoiceFormatterFactory, InvoiceFormatterFactory> invoiceFormatterTracker;
 
@@ -61,10 +84,22 @@ public class EmailNotificationActivator extends KillbillActivatorBase {
         invoiceFormatterTracker = new ServiceTracker<>(context, InvoiceFormatterFactory.class, null);
         invoiceFormatterTracker.open();
 
+        // Shared by the listener and the servlet, so that updates invalidate the cached registrations
+        final ConfigurationDao configurationDao = new ConfigurationDao(dataSource.getDataSource(),
+                                                                       ConfigPropertiesUtils.getLongProperty(configProperties, EVENT_TYPES_CACHE_MAX_SIZE_PROPERTY, ConfigurationDao.DEFAULT_EVENT_TYPES_CACHE_MAX_SIZE),
+                                                                       ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, EVENT_TYPES_CACHE_TTL_PROPERTY, ConfigurationDao.DEFAULT_EVENT_TYPES_CACHE_TTL_MS),
+                                                                       getStorageModel());
+
+        // The metric registry service may only be tracked later on
+        metrics = new EmailNotificationMetrics(this::getMetricRegistry);
+
         // Register an event listener (optional)
-        emailNotificationListener = new EmailNotificationListener(clock, killbillAPI, configProperties, dataSource, emailNotificationConfigurationHandler, invoiceFormatterTracker);
+        emailNotificationListener = new EmailNotificationListener(clock, killbillAPI, configProperties, dataSource, configurationDao, emailNotificationConfigurationHandler, invoiceFormatterTracker, metrics);
+        emailNotificationListener.start();
 
-        final ConfigurationDao configurationDao = new ConfigurationDao(dataSource.getDataSource());
+        // So that the first email after a restart doesn't pay for the formatters initialization
+        warmUpFormatters();
+        registerPipelineGauges();
 
         // Register a servlet (optional)
         final PluginApp pluginApp = new PluginAppBuilder(PLUGIN_NAME,
@@ -81,6 +116,13 @@ public class EmailNotificationActivator extends KillbillActivatorBase {
 
     @Override
     public void stop(final BundleContext context) throws Exception {
+        // Before the Kill Bill APIs and the data source are released: the queued emails are still fetched and sent,
+        // and the outbox is still updated, while draining
+        if (emailNotificationListener != null) {
+            unregisterPipelineGauges();
+            emailNotificationListener.shutdown();
+        }
+
         super.stop(context);
 
         if (invoiceFormatterTracker != null) {
@@ -88,6 +130,58 @@ public class EmailNotificationActivator extends KillbillActivatorBase {
         }
     }
 
+    @VisibleForTesting
+    void setEmailNotificationListener(final EmailNotificationListener emailNotificationListener) {
+        this.emailNotificationListener = emailNotificationListener;
+    }
+
+
+    private void registerPipelineGauges() {
+        final Map<String, Integer> queueSizes = emailNotificationListener.getPipelineQueueSizes();
+        if (queueSizes == null) {
+            return;
+        }
+
+        // Published once the metric registry is available
+        for (final String stage : queueSizes.keySet()) {
+            metrics.registerGauge(getPipelineGaugeName(stage), (Gauge<Integer>) () -> emailNotificationListener.getPipelineQueueSizes().get(stage));
+        }
+    }
+
+    private void unregisterPipelineGauges() {
+        if (metrics != null) {
+            metrics.unregisterGauges();
+        }
+    }
+
+    private MetricRegistry getMetricRegistry() {
+        return metricRegistry == null ? null : metricRegistry.getMetricRegistry();
+    }
+
+    private static String getPipelineGaugeName(final String stage) {
+        return "pipeline." + stage + ".queueSize";
+    }
+
+    private ConfigurationDao.StorageModel getStorageModel() {
+        final String storageModel = configProperties.getString(EVENT_TYPES_STORAGE_PROPERTY);
+        return storageModel == null ? ConfigurationDao.StorageModel.ROWS : ConfigurationDao.StorageModel.valueOf(storageModel.trim().toUpperCase());
+    }
+
+    private void warmUpFormatters() {
+        LocaleFormatters.warmUp(Locale.getDefault());
+
+        final String warmupLocales = configProperties.getString(WARMUP_LOCALES_PROPERTY);
+        if (warmupLocales == null) {
+            return;
+        }
+        for (final String locale : Splitter.on(',').trimResults().omitEmptyStrings().split(warmupLocales)) {
+            try {
+                LocaleFormatters.warmUp(LocaleUtils.toLocale(locale));
+            } catch (final IllegalArgumentException e) {
+                logger.warn("Ignoring invalid locale {} in {}", locale, WARMUP_LOCALES_PROPERTY);
+            }
+        }
+    }
 
     private void registerHandlers() {
 
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.notification.plugin.api.ExtBusEvent;
+import org.killbill.billing.plugin.notification.email.EmailContent;
+import org.killbill.billing.plugin.notification.exception.EmailNotificationException;
+import org.killbill.billing.tenant.api.TenantApiException;
+import org.killbill.billing.util.callcontext.TenantContext;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * State of the email for a given event, as it goes through the fetch, render and send stages.
+ * <p>
+ * Jobs are handed over from one stage to the next, and are never accessed by two stages at the same time.
+ */
+final class EmailNotificationJob {
+
+    interface EmailRenderer {
+
+        EmailContent render(Account account) throws IOException, TenantApiException, EmailNotificationException;
+    }
+
+    private final ExtBusEvent event;
+    private final TenantContext context;
+
+    // Set by the fetch stage
+    private Account account;
+    private List<String> cc;
+    private EmailRenderer renderer;
+
+    // Set by the render stage
+    private EmailContent emailContent;
+
+    // Duration of each step, in nanoseconds (parallel lookups record theirs concurrently)
+    private final Map<String, Long> timings = new LinkedHashMap<String, Long>();
+
+    EmailNotificationJob(final ExtBusEvent event, final TenantContext context) {
+        this.event = event;
+        this.context = context;
+    }
+
+    ExtBusEvent getEvent() {
+        return event;
+    }
+
+    TenantContext getContext() {
+        return context;
+    }
+
+    Account getAccount() {
+        return account;
+    }
+
+    void setAccount(final Account account) {
+        this.account = account;
+    }
+
+    List<String> getCc() {
+        return cc;
+    }
+
+    void setCc(final List<String> cc) {
+        this.cc = cc;
+    }
+
+    EmailRenderer getRenderer() {
+        return renderer;
+    }
+
+    void setRenderer(final EmailRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    EmailContent getEmailContent() {
+        return emailContent;
+    }
+
+    void setEmailContent(final EmailContent emailContent) {
+        this.emailContent = emailContent;
+    }
+
+    void recordTiming(final String step, final long durationNanos) {
+        synchronized (timings) {
+            timings.put(step, durationNanos);
+        }
+    }
+
+    Map<String, Long> getTimingsMs() {
+        final ImmutableMap.Builder<String, Long> timingsMs = ImmutableMap.builder();
+        synchronized (timings) {
+            for (final Map.Entry<String, Long> timing : timings.entrySet()) {
+                timingsMs.put(timing.getKey(), TimeUnit.NANOSECONDS.toMillis(timing.getValue()));
+            }
+        }
+        return timingsMs.build();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("eventType", event.getEventType())
+                          .add("objectId", event.getObjectId())
+                          .add("accountId", event.getAccountId())
+                          .add("tenantId", event.getTenantId())
+                          .toString();
+    }
+}
@@ -22,11 +22,16 @@ package org.killbill.billing.plugin.notification.setup;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.apache.commons.mail.EmailException;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
+import org.jooq.exception.DataAccessException;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountEmail;
@@ -57,13 +62,15 @@ import org.killbill.billing.payment.api.TransactionStatus;
 import org.killbill.billing.payment.api.TransactionType;
 import org.killbill.billing.plugin.notification.api.InvoiceFormatterFactory;
 import org.killbill.billing.plugin.notification.dao.ConfigurationDao;
-import org.killbill.billing.plugin.notification.dao.gen.tables.pojos.EmailNotificationsConfiguration;
+import org.killbill.billing.plugin.notification.dao.EmailOutboxDao;
 import org.killbill.billing.plugin.notification.email.EmailContent;
 import org.killbill.billing.plugin.notification.email.EmailSender;
 import org.killbill.billing.plugin.notification.exception.EmailNotificationException;
 import org.killbill.billing.plugin.notification.generator.ResourceBundleFactory;
 import org.killbill.billing.plugin.notification.generator.TemplateRenderer;
+import org.killbill.billing.plugin.notification.metrics.EmailNotificationMetrics;
 import org.killbill.billing.plugin.notification.templates.MustacheTemplateEngine;
+import org.killbill.billing.plugin.notification.util.ConfigPropertiesUtils;
 import org.killbill.billing.tenant.api.TenantApiException;
 import org.killbill.billing.util.callcontext.TenantContext;
 import org.osgi.util.tracker.ServiceTracker;
@@ -74,7 +81,9 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
 import com.samskivert.mustache.MustacheException;
 
 public class EmailNotificationListener implements OSGIKillbillEventDispatcher.OSGIKillbillEventHandler {
@@ -83,6 +92,50 @@ public class EmailNotificationListener implements OSGIKillbillEventDispatcher.OS
 
     private static final String INVOICE_DRY_RUN_TIME_PROPERTY = "org.killbill.invoice.dryRunNotificationSchedule";
 
+    private static final String CACHE_MAX_SIZE_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "cache.maxSize";
+    private static final String CACHE_TTL_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "cache.ttl";
+
+    // Process events off the bus thread (failed emails aren't retried by the bus in that case)
+    private static final String ASYNC_ENABLED_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "async.enabled";
+    private static final String ASYNC_FETCH_THREADS_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "async.fetch.threads";
+    private static final String ASYNC_FETCH_QUEUE_CAPACITY_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "async.fetch.queueCapacity";
+    private static final String ASYNC_RENDER_THREADS_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "async.render.threads";
+    private static final String ASYNC_RENDER_QUEUE_CAPACITY_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "async.render.queueCapacity";
+    private static final String ASYNC_SEND_THREADS_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "async.send.threads";
+    private static final String ASYNC_SEND_QUEUE_CAPACITY_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "async.send.queueCapacity";
+    private static final String ASYNC_DRAIN_TIMEOUT_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "async.drainTimeout";
+
+    // Failed emails are stored, already rendered, and retried by a background worker
+    private static final String OUTBOX_ENABLED_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "outbox.enabled";
+    private static final String OUTBOX_BATCH_SIZE_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "outbox.batchSize";
+    private static final String OUTBOX_POLL_INTERVAL_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "outbox.pollInterval";
+    private static final String OUTBOX_CLAIM_TIMEOUT_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "outbox.claimTimeout";
+    private static final String OUTBOX_MAX_ATTEMPTS_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "outbox.maxAttempts";
+    private static final String OUTBOX_INITIAL_BACKOFF_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "outbox.initialBackoff";
+    private static final String OUTBOX_MAX_BACKOFF_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "outbox.maxBackoff";
+    private static final String OUTBOX_SHUTDOWN_TIMEOUT_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "outbox.shutdownTimeout";
+
+    // Lookups needed by an email (account, account emails, invoice/payment/subscription) are made in parallel
+    private static final String FETCH_PARALLELISM_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "fetch.parallelism";
+    private static final String FETCH_TIMEOUT_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "fetch.timeout";
+
+    // Accounts and CC emails, invalidated on ACCOUNT_CHANGE
+    private static final String ACCOUNT_CACHE_MAX_SIZE_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "accountCache.maxSize";
+    private static final String ACCOUNT_CACHE_TTL_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "accountCache.ttl";
+
+    // Render the email bodies while they are sent over SMTP, instead of building them in memory first
+    private static final String STREAMING_ENABLED_PROPERTY = EmailNotificationActivator.PROPERTY_PREFIX + "streaming.enabled";
+
+    // 0 to make the lookups sequentially, in the calling thread
+    private static final int DEFAULT_FETCH_PARALLELISM = 8;
+    private static final long DEFAULT_FETCH_TIMEOUT_MS = 30000L;
+
+    private static final int DEFAULT_ASYNC_FETCH_THREADS = 4;
+    private static final int DEFAULT_ASYNC_RENDER_THREADS = 2;
+    private static final int DEFAULT_ASYNC_SEND_THREADS = 8;
+    private static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 1000;
+    private static final long DEFAULT_ASYNC_DRAIN_TIMEOUT_MS = 30000L;
+
     private static final NullDryRunArguments NULL_DRY_RUN_ARGUMENTS = new NullDryRunArguments();
 
     private final OSGIKillbillAPI osgiKillbillAPI;
@@ -92,6 +145,14 @@ public class EmailNotificationListener implements OSGIKillbillEventDispatcher.OS
     private final OSGIKillbillClock clock;
     private final ConfigurationDao dao;
     private final EmailNotificationConfigurationHandler emailNotificationConfigurationHandler;
+    // Null when events are processed on the bus thread
+    private final EmailNotificationPipeline pipeline;
+    private final EmailOutboxDao outboxDao;
+    private final FetchExecutor fetchExecutor;
+    private final AccountCache accountCache;
+    // Null when failed emails are retried by the bus instead
+    private final EmailOutboxWorker outboxWorker;
+    private final EmailNotificationMetrics metrics;
 
     public static final ImmutableList<ExtBusEventType> EVENTS_TO_CONSIDER = new ImmutableList.Builder()
             .add(ExtBusEventType.INVOICE_NOTIFICATION)
@@ -102,96 +163,418 @@ public class EmailNotificationListener implements OSGIKillbillEventDispatcher.OS
             .build();
 
     public EmailNotificationListener(final OSGIKillbillClock clock, final OSGIKillbillAPI killbillAPI, final OSGIConfigPropertiesService configProperties,
-                                     OSGIKillbillDataSource dataSource, EmailNotificationConfigurationHandler emailNotificationConfigurationHandler,
-                                     final ServiceTracker<InvoiceFormatterFactory, InvoiceFormatterFactory> invoiceFormatterTracker) throws SQLException {
+                                     OSGIKillbillDataSource dataSource, final ConfigurationDao dao, EmailNotificationConfigurationHandler emailNotificationConfigurationHandler,
+                                     final ServiceTracker<InvoiceFormatterFactory, InvoiceFormatterFactory> invoiceFormatterTracker,
+                                     final EmailNotificationMetrics metrics) throws SQLException {
         this.osgiKillbillAPI = killbillAPI;
         this.configProperties = configProperties;
         this.clock = clock;
+        this.metrics = metrics;
         this.emailSender = new EmailSender(configProperties);
-        this.templateRenderer = new TemplateRenderer(new MustacheTemplateEngine(), new ResourceBundleFactory(killbillAPI.getTenantUserApi()), killbillAPI.getTenantUserApi());
+        this.emailSender.setMetrics(metrics);
+        final long cacheMaxSize = ConfigPropertiesUtils.getLongProperty(configProperties, CACHE_MAX_SIZE_PROPERTY, TemplateRenderer.DEFAULT_CACHE_MAX_SIZE);
+        final long cacheTtlMs = ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, CACHE_TTL_PROPERTY, TemplateRenderer.DEFAULT_CACHE_TTL_MS);
+        this.templateRenderer = new TemplateRenderer(new MustacheTemplateEngine(),
+                                                     new ResourceBundleFactory(killbillAPI.getTenantUserApi(), cacheMaxSize, cacheTtlMs),
+                                                     killbillAPI.getTenantUserApi(),
+                                                     cacheMaxSize,
+                                                     cacheTtlMs);
         this.templateRenderer.setInvoiceFormatterTracker(invoiceFormatterTracker);
-        this.dao = new ConfigurationDao(dataSource.getDataSource());
+        this.templateRenderer.setMetrics(metrics);
+        this.templateRenderer.setStreamingBodies(ConfigPropertiesUtils.getBooleanProperty(configProperties, STREAMING_ENABLED_PROPERTY, false));
+        // Shared with the servlet, which invalidates the cached registrations on updates
+        this.dao = dao;
         this.emailNotificationConfigurationHandler = emailNotificationConfigurationHandler;
+        this.fetchExecutor = new FetchExecutor(ConfigPropertiesUtils.getIntProperty(configProperties, FETCH_PARALLELISM_PROPERTY, DEFAULT_FETCH_PARALLELISM),
+                                               ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, FETCH_TIMEOUT_PROPERTY, DEFAULT_FETCH_TIMEOUT_MS));
+        this.accountCache = new AccountCache(ConfigPropertiesUtils.getLongProperty(configProperties, ACCOUNT_CACHE_MAX_SIZE_PROPERTY, AccountCache.DEFAULT_MAX_SIZE),
+                                             ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, ACCOUNT_CACHE_TTL_PROPERTY, AccountCache.DEFAULT_TTL_MS));
+        this.pipeline = ConfigPropertiesUtils.getBooleanProperty(configProperties, ASYNC_ENABLED_PROPERTY, false) ? createPipeline() : null;
+        this.outboxDao = new EmailOutboxDao(dataSource.getDataSource());
+        this.outboxWorker = ConfigPropertiesUtils.getBooleanProperty(configProperties, OUTBOX_ENABLED_PROPERTY, true) && isOutboxInstalled() ? createOutboxWorker() : null;
+    }
+
+    public void start() {
+        if (outboxWorker != null) {
+            outboxWorker.start();
+        }
+    }
+
+    /**
+     * Send the queued emails, and stop the outbox worker.
+     * <p>
+     * The Kill Bill APIs and the data source must still be available, see {@link EmailNotificationActivator#stop}.
+     */
+    public void shutdown() {
+        if (pipeline != null) {
+            final long drainTimeoutMs = ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, ASYNC_DRAIN_TIMEOUT_PROPERTY, DEFAULT_ASYNC_DRAIN_TIMEOUT_MS);
+            try {
+                pipeline.drain(drainTimeoutMs);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while draining the email pipeline");
+            }
+        }
+
+        fetchExecutor.shutdown();
+
+        if (outboxWorker != null) {
+            try {
+                outboxWorker.stop();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while stopping the email outbox worker");
+            }
+        }
+
+        // Close the pooled SMTP connections and the SES clients
+        emailSender.close();
+    }
+
+    /**
+     * Queue sizes of the asynchronous pipeline stages.
+     *
+     * @return null if events are processed on the bus thread
+     */
+    public Map<String, Integer> getPipelineQueueSizes() {
+        if (pipeline == null) {
+            return null;
+        }
+        return ImmutableMap.<String, Integer>of("fetch", pipeline.getFetchQueueSize(),
+                                                "render", pipeline.getRenderQueueSize(),
+                                                "send", pipeline.getSendQueueSize());
+    }
+
+    private EmailNotificationPipeline createPipeline() {
+        logger.info("Emails will be processed asynchronously");
+        return new EmailNotificationPipeline(job -> processAsync(job, this::fetch),
+                                             ConfigPropertiesUtils.getIntProperty(configProperties, ASYNC_FETCH_THREADS_PROPERTY, DEFAULT_ASYNC_FETCH_THREADS),
+                                             ConfigPropertiesUtils.getIntProperty(configProperties, ASYNC_FETCH_QUEUE_CAPACITY_PROPERTY, DEFAULT_ASYNC_QUEUE_CAPACITY),
+                                             job -> processAsync(job, this::render),
+                                             ConfigPropertiesUtils.getIntProperty(configProperties, ASYNC_RENDER_THREADS_PROPERTY, DEFAULT_ASYNC_RENDER_THREADS),
+                                             ConfigPropertiesUtils.getIntProperty(configProperties, ASYNC_RENDER_QUEUE_CAPACITY_PROPERTY, DEFAULT_ASYNC_QUEUE_CAPACITY),
+                                             job -> processAsync(job, this::send),
+                                             ConfigPropertiesUtils.getIntProperty(configProperties, ASYNC_SEND_THREADS_PROPERTY, DEFAULT_ASYNC_SEND_THREADS),
+                                             ConfigPropertiesUtils.getIntProperty(configProperties, ASYNC_SEND_QUEUE_CAPACITY_PROPERTY, DEFAULT_ASYNC_QUEUE_CAPACITY));
+    }
+
+    private boolean isOutboxInstalled() {
+        if (outboxDao.isInstalled()) {
+            return true;
+        }
+        // E.g. upgraded installation: failed emails are handled like before the outbox
+        logger.warn("The email_notifications_outbox table can't be queried, failed emails won't be retried: run the plugin migrations, or set {}=false", OUTBOX_ENABLED_PROPERTY);
+        return false;
+    }
+
+    private EmailOutboxWorker createOutboxWorker() {
+        return new EmailOutboxWorker(outboxDao,
+                                     emailSender,
+                                     entry -> getConfiguration(new EmailNotificationContext(entry.getKbAccountId(), entry.getKbTenantId())).getSmtp(),
+                                     clock,
+                                     metrics,
+                                     ConfigPropertiesUtils.getIntProperty(configProperties, OUTBOX_BATCH_SIZE_PROPERTY, EmailOutboxWorker.DEFAULT_BATCH_SIZE),
+                                     ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, OUTBOX_POLL_INTERVAL_PROPERTY, EmailOutboxWorker.DEFAULT_POLL_INTERVAL_MS),
+                                     ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, OUTBOX_CLAIM_TIMEOUT_PROPERTY, EmailOutboxWorker.DEFAULT_CLAIM_TIMEOUT_MS),
+                                     ConfigPropertiesUtils.getIntProperty(configProperties, OUTBOX_MAX_ATTEMPTS_PROPERTY, EmailOutboxWorker.DEFAULT_MAX_ATTEMPTS),
+                                     ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, OUTBOX_INITIAL_BACKOFF_PROPERTY, EmailOutboxWorker.DEFAULT_INITIAL_BACKOFF_MS),
+                                     ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, OUTBOX_MAX_BACKOFF_PROPERTY, EmailOutboxWorker.DEFAULT_MAX_BACKOFF_MS),
+                                     ConfigPropertiesUtils.getTimeSpanPropertyMs(configProperties, OUTBOX_SHUTDOWN_TIMEOUT_PROPERTY, EmailOutboxWorker.DEFAULT_SHUTDOWN_TIMEOUT_MS));
     }
 
     @Override
     public void handleKillbillEvent(final ExtBusEvent killbillEvent) {
 
+        if (killbillEvent.getEventType() == ExtBusEventType.TENANT_CONFIG_CHANGE ||
+            killbillEvent.getEventType() == ExtBusEventType.TENANT_CONFIG_DELETION) {
+            // The metadata is the modified tenant key (e.g. a template or a translation)
+            templateRenderer.invalidateTenantCaches(killbillEvent.getTenantId(), killbillEvent.getMetaData());
+            return;
+        }
+
+        if (killbillEvent.getEventType() == ExtBusEventType.ACCOUNT_CHANGE) {
+            accountCache.invalidate(killbillEvent.getTenantId(), killbillEvent.getAccountId());
+            return;
+        }
+
         if (!EVENTS_TO_CONSIDER.contains(killbillEvent.getEventType())) {
             return;
         }
 
-        if(!isEventTypeAllowed(killbillEvent.getAccountId(),killbillEvent.getTenantId(),killbillEvent.getEventType()))
-        {
+        final EmailNotificationJob job = new EmailNotificationJob(killbillEvent, new EmailNotificationContext(killbillEvent.getAccountId(), killbillEvent.getTenantId()));
+        if (pipeline != null) {
+            pipeline.submit(job);
             return;
         }
 
         // TODO see https://github.com/killbill/killbill-platform/issues/5
         final ClassLoader previousClassLoader = Thread.currentThread().getContextClassLoader();
         Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
+        try {
+            if (fetch(job)) {
+                render(job);
+                send(job);
+            }
+        } catch (final EmailException e) {
+            logger.warn("Fail to send email for account {}", killbillEvent.getAccountId(), e);
+            recordOutcome(job, EmailNotificationMetrics.OUTCOME_RETRIED);
+            // Attempt a retry
+            throw new NotificationPluginApiRetryException(e);
+        } catch (final Exception e) {
+            recordOutcome(job, EmailNotificationMetrics.OUTCOME_FAILED);
+            if (!logFailure(job, e)) {
+                throw (RuntimeException) e;
+            }
+        } finally {
+            Thread.currentThread().setContextClassLoader(previousClassLoader);
+        }
+    }
 
+    // Runs a stage of the asynchronous pipeline
+    private boolean processAsync(final EmailNotificationJob job, final StageWork work) {
+        // TODO see https://github.com/killbill/killbill-platform/issues/5
+        final ClassLoader previousClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
         try {
-            final Account account = osgiKillbillAPI.getAccountUserApi().getAccountById(killbillEvent.getAccountId(), new EmailNotificationContext(killbillEvent.getAccountId(), killbillEvent.getTenantId()));
+            return work.run(job);
+        } catch (final EmailException e) {
+            // Outbox disabled or unavailable, and the bus can't retry the event anymore at this point
+            logger.warn("Fail to send email for account {}, job {}", job.getEvent().getAccountId(), job, e);
+            recordOutcome(job, EmailNotificationMetrics.OUTCOME_FAILED);
+            return false;
+        } catch (final Exception e) {
+            recordOutcome(job, EmailNotificationMetrics.OUTCOME_FAILED);
+            if (!logFailure(job, e)) {
+                logger.warn("Unexpected failure for {}", job, e);
+            }
+            return false;
+        } finally {
+            Thread.currentThread().setContextClassLoader(previousClassLoader);
+        }
+    }
+
+    private interface StageWork {
+
+        boolean run(EmailNotificationJob job) throws Exception;
+    }
+
+    // Returns false for unexpected runtime exceptions
+    private boolean logFailure(final EmailNotificationJob job, final Exception exception) {
+        final ExtBusEvent killbillEvent = job.getEvent();
+        if (exception instanceof EmailNotificationException) {
+            logger.warn(exception.getMessage(), exception);
+        } else if (exception instanceof AccountApiException) {
+            logger.warn("Unable to find account: {}", killbillEvent.getAccountId(), exception);
+        } else if (exception instanceof InvoiceApiException) {
+            logger.warn("Fail to retrieve invoice for account {}", killbillEvent.getAccountId(), exception);
+        } else if (exception instanceof SubscriptionApiException) {
+            logger.warn("Fail to retrieve subscription for account {}", killbillEvent.getAccountId(), exception);
+        } else if (exception instanceof PaymentApiException ||
+                   exception instanceof IOException ||
+                   exception instanceof TenantApiException) {
+            logger.warn("Fail to send email for account {}", killbillEvent.getAccountId(), exception);
+        } else if (exception instanceof IllegalArgumentException ||
+                   exception instanceof MustacheException) {
+            logger.warn(exception.getMessage(), exception);
+        } else if (exception instanceof RuntimeException) {
+            return false;
+        } else {
+            logger.warn("Fail to send email for account {}", killbillEvent.getAccountId(), exception);
+        }
+        return true;
+    }
+
+    /**
+     * Fetch stage: retrieve the account and the objects needed to render the email.
+     * <p>
+     * Independent lookups are made in parallel, each bounded by the fetch timeout.
+     *
+     * @return false if there is nothing to send
+     */
+    private boolean fetch(final EmailNotificationJob job) throws AccountApiException, InvoiceApiException, SubscriptionApiException, PaymentApiException, EmailNotificationException {
+        final ExtBusEvent killbillEvent = job.getEvent();
+        if (!isEventTypeAllowed(killbillEvent.getAccountId(), killbillEvent.getTenantId(), killbillEvent.getEventType())) {
+            recordOutcome(job, EmailNotificationMetrics.OUTCOME_FILTERED);
+            return false;
+        }
+
+        final long startNanos = System.nanoTime();
+        final TenantContext context = job.getContext();
+        final Future<Account> accountFuture = getAccount(job);
+        final Future<List<String>> ccFuture = getCcEmails(job);
+        final Future<EmailNotificationJob.EmailRenderer> rendererFuture;
+        switch (killbillEvent.getEventType()) {
+            case INVOICE_PAYMENT_SUCCESS:
+            case INVOICE_PAYMENT_FAILED:
+                rendererFuture = submitFetch(job, "payment", () -> prepareEmailForPayment(killbillEvent, context));
+                break;
+
+            case SUBSCRIPTION_CANCEL:
+                rendererFuture = submitFetch(job, "subscription", () -> prepareEmailForCancelledSubscription(killbillEvent, context));
+                break;
+
+            case INVOICE_CREATION:
+                rendererFuture = submitFetch(job, "invoice", () -> prepareEmailForInvoiceCreation(killbillEvent, context));
+                break;
+            default:
+                // The dry run needs the account
+                rendererFuture = null;
+                break;
+        }
+
+        try {
+            final Account account = fetchExecutor.await(accountFuture, "account");
             final String to = account.getEmail();
             if (to == null) {
                 logger.info("Account {} does not have an email address configured, skip...", account.getId());
-                return;
+                recordOutcome(job, EmailNotificationMetrics.OUTCOME_SKIPPED);
+                return false;
             }
 
-            final EmailNotificationContext context = new EmailNotificationContext(killbillEvent.getAccountId(), killbillEvent.getTenantId());
-            switch (killbillEvent.getEventType()) {
-                case INVOICE_NOTIFICATION:
-                    sendEmailForUpComingInvoice(account, killbillEvent, context);
-                    break;
-
-                case INVOICE_PAYMENT_SUCCESS:
-                case INVOICE_PAYMENT_FAILED:
-                    sendEmailForPayment(account, killbillEvent, context);
-                    break;
-
-                case SUBSCRIPTION_CANCEL:
-                    sendEmailForCancelledSubscription(account, killbillEvent, context);
-                    break;
-
-                case INVOICE_CREATION:
-                    sendEmailForInvoiceCreation(account, killbillEvent, context);
-                    break;
-                default:
-                    break;
+            final EmailNotificationJob.EmailRenderer renderer;
+            if (killbillEvent.getEventType() == ExtBusEventType.INVOICE_NOTIFICATION) {
+                final long dryRunStartNanos = System.nanoTime();
+                renderer = prepareEmailForUpComingInvoice(account, killbillEvent, context);
+                recordTiming(job, "fetch.dryRun", System.nanoTime() - dryRunStartNanos);
+            } else {
+                renderer = rendererFuture == null ? null : fetchExecutor.await(rendererFuture, "invoice, payment or subscription");
             }
 
             logger.info("Received event {} for object type = {}, id = {}",
-                         killbillEvent.getEventType(), killbillEvent.getObjectType(), killbillEvent.getObjectId());
-        } catch (final EmailNotificationException e) {
-            logger.warn(e.getMessage(), e);
-        } catch (final AccountApiException e) {
-            logger.warn("Unable to find account: {}", killbillEvent.getAccountId(), e);
-        } catch (InvoiceApiException e) {
-            logger.warn("Fail to retrieve invoice for account {}", killbillEvent.getAccountId(), e);
-        } catch (SubscriptionApiException e) {
-            logger.warn("Fail to retrieve subscription for account {}", killbillEvent.getAccountId(), e);
-        } catch (PaymentApiException e) {
-            logger.warn("Fail to send email for account {}", killbillEvent.getAccountId(), e);
-        } catch (EmailException e) {
-            logger.warn("Fail to send email for account {}", killbillEvent.getAccountId(), e);
-            // Attempt a retry
-            throw new NotificationPluginApiRetryException(e);
-        } catch (IOException e) {
-            logger.warn("Fail to send email for account {}", killbillEvent.getAccountId(), e);
-        } catch (TenantApiException e) {
-            logger.warn("Fail to send email for account {}", killbillEvent.getAccountId(), e);
-        } catch (IllegalArgumentException e) {
-            logger.warn(e.getMessage(), e);
-        } catch (MustacheException e) {
-            logger.warn(e.getMessage(), e);
+                        killbillEvent.getEventType(), killbillEvent.getObjectType(), killbillEvent.getObjectId());
+
+            if (renderer == null) {
+                recordOutcome(job, EmailNotificationMetrics.OUTCOME_SKIPPED);
+                return false;
+            }
+
+            job.setAccount(account);
+            job.setCc(fetchExecutor.await(ccFuture, "account emails"));
+            job.setRenderer(renderer);
+            return true;
         } finally {
-            Thread.currentThread().setContextClassLoader(previousClassLoader);
+            // No-op for completed lookups
+            fetchExecutor.abandon(accountFuture, ccFuture, rendererFuture);
+            recordTiming(job, "fetch", System.nanoTime() - startNanos);
+        }
+    }
+
+    private Future<Account> getAccount(final EmailNotificationJob job) {
+        final UUID tenantId = job.getContext().getTenantId();
+        final UUID accountId = job.getContext().getAccountId();
+        final Account cachedAccount = accountCache.getAccountIfPresent(tenantId, accountId);
+        if (cachedAccount != null) {
+            return Futures.immediateFuture(cachedAccount);
+        }
+        return submitFetch(job, "account", () -> accountCache.getAccount(tenantId, accountId, () -> osgiKillbillAPI.getAccountUserApi().getAccountById(accountId, job.getContext())));
+    }
+
+    private Future<List<String>> getCcEmails(final EmailNotificationJob job) {
+        final UUID tenantId = job.getContext().getTenantId();
+        final UUID accountId = job.getContext().getAccountId();
+        final List<String> cachedCcEmails = accountCache.getCcEmailsIfPresent(tenantId, accountId);
+        if (cachedCcEmails != null) {
+            return Futures.immediateFuture(cachedCcEmails);
+        }
+        return submitFetch(job, "accountEmails", () -> accountCache.getCcEmails(tenantId, accountId, () -> getCcEmails(accountId, job.getContext())));
+    }
+
+    private <T> Future<T> submitFetch(final EmailNotificationJob job, final String name, final Callable<T> fetch) {
+        return fetchExecutor.submit(() -> {
+            // TODO see https://github.com/killbill/killbill-platform/issues/5
+            final ClassLoader previousClassLoader = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(EmailNotificationListener.class.getClassLoader());
+            final long startNanos = System.nanoTime();
+            try {
+                return fetch.call();
+            } finally {
+                recordTiming(job, "fetch." + name, System.nanoTime() - startNanos);
+                Thread.currentThread().setContextClassLoader(previousClassLoader);
+            }
+        });
+    }
+
+    // Render stage
+    private boolean render(final EmailNotificationJob job) throws IOException, TenantApiException, EmailNotificationException {
+        final long startNanos = System.nanoTime();
+        try {
+            job.setEmailContent(job.getRenderer().render(job.getAccount()));
+        } finally {
+            recordTiming(job, "render", System.nanoTime() - startNanos);
+        }
+        return true;
+    }
+
+    // Send stage
+    private boolean send(final EmailNotificationJob job) throws EmailException, EmailNotificationException {
+        final Account account = job.getAccount();
+        final EmailContent emailContent = job.getEmailContent();
+        final EmailNotificationConfiguration emailNotificationConfiguration = getConfiguration(job.getContext());
+        final List<String> to = ImmutableList.of(account.getEmail());
+        final long startNanos = System.nanoTime();
+        try {
+            if (emailNotificationConfiguration.sendHTMLEmail()) {
+                emailSender.sendHTMLEmail(to, job.getCc(), emailContent, emailNotificationConfiguration.getSmtp());
+            } else {
+                emailSender.sendPlainTextEmail(to, job.getCc(), emailContent, emailNotificationConfiguration.getSmtp());
+            }
+            recordOutcome(job, EmailNotificationMetrics.OUTCOME_SENT);
+        } catch (final EmailException e) {
+            if (outboxWorker == null) {
+                throw e;
+            }
+            addToOutbox(job, to, emailNotificationConfiguration.sendHTMLEmail(), e);
+            recordOutcome(job, EmailNotificationMetrics.OUTCOME_RETRIED);
+        } finally {
+            recordTiming(job, "send", System.nanoTime() - startNanos);
+        }
+
+        logger.debug("Processed {}, timings in ms: {}", job, job.getTimingsMs());
+        return true;
+    }
+
+    private void recordTiming(final EmailNotificationJob job, final String step, final long durationNanos) {
+        job.recordTiming(step, durationNanos);
+        metrics.recordTiming(step,
+                             durationNanos,
+                             EmailNotificationMetrics.TAG_EVENT_TYPE, job.getEvent().getEventType(),
+                             EmailNotificationMetrics.TAG_TENANT, job.getEvent().getTenantId());
+    }
+
+    private void recordOutcome(final EmailNotificationJob job, final String outcome) {
+        metrics.increment("events",
+                          EmailNotificationMetrics.TAG_EVENT_TYPE, job.getEvent().getEventType(),
+                          EmailNotificationMetrics.TAG_TENANT, job.getEvent().getTenantId(),
+                          EmailNotificationMetrics.TAG_OUTCOME, outcome);
+    }
+
+    // Store the rendered email, so that retries don't have to fetch and render it again
+    private void addToOutbox(final EmailNotificationJob job, final List<String> to, final boolean html, final EmailException cause) throws EmailException {
+        final ExtBusEvent killbillEvent = job.getEvent();
+        final DateTime now = clock.getClock().getUTCNow();
+        try {
+            outboxDao.insert(killbillEvent.getAccountId(),
+                             killbillEvent.getTenantId(),
+                             killbillEvent.getEventType(),
+                             to,
+                             job.getCc(),
+                             job.getEmailContent().getSubject(),
+                             job.getEmailContent().getBody(),
+                             html,
+                             now.plus(outboxWorker.getBackoffMs(1)),
+                             cause.getMessage(),
+                             now);
+        } catch (final SQLException | DataAccessException e) {
+            // Let the bus retry the event instead
+            logger.warn("Unable to store email in the outbox for account {}", killbillEvent.getAccountId(), e);
+            throw cause;
         }
+        logger.info("Fail to send email for account {}, will retry from the outbox", killbillEvent.getAccountId(), cause);
     }
 
     private boolean isEventTypeAllowed(final UUID kbAccountId, final UUID kbTenantId, final ExtBusEventType eventType)
     {
-        final EmailNotificationsConfiguration registeredEventType;
+        final boolean registered;
         final EmailNotificationConfiguration configuration = emailNotificationConfigurationHandler.getConfigurable(kbTenantId);
 
         if (configuration.getEventTypes().contains(eventType.toString()))
@@ -200,21 +583,22 @@ public class EmailNotificationListener implements OSGIKillbillEventDispatcher.OS
         }
 
         try {
-            registeredEventType = this.dao.getEventTypePerAccount(kbAccountId,kbTenantId,eventType);
+            registered = this.dao.isEventTypeRegistered(kbAccountId, kbTenantId, eventType);
         } catch (SQLException e) {
             logger.error("Error retrieving email notification event registry", e);
             return false;
         }
 
-        if (registeredEventType == null) {
-            logger.warn("Registration of event {} is not available for account {}", eventType, kbAccountId);
+        if (!registered) {
+            // Most accounts don't register for most events
+            logger.debug("Registration of event {} is not available for account {}", eventType, kbAccountId);
             return false;
         }
 
         return true;
     }
 
-    private void sendEmailForUpComingInvoice(final Account account, final ExtBusEvent killbillEvent, final TenantContext context) throws IOException, InvoiceApiException, EmailException, TenantApiException, EmailNotificationException {
+    private EmailNotificationJob.EmailRenderer prepareEmailForUpComingInvoice(final Account account, final ExtBusEvent killbillEvent, final TenantContext context) throws InvoiceApiException {
 
         Preconditions.checkArgument(killbillEvent.getEventType() == ExtBusEventType.INVOICE_NOTIFICATION, String.format("Unexpected event %s", killbillEvent.getEventType()));
 
@@ -227,42 +611,44 @@ public class EmailNotificationListener implements OSGIKillbillEventDispatcher.OS
         final DateTime targetDateTime = now.plus(span.getMillis());
 
         final PluginCallContext callContext = new PluginCallContext(EmailNotificationActivator.PLUGIN_NAME, now, context.getAccountId(), context.getTenantId());
+        final Invoice invoice;
         try {
         	final EmailNotificationConfiguration emailNotificationConfiguration = getConfiguration(context);
         	osgiKillbillAPI.getSecurityApi().login(emailNotificationConfiguration.getAdminUsername(), emailNotificationConfiguration.getAdminPassword());
-        	final Invoice invoice = osgiKillbillAPI.getInvoiceUserApi().triggerDryRunInvoiceGeneration(
+        	invoice = osgiKillbillAPI.getInvoiceUserApi().triggerDryRunInvoiceGeneration(
                     account.getId(),
                     new LocalDate(targetDateTime, account.getTimeZone()),
                     NULL_DRY_RUN_ARGUMENTS,
                     Collections.emptyList(),
                     callContext);
-        	if (invoice != null) {
-        		final EmailContent emailContent = templateRenderer.generateEmailForUpComingInvoice(account, invoice, context);
-        		sendEmail(account, emailContent, context);
-        	}
         }
         finally {
         	osgiKillbillAPI.getSecurityApi().logout();
         }
+
+        if (invoice == null) {
+            return null;
+        }
+        return emailAccount -> templateRenderer.generateEmailForUpComingInvoice(emailAccount, invoice, context);
     }
     
-    private void sendEmailForCancelledSubscription(final Account account, final ExtBusEvent killbillEvent, final TenantContext context) throws SubscriptionApiException, IOException, EmailException, TenantApiException, EmailNotificationException {
+    private EmailNotificationJob.EmailRenderer prepareEmailForCancelledSubscription(final ExtBusEvent killbillEvent, final TenantContext context) throws SubscriptionApiException {
         Preconditions.checkArgument(killbillEvent.getEventType() == ExtBusEventType.SUBSCRIPTION_CANCEL, String.format("Unexpected event %s", killbillEvent.getEventType()));
         final UUID subscriptionId = killbillEvent.getObjectId();
 
         final Subscription subscription = osgiKillbillAPI.getSubscriptionApi().getSubscriptionForEntitlementId(subscriptionId, false, context);
-        if (subscription != null) {
-            final EmailContent emailContent = subscription.getState() == Entitlement.EntitlementState.CANCELLED ?
-                    templateRenderer.generateEmailForSubscriptionCancellationEffective(account, subscription, context) :
-                    templateRenderer.generateEmailForSubscriptionCancellationRequested(account, subscription, context);
-            sendEmail(account, emailContent, context);
+        if (subscription == null) {
+            return null;
         }
+        return account -> subscription.getState() == Entitlement.EntitlementState.CANCELLED ?
+                          templateRenderer.generateEmailForSubscriptionCancellationEffective(account, subscription, context) :
+                          templateRenderer.generateEmailForSubscriptionCancellationRequested(account, subscription, context);
     }
 
-    private void sendEmailForPayment(final Account account, final ExtBusEvent killbillEvent, final TenantContext context) throws InvoiceApiException, IOException, EmailException, PaymentApiException, TenantApiException, EmailNotificationException {
+    private EmailNotificationJob.EmailRenderer prepareEmailForPayment(final ExtBusEvent killbillEvent, final TenantContext context) throws InvoiceApiException, PaymentApiException {
         final UUID invoiceId = killbillEvent.getObjectId();
         if (invoiceId == null) {
-            return;
+            return null;
         }
 
         Preconditions.checkArgument(killbillEvent.getEventType() == ExtBusEventType.INVOICE_PAYMENT_FAILED || killbillEvent.getEventType() == ExtBusEventType.INVOICE_PAYMENT_SUCCESS, String.format("Unexpected event %s", killbillEvent.getEventType()));
@@ -270,7 +656,7 @@ public class EmailNotificationListener implements OSGIKillbillEventDispatcher.OS
         final Invoice invoice = osgiKillbillAPI.getInvoiceUserApi().getInvoice(invoiceId, context);
         if (invoice.getNumberOfPayments() == 0) {
             // Aborted payment? Maybe no default payment method...
-            return;
+            return null;
         }
         final InvoicePayment invoicePayment = invoice.getPayments().get(invoice.getNumberOfPayments() - 1);
 
@@ -280,51 +666,41 @@ public class EmailNotificationListener implements OSGIKillbillEventDispatcher.OS
         if (lastTransaction.getTransactionType() != TransactionType.PURCHASE &&
                 lastTransaction.getTransactionType() != TransactionType.REFUND) {
             // Ignore for now, but this is easy to add...
-            return;
+            return null;
         }
 
-        EmailContent emailContent = null;
         if (lastTransaction.getTransactionType() == TransactionType.REFUND && lastTransaction.getTransactionStatus() == TransactionStatus.SUCCESS) {
-            emailContent = templateRenderer.generateEmailForPaymentRefund(account, lastTransaction, context);
+            return account -> templateRenderer.generateEmailForPaymentRefund(account, lastTransaction, context);
         } else {
             if (lastTransaction.getTransactionType() == TransactionType.PURCHASE && lastTransaction.getTransactionStatus() == TransactionStatus.SUCCESS) {
-                emailContent = templateRenderer.generateEmailForSuccessfulPayment(account, invoice, context);
+                return account -> templateRenderer.generateEmailForSuccessfulPayment(account, invoice, context);
             } else if (lastTransaction.getTransactionType() == TransactionType.PURCHASE && lastTransaction.getTransactionStatus() == TransactionStatus.PAYMENT_FAILURE) {
-                emailContent = templateRenderer.generateEmailForFailedPayment(account, invoice, context);
+                return account -> templateRenderer.generateEmailForFailedPayment(account, invoice, context);
             }
         }
-        if (emailContent != null) {
-            sendEmail(account, emailContent, context);
-        }
+        return null;
     }
 
-    private void sendEmailForInvoiceCreation(final Account account, final ExtBusEvent killbillEvent, final TenantContext context) throws InvoiceApiException, IOException, TenantApiException, EmailException, EmailNotificationException {
+    private EmailNotificationJob.EmailRenderer prepareEmailForInvoiceCreation(final ExtBusEvent killbillEvent, final TenantContext context) throws InvoiceApiException {
         Preconditions.checkArgument(killbillEvent.getEventType() == ExtBusEventType.INVOICE_CREATION, String.format("Unexpected event %s", killbillEvent.getEventType()));
 
         final Invoice invoice = osgiKillbillAPI.getInvoiceUserApi().getInvoice(killbillEvent.getObjectId(), context);
-        if (invoice != null) {
-            final EmailContent emailContent = templateRenderer.generateEmailForInvoiceCreation(account, invoice, context);
-            sendEmail(account, emailContent, context);
-        } else {
+        if (invoice == null) {
             logger.warn("Fail to send email for account {}. Invoice not found for object {}", killbillEvent.getAccountId().toString(),
                         killbillEvent.getObjectId().toString());
+            return null;
         }
+        return account -> templateRenderer.generateEmailForInvoiceCreation(account, invoice, context);
     }
 
-    private void sendEmail(final Account account, final EmailContent emailContent, final TenantContext context) throws IOException, EmailException, EmailNotificationException {
-        final Iterable<String> cc = Iterables.transform(osgiKillbillAPI.getAccountUserApi().getEmails(account.getId(), context), new Function<AccountEmail, String>() {
+    private List<String> getCcEmails(final UUID accountId, final TenantContext context) {
+        final Iterable<String> cc = Iterables.transform(osgiKillbillAPI.getAccountUserApi().getEmails(accountId, context), new Function<AccountEmail, String>() {
             @Override
             public String apply(final AccountEmail input) {
                 return input == null ? null : input.getEmail();
             }
         });
-
-        final EmailNotificationConfiguration emailNotificationConfiguration = getConfiguration(context);
-        if (emailNotificationConfiguration.sendHTMLEmail()) {
-            emailSender.sendHTMLEmail(ImmutableList.of(account.getEmail()), ImmutableList.copyOf(cc), emailContent.getSubject(), emailContent.getBody(), emailNotificationConfiguration.getSmtp());
-        } else {
-            emailSender.sendPlainTextEmail(ImmutableList.of(account.getEmail()), ImmutableList.copyOf(cc), emailContent.getSubject(), emailContent.getBody(), emailNotificationConfiguration.getSmtp());
-        }
+        return ImmutableList.copyOf(cc);
     }
 
     private static final class EmailNotificationContext implements TenantContext {
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.notification.plugin.api.ExtBusEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Fetch, render and send stages, each with its own bounded queue and worker pool, so that the Kill Bill bus thread
+ * only has to enqueue the event.
+ * <p>
+ * When a queue is full, the job is processed by the submitting thread instead (the bus thread for the fetch stage):
+ * this slows down the producer rather than dropping emails.
+ */
+class EmailNotificationPipeline {
+
+    interface Stage {
+
+        /**
+         * Process the job. Failures must be handled by the stage itself.
+         *
+         * @param job the job
+         * @return true if the job should be handed over to the next stage
+         */
+        boolean process(EmailNotificationJob job);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailNotificationPipeline.class);
+
+    private final PipelineStage fetchStage;
+    private final PipelineStage renderStage;
+    private final PipelineStage sendStage;
+    private final List<PipelineStage> stages;
+
+    EmailNotificationPipeline(final Stage fetch, final int fetchThreads, final int fetchQueueCapacity,
+                              final Stage render, final int renderThreads, final int renderQueueCapacity,
+                              final Stage send, final int sendThreads, final int sendQueueCapacity) {
+        this.sendStage = new PipelineStage("send", send, sendThreads, sendQueueCapacity, null);
+        this.renderStage = new PipelineStage("render", render, renderThreads, renderQueueCapacity, sendStage);
+        this.fetchStage = new PipelineStage("fetch", fetch, fetchThreads, fetchQueueCapacity, renderStage);
+        // In processing order, which is also the draining order
+        this.stages = ImmutableList.of(fetchStage, renderStage, sendStage);
+    }
+
+    void submit(final EmailNotificationJob job) {
+        fetchStage.submit(job);
+    }
+
+    int getFetchQueueSize() {
+        return fetchStage.executor.getQueue().size();
+    }
+
+    int getRenderQueueSize() {
+        return renderStage.executor.getQueue().size();
+    }
+
+    int getSendQueueSize() {
+        return sendStage.executor.getQueue().size();
+    }
+
+    /**
+     * Stop accepting new jobs, and wait for the queued ones to go through all the stages.
+     *
+     * @param timeoutMs max time to wait for
+     * @return true if all jobs were processed
+     */
+    boolean drain(final long timeoutMs) throws InterruptedException {
+        final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        boolean drained = true;
+        for (final PipelineStage stage : stages) {
+            // Upstream stages are terminated at this point: nothing will be submitted anymore
+            stage.executor.shutdown();
+            if (!stage.executor.awaitTermination(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                final List<Runnable> dropped = stage.executor.shutdownNow();
+                logger.warn("Timed out draining the {} stage of the email pipeline: {} emails dropped", stage.name, dropped.size());
+                // The events were acknowledged on the bus: these emails won't be sent
+                for (final Runnable task : dropped) {
+                    final ExtBusEvent event = ((StageTask) task).job.getEvent();
+                    logger.warn("Email dropped by the {} stage for account {}: eventType='{}', objectId='{}'",
+                                stage.name,
+                                event == null ? null : event.getAccountId(),
+                                event == null ? null : event.getEventType(),
+                                event == null ? null : event.getObjectId());
+                }
+                drained = false;
+            }
+        }
+        return drained;
+    }
+
+    private static final class PipelineStage {
+
+        private final String name;
+        private final Stage stage;
+        private final PipelineStage next;
+        private final ThreadPoolExecutor executor;
+
+        private PipelineStage(final String name, final Stage stage, final int threads, final int queueCapacity, final PipelineStage next) {
+            this.name = name;
+            this.stage = stage;
+            this.next = next;
+            this.executor = new ThreadPoolExecutor(threads,
+                                                   threads,
+                                                   0L,
+                                                   TimeUnit.MILLISECONDS,
+                                                   new ArrayBlockingQueue<Runnable>(queueCapacity),
+                                                   new ThreadFactoryBuilder().setNameFormat("email-notifications-" + name + "-%d")
+                                                                             .setDaemon(true)
+                                                                             .build(),
+                                                   new RunInCallerPolicy());
+        }
+
+        private void submit(final EmailNotificationJob job) {
+            executor.execute(new StageTask(this, job));
+        }
+    }
+
+    // Keeps the job, so that jobs dropped while draining can be reported
+    private static final class StageTask implements Runnable {
+
+        private final PipelineStage pipelineStage;
+        private final EmailNotificationJob job;
+
+        private StageTask(final PipelineStage pipelineStage, final EmailNotificationJob job) {
+            this.pipelineStage = pipelineStage;
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            if (pipelineStage.stage.process(job) && pipelineStage.next != null) {
+                pipelineStage.next.submit(job);
+            }
+        }
+    }
+
+    // Unlike ThreadPoolExecutor.CallerRunsPolicy, also runs the task when the executor is shutting down, so that
+    // jobs handed over by upstream stages while draining aren't lost
+    private static final class RunInCallerPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor) {
+            runnable.run();
+        }
+    }
+}
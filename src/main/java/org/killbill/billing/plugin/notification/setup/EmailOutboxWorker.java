@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.mail.EmailException;
+import org.joda.time.DateTime;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillClock;
+import org.killbill.billing.plugin.notification.dao.EmailOutboxDao;
+import org.killbill.billing.plugin.notification.dao.EmailOutboxEntry;
+import org.killbill.billing.plugin.notification.email.EmailSender;
+import org.killbill.billing.plugin.notification.email.SmtpProperties;
+import org.killbill.billing.plugin.notification.exception.EmailNotificationException;
+import org.killbill.billing.plugin.notification.metrics.EmailNotificationMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Delivers the emails stored in the outbox, retrying with an exponential backoff.
+ * <p>
+ * Emails are already rendered: a retry is only a resend.
+ */
+class EmailOutboxWorker {
+
+    static final int DEFAULT_BATCH_SIZE = 50;
+    static final long DEFAULT_POLL_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+    static final long DEFAULT_CLAIM_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+    static final int DEFAULT_MAX_ATTEMPTS = 10;
+    static final long DEFAULT_INITIAL_BACKOFF_MS = TimeUnit.SECONDS.toMillis(30);
+    static final long DEFAULT_MAX_BACKOFF_MS = TimeUnit.HOURS.toMillis(1);
+    // Max time the plugin stop waits for the in-flight deliveries
+    static final long DEFAULT_SHUTDOWN_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxWorker.class);
+
+    interface SmtpPropertiesProvider {
+
+        SmtpProperties getSmtpProperties(EmailOutboxEntry entry);
+    }
+
+    private final EmailOutboxDao dao;
+    private final EmailSender emailSender;
+    private final SmtpPropertiesProvider smtpPropertiesProvider;
+    private final OSGIKillbillClock clock;
+    private final EmailNotificationMetrics metrics;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final long claimTimeoutMs;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final long shutdownTimeoutMs;
+
+    private ScheduledExecutorService executor;
+    private volatile boolean stopping;
+
+    EmailOutboxWorker(final EmailOutboxDao dao,
+                      final EmailSender emailSender,
+                      final SmtpPropertiesProvider smtpPropertiesProvider,
+                      final OSGIKillbillClock clock,
+                      final EmailNotificationMetrics metrics,
+                      final int batchSize,
+                      final long pollIntervalMs,
+                      final long claimTimeoutMs,
+                      final int maxAttempts,
+                      final long initialBackoffMs,
+                      final long maxBackoffMs,
+                      final long shutdownTimeoutMs) {
+        this.dao = dao;
+        this.emailSender = emailSender;
+        this.smtpPropertiesProvider = smtpPropertiesProvider;
+        this.clock = clock;
+        this.metrics = metrics;
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.claimTimeoutMs = claimTimeoutMs;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        stopping = false;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("email-notifications-outbox-%d")
+                                                                                        .setDaemon(true)
+                                                                                        .build());
+        executor.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() throws InterruptedException {
+        if (executor == null) {
+            return;
+        }
+        // The in-flight delivery completes (and its entry is deleted or rescheduled), the other claimed entries will be
+        // picked up again once their claim expires
+        stopping = true;
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+            logger.warn("Timed out stopping the email outbox worker");
+            executor.shutdownNow();
+        }
+        executor = null;
+    }
+
+    /**
+     * Time to wait before the next attempt.
+     *
+     * @param attempts number of attempts made so far
+     */
+    long getBackoffMs(final int attempts) {
+        long backoffMs = initialBackoffMs;
+        for (int i = 1; i < attempts && backoffMs < maxBackoffMs; i++) {
+            backoffMs *= 2;
+        }
+        return Math.min(backoffMs, maxBackoffMs);
+    }
+
+    /**
+     * Deliver the due entries, until there are none left.
+     *
+     * @return number of entries processed
+     */
+    int poll() {
+        // TODO see https://github.com/killbill/killbill-platform/issues/5
+        final ClassLoader previousClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
+        int processed = 0;
+        try {
+            List<EmailOutboxEntry> entries;
+            do {
+                final DateTime now = clock.getClock().getUTCNow();
+                entries = dao.claimBatch(batchSize, now.plus(claimTimeoutMs), now);
+                for (final EmailOutboxEntry entry : entries) {
+                    if (stopping) {
+                        return processed;
+                    }
+                    deliver(entry);
+                    processed++;
+                }
+            } while (entries.size() == batchSize && !stopping && !Thread.currentThread().isInterrupted());
+        } catch (final SQLException e) {
+            logger.warn("Unable to poll the email outbox", e);
+        } catch (final RuntimeException e) {
+            // Don't let the exception cancel the scheduled task
+            logger.warn("Unexpected failure while delivering the email outbox", e);
+        } finally {
+            Thread.currentThread().setContextClassLoader(previousClassLoader);
+        }
+        return processed;
+    }
+
+    private void deliver(final EmailOutboxEntry entry) throws SQLException {
+        try {
+            final SmtpProperties smtpProperties = smtpPropertiesProvider.getSmtpProperties(entry);
+            if (entry.isHtml()) {
+                emailSender.sendHTMLEmail(entry.getTo(), entry.getCc(), entry.getSubject(), entry.getBody(), smtpProperties);
+            } else {
+                emailSender.sendPlainTextEmail(entry.getTo(), entry.getCc(), entry.getSubject(), entry.getBody(), smtpProperties);
+            }
+        } catch (final EmailNotificationException e) {
+            // Invalid configuration or recipients: retrying won't help
+            logger.warn("Unable to deliver email {}", entry, e);
+            dao.markFailed(entry.getRecordId(), e.getMessage(), clock.getClock().getUTCNow());
+            recordOutcome(entry, EmailNotificationMetrics.OUTCOME_FAILED);
+            return;
+        } catch (final EmailException | RuntimeException e) {
+            final DateTime now = clock.getClock().getUTCNow();
+            if (entry.getAttempts() >= maxAttempts) {
+                logger.warn("Giving up on email {} after {} attempts", entry, entry.getAttempts(), e);
+                dao.markFailed(entry.getRecordId(), e.getMessage(), now);
+                recordOutcome(entry, EmailNotificationMetrics.OUTCOME_FAILED);
+            } else {
+                logger.info("Fail to deliver email {}, will retry", entry, e);
+                dao.reschedule(entry.getRecordId(), now.plus(getBackoffMs(entry.getAttempts())), e.getMessage(), now);
+                recordOutcome(entry, EmailNotificationMetrics.OUTCOME_RETRIED);
+            }
+            return;
+        }
+
+        dao.delete(entry.getRecordId());
+        recordOutcome(entry, EmailNotificationMetrics.OUTCOME_SENT);
+        // Includes the failed attempts
+        metrics.recordValue("outbox.attempts",
+                            entry.getAttempts(),
+                            EmailNotificationMetrics.TAG_EVENT_TYPE, entry.getEventType());
+    }
+
+    private void recordOutcome(final EmailOutboxEntry entry, final String outcome) {
+        metrics.increment("outbox.deliveries",
+                          EmailNotificationMetrics.TAG_EVENT_TYPE, entry.getEventType(),
+                          EmailNotificationMetrics.TAG_TENANT, entry.getKbTenantId(),
+                          EmailNotificationMetrics.TAG_OUTCOME, outcome);
+    }
+}
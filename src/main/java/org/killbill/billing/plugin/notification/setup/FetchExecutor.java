@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.entitlement.api.SubscriptionApiException;
+import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.plugin.notification.exception.EmailNotificationErrorCode;
+import org.killbill.billing.plugin.notification.exception.EmailNotificationException;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the independent lookups of an email (account, account emails, invoice/payment/subscription) in parallel.
+ * <p>
+ * Lookups are never interrupted: they may be inside Kill Bill API or JDBC calls, and the threads are reused.
+ * Abandoned lookups (timeout, failure of a sibling lookup) run to completion, and their result is ignored.
+ */
+class FetchExecutor {
+
+    private final ExecutorService executor;
+    private final long timeoutMs;
+
+    /**
+     * @param parallelism max number of concurrent lookups, 0 to make them sequentially, in the calling thread
+     * @param timeoutMs   max time to wait for each lookup
+     */
+    FetchExecutor(final int parallelism, final long timeoutMs) {
+        this.executor = parallelism <= 0 ?
+                        MoreExecutors.newDirectExecutorService() :
+                        Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder().setNameFormat("email-notifications-fetcher-%d")
+                                                                                            .setDaemon(true)
+                                                                                            .build());
+        this.timeoutMs = timeoutMs;
+    }
+
+    <T> Future<T> submit(final Callable<T> lookup) {
+        return executor.submit(lookup);
+    }
+
+    // Rethrow the lookup failure as is, so that it's handled like a sequential lookup failure
+    <T> T await(final Future<T> future, final String name) throws AccountApiException, InvoiceApiException, SubscriptionApiException, PaymentApiException, EmailNotificationException {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            future.cancel(false);
+            throw new EmailNotificationException(e, EmailNotificationErrorCode.FETCH_TIMEOUT, timeoutMs, name);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmailNotificationException(e, EmailNotificationErrorCode.FETCH_FAILED, name);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof AccountApiException) {
+                throw (AccountApiException) cause;
+            } else if (cause instanceof InvoiceApiException) {
+                throw (InvoiceApiException) cause;
+            } else if (cause instanceof SubscriptionApiException) {
+                throw (SubscriptionApiException) cause;
+            } else if (cause instanceof PaymentApiException) {
+                throw (PaymentApiException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new EmailNotificationException(cause, EmailNotificationErrorCode.FETCH_FAILED, name);
+        }
+    }
+
+    /**
+     * Give up on lookups which are no longer needed: the pending ones are skipped, the running ones complete.
+     *
+     * @param futures the lookups (completed ones and nulls are ignored)
+     */
+    void abandon(@Nullable final Future<?>... futures) {
+        for (final Future<?> future : futures) {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    // Running lookups complete in the background
+    void shutdown() {
+        executor.shutdown();
+    }
+}
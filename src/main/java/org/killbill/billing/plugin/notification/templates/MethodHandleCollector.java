@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.templates;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.samskivert.mustache.DefaultCollector;
+import com.samskivert.mustache.Mustache;
+
+/**
+ * Resolves the template variables like the default collector, but calls the accessors through method handles instead
+ * of {@link Method#invoke(Object, Object...)}.
+ * <p>
+ * Fetchers are resolved once per (class, name) and shared by all the templates: jmustache only caches them per compiled
+ * template, i.e. per tenant template. Variables backed by fields or default interface methods are rare in our
+ * templates, and are still resolved by the default collector.
+ */
+class MethodHandleCollector extends DefaultCollector {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    // Mustache#createFetcher may return null, which a ConcurrentMap cannot hold
+    private static final Mustache.VariableFetcher NO_FETCHER = new Mustache.VariableFetcher() {
+        @Override
+        public Object get(final Object ctx, final String name) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    // Doesn't prevent the classes of a stopped plugin from being unloaded
+    private final ClassValue<ConcurrentMap<String, Mustache.VariableFetcher>> fetchers = new ClassValue<ConcurrentMap<String, Mustache.VariableFetcher>>() {
+        @Override
+        protected ConcurrentMap<String, Mustache.VariableFetcher> computeValue(final Class<?> type) {
+            return new ConcurrentHashMap<String, Mustache.VariableFetcher>();
+        }
+    };
+
+    @Override
+    public Mustache.VariableFetcher createFetcher(final Object ctx, final String name) {
+        final ConcurrentMap<String, Mustache.VariableFetcher> classFetchers = fetchers.get(ctx.getClass());
+        Mustache.VariableFetcher fetcher = classFetchers.get(name);
+        if (fetcher == null) {
+            // Concurrent misses may resolve the same accessor more than once, which is harmless
+            fetcher = resolveFetcher(ctx, name);
+            classFetchers.put(name, fetcher == null ? NO_FETCHER : fetcher);
+        }
+        return fetcher == NO_FETCHER ? null : fetcher;
+    }
+
+    private Mustache.VariableFetcher resolveFetcher(final Object ctx, final String name) {
+        final Mustache.VariableFetcher defaultFetcher = super.createFetcher(ctx, name);
+        if (defaultFetcher == null || isBasicFetcher(ctx, defaultFetcher)) {
+            return defaultFetcher;
+        }
+
+        // Same lookup as the default collector: name(), getName() then isName(), up the class hierarchy
+        final Method method = getMethod(ctx.getClass(), name);
+        if (method == null) {
+            return defaultFetcher;
+        }
+        try {
+            // The default collector already made the method accessible
+            return new MethodHandleFetcher(MethodHandles.lookup().unreflect(method).asType(GETTER_TYPE));
+        } catch (final IllegalAccessException e) {
+            return defaultFetcher;
+        }
+    }
+
+    // Maps, lists, arrays and custom contexts, which don't need reflection
+    private static boolean isBasicFetcher(final Object ctx, final Mustache.VariableFetcher fetcher) {
+        return fetcher == CUSTOM_FETCHER ||
+               fetcher == MAP_FETCHER ||
+               fetcher == LIST_FETCHER ||
+               fetcher == ITER_FETCHER ||
+               ctx.getClass().isArray();
+    }
+
+    private static final class MethodHandleFetcher implements Mustache.VariableFetcher {
+
+        private final MethodHandle getter;
+
+        private MethodHandleFetcher(final MethodHandle getter) {
+            this.getter = getter;
+        }
+
+        @Override
+        public Object get(final Object ctx, final String name) throws Exception {
+            try {
+                return (Object) getter.invokeExact(ctx);
+            } catch (final Exception | Error e) {
+                throw e;
+            } catch (final Throwable t) {
+                throw new UndeclaredThrowableException(t);
+            }
+        }
+    }
+}
@@ -19,16 +19,130 @@
 
 package org.killbill.billing.plugin.notification.templates;
 
+import java.io.Writer;
 import java.util.Map;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.samskivert.mustache.Mustache;
 import com.samskivert.mustache.Template;
 
 public class MustacheTemplateEngine implements TemplateEngine {
 
+    // Max total size (in characters) of the template texts backing the cached compiled templates
+    public static final long DEFAULT_MAX_CACHE_WEIGHT = 4 * 1024 * 1024;
+
+    private final Mustache.Compiler compiler;
+    // Part of the cache key, so that compiled templates are never shared across compiler configurations
+    private final String compilerSettings;
+    private final Cache<TemplateKey, Template> templateCache;
+
+    public MustacheTemplateEngine() {
+        this(DEFAULT_MAX_CACHE_WEIGHT);
+    }
+
+    public MustacheTemplateEngine(final long maxCacheWeight) {
+        this(maxCacheWeight, new MethodHandleCollector());
+    }
+
+    public MustacheTemplateEngine(final long maxCacheWeight, final Mustache.Collector collector) {
+        // Compilers and compiled templates are immutable, and can safely be shared across threads
+        this.compiler = Mustache.compiler().nullValue("").withCollector(collector);
+        this.compilerSettings = "nullValue='',collector=" + collector.getClass().getName();
+        this.templateCache = CacheBuilder.newBuilder()
+                                         .maximumWeight(maxCacheWeight)
+                                         .weigher(new Weigher<TemplateKey, Template>() {
+                                             @Override
+                                             public int weigh(final TemplateKey key, final Template value) {
+                                                 return key.getLength();
+                                             }
+                                         })
+                                         .recordStats()
+                                         .build();
+    }
+
     @Override
     public String executeTemplateText(final String templateText, final Map<String, Object> data) {
-        final Template template = Mustache.compiler().nullValue("").compile(templateText);
-        return template.execute(data);
+        return getTemplate(templateText).execute(data);
+    }
+
+    @Override
+    public void executeTemplate(final String templateText, final Map<String, Object> data, final Writer writer) {
+        // Writer failures are reported as MustacheException
+        getTemplate(templateText).execute(data, writer);
+    }
+
+    public CacheStats getCacheStats() {
+        return templateCache.stats();
+    }
+
+    public long getCacheSize() {
+        return templateCache.size();
+    }
+
+    private Template getTemplate(final String templateText) {
+        // Template texts can be uploaded by any tenant: use a cryptographic hash so that collisions cannot be crafted
+        final TemplateKey key = new TemplateKey(compilerSettings, Hashing.sha256().hashString(templateText, Charsets.UTF_8), templateText.length());
+
+        Template template = templateCache.getIfPresent(key);
+        if (template == null) {
+            // Don't use Cache#get(K, Callable) to avoid wrapping MustacheException. Concurrent misses may compile
+            // the same text more than once, which is harmless.
+            template = compiler.compile(templateText);
+            templateCache.put(key, template);
+        }
+        return template;
+    }
+
+    private static final class TemplateKey {
+
+        private final String compilerSettings;
+        private final HashCode contentHash;
+        private final int length;
+
+        private TemplateKey(final String compilerSettings, final HashCode contentHash, final int length) {
+            this.compilerSettings = compilerSettings;
+            this.contentHash = contentHash;
+            this.length = length;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final TemplateKey that = (TemplateKey) o;
+            return length == that.length &&
+                   Objects.equal(compilerSettings, that.compilerSettings) &&
+                   Objects.equal(contentHash, that.contentHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(compilerSettings, contentHash, length);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("compilerSettings", compilerSettings)
+                              .add("contentHash", contentHash)
+                              .add("length", length)
+                              .toString();
+        }
     }
 }
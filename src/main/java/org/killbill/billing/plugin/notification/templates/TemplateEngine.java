@@ -19,10 +19,24 @@
 
 package org.killbill.billing.plugin.notification.templates;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Map;
 
 public interface TemplateEngine {
 
     public String executeTemplateText(final String templateText, final Map<String, Object> data);
 
+    /**
+     * Render the template into the writer, without building the whole text first.
+     *
+     * @param templateText the template
+     * @param data         the template variables
+     * @param writer       where the text is rendered
+     * @throws IOException if the writer fails
+     */
+    public default void executeTemplate(final String templateText, final Map<String, Object> data, final Writer writer) throws IOException {
+        writer.write(executeTemplateText(templateText, data));
+    }
+
 }
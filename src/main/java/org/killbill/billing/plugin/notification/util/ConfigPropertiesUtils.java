@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.util;
+
+import org.killbill.billing.osgi.libs.killbill.OSGIConfigPropertiesService;
+import org.skife.config.TimeSpan;
+
+public class ConfigPropertiesUtils {
+
+    private ConfigPropertiesUtils() {
+    }
+
+    public static boolean getBooleanProperty(final OSGIConfigPropertiesService configProperties, final String propertyName, final boolean defaultValue) {
+        final String value = configProperties.getString(propertyName);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    public static int getIntProperty(final OSGIConfigPropertiesService configProperties, final String propertyName, final int defaultValue) {
+        final String value = configProperties.getString(propertyName);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public static long getLongProperty(final OSGIConfigPropertiesService configProperties, final String propertyName, final long defaultValue) {
+        final String value = configProperties.getString(propertyName);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    // Values such as 30s or 5m, see org.skife.config.TimeSpan
+    public static long getTimeSpanPropertyMs(final OSGIConfigPropertiesService configProperties, final String propertyName, final long defaultValueMs) {
+        final String value = configProperties.getString(propertyName);
+        return value == null ? defaultValueMs : new TimeSpan(value.trim()).getMillis();
+    }
+}
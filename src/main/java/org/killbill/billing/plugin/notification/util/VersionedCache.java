@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.util;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Guava cache whose loads don't overwrite concurrent invalidations.
+ * <p>
+ * A value loaded before an invalidation (e.g. an account loaded before an ACCOUNT_CHANGE event) isn't cached if the
+ * invalidation happened while it was loading. Each invalidation bumps the version of the keys it covers (keys share
+ * versions by hash, so an unrelated invalidation may only cause an extra load). Loaders can throw checked
+ * exceptions, which are rethrown as is, unlike {@link Cache#get(Object, java.util.concurrent.Callable)}: Guava
+ * doesn't discard in-flight loads on invalidation either.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class VersionedCache<K, V> {
+
+    public interface Loader<V, E extends Exception> {
+
+        V load() throws E;
+    }
+
+    private static final int STRIPES = 64;
+
+    private final Cache<K, V> cache;
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+    public VersionedCache(final Cache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    @Nullable
+    public V getIfPresent(final K key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * @param key    the key
+     * @param loader loads the value if missing (not null)
+     * @return the cached or loaded value
+     * @throws E if the loader fails, in which case nothing is cached
+     */
+    public <E extends Exception> V get(final K key, final Loader<V, E> loader) throws E {
+        V value = cache.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+
+        final int stripe = stripe(key);
+        final long version = versions.get(stripe);
+        value = loader.load();
+        if (versions.get(stripe) == version) {
+            cache.put(key, value);
+            // Invalidated between the check and the put
+            if (versions.get(stripe) != version) {
+                cache.asMap().remove(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void invalidate(final K key) {
+        // Before the removal, see get()
+        versions.incrementAndGet(stripe(key));
+        cache.invalidate(key);
+    }
+
+    public void invalidateIf(final Predicate<K> predicate) {
+        invalidateVersions();
+        final Iterator<K> iterator = cache.asMap().keySet().iterator();
+        while (iterator.hasNext()) {
+            if (predicate.test(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        invalidateVersions();
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private void invalidateVersions() {
+        for (int i = 0; i < STRIPES; i++) {
+            versions.incrementAndGet(i);
+        }
+    }
+
+    private static int stripe(final Object key) {
+        final int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
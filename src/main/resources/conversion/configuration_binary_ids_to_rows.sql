@@ -0,0 +1,29 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+-- Convert the registrations from the BINARY_IDS back to the ROWS storage model (MySQL), see README.md.
+-- Run it with the plugin stopped, before restarting it with eventTypes.storage=ROWS: registrations are only written
+-- to the table of the configured storage model, so the content of email_notifications_configuration is replaced.
+DELETE FROM email_notifications_configuration;
+
+-- Ids are converted back to lower case and dashed strings, like UUID#toString()
+INSERT INTO email_notifications_configuration (kb_account_id, kb_tenant_id, event_type, created_at)
+SELECT LOWER(CONCAT_WS('-', SUBSTR(HEX(kb_account_id), 1, 8), SUBSTR(HEX(kb_account_id), 9, 4), SUBSTR(HEX(kb_account_id), 13, 4), SUBSTR(HEX(kb_account_id), 17, 4), SUBSTR(HEX(kb_account_id), 21))),
+       LOWER(CONCAT_WS('-', SUBSTR(HEX(kb_tenant_id), 1, 8), SUBSTR(HEX(kb_tenant_id), 9, 4), SUBSTR(HEX(kb_tenant_id), 13, 4), SUBSTR(HEX(kb_tenant_id), 17, 4), SUBSTR(HEX(kb_tenant_id), 21))),
+       event_type,
+       created_at
+FROM email_notifications_configuration_bin
+ORDER BY record_id;
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+-- Convert the registrations from the BITMASK back to the ROWS storage model (MySQL and PostgreSQL), see README.md.
+-- Run it with the plugin stopped, before restarting it with eventTypes.storage=ROWS: registrations are only written
+-- to the table of the configured storage model, so the content of email_notifications_configuration is replaced.
+-- The bits have to match EventTypeBitmask.
+DELETE FROM email_notifications_configuration;
+
+INSERT INTO email_notifications_configuration (kb_account_id, kb_tenant_id, event_type, created_at)
+SELECT s.kb_account_id,
+       s.kb_tenant_id,
+       b.event_type,
+       s.created_at
+FROM email_notifications_subscriptions s
+JOIN (SELECT 'ACCOUNT_CREATION' AS event_type, 1 AS event_type_bit
+      UNION ALL SELECT 'ACCOUNT_CHANGE', 2
+      UNION ALL SELECT 'BLOCKING_STATE', 4
+      UNION ALL SELECT 'BROADCAST_SERVICE', 8
+      UNION ALL SELECT 'SUBSCRIPTION_CREATION', 16
+      UNION ALL SELECT 'SUBSCRIPTION_PHASE', 32
+      UNION ALL SELECT 'SUBSCRIPTION_CHANGE', 64
+      UNION ALL SELECT 'SUBSCRIPTION_CANCEL', 128
+      UNION ALL SELECT 'SUBSCRIPTION_UNCANCEL', 256
+      UNION ALL SELECT 'SUBSCRIPTION_BCD_CHANGE', 512
+      UNION ALL SELECT 'SUBSCRIPTION_QUANTITY', 1024
+      UNION ALL SELECT 'SUBSCRIPTION_EXPIRED', 2048
+      UNION ALL SELECT 'ENTITLEMENT_CREATION', 4096
+      UNION ALL SELECT 'ENTITLEMENT_CANCEL', 8192
+      UNION ALL SELECT 'BUNDLE_PAUSE', 16384
+      UNION ALL SELECT 'BUNDLE_RESUME', 32768
+      UNION ALL SELECT 'OVERDUE_CHANGE', 65536
+      UNION ALL SELECT 'INVOICE_CREATION', 131072
+      UNION ALL SELECT 'INVOICE_ADJUSTMENT', 262144
+      UNION ALL SELECT 'INVOICE_NOTIFICATION', 524288
+      UNION ALL SELECT 'INVOICE_PAYMENT_SUCCESS', 1048576
+      UNION ALL SELECT 'INVOICE_PAYMENT_FAILED', 2097152
+      UNION ALL SELECT 'PAYMENT_SUCCESS', 4194304
+      UNION ALL SELECT 'PAYMENT_FAILED', 8388608
+      UNION ALL SELECT 'TAG_CREATION', 16777216
+      UNION ALL SELECT 'TAG_DELETION', 33554432
+      UNION ALL SELECT 'CUSTOM_FIELD_CREATION', 67108864
+      UNION ALL SELECT 'CUSTOM_FIELD_DELETION', 134217728
+      UNION ALL SELECT 'TENANT_CONFIG_CHANGE', 268435456
+      UNION ALL SELECT 'TENANT_CONFIG_DELETION', 536870912) b ON (s.event_types & b.event_type_bit) <> 0
+ORDER BY s.record_id, b.event_type_bit;
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+-- Convert the registrations from the ROWS to the BITMASK storage model (MySQL and PostgreSQL), see README.md.
+-- Run it with the plugin stopped, before restarting it with eventTypes.storage=BITMASK: registrations are only written
+-- to the table of the configured storage model, so the content of email_notifications_subscriptions is replaced.
+-- The bits have to match EventTypeBitmask.
+DELETE FROM email_notifications_subscriptions;
+
+INSERT INTO email_notifications_subscriptions (kb_account_id, kb_tenant_id, event_types, created_at, updated_at)
+SELECT kb_account_id,
+       kb_tenant_id,
+       SUM(CASE event_type
+                WHEN 'ACCOUNT_CREATION' THEN 1
+                WHEN 'ACCOUNT_CHANGE' THEN 2
+                WHEN 'BLOCKING_STATE' THEN 4
+                WHEN 'BROADCAST_SERVICE' THEN 8
+                WHEN 'SUBSCRIPTION_CREATION' THEN 16
+                WHEN 'SUBSCRIPTION_PHASE' THEN 32
+                WHEN 'SUBSCRIPTION_CHANGE' THEN 64
+                WHEN 'SUBSCRIPTION_CANCEL' THEN 128
+                WHEN 'SUBSCRIPTION_UNCANCEL' THEN 256
+                WHEN 'SUBSCRIPTION_BCD_CHANGE' THEN 512
+                WHEN 'SUBSCRIPTION_QUANTITY' THEN 1024
+                WHEN 'SUBSCRIPTION_EXPIRED' THEN 2048
+                WHEN 'ENTITLEMENT_CREATION' THEN 4096
+                WHEN 'ENTITLEMENT_CANCEL' THEN 8192
+                WHEN 'BUNDLE_PAUSE' THEN 16384
+                WHEN 'BUNDLE_RESUME' THEN 32768
+                WHEN 'OVERDUE_CHANGE' THEN 65536
+                WHEN 'INVOICE_CREATION' THEN 131072
+                WHEN 'INVOICE_ADJUSTMENT' THEN 262144
+                WHEN 'INVOICE_NOTIFICATION' THEN 524288
+                WHEN 'INVOICE_PAYMENT_SUCCESS' THEN 1048576
+                WHEN 'INVOICE_PAYMENT_FAILED' THEN 2097152
+                WHEN 'PAYMENT_SUCCESS' THEN 4194304
+                WHEN 'PAYMENT_FAILED' THEN 8388608
+                WHEN 'TAG_CREATION' THEN 16777216
+                WHEN 'TAG_DELETION' THEN 33554432
+                WHEN 'CUSTOM_FIELD_CREATION' THEN 67108864
+                WHEN 'CUSTOM_FIELD_DELETION' THEN 134217728
+                WHEN 'TENANT_CONFIG_CHANGE' THEN 268435456
+                WHEN 'TENANT_CONFIG_DELETION' THEN 536870912
+                ELSE 0
+           END),
+       MIN(created_at),
+       MAX(created_at)
+FROM email_notifications_configuration
+GROUP BY kb_tenant_id, kb_account_id;
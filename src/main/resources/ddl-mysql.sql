@@ -0,0 +1,29 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+-- Same as email_notifications_configuration, with binary ids: only used with the BINARY_IDS storage model
+DROP table If exists email_notifications_configuration_bin;
+CREATE TABLE email_notifications_configuration_bin (
+  record_id serial unique,
+  kb_account_id binary(16) NOT NULL,
+  kb_tenant_id binary(16) NOT NULL,
+  event_type varchar(64) NOT NULL,
+  created_at datetime NOT NULL,
+  PRIMARY KEY (record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+-- Covers the lookups of the registrations of an account
+CREATE UNIQUE INDEX email_notifications_configuration_bin_tenant_account_type ON email_notifications_configuration_bin(kb_tenant_id, kb_account_id, event_type);
+CREATE INDEX email_notifications_configuration_bin_tenant_record_id ON email_notifications_configuration_bin(kb_tenant_id, record_id);
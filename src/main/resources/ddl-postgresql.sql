@@ -19,3 +19,17 @@
 CREATE DOMAIN datetime AS timestamp without time zone;
 
 CREATE DOMAIN longtext AS text;
+
+-- Same as email_notifications_configuration, with binary ids: only used with the BINARY_IDS storage model
+DROP table If exists email_notifications_configuration_bin;
+CREATE TABLE email_notifications_configuration_bin (
+  record_id serial unique,
+  kb_account_id uuid NOT NULL,
+  kb_tenant_id uuid NOT NULL,
+  event_type varchar(64) NOT NULL,
+  created_at datetime NOT NULL,
+  PRIMARY KEY (record_id)
+);
+-- Covers the lookups of the registrations of an account
+CREATE UNIQUE INDEX email_notifications_configuration_bin_tenant_account_type ON email_notifications_configuration_bin(kb_tenant_id, kb_account_id, event_type);
+CREATE INDEX email_notifications_configuration_bin_tenant_record_id ON email_notifications_configuration_bin(kb_tenant_id, record_id);
@@ -26,7 +26,51 @@ CREATE TABLE email_notifications_configuration (
   created_at datetime NOT NULL,
   PRIMARY KEY (record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
-CREATE UNIQUE INDEX email_notifications_configuration_event_type_kb_account_id ON email_notifications_configuration(event_type, kb_account_id);
-CREATE INDEX email_notifications_configuration_kb_account_id ON email_notifications_configuration(kb_account_id);
-CREATE INDEX email_notifications_configuration_kb_tenant_id ON email_notifications_configuration(kb_tenant_id);
-CREATE INDEX email_notifications_configuration_event_type_kb_tenant_id ON email_notifications_configuration(event_type, kb_tenant_id);
\ No newline at end of file
+-- Covers the lookups of the registrations of an account
+CREATE UNIQUE INDEX email_notifications_configuration_tenant_account_event_type ON email_notifications_configuration(kb_tenant_id, kb_account_id, event_type);
+-- Also used to page through the configurations of a tenant (keyset on record_id)
+CREATE INDEX email_notifications_configuration_kb_tenant_id_record_id ON email_notifications_configuration(kb_tenant_id, record_id);
+CREATE INDEX email_notifications_configuration_event_type_kb_tenant_id ON email_notifications_configuration(event_type, kb_tenant_id);
+
+-- email_notifications_configuration_bin (BINARY_IDS storage model) is defined in the engine specific DDL files,
+-- as the id columns types differ
+
+-- Alternative to email_notifications_configuration, with a single row per account and the event types as a bitmask
+-- (see EventTypeBitmask): only used with the BITMASK storage model
+DROP table If exists email_notifications_subscriptions;
+CREATE TABLE email_notifications_subscriptions (
+  record_id serial unique,
+  kb_account_id varchar(36) NOT NULL,
+  kb_tenant_id varchar(36) NOT NULL,
+  event_types bigint NOT NULL,
+  created_at datetime NOT NULL,
+  updated_at datetime NOT NULL,
+  PRIMARY KEY (record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE UNIQUE INDEX email_notifications_subscriptions_kb_tenant_id_kb_account_id ON email_notifications_subscriptions(kb_tenant_id, kb_account_id);
+CREATE INDEX email_notifications_subscriptions_kb_tenant_id_record_id ON email_notifications_subscriptions(kb_tenant_id, record_id);
+
+-- Rendered emails waiting for (re)delivery
+DROP table If exists email_notifications_outbox;
+CREATE TABLE email_notifications_outbox (
+  record_id serial unique,
+  kb_account_id varchar(255) NOT NULL,
+  kb_tenant_id varchar(255) NOT NULL,
+  event_type varchar(255) NOT NULL,
+  recipients longtext NOT NULL,
+  cc_recipients longtext DEFAULT NULL,
+  subject longtext NOT NULL,
+  body longtext NOT NULL,
+  is_html smallint NOT NULL,
+  status varchar(32) NOT NULL,
+  attempts int NOT NULL DEFAULT 0,
+  next_attempt_at datetime NOT NULL,
+  claim_token varchar(36) DEFAULT NULL,
+  last_error longtext DEFAULT NULL,
+  created_at datetime NOT NULL,
+  updated_at datetime NOT NULL,
+  PRIMARY KEY (record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX email_notifications_outbox_status_next_attempt_at ON email_notifications_outbox(status, next_attempt_at);
+CREATE INDEX email_notifications_outbox_claim_token ON email_notifications_outbox(claim_token);
+CREATE INDEX email_notifications_outbox_kb_tenant_id ON email_notifications_outbox(kb_tenant_id);
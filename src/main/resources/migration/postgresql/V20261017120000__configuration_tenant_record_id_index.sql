@@ -0,0 +1,3 @@
+-- Keyset pagination of the configurations of a tenant: replaces the kb_tenant_id index, which is a prefix of the new one
+CREATE INDEX email_notifications_configuration_kb_tenant_id_record_id ON email_notifications_configuration(kb_tenant_id, record_id);
+DROP INDEX email_notifications_configuration_kb_tenant_id;
@@ -0,0 +1,14 @@
+-- Table of the BITMASK storage model (org.killbill.billing.plugin.email-notifications.eventTypes.storage=BITMASK)
+-- It is created empty: the registrations are converted by conversion/configuration_rows_to_bitmask.sql, when switching.
+CREATE TABLE email_notifications_subscriptions (
+  record_id serial unique,
+  kb_account_id varchar(36) NOT NULL,
+  kb_tenant_id varchar(36) NOT NULL,
+  event_types bigint NOT NULL,
+  created_at datetime NOT NULL,
+  updated_at datetime NOT NULL,
+  PRIMARY KEY (record_id)
+);
+CREATE UNIQUE INDEX email_notifications_subscriptions_kb_tenant_id_kb_account_id ON email_notifications_subscriptions(kb_tenant_id, kb_account_id);
+CREATE INDEX email_notifications_subscriptions_kb_tenant_id_record_id ON email_notifications_subscriptions(kb_tenant_id, record_id);
+
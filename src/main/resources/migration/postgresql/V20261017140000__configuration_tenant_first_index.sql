@@ -0,0 +1,5 @@
+-- Tenant first index, covering the lookups of the registrations of an account. It replaces the (event_type, kb_account_id)
+-- unique index (account ids are unique across tenants) and the kb_account_id index (all lookups filter on the tenant).
+CREATE UNIQUE INDEX email_notifications_configuration_tenant_account_event_type ON email_notifications_configuration(kb_tenant_id, kb_account_id, event_type);
+DROP INDEX email_notifications_configuration_event_type_kb_account_id;
+DROP INDEX email_notifications_configuration_kb_account_id;
@@ -0,0 +1,14 @@
+-- Table of the BINARY_IDS storage model (org.killbill.billing.plugin.email-notifications.eventTypes.storage=BINARY_IDS)
+-- It is created empty: the registrations are converted by conversion/postgresql/configuration_rows_to_binary_ids.sql, when switching.
+CREATE TABLE email_notifications_configuration_bin (
+  record_id serial unique,
+  kb_account_id uuid NOT NULL,
+  kb_tenant_id uuid NOT NULL,
+  event_type varchar(64) NOT NULL,
+  created_at datetime NOT NULL,
+  PRIMARY KEY (record_id)
+);
+-- Covers the lookups of the registrations of an account
+CREATE UNIQUE INDEX email_notifications_configuration_bin_tenant_account_type ON email_notifications_configuration_bin(kb_tenant_id, kb_account_id, event_type);
+CREATE INDEX email_notifications_configuration_bin_tenant_record_id ON email_notifications_configuration_bin(kb_tenant_id, record_id);
+
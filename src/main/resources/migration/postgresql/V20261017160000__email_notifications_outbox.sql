@@ -0,0 +1,23 @@
+-- Rendered emails waiting for (re)delivery (org.killbill.billing.plugin.email-notifications.outbox.enabled)
+CREATE TABLE email_notifications_outbox (
+  record_id serial unique,
+  kb_account_id varchar(255) NOT NULL,
+  kb_tenant_id varchar(255) NOT NULL,
+  event_type varchar(255) NOT NULL,
+  recipients longtext NOT NULL,
+  cc_recipients longtext DEFAULT NULL,
+  subject longtext NOT NULL,
+  body longtext NOT NULL,
+  is_html smallint NOT NULL,
+  status varchar(32) NOT NULL,
+  attempts int NOT NULL DEFAULT 0,
+  next_attempt_at datetime NOT NULL,
+  claim_token varchar(36) DEFAULT NULL,
+  last_error longtext DEFAULT NULL,
+  created_at datetime NOT NULL,
+  updated_at datetime NOT NULL,
+  PRIMARY KEY (record_id)
+);
+CREATE INDEX email_notifications_outbox_status_next_attempt_at ON email_notifications_outbox(status, next_attempt_at);
+CREATE INDEX email_notifications_outbox_claim_token ON email_notifications_outbox(claim_token);
+CREATE INDEX email_notifications_outbox_kb_tenant_id ON email_notifications_outbox(kb_tenant_id);
@@ -19,9 +19,12 @@ package org.killbill.billing.plugin.notification;
 import java.io.IOException;
 import java.sql.SQLException;
 
+import javax.sql.DataSource;
+
 import org.killbill.billing.platform.test.PlatformDBTestingHelper;
 import org.killbill.billing.plugin.TestUtils;
 import org.killbill.billing.plugin.notification.dao.ConfigurationDao;
+import org.killbill.billing.plugin.notification.dao.EmailOutboxDao;
 import org.killbill.commons.embeddeddb.EmbeddedDB;
 
 public class EmbeddedDbHelper {
@@ -59,6 +62,21 @@ public class EmbeddedDbHelper {
         return new ConfigurationDao(embeddedDB.getDataSource());
     }
 
+    public ConfigurationDao getConfigurationDao(final ConfigurationDao.StorageModel storageModel) throws IOException, SQLException {
+        return new ConfigurationDao(embeddedDB.getDataSource(),
+                                    ConfigurationDao.DEFAULT_EVENT_TYPES_CACHE_MAX_SIZE,
+                                    ConfigurationDao.DEFAULT_EVENT_TYPES_CACHE_TTL_MS,
+                                    storageModel);
+    }
+
+    public DataSource getDataSource() throws IOException {
+        return embeddedDB.getDataSource();
+    }
+
+    public EmailOutboxDao getEmailOutboxDao() throws IOException, SQLException {
+        return new EmailOutboxDao(embeddedDB.getDataSource());
+    }
+
     public void resetDB() throws Exception {
         embeddedDB.cleanupAllTables();
     }
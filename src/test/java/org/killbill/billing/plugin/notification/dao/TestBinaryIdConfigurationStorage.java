@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.notification.EmbeddedDbHelper;
+import org.killbill.billing.plugin.notification.TestBase;
+import org.killbill.billing.plugin.notification.dao.gen.tables.pojos.EmailNotificationsConfiguration;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class TestBinaryIdConfigurationStorage extends TestBase {
+
+    private ConfigurationDao binaryIdDao;
+
+    @BeforeMethod(groups = "slow")
+    public void setUpBinaryIdDao() throws Exception {
+        binaryIdDao = EmbeddedDbHelper.instance().getConfigurationDao(ConfigurationDao.StorageModel.BINARY_IDS);
+    }
+
+    @Test(groups = "fast")
+    public void testIdEncoding() {
+        final UUID id = UUID.fromString("0f8fad5b-d9cb-469f-a165-70867728950e");
+        final byte[] bytes = BinaryIdConfigurationStorage.toBytes(id);
+        Assert.assertEquals(bytes.length, 16);
+        // Most significant bits first, i.e. the same as UNHEX(REPLACE(id, '-', '')) in the conversion script
+        Assert.assertEquals(bytes[0], (byte) 0x0f);
+        Assert.assertEquals(bytes[15], (byte) 0x0e);
+        Assert.assertEquals(BinaryIdConfigurationStorage.fromId(bytes), id);
+        Assert.assertEquals(BinaryIdConfigurationStorage.fromId(id), id);
+        Assert.assertEquals(BinaryIdConfigurationStorage.fromId(id.toString()), id);
+    }
+
+    @Test(groups = "slow")
+    public void testUpdateAndLookup() throws Exception {
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+
+        ConfigurationUpdateResult result = binaryIdDao.updateConfigurationPerAccount(kbAccountId, kbTenantId, ImmutableList.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.PAYMENT_FAILED), DateTime.now());
+        Assert.assertEquals(result.getInsertedEventTypes(), 2);
+
+        final List<EmailNotificationsConfiguration> configurations = binaryIdDao.getEventTypesPerAccount(kbAccountId, kbTenantId);
+        Assert.assertEquals(configurations.size(), 2);
+        Assert.assertEquals(configurations.get(0).getKbAccountId(), kbAccountId.toString());
+        Assert.assertEquals(configurations.get(0).getKbTenantId(), kbTenantId.toString());
+        Assert.assertEquals(configurations.get(0).getEventType(), ExtBusEventType.INVOICE_CREATION.toString());
+        Assert.assertEquals(binaryIdDao.getEventTypePerAccount(kbAccountId, kbTenantId, ExtBusEventType.PAYMENT_FAILED).getEventType(), ExtBusEventType.PAYMENT_FAILED.toString());
+        Assert.assertNull(binaryIdDao.getEventTypePerAccount(kbAccountId, kbTenantId, ExtBusEventType.PAYMENT_SUCCESS));
+        Assert.assertEquals(binaryIdDao.getRegisteredEventTypes(kbAccountId, kbTenantId), ImmutableSet.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.PAYMENT_FAILED));
+        // Other tenants don't see it
+        Assert.assertTrue(binaryIdDao.getEventTypesPerAccount(kbAccountId, UUID.randomUUID()).isEmpty());
+
+        result = binaryIdDao.updateConfigurationPerAccount(kbAccountId, kbTenantId, ImmutableList.of(ExtBusEventType.PAYMENT_SUCCESS), DateTime.now());
+        Assert.assertEquals(result.getInsertedEventTypes(), 1);
+        Assert.assertEquals(result.getDeletedEventTypes(), 2);
+        Assert.assertEquals(binaryIdDao.getRegisteredEventTypes(kbAccountId, kbTenantId), ImmutableSet.of(ExtBusEventType.PAYMENT_SUCCESS));
+
+        binaryIdDao.deleteConfiguration(kbAccountId, kbTenantId);
+        Assert.assertTrue(binaryIdDao.getEventTypesPerAccount(kbAccountId, kbTenantId).isEmpty());
+    }
+
+    @Test(groups = "slow")
+    public void testBulkUpdateAndPagination() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final Map<UUID, List<ExtBusEventType>> eventTypesPerAccount = new LinkedHashMap<UUID, List<ExtBusEventType>>();
+        for (int i = 0; i < 25; i++) {
+            eventTypesPerAccount.put(UUID.randomUUID(), ImmutableList.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.INVOICE_PAYMENT_FAILED));
+        }
+
+        final ConfigurationUpdateResult result = binaryIdDao.updateConfigurations(eventTypesPerAccount, kbTenantId, DateTime.now(), 7);
+        Assert.assertEquals(result.getInsertedEventTypes(), 50);
+        Assert.assertEquals(binaryIdDao.getEventTypes(ImmutableList.copyOf(eventTypesPerAccount.keySet()), kbTenantId).size(), 50);
+
+        final List<EmailNotificationsConfiguration> firstPage = binaryIdDao.getEventTypesPage(kbTenantId, null, 30);
+        Assert.assertEquals(firstPage.size(), 30);
+        Assert.assertEquals(binaryIdDao.getEventTypesPage(kbTenantId, firstPage.get(29).getRecordId().longValue(), 30).size(), 20);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.notification.EmbeddedDbHelper;
+import org.killbill.billing.plugin.notification.TestBase;
+import org.killbill.billing.plugin.notification.dao.gen.tables.pojos.EmailNotificationsConfiguration;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class TestBitmaskConfigurationStorage extends TestBase {
+
+    private ConfigurationDao bitmaskDao;
+
+    @BeforeMethod(groups = "slow")
+    public void setUpBitmaskDao() throws Exception {
+        bitmaskDao = EmbeddedDbHelper.instance().getConfigurationDao(ConfigurationDao.StorageModel.BITMASK);
+    }
+
+    @Test(groups = "slow")
+    public void testUpdateAndLookup() throws Exception {
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+
+        Assert.assertTrue(bitmaskDao.getEventTypesPerAccount(kbAccountId, kbTenantId).isEmpty());
+        Assert.assertFalse(bitmaskDao.isEventTypeRegistered(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_CREATION));
+
+        ConfigurationUpdateResult result = bitmaskDao.updateConfigurationPerAccount(kbAccountId, kbTenantId, ImmutableList.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.PAYMENT_FAILED), DateTime.now());
+        Assert.assertEquals(result.getInsertedEventTypes(), 2);
+        Assert.assertEquals(result.getDeletedEventTypes(), 0);
+
+        final List<EmailNotificationsConfiguration> configurations = bitmaskDao.getEventTypesPerAccount(kbAccountId, kbTenantId);
+        Assert.assertEquals(configurations.size(), 2);
+        Assert.assertEquals(configurations.get(0).getKbAccountId(), kbAccountId.toString());
+        Assert.assertEquals(configurations.get(0).getKbTenantId(), kbTenantId.toString());
+        Assert.assertEquals(configurations.get(0).getEventType(), ExtBusEventType.INVOICE_CREATION.toString());
+        Assert.assertEquals(configurations.get(1).getEventType(), ExtBusEventType.PAYMENT_FAILED.toString());
+        Assert.assertNotNull(bitmaskDao.getEventTypePerAccount(kbAccountId, kbTenantId, ExtBusEventType.PAYMENT_FAILED));
+        Assert.assertNull(bitmaskDao.getEventTypePerAccount(kbAccountId, kbTenantId, ExtBusEventType.PAYMENT_SUCCESS));
+        // The update invalidated the cached (empty) registrations
+        Assert.assertTrue(bitmaskDao.isEventTypeRegistered(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_CREATION));
+
+        result = bitmaskDao.updateConfigurationPerAccount(kbAccountId, kbTenantId, ImmutableList.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.PAYMENT_SUCCESS), DateTime.now());
+        Assert.assertEquals(result.getInsertedEventTypes(), 1);
+        Assert.assertEquals(result.getDeletedEventTypes(), 1);
+        Assert.assertEquals(bitmaskDao.getRegisteredEventTypes(kbAccountId, kbTenantId), ImmutableSet.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.PAYMENT_SUCCESS));
+
+        // Nothing is stored for the other storage model
+        Assert.assertTrue(dao.getEventTypesPerAccount(kbAccountId, kbTenantId).isEmpty());
+
+        result = bitmaskDao.updateConfigurationPerAccount(kbAccountId, kbTenantId, ImmutableList.<ExtBusEventType>of(), DateTime.now());
+        Assert.assertEquals(result.getDeletedEventTypes(), 2);
+        Assert.assertTrue(bitmaskDao.getEventTypesPerAccount(kbAccountId, kbTenantId).isEmpty());
+    }
+
+    @Test(groups = "slow")
+    public void testBulkUpdateAndPagination() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final Map<UUID, List<ExtBusEventType>> eventTypesPerAccount = new LinkedHashMap<UUID, List<ExtBusEventType>>();
+        for (int i = 0; i < 25; i++) {
+            eventTypesPerAccount.put(UUID.randomUUID(), ImmutableList.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.INVOICE_PAYMENT_FAILED));
+        }
+
+        final ConfigurationUpdateResult result = bitmaskDao.updateConfigurations(eventTypesPerAccount, kbTenantId, DateTime.now(), 7);
+        Assert.assertEquals(result.getAccounts(), 25);
+        Assert.assertEquals(result.getInsertedEventTypes(), 50);
+        Assert.assertEquals(bitmaskDao.getEventTypes(ImmutableList.copyOf(eventTypesPerAccount.keySet()), kbTenantId).size(), 50);
+
+        // The limit is a number of accounts
+        final List<EmailNotificationsConfiguration> firstPage = bitmaskDao.getEventTypesPage(kbTenantId, null, 20);
+        Assert.assertEquals(firstPage.size(), 40);
+        final List<EmailNotificationsConfiguration> secondPage = bitmaskDao.getEventTypesPage(kbTenantId, firstPage.get(39).getRecordId().longValue(), 20);
+        Assert.assertEquals(secondPage.size(), 10);
+
+        bitmaskDao.deleteConfiguration(eventTypesPerAccount.keySet().iterator().next(), kbTenantId);
+        Assert.assertEquals(bitmaskDao.getEventTypes(ImmutableList.copyOf(eventTypesPerAccount.keySet()), kbTenantId).size(), 48);
+    }
+}
@@ -19,7 +19,9 @@
 package org.killbill.billing.plugin.notification.dao;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -31,6 +33,8 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableList;
+
 public class TestConfigurationDao extends TestBase {
 
     @Test(groups = "slow")
@@ -80,4 +84,96 @@ public class TestConfigurationDao extends TestBase {
         Assert.assertEquals(event.getKbTenantId(),kbTenantId.toString());
         Assert.assertEquals(event.getEventType(), ExtBusEventType.INVOICE_PAYMENT_FAILED.toString());
     }
+
+    @Test(groups = "slow")
+    public void testRegisteredEventTypesAreCached() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final UUID kbAccountId = UUID.randomUUID();
+
+        // Negative entry
+        Assert.assertFalse(dao.isEventTypeRegistered(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_CREATION));
+        Assert.assertFalse(dao.isEventTypeRegistered(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_PAYMENT_SUCCESS));
+        Assert.assertEquals(dao.getEventTypesCacheStats().missCount(), 1);
+        Assert.assertEquals(dao.getEventTypesCacheStats().hitCount(), 1);
+
+        // Updates invalidate the entry
+        final List<ExtBusEventType> eventTypes = new ArrayList<ExtBusEventType>();
+        eventTypes.add(ExtBusEventType.INVOICE_CREATION);
+        dao.updateConfigurationPerAccount(kbAccountId, kbTenantId, eventTypes, DateTime.now());
+        Assert.assertTrue(dao.isEventTypeRegistered(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_CREATION));
+        Assert.assertFalse(dao.isEventTypeRegistered(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_PAYMENT_SUCCESS));
+        Assert.assertEquals(dao.getEventTypesCacheStats().missCount(), 2);
+
+        // Entries are per tenant
+        Assert.assertFalse(dao.isEventTypeRegistered(kbAccountId, UUID.randomUUID(), ExtBusEventType.INVOICE_CREATION));
+
+        dao.deleteConfiguration(kbAccountId, kbTenantId);
+        Assert.assertFalse(dao.isEventTypeRegistered(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_CREATION));
+    }
+
+    @Test(groups = "slow")
+    public void testUpdateOnlyWritesChanges() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final UUID kbAccountId = UUID.randomUUID();
+
+        ConfigurationUpdateResult result = dao.updateConfigurationPerAccount(kbAccountId, kbTenantId, ImmutableList.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.INVOICE_PAYMENT_SUCCESS), DateTime.now());
+        Assert.assertEquals(result.getInsertedEventTypes(), 2);
+        Assert.assertEquals(result.getDeletedEventTypes(), 0);
+        final EmailNotificationsConfiguration invoiceCreation = dao.getEventTypePerAccount(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_CREATION);
+
+        // Same list (with a duplicate): nothing to write
+        result = dao.updateConfigurationPerAccount(kbAccountId, kbTenantId, ImmutableList.of(ExtBusEventType.INVOICE_PAYMENT_SUCCESS, ExtBusEventType.INVOICE_CREATION, ExtBusEventType.INVOICE_CREATION), DateTime.now());
+        Assert.assertEquals(result.getInsertedEventTypes(), 0);
+        Assert.assertEquals(result.getDeletedEventTypes(), 0);
+
+        result = dao.updateConfigurationPerAccount(kbAccountId, kbTenantId, ImmutableList.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.SUBSCRIPTION_CANCEL), DateTime.now());
+        Assert.assertEquals(result.getInsertedEventTypes(), 1);
+        Assert.assertEquals(result.getDeletedEventTypes(), 1);
+        // Unchanged rows are kept as is
+        Assert.assertEquals(dao.getEventTypePerAccount(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_CREATION).getRecordId(), invoiceCreation.getRecordId());
+        Assert.assertNull(dao.getEventTypePerAccount(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_PAYMENT_SUCCESS));
+        Assert.assertNotNull(dao.getEventTypePerAccount(kbAccountId, kbTenantId, ExtBusEventType.SUBSCRIPTION_CANCEL));
+    }
+
+    @Test(groups = "slow")
+    public void testBulkUpdate() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final Map<UUID, List<ExtBusEventType>> eventTypesPerAccount = new LinkedHashMap<UUID, List<ExtBusEventType>>();
+        for (int i = 0; i < 25; i++) {
+            eventTypesPerAccount.put(UUID.randomUUID(), ImmutableList.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.INVOICE_PAYMENT_FAILED));
+        }
+
+        // Several lookups and JDBC batches
+        ConfigurationUpdateResult result = dao.updateConfigurations(eventTypesPerAccount, kbTenantId, DateTime.now(), 7);
+        Assert.assertEquals(result.getAccounts(), 25);
+        Assert.assertEquals(result.getInsertedEventTypes(), 50);
+        Assert.assertEquals(dao.getEventTypes(ImmutableList.copyOf(eventTypesPerAccount.keySet()), kbTenantId).size(), 50);
+
+        for (final UUID kbAccountId : eventTypesPerAccount.keySet()) {
+            eventTypesPerAccount.put(kbAccountId, ImmutableList.of(ExtBusEventType.INVOICE_CREATION));
+        }
+        result = dao.updateConfigurations(eventTypesPerAccount, kbTenantId, DateTime.now(), 7);
+        Assert.assertEquals(result.getInsertedEventTypes(), 0);
+        Assert.assertEquals(result.getDeletedEventTypes(), 25);
+        Assert.assertEquals(dao.getEventTypes(ImmutableList.copyOf(eventTypesPerAccount.keySet()), kbTenantId).size(), 25);
+    }
+
+    @Test(groups = "slow")
+    public void testEventTypesPage() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final Map<UUID, List<ExtBusEventType>> eventTypesPerAccount = new LinkedHashMap<UUID, List<ExtBusEventType>>();
+        for (int i = 0; i < 5; i++) {
+            eventTypesPerAccount.put(UUID.randomUUID(), ImmutableList.of(ExtBusEventType.INVOICE_CREATION));
+        }
+        dao.updateConfigurations(eventTypesPerAccount, kbTenantId, DateTime.now());
+        // Other tenants aren't listed
+        dao.updateConfigurationPerAccount(UUID.randomUUID(), UUID.randomUUID(), ImmutableList.of(ExtBusEventType.INVOICE_CREATION), DateTime.now());
+
+        final List<EmailNotificationsConfiguration> firstPage = dao.getEventTypesPage(kbTenantId, null, 3);
+        Assert.assertEquals(firstPage.size(), 3);
+        final List<EmailNotificationsConfiguration> secondPage = dao.getEventTypesPage(kbTenantId, firstPage.get(2).getRecordId().longValue(), 3);
+        Assert.assertEquals(secondPage.size(), 2);
+        Assert.assertTrue(secondPage.get(0).getRecordId().longValue() > firstPage.get(2).getRecordId().longValue());
+        Assert.assertEquals(dao.getEventTypesPage(kbTenantId, secondPage.get(1).getRecordId().longValue(), 3).size(), 0);
+    }
 }
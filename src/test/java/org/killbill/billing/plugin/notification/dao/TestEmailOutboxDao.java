@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.notification.EmbeddedDbHelper;
+import org.killbill.billing.plugin.notification.TestBase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestEmailOutboxDao extends TestBase {
+
+    private EmailOutboxDao outboxDao;
+
+    @BeforeMethod(groups = "slow")
+    public void setUpOutboxDao() throws Exception {
+        outboxDao = EmbeddedDbHelper.instance().getEmailOutboxDao();
+    }
+
+    @Test(groups = "slow")
+    public void testClaimRescheduleAndDelete() throws Exception {
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        final DateTime now = new DateTime(2026, 1, 1, 0, 0, DateTimeZone.UTC);
+
+        outboxDao.insert(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_CREATION, ImmutableList.of("customer@example.com"),
+                         ImmutableList.of("cc1@example.com", "cc2@example.com"), "Subject", "<p>Body</p>", true, now, "Connection refused", now);
+        outboxDao.insert(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_PAYMENT_SUCCESS, ImmutableList.of("customer@example.com"),
+                         ImmutableList.<String>of(), "Later", "Body", false, now.plusHours(1), null, now);
+
+        // Only the first one is due
+        final List<EmailOutboxEntry> claimed = outboxDao.claimBatch(10, now.plusMinutes(5), now);
+        Assert.assertEquals(claimed.size(), 1);
+        final EmailOutboxEntry entry = claimed.get(0);
+        Assert.assertEquals(entry.getKbAccountId(), kbAccountId);
+        Assert.assertEquals(entry.getKbTenantId(), kbTenantId);
+        Assert.assertEquals(entry.getEventType(), ExtBusEventType.INVOICE_CREATION);
+        Assert.assertEquals(entry.getTo(), ImmutableList.of("customer@example.com"));
+        Assert.assertEquals(entry.getCc(), ImmutableList.of("cc1@example.com", "cc2@example.com"));
+        Assert.assertEquals(entry.getSubject(), "Subject");
+        Assert.assertEquals(entry.getBody(), "<p>Body</p>");
+        Assert.assertTrue(entry.isHtml());
+        Assert.assertEquals(entry.getAttempts(), 1);
+
+        // Claimed entries aren't returned again until the claim expires
+        Assert.assertEquals(outboxDao.claimBatch(10, now.plusMinutes(5), now).size(), 0);
+        Assert.assertEquals(outboxDao.claimBatch(10, now.plusMinutes(15), now.plusMinutes(10)).size(), 1);
+
+        outboxDao.reschedule(entry.getRecordId(), now.plusMinutes(20), "Timeout", now.plusMinutes(10));
+        Assert.assertEquals(outboxDao.claimBatch(10, now.plusMinutes(25), now.plusMinutes(19)).size(), 0);
+        final List<EmailOutboxEntry> reclaimed = outboxDao.claimBatch(10, now.plusMinutes(25), now.plusMinutes(20));
+        Assert.assertEquals(reclaimed.size(), 1);
+        Assert.assertEquals(reclaimed.get(0).getAttempts(), 3);
+
+        outboxDao.delete(entry.getRecordId());
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_PENDING), 1);
+    }
+
+    @Test(groups = "slow")
+    public void testFailedEntriesAreNotClaimed() throws Exception {
+        final DateTime now = new DateTime(2026, 1, 1, 0, 0, DateTimeZone.UTC);
+        outboxDao.insert(UUID.randomUUID(), UUID.randomUUID(), ExtBusEventType.SUBSCRIPTION_CANCEL, ImmutableList.of("customer@example.com"),
+                         null, "Subject", "Body", false, now, null, now);
+
+        final EmailOutboxEntry entry = outboxDao.claimBatch(10, now.plusMinutes(5), now).get(0);
+        Assert.assertTrue(entry.getCc().isEmpty());
+        Assert.assertFalse(entry.isHtml());
+
+        outboxDao.markFailed(entry.getRecordId(), "Invalid address", now);
+        Assert.assertEquals(outboxDao.claimBatch(10, now.plusDays(1), now.plusDays(1)).size(), 0);
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_FAILED), 1);
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_PENDING), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testBatchSize() throws Exception {
+        final DateTime now = new DateTime(2026, 1, 1, 0, 0, DateTimeZone.UTC);
+        for (int i = 0; i < 5; i++) {
+            outboxDao.insert(UUID.randomUUID(), UUID.randomUUID(), ExtBusEventType.INVOICE_CREATION, ImmutableList.of("customer@example.com"),
+                             null, "Subject " + i, "Body", false, now, null, now);
+        }
+
+        final List<EmailOutboxEntry> firstBatch = outboxDao.claimBatch(3, now.plusMinutes(5), now);
+        Assert.assertEquals(firstBatch.size(), 3);
+        Assert.assertEquals(firstBatch.get(0).getSubject(), "Subject 0");
+        final List<EmailOutboxEntry> secondBatch = outboxDao.claimBatch(3, now.plusMinutes(5), now);
+        Assert.assertEquals(secondBatch.size(), 2);
+        Assert.assertEquals(secondBatch.get(1).getSubject(), "Subject 4");
+    }
+
+    @Test(groups = "slow")
+    public void testIsInstalled() throws Exception {
+        Assert.assertTrue(outboxDao.isInstalled());
+    }
+}
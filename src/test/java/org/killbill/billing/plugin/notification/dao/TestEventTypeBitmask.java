@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.util.EnumSet;
+
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestEventTypeBitmask {
+
+    @Test(groups = "fast")
+    public void testAllEventTypesAreSupported() {
+        for (final ExtBusEventType eventType : ExtBusEventType.values()) {
+            Assert.assertTrue(EventTypeBitmask.isSupported(eventType), eventType.toString());
+        }
+        Assert.assertEquals(EventTypeBitmask.fromBitmask(EventTypeBitmask.toBitmask(EnumSet.allOf(ExtBusEventType.class))),
+                            EnumSet.allOf(ExtBusEventType.class));
+    }
+
+    @Test(groups = "fast")
+    public void testBitsAreStable() {
+        // Stored values: these must never change
+        Assert.assertEquals(EventTypeBitmask.toBit(ExtBusEventType.ACCOUNT_CREATION), 1L);
+        Assert.assertEquals(EventTypeBitmask.toBit(ExtBusEventType.INVOICE_CREATION), 1L << 17);
+        Assert.assertEquals(EventTypeBitmask.toBit(ExtBusEventType.TENANT_CONFIG_DELETION), 1L << 29);
+    }
+
+    @Test(groups = "fast")
+    public void testRoundTrip() {
+        final EnumSet<ExtBusEventType> eventTypes = EnumSet.of(ExtBusEventType.INVOICE_PAYMENT_FAILED, ExtBusEventType.SUBSCRIPTION_CANCEL);
+        final long bitmask = EventTypeBitmask.toBitmask(eventTypes);
+        Assert.assertEquals(Long.bitCount(bitmask), 2);
+        Assert.assertEquals(EventTypeBitmask.fromBitmask(bitmask), eventTypes);
+        Assert.assertTrue(EventTypeBitmask.fromBitmask(0L).isEmpty());
+        // Bits unknown to this version are ignored
+        Assert.assertEquals(EventTypeBitmask.fromBitmask(bitmask | (1L << 62)), eventTypes);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.dao;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.tools.jdbc.MockConnection;
+import org.jooq.tools.jdbc.MockResult;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestEventTypeRowsWriter {
+
+    private static final Field<Object> KB_ACCOUNT_ID = DSL.field("KB_ACCOUNT_ID");
+    private static final Field<String> EVENT_TYPE = DSL.field("EVENT_TYPE", String.class);
+
+    @Test(groups = "fast")
+    public void testOnlyDifferencesAreWritten() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final UUID registeredAccountId = UUID.randomUUID();
+        final UUID newAccountId = UUID.randomUUID();
+        final List<String> statements = new ArrayList<String>();
+
+        // Ids stored as binary, see BinaryIdConfigurationStorage
+        final DSLContext context = DSL.using(new MockConnection(ctx -> {
+            if (ctx.batch()) {
+                statements.addAll(Arrays.asList(ctx.batchSQL()));
+                final MockResult[] results = new MockResult[ctx.batchSQL().length];
+                Arrays.fill(results, new MockResult(1));
+                return results;
+            }
+
+            final Result<Record2<Object, String>> existing = DSL.using(SQLDialect.MYSQL).newResult(KB_ACCOUNT_ID, EVENT_TYPE);
+            existing.add(newRecord(BinaryIdConfigurationStorage.toBytes(registeredAccountId), "INVOICE_CREATION"));
+            existing.add(newRecord(BinaryIdConfigurationStorage.toBytes(registeredAccountId), "PAYMENT_FAILED"));
+            return new MockResult[]{new MockResult(existing.size(), existing)};
+        }), SQLDialect.MYSQL);
+
+        final EventTypeRowsWriter<Record> writer = new EventTypeRowsWriter<Record>(DSL.table("email_notifications_configuration_bin"),
+                                                                                   BinaryIdConfigurationStorage::toBytes,
+                                                                                   BinaryIdConfigurationStorage::fromId);
+        final Map<UUID, List<ExtBusEventType>> eventTypesPerAccount = new LinkedHashMap<UUID, List<ExtBusEventType>>();
+        eventTypesPerAccount.put(registeredAccountId, ImmutableList.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.PAYMENT_SUCCESS));
+        eventTypesPerAccount.put(newAccountId, ImmutableList.of(ExtBusEventType.ACCOUNT_CREATION));
+
+        final ConfigurationUpdateResult result = writer.applyChanges(context, eventTypesPerAccount, kbTenantId, new Timestamp(0), 500);
+        Assert.assertEquals(result.getAccounts(), 2);
+        Assert.assertEquals(result.getInsertedEventTypes(), 2);
+        Assert.assertEquals(result.getDeletedEventTypes(), 1);
+
+        // Unchanged registrations are kept
+        Assert.assertEquals(statements.size(), 3);
+        Assert.assertTrue(statements.get(0).startsWith("delete"));
+        Assert.assertTrue(statements.get(0).contains("'PAYMENT_FAILED'"));
+        Assert.assertTrue(statements.get(1).startsWith("insert"));
+        Assert.assertTrue(statements.get(1).contains("'PAYMENT_SUCCESS'"));
+        Assert.assertTrue(statements.get(2).contains("'ACCOUNT_CREATION'"));
+    }
+
+    private static Record2<Object, String> newRecord(final Object kbAccountId, final String eventType) {
+        final Record2<Object, String> record = DSL.using(SQLDialect.MYSQL).newRecord(KB_ACCOUNT_ID, EVENT_TYPE);
+        record.value1(kbAccountId);
+        record.value2(eventType);
+        return record;
+    }
+}
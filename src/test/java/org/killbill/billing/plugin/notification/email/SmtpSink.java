@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.email;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Minimal SMTP server accepting all messages (no authentication, no TLS), for tests.
+ */
+public class SmtpSink implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final List<String> messages = new CopyOnWriteArrayList<String>();
+    // Load tests only count the messages
+    private final boolean keepMessages;
+    private final AtomicInteger messageCount = new AtomicInteger();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger noopCount = new AtomicInteger();
+    // Simulate a server temporarily unable to accept messages
+    private volatile boolean failing;
+
+    public SmtpSink() throws IOException {
+        this(true);
+    }
+
+    public SmtpSink(final boolean keepMessages) throws IOException {
+        this.keepMessages = keepMessages;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public int getNoopCount() {
+        return noopCount.get();
+    }
+
+    public int getMessageCount() {
+        return messageCount.get();
+    }
+
+    public List<String> getMessages() {
+        return ImmutableList.copyOf(messages);
+    }
+
+    /**
+     * @param failing true to reject the messages (with a transient error), until called again with false
+     */
+    public void setFailing(final boolean failing) {
+        this.failing = failing;
+    }
+
+    // Simulate a server dropping idle connections
+    public void closeClientConnections() throws IOException {
+        for (final Socket client : clients) {
+            client.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        closeClientConnections();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            final Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (final IOException e) {
+                return;
+            }
+            connectionCount.incrementAndGet();
+            clients.add(client);
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handle(client);
+                    } catch (final IOException ignored) {
+                    } finally {
+                        clients.remove(client);
+                        try {
+                            client.close();
+                        } catch (final IOException ignored) {
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void handle(final Socket client) throws IOException {
+        final BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), Charsets.UTF_8));
+        final OutputStream out = client.getOutputStream();
+        reply(out, "220 localhost SMTP sink");
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            final String command = line.length() < 4 ? line.toUpperCase() : line.substring(0, 4).toUpperCase();
+            if ("EHLO".equals(command)) {
+                reply(out, "250-localhost");
+                reply(out, "250 8BITMIME");
+            } else if ("NOOP".equals(command)) {
+                noopCount.incrementAndGet();
+                reply(out, "250 OK");
+            } else if ("DATA".equals(command)) {
+                reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                final StringBuilder message = new StringBuilder();
+                while ((line = in.readLine()) != null && !".".equals(line)) {
+                    message.append(line.startsWith("..") ? line.substring(1) : line).append("\r\n");
+                }
+                if (line == null) {
+                    // Aborted transfer, which a server would drop
+                    return;
+                }
+                if (keepMessages) {
+                    messages.add(message.toString());
+                }
+                messageCount.incrementAndGet();
+                reply(out, "250 OK");
+            } else if ("QUIT".equals(command)) {
+                reply(out, "221 Bye");
+                return;
+            } else if ("MAIL".equals(command) && failing) {
+                reply(out, "451 Requested action aborted: local error in processing");
+            } else if ("HELO".equals(command) || "MAIL".equals(command) || "RCPT".equals(command) || "RSET".equals(command)) {
+                reply(out, "250 OK");
+            } else {
+                reply(out, "500 Unrecognized command");
+            }
+        }
+    }
+
+    private static void reply(final OutputStream out, final String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(Charsets.UTF_8));
+        out.flush();
+    }
+}
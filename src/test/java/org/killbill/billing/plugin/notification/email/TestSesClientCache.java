@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.email;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.killbill.billing.plugin.notification.util.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestSesClientCache {
+
+    private static final String SEND_EMAIL_RESPONSE = "<SendEmailResponse xmlns=\"http://ses.amazonaws.com/doc/2010-12-01/\">" +
+                                                      "<SendEmailResult><MessageId>00000000-0000-0000-0000-000000000000</MessageId></SendEmailResult>" +
+                                                      "<ResponseMetadata><RequestId>11111111-1111-1111-1111-111111111111</RequestId></ResponseMetadata>" +
+                                                      "</SendEmailResponse>";
+
+    // Local stand-in for the SES endpoint
+    private HttpServer sesServer;
+    private List<String> requests;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        requests = new CopyOnWriteArrayList<String>();
+        sesServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        sesServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                requests.add(IOUtils.toString(exchange.getRequestBody()));
+
+                final byte[] response = SEND_EMAIL_RESPONSE.getBytes(Charsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "text/xml");
+                exchange.sendResponseHeaders(200, response.length);
+                try (final OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            }
+        });
+        sesServer.start();
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() {
+        sesServer.stop(0);
+    }
+
+    @Test(groups = "fast")
+    public void testClientsAreReused() throws Exception {
+        final SesClientCache sesClientCache = createSesClientCache();
+        final EmailSender sender = new EmailSender(null, 25, null, null, "billing@example.com", false, false, false, "us-east-1", true, new SmtpTransportPool(), sesClientCache);
+
+        for (int i = 0; i < 3; i++) {
+            sender.sendHTMLEmail(ImmutableList.of("customer@example.com"), ImmutableList.<String>of(), "Subject-" + i, "<p>Body</p>", null);
+        }
+
+        Assert.assertEquals(requests.size(), 3);
+        Assert.assertTrue(requests.get(2).contains("Action=SendEmail"));
+        Assert.assertTrue(requests.get(2).contains("Subject-2"));
+        Assert.assertEquals(sesClientCache.size(), 1);
+        Assert.assertSame(sesClientCache.getClient("us-east-1"), sesClientCache.getClient("us-east-1"));
+
+        sender.close();
+        Assert.assertEquals(sesClientCache.size(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testClientsPerRegion() {
+        final SesClientCache sesClientCache = createSesClientCache();
+        Assert.assertNotSame(sesClientCache.getClient("us-east-1"), sesClientCache.getClient("eu-west-1"));
+        Assert.assertEquals(sesClientCache.size(), 2);
+        sesClientCache.close();
+    }
+
+    private SesClientCache createSesClientCache() {
+        final String endpoint = "http://127.0.0.1:" + sesServer.getAddress().getPort();
+        return new SesClientCache(SesClientCache.DEFAULT_MAX_CONNECTIONS, SesClientCache.DEFAULT_REQUEST_TIMEOUT_MS, endpoint, "accessKey", "secretKey");
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.email;
+
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Message.RecipientType;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+
+public class TestSmtpTransportPool {
+
+    private static final String FROM = "billing@example.com";
+    private static final String TO = "customer@example.com";
+
+    private SmtpSink smtpSink;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        smtpSink = new SmtpSink();
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() throws Exception {
+        smtpSink.close();
+    }
+
+    @Test(groups = "fast")
+    public void testConnectionsAreReused() throws Exception {
+        final SmtpTransportPool pool = new SmtpTransportPool();
+        final EmailSender sender = createEmailSender(pool);
+        for (int i = 0; i < 10; i++) {
+            sender.sendPlainTextEmail(ImmutableList.of(TO), ImmutableList.<String>of(), "Subject " + i, "Body " + i, createSmtpProperties());
+        }
+
+        Assert.assertEquals(smtpSink.getMessages().size(), 10);
+        Assert.assertTrue(smtpSink.getMessages().get(9).contains("Subject: Subject 9"));
+        Assert.assertEquals(smtpSink.getConnectionCount(), 1);
+        Assert.assertEquals(pool.getCreatedCount(), 1);
+        Assert.assertEquals(pool.getReusedCount(), 9);
+        // Validation on borrow
+        Assert.assertEquals(smtpSink.getNoopCount(), 9);
+        Assert.assertEquals(pool.getIdleCount(), 1);
+
+        sender.close();
+        Assert.assertEquals(pool.getIdleCount(), 0);
+        Assert.assertEquals(pool.getClosedCount(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testMaxMessagesPerConnection() throws Exception {
+        final SmtpTransportPool pool = new SmtpTransportPool(SmtpTransportPool.DEFAULT_MAX_IDLE_CONNECTIONS, SmtpTransportPool.DEFAULT_MAX_IDLE_TIME_MS, 3);
+        final EmailSender sender = createEmailSender(pool);
+        for (int i = 0; i < 10; i++) {
+            sender.sendHTMLEmail(ImmutableList.of(TO), ImmutableList.<String>of(), "Subject " + i, "<p>Body " + i + "</p>", createSmtpProperties());
+        }
+
+        Assert.assertEquals(smtpSink.getMessages().size(), 10);
+        Assert.assertEquals(smtpSink.getConnectionCount(), 4);
+        sender.close();
+    }
+
+    @Test(groups = "fast")
+    public void testPoolingDisabled() throws Exception {
+        final SmtpTransportPool pool = new SmtpTransportPool(0, SmtpTransportPool.DEFAULT_MAX_IDLE_TIME_MS, SmtpTransportPool.DEFAULT_MAX_MESSAGES_PER_CONNECTION);
+        final EmailSender sender = createEmailSender(pool);
+        for (int i = 0; i < 3; i++) {
+            sender.sendPlainTextEmail(ImmutableList.of(TO), ImmutableList.<String>of(), "Subject " + i, "Body " + i, createSmtpProperties());
+        }
+
+        Assert.assertEquals(smtpSink.getMessages().size(), 3);
+        Assert.assertEquals(smtpSink.getConnectionCount(), 3);
+        Assert.assertEquals(pool.getIdleCount(), 0);
+        sender.close();
+    }
+
+    @Test(groups = "fast")
+    public void testIdleConnectionsExpire() throws Exception {
+        final MockTicker ticker = new MockTicker();
+        final SmtpTransportPool pool = new SmtpTransportPool(SmtpTransportPool.DEFAULT_MAX_IDLE_CONNECTIONS, 1000, SmtpTransportPool.DEFAULT_MAX_MESSAGES_PER_CONNECTION, ticker);
+        final EmailSender sender = createEmailSender(pool);
+        sender.sendPlainTextEmail(ImmutableList.of(TO), ImmutableList.<String>of(), "Subject", "Body", createSmtpProperties());
+
+        ticker.advance(1001, TimeUnit.MILLISECONDS);
+        sender.sendPlainTextEmail(ImmutableList.of(TO), ImmutableList.<String>of(), "Subject", "Body", createSmtpProperties());
+
+        Assert.assertEquals(smtpSink.getMessages().size(), 2);
+        Assert.assertEquals(smtpSink.getConnectionCount(), 2);
+        Assert.assertEquals(pool.getReusedCount(), 0);
+        sender.close();
+    }
+
+    @Test(groups = "fast")
+    public void testBrokenConnectionsAreReplaced() throws Exception {
+        final SmtpTransportPool pool = new SmtpTransportPool();
+        final EmailSender sender = createEmailSender(pool);
+        sender.sendPlainTextEmail(ImmutableList.of(TO), ImmutableList.<String>of(), "Subject", "Body", createSmtpProperties());
+
+        smtpSink.closeClientConnections();
+        sender.sendPlainTextEmail(ImmutableList.of(TO), ImmutableList.<String>of(), "Subject", "Body", createSmtpProperties());
+
+        Assert.assertEquals(smtpSink.getMessages().size(), 2);
+        Assert.assertEquals(smtpSink.getConnectionCount(), 2);
+        Assert.assertEquals(pool.getValidationFailureCount(), 1);
+        sender.close();
+    }
+
+    @Test(groups = "fast")
+    public void testTransportIsClosedOnUnexpectedFailure() throws Exception {
+        final SmtpTransportPool pool = new SmtpTransportPool();
+        final SmtpProperties smtp = createSmtpProperties();
+        final Session session = createSession();
+        pool.send(smtp, session, createMessage(session, "Body"));
+        Assert.assertEquals(pool.getIdleCount(), 1);
+
+        final MimeMessage brokenMessage = new MimeMessage(createMessage(session, "Body")) {
+            @Override
+            public void writeTo(final OutputStream os, final String[] ignoreList) {
+                throw new IllegalStateException("Broken");
+            }
+        };
+        try {
+            pool.send(smtp, session, brokenMessage);
+            Assert.fail("The failure should be rethrown");
+        } catch (final IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "Broken");
+        }
+        // Not returned to the pool, in the middle of a transfer
+        Assert.assertEquals(pool.getIdleCount(), 0);
+        Assert.assertEquals(pool.getClosedCount(), 1);
+
+        pool.send(smtp, session, createMessage(session, "Body"));
+        Assert.assertEquals(smtpSink.getMessages().size(), 2);
+        Assert.assertEquals(smtpSink.getConnectionCount(), 2);
+        pool.close();
+    }
+
+    @Test(groups = "fast")
+    public void testUnusedPoolsAreEvicted() throws Exception {
+        final MockTicker ticker = new MockTicker();
+        final SmtpTransportPool pool = new SmtpTransportPool(SmtpTransportPool.DEFAULT_MAX_IDLE_CONNECTIONS, 1000, SmtpTransportPool.DEFAULT_MAX_MESSAGES_PER_CONNECTION, ticker);
+        final SmtpProperties smtp = createSmtpProperties();
+        final Session session = createSession();
+        pool.send(smtp, session, createMessage(session, "Body"));
+
+        pool.evictIdle();
+        Assert.assertEquals(pool.getIdleCount(), 1);
+        Assert.assertSame(pool.getSession(smtp), session);
+
+        ticker.advance(1001, TimeUnit.MILLISECONDS);
+        pool.evictIdle();
+        Assert.assertEquals(pool.getIdleCount(), 0);
+        Assert.assertEquals(pool.getClosedCount(), 1);
+        Assert.assertNull(pool.getSession(smtp));
+
+        // Recreated on demand
+        pool.send(smtp, session, createMessage(session, "Body"));
+        Assert.assertEquals(smtpSink.getMessages().size(), 2);
+        Assert.assertEquals(pool.getIdleCount(), 1);
+        pool.close();
+    }
+
+    private Session createSession() {
+        final Properties properties = new Properties();
+        properties.setProperty("mail.smtp.host", smtpSink.getHost());
+        properties.setProperty("mail.smtp.port", String.valueOf(smtpSink.getPort()));
+        // Like commons-email: the QUIT sent when closing a broken connection may never be answered
+        properties.setProperty("mail.smtp.timeout", "1000");
+        return Session.getInstance(properties);
+    }
+
+    private MimeMessage createMessage(final Session session, final String body) throws Exception {
+        final MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(FROM));
+        message.setRecipient(RecipientType.TO, new InternetAddress(TO));
+        message.setSubject("Subject");
+        message.setText(body);
+        return message;
+    }
+
+    private EmailSender createEmailSender(final SmtpTransportPool pool) {
+        return new EmailSender(smtpSink.getHost(), smtpSink.getPort(), null, null, FROM, false, false, false, "us-east-1", false, pool);
+    }
+
+    private SmtpProperties createSmtpProperties() {
+        return new SmtpProperties(smtpSink.getHost(), smtpSink.getPort(), false, null, null, false, FROM);
+    }
+
+    private static final class MockTicker extends Ticker {
+
+        private long nanos = 0;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(final long time, final TimeUnit timeUnit) {
+            nanos += timeUnit.toNanos(time);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.email;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestStreamingEmail {
+
+    private static final String FROM = "billing@example.com";
+    private static final String TO = "customer@example.com";
+
+    private SmtpSink smtpSink;
+    private EmailSender sender;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        smtpSink = new SmtpSink();
+        sender = new EmailSender(smtpSink.getHost(), smtpSink.getPort(), null, null, FROM, false, false, false, "us-east-1", false);
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() throws Exception {
+        sender.close();
+        smtpSink.close();
+    }
+
+    @Test(groups = "fast")
+    public void testBodyIsRenderedWhileSending() throws Exception {
+        final AtomicInteger renders = new AtomicInteger();
+        final EmailContent content = new EmailContent("Invoice", writer -> {
+            renders.incrementAndGet();
+            writer.write("<p>Total: 10.00 €</p>");
+        });
+
+        sender.sendHTMLEmail(ImmutableList.of(TO), ImmutableList.<String>of(), content, createSmtpProperties());
+
+        Assert.assertEquals(renders.get(), 1);
+        Assert.assertEquals(smtpSink.getMessages().size(), 1);
+        final String message = smtpSink.getMessages().get(0);
+        Assert.assertTrue(message.contains("Subject: Invoice"));
+        Assert.assertTrue(message.contains("Content-Type: text/html; charset=utf-8"));
+        Assert.assertTrue(message.contains("Content-Transfer-Encoding: quoted-printable"));
+        Assert.assertTrue(message.contains("<p>Total: 10.00 =E2=82=AC</p>"));
+    }
+
+    @Test(groups = "fast")
+    public void testRenderedBodiesAreSentAsIs() throws Exception {
+        sender.sendPlainTextEmail(ImmutableList.of(TO), ImmutableList.<String>of(), new EmailContent("Invoice", "Total: 10.00"), createSmtpProperties());
+
+        Assert.assertEquals(smtpSink.getMessages().size(), 1);
+        Assert.assertTrue(smtpSink.getMessages().get(0).contains("Content-Transfer-Encoding: 7bit"));
+        Assert.assertTrue(smtpSink.getMessages().get(0).contains("Total: 10.00"));
+    }
+
+    @Test(groups = "fast")
+    public void testRenderFailure() throws Exception {
+        final EmailContent content = new EmailContent("Invoice", writer -> {
+            writer.write("Total: ");
+            throw new IllegalStateException("Broken template");
+        });
+
+        try {
+            sender.sendPlainTextEmail(ImmutableList.of(TO), ImmutableList.<String>of(), content, createSmtpProperties());
+            Assert.fail("The render failure should be reported");
+        } catch (final IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "Broken template");
+        }
+        Assert.assertEquals(smtpSink.getMessages().size(), 0);
+
+        // The aborted connection isn't reused
+        sender.sendPlainTextEmail(ImmutableList.of(TO), ImmutableList.<String>of(), new EmailContent("Invoice", "Total: 10.00"), createSmtpProperties());
+        Assert.assertEquals(smtpSink.getMessages().size(), 1);
+    }
+
+    private SmtpProperties createSmtpProperties() {
+        return new SmtpProperties(smtpSink.getHost(), smtpSink.getPort(), false, null, null, false, FROM);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.generator;
+
+import java.lang.management.ManagementFactory;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.UUID;
+
+import org.killbill.billing.plugin.notification.generator.ResourceBundleFactory.ResourceBundleType;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestResourceBundleFactory {
+
+    private static final String TRANSLATION_KEY = "killbill-email-notifications:TEMPLATE_TRANSLATION_en_US";
+
+    @Test(groups = "fast")
+    public void testTenantBundlesAreCached() throws Exception {
+        final UUID tenantId = UUID.randomUUID();
+        final TenantContext context = Mockito.mock(TenantContext.class);
+        Mockito.when(context.getTenantId()).thenReturn(tenantId);
+
+        final TenantUserApi tenantUserApi = Mockito.mock(TenantUserApi.class);
+        Mockito.when(tenantUserApi.getTenantValuesForKey(Mockito.eq(TRANSLATION_KEY), Mockito.any(TenantContext.class)))
+               .thenReturn(ImmutableList.of("invoiceCreationSubject=Tenant subject"));
+
+        final ResourceBundleFactory factory = new ResourceBundleFactory(tenantUserApi);
+        final ResourceBundle first = factory.createBundle(Locale.US, ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        final ResourceBundle second = factory.createBundle(Locale.US, ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        Assert.assertEquals(first.getString("invoiceCreationSubject"), "Tenant subject");
+        Assert.assertSame(second, first);
+        Mockito.verify(tenantUserApi, Mockito.times(1)).getTenantValuesForKey(Mockito.eq(TRANSLATION_KEY), Mockito.any(TenantContext.class));
+
+        // Upload of a new translation
+        Mockito.when(tenantUserApi.getTenantValuesForKey(Mockito.eq(TRANSLATION_KEY), Mockito.any(TenantContext.class)))
+               .thenReturn(ImmutableList.of("invoiceCreationSubject=New tenant subject"));
+        factory.invalidateTenantCaches(tenantId, TRANSLATION_KEY);
+
+        final ResourceBundle third = factory.createBundle(Locale.US, ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        Assert.assertEquals(third.getString("invoiceCreationSubject"), "New tenant subject");
+        Mockito.verify(tenantUserApi, Mockito.times(2)).getTenantValuesForKey(Mockito.eq(TRANSLATION_KEY), Mockito.any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void testMissingTenantBundlesAreCached() throws Exception {
+        final TenantContext context = Mockito.mock(TenantContext.class);
+        Mockito.when(context.getTenantId()).thenReturn(UUID.randomUUID());
+
+        final TenantUserApi tenantUserApi = Mockito.mock(TenantUserApi.class);
+        Mockito.when(tenantUserApi.getTenantValuesForKey(Mockito.anyString(), Mockito.any(TenantContext.class)))
+               .thenReturn(ImmutableList.<String>of());
+
+        final ResourceBundleFactory factory = new ResourceBundleFactory(tenantUserApi);
+        final ResourceBundle first = factory.createBundle(Locale.UK, ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        final ResourceBundle second = factory.createBundle(Locale.UK, ResourceBundleType.TEMPLATE_TRANSLATION, context);
+
+        // Fallback to the bundles shipped with the plugin
+        Assert.assertNotNull(first);
+        Assert.assertSame(second, first);
+        Mockito.verify(tenantUserApi, Mockito.times(1)).getTenantValuesForKey(Mockito.anyString(), Mockito.any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void testTranslationMapIsSharedAndImmutable() throws Exception {
+        final TenantContext context = Mockito.mock(TenantContext.class);
+        Mockito.when(context.getTenantId()).thenReturn(UUID.randomUUID());
+
+        final TenantUserApi tenantUserApi = Mockito.mock(TenantUserApi.class);
+        Mockito.when(tenantUserApi.getTenantValuesForKey(Mockito.eq(TRANSLATION_KEY), Mockito.any(TenantContext.class)))
+               .thenReturn(ImmutableList.of("invoiceCreationSubject=Tenant subject"));
+
+        final ResourceBundleFactory factory = new ResourceBundleFactory(tenantUserApi);
+        final Map<String, String> first = factory.createTranslationMap(Locale.US, ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        final Map<String, String> second = factory.createTranslationMap(Locale.US, ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        Assert.assertEquals(first.get("invoiceCreationSubject"), "Tenant subject");
+        Assert.assertSame(second, first);
+
+        try {
+            first.put("invoiceCreationSubject", "Modified");
+            Assert.fail("Translation maps are shared across renders and must not be modifiable");
+        } catch (final UnsupportedOperationException ignored) {
+        }
+    }
+
+    @Test(groups = "fast", description = "Compare the allocations of the shared snapshot against the previous per-render copy")
+    public void testTranslationMapAllocations() throws Exception {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean) ||
+            !((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Thread allocation accounting isn't supported by this JVM");
+        }
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        final long threadId = Thread.currentThread().getId();
+
+        final TenantContext context = Mockito.mock(TenantContext.class);
+        final ResourceBundleFactory factory = new ResourceBundleFactory(Mockito.mock(TenantUserApi.class));
+        final ResourceBundle bundle = factory.createBundle(Locale.US, ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        final int renders = 10000;
+
+        // Warm-up
+        for (int i = 0; i < renders; i++) {
+            copyBundle(bundle);
+            factory.createTranslationMap(Locale.US, ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        }
+
+        long start = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < renders; i++) {
+            copyBundle(bundle);
+        }
+        final long copyBytesPerRender = (allocations.getThreadAllocatedBytes(threadId) - start) / renders;
+
+        start = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < renders; i++) {
+            factory.createTranslationMap(Locale.US, ResourceBundleType.TEMPLATE_TRANSLATION, context);
+        }
+        final long snapshotBytesPerRender = (allocations.getThreadAllocatedBytes(threadId) - start) / renders;
+
+        Assert.assertTrue(snapshotBytesPerRender < copyBytesPerRender,
+                          String.format("snapshot: %d bytes/render, copy: %d bytes/render", snapshotBytesPerRender, copyBytesPerRender));
+    }
+
+    // What TemplateRenderer used to do for every email
+    private static Map<String, String> copyBundle(final ResourceBundle bundle) {
+        final Map<String, String> text = new HashMap<String, String>();
+        final Enumeration<String> keys = bundle.getKeys();
+        while (keys.hasMoreElements()) {
+            final String key = keys.nextElement();
+            text.put(key, bundle.getString(key));
+        }
+        return text;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.generator;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.killbill.billing.tenant.api.TenantApiException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+
+public class TestTenantKeyValueCache {
+
+    private static final String TEMPLATE_KEY = "killbill-email-notifications:INVOICE_CREATION_en_US";
+    private static final String OTHER_TEMPLATE_KEY = "killbill-email-notifications:UPCOMING_INVOICE_en_US";
+
+    @Test(groups = "fast")
+    public void testValuesAndMissesAreCached() throws TenantApiException {
+        final TenantKeyValueCache<String> cache = new TenantKeyValueCache<String>(100, 1, TimeUnit.HOURS);
+        final UUID tenantId = UUID.randomUUID();
+        final CountingLoader loader = new CountingLoader("template");
+        final CountingLoader nullLoader = new CountingLoader(null);
+
+        Assert.assertEquals(cache.get(tenantId, TEMPLATE_KEY, loader), "template");
+        Assert.assertEquals(cache.get(tenantId, TEMPLATE_KEY, loader), "template");
+        Assert.assertEquals(loader.getCalls(), 1);
+
+        Assert.assertNull(cache.get(tenantId, OTHER_TEMPLATE_KEY, nullLoader));
+        Assert.assertNull(cache.get(tenantId, OTHER_TEMPLATE_KEY, nullLoader));
+        Assert.assertEquals(nullLoader.getCalls(), 1);
+
+        // Other tenants don't share entries
+        Assert.assertEquals(cache.get(UUID.randomUUID(), TEMPLATE_KEY, loader), "template");
+        Assert.assertEquals(loader.getCalls(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidation() throws TenantApiException {
+        final TenantKeyValueCache<String> cache = new TenantKeyValueCache<String>(100, 1, TimeUnit.HOURS);
+        final UUID tenantId = UUID.randomUUID();
+        final UUID otherTenantId = UUID.randomUUID();
+        final CountingLoader loader = new CountingLoader("template");
+
+        cache.get(tenantId, TEMPLATE_KEY, loader);
+        cache.get(tenantId, OTHER_TEMPLATE_KEY, loader);
+        cache.get(otherTenantId, TEMPLATE_KEY, loader);
+        Assert.assertEquals(cache.size(), 3);
+
+        cache.invalidate(tenantId, TEMPLATE_KEY);
+        Assert.assertEquals(cache.size(), 2);
+
+        // Unknown key: all entries for that tenant are invalidated
+        cache.invalidate(tenantId, null);
+        Assert.assertEquals(cache.size(), 1);
+
+        cache.get(tenantId, TEMPLATE_KEY, loader);
+        Assert.assertEquals(loader.getCalls(), 4);
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidationDuringLoad() throws TenantApiException {
+        final TenantKeyValueCache<String> cache = new TenantKeyValueCache<String>(100, 1, TimeUnit.HOURS);
+        final UUID tenantId = UUID.randomUUID();
+
+        // TENANT_CONFIG_CHANGE handled while the previous template is loading
+        Assert.assertEquals(cache.get(tenantId, TEMPLATE_KEY, () -> {
+            cache.invalidate(tenantId, TEMPLATE_KEY);
+            return "previous template";
+        }), "previous template");
+        Assert.assertEquals(cache.size(), 0);
+
+        final CountingLoader loader = new CountingLoader("template");
+        Assert.assertEquals(cache.get(tenantId, TEMPLATE_KEY, loader), "template");
+        Assert.assertEquals(cache.get(tenantId, TEMPLATE_KEY, loader), "template");
+        Assert.assertEquals(loader.getCalls(), 1);
+
+        // Same for tenant wide invalidations
+        cache.get(tenantId, OTHER_TEMPLATE_KEY, () -> {
+            cache.invalidate(tenantId, null);
+            return "previous template";
+        });
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testEntriesExpire() throws TenantApiException {
+        final MockTicker ticker = new MockTicker();
+        final TenantKeyValueCache<String> cache = new TenantKeyValueCache<String>(100, 5, TimeUnit.MINUTES, ticker);
+        final UUID tenantId = UUID.randomUUID();
+        final CountingLoader loader = new CountingLoader("template");
+
+        cache.get(tenantId, TEMPLATE_KEY, loader);
+        ticker.advance(4, TimeUnit.MINUTES);
+        cache.get(tenantId, TEMPLATE_KEY, loader);
+        Assert.assertEquals(loader.getCalls(), 1);
+
+        ticker.advance(2, TimeUnit.MINUTES);
+        cache.get(tenantId, TEMPLATE_KEY, loader);
+        Assert.assertEquals(loader.getCalls(), 2);
+    }
+
+    private static final class CountingLoader implements TenantKeyValueCache.Loader<String> {
+
+        private final String value;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private CountingLoader(final String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String load() {
+            calls.incrementAndGet();
+            return value;
+        }
+
+        public int getCalls() {
+            return calls.get();
+        }
+    }
+
+    private static final class MockTicker extends Ticker {
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        public void advance(final long duration, final TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(duration));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.generator.formatters;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.joda.money.IllegalCurrencyException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestCurrencyFormatterPool {
+
+    @Test(groups = "fast")
+    public void testFormatting() {
+        final CurrencyFormatterPool pool = new CurrencyFormatterPool();
+        Assert.assertEquals(pool.format(new BigDecimal("1234.5"), "USD", Locale.US), "$1,234.50");
+        Assert.assertEquals(pool.format(new BigDecimal("1234.5"), "JPY", Locale.US), "\u00a51,235");
+        Assert.assertEquals(pool.format(new BigDecimal("-0.125"), "USD", Locale.US), "-$0.13");
+        Assert.assertEquals(pool.format(new BigDecimal("1.2345"), "BHD", Locale.US), "BHD1.235");
+        Assert.assertEquals(pool.size(), 3);
+    }
+
+    @Test(groups = "fast")
+    public void testNoPrecisionLossOnLargeAmounts() {
+        final CurrencyFormatterPool pool = new CurrencyFormatterPool();
+        // new BigDecimal("12345678901234567.89").doubleValue() is 12345678901234568
+        Assert.assertEquals(pool.format(new BigDecimal("12345678901234567.89"), "USD", Locale.US), "$12,345,678,901,234,567.89");
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalCurrencyException.class)
+    public void testInvalidCurrency() {
+        final CurrencyFormatterPool pool = new CurrencyFormatterPool();
+        try {
+            pool.format(BigDecimal.ONE, "XYZ", Locale.US);
+        } finally {
+            Assert.assertEquals(pool.size(), 0);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testMaxKeys() {
+        final CurrencyFormatterPool pool = new CurrencyFormatterPool(2, 2);
+        pool.format(BigDecimal.ONE, "USD", Locale.US);
+        pool.format(BigDecimal.ONE, "EUR", Locale.US);
+        Assert.assertEquals(pool.size(), 2);
+        pool.format(BigDecimal.ONE, "GBP", Locale.US);
+        Assert.assertEquals(pool.size(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrentFormatting() throws Exception {
+        final CurrencyFormatterPool pool = new CurrencyFormatterPool(2, CurrencyFormatterPool.DEFAULT_MAX_KEYS);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 8; i++) {
+                final int offset = i;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int j = 0; j < 1000; j++) {
+                            final int cents = offset * 1000 + j;
+                            final String expected = String.format(Locale.US, "$%d.%02d", cents / 100, cents % 100);
+                            if (!expected.equals(pool.format(BigDecimal.valueOf(cents, 2), "USD", Locale.US))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.generator.formatters;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.invoice.api.boilerplate.InvoiceImp;
+import org.killbill.billing.invoice.api.boilerplate.InvoiceItemImp;
+import org.killbill.billing.invoice.api.formatters.InvoiceItemFormatter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TestDefaultInvoiceFormatter {
+
+    @Test(groups = "fast")
+    public void testItemsAreFormattedOnce() {
+        final Invoice invoice = new InvoiceImp.Builder<>().withInvoiceItems(ImmutableList.<InvoiceItem>of(createItem("plan-monthly", new LocalDate(2026, 2, 1)),
+                                                                                                          createItem("plan-annual", null)))
+                                                          .withCurrency(Currency.USD)
+                                                          .build();
+        final DefaultInvoiceFormatter formatter = new DefaultInvoiceFormatter(ImmutableMap.of("plan-monthly", "Monthly plan"), invoice, Locale.US);
+
+        final List<InvoiceItem> items = formatter.getInvoiceItems();
+        Assert.assertSame(formatter.getInvoiceItems(), items);
+        Assert.assertEquals(items.size(), 2);
+
+        final InvoiceItemFormatter monthly = (InvoiceItemFormatter) items.get(0);
+        Assert.assertEquals(monthly.getPlanName(), "Monthly plan");
+        Assert.assertEquals(monthly.getFormattedAmount(), "$10.50");
+        Assert.assertEquals(monthly.getFormattedStartDate(), "Jan 1, 2026");
+        Assert.assertEquals(monthly.getFormattedEndDate(), "Feb 1, 2026");
+        Assert.assertSame(monthly.getFormattedAmount(), monthly.getFormattedAmount());
+        Assert.assertSame(monthly.getFormattedEndDate(), monthly.getFormattedEndDate());
+
+        // Not translated
+        final InvoiceItemFormatter annual = (InvoiceItemFormatter) items.get(1);
+        Assert.assertEquals(annual.getPlanName(), "plan-annual");
+        Assert.assertNull(annual.getFormattedEndDate());
+    }
+
+    private static InvoiceItem createItem(final String planName, final LocalDate endDate) {
+        return new InvoiceItemImp.Builder<>().withInvoiceItemType(InvoiceItemType.RECURRING)
+                                             .withPlanName(planName)
+                                             .withStartDate(new LocalDate(2026, 1, 1))
+                                             .withEndDate(endDate)
+                                             .withAmount(new BigDecimal("10.50"))
+                                             .withCurrency(Currency.USD)
+                                             .build();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.generator.formatters;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+import org.joda.time.LocalDate;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestLocaleFormatters {
+
+    @Test(groups = "fast")
+    public void testFormattersAreShared() {
+        final LocaleFormatters formatters = LocaleFormatters.forLocale(Locale.FRANCE);
+        Assert.assertSame(LocaleFormatters.forLocale(new Locale("fr", "FR")), formatters);
+        Assert.assertSame(LocaleFormatters.forLocale(Locale.FRANCE).getDateFormatter(), formatters.getDateFormatter());
+        Assert.assertNotSame(LocaleFormatters.forLocale(Locale.US), formatters);
+
+        Assert.assertEquals(formatters.getLocale(), Locale.FRANCE);
+        Assert.assertEquals(formatters.getDateFormatter().getLocale(), Locale.FRANCE);
+        Assert.assertEquals(formatters.getDateTimeFormatter().getLocale(), Locale.FRANCE);
+    }
+
+    @Test(groups = "fast")
+    public void testFormatting() {
+        final LocaleFormatters formatters = LocaleFormatters.forLocale(Locale.US);
+        Assert.assertEquals(new LocalDate(2026, 3, 14).toString(formatters.getDateFormatter()), "Mar 14, 2026");
+        Assert.assertEquals(formatters.formatAmount(new BigDecimal("1234.5"), "USD"), "$1,234.50");
+        Assert.assertEquals(Formatter.getFormattedAmountByLocaleAndInvoiceCurrency(new BigDecimal("1234.5"), "USD", Locale.US), "$1,234.50");
+    }
+
+    @Test(groups = "fast")
+    public void testWarmUp() {
+        LocaleFormatters.warmUp(Locale.US);
+        // No default currency
+        LocaleFormatters.warmUp(Locale.FRENCH);
+        // No ISO 4217 currency
+        LocaleFormatters.warmUp(new Locale("", "AQ"));
+    }
+}
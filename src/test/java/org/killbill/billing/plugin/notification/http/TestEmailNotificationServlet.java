@@ -19,21 +19,39 @@
 
 package org.killbill.billing.plugin.notification.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
+import org.jooby.MediaType;
+import org.jooby.Request;
 import org.jooby.Result;
+import org.jooby.Upload;
 import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.notification.EmbeddedDbHelper;
 import org.killbill.billing.plugin.notification.TestBase;
+import org.killbill.billing.plugin.notification.dao.ConfigurationDao;
 import org.killbill.billing.plugin.notification.dao.gen.tables.pojos.EmailNotificationsConfiguration;
 import org.killbill.billing.tenant.api.Tenant;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+
 public class TestEmailNotificationServlet extends TestBase {
 
     @Test(groups = "slow")
@@ -92,6 +110,168 @@ public class TestEmailNotificationServlet extends TestBase {
         Assert.assertEquals(result.status().get().value(), 200);
     }
 
+    @Test(groups = "slow")
+    public void bulkUpdateConfiguration() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final List<UUID> kbAccountIds = new ArrayList<>();
+        final StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            final UUID kbAccountId = UUID.randomUUID();
+            kbAccountIds.add(kbAccountId);
+            ndjson.append("{\"kbAccountId\":\"").append(kbAccountId).append("\",\"eventTypes\":[\"INVOICE_CREATION\",\"SUBSCRIPTION_CANCEL\"]}\n");
+        }
+
+        Result result = EmailNotificationService.doBulkUpdateEventTypes(dao, toStream(ndjson.toString()), kbTenantId, 2, osgiClock.getClock().getUTCNow());
+        Assert.assertEquals(result.status().get().value(), 200);
+        BulkUpdateResult bulkUpdateResult = result.get();
+        Assert.assertEquals(bulkUpdateResult.getBatches().size(), 3);
+        Assert.assertEquals(bulkUpdateResult.getAccounts(), 5);
+        Assert.assertEquals(bulkUpdateResult.getInsertedEventTypes(), 10);
+        Assert.assertEquals(bulkUpdateResult.getFailedBatches(), 0);
+
+        final List<EmailNotificationsConfiguration> configurations = new EmailNotificationServlet(dao, osgiClock).getEventTypes(kbAccountIds, buildTenant(kbTenantId)).get();
+        Assert.assertEquals(configurations.size(), 10);
+
+        // JSON array, with a malformed last element: the previous ones are still applied
+        final String json = "[{\"kbAccountId\":\"" + kbAccountIds.get(0) + "\",\"eventTypes\":[\"INVOICE_CREATION\"]}," +
+                            "{\"kbAccountId\":\"" + kbAccountIds.get(1) + "\",\"eventTypes\":[]}," +
+                            "{\"kbAccountId\":\"not-an-id\"}]";
+        result = EmailNotificationService.doBulkUpdateEventTypes(dao, toStream(json), kbTenantId, 500, osgiClock.getClock().getUTCNow());
+        Assert.assertEquals(result.status().get().value(), 400);
+        bulkUpdateResult = result.get();
+        Assert.assertNotNull(bulkUpdateResult.getError());
+        Assert.assertEquals(bulkUpdateResult.getAccounts(), 2);
+        Assert.assertEquals(bulkUpdateResult.getInsertedEventTypes(), 0);
+        Assert.assertEquals(bulkUpdateResult.getDeletedEventTypes(), 3);
+    }
+
+    @Test(groups = "slow")
+    public void bulkUpdateConfigurationFromUpload() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final UUID kbAccountId = UUID.randomUUID();
+        final File file = File.createTempFile("bulk-update", ".ndjson");
+        file.deleteOnExit();
+        Files.write(file.toPath(), ("{\"kbAccountId\":\"" + kbAccountId + "\",\"eventTypes\":[\"INVOICE_CREATION\"]}\n").getBytes(StandardCharsets.UTF_8));
+
+        final Upload upload = Mockito.mock(Upload.class);
+        Mockito.when(upload.file()).thenReturn(file);
+        final Request request = Mockito.mock(Request.class);
+        Mockito.when(request.is(MediaType.multipart)).thenReturn(true);
+        Mockito.when(request.file(EmailNotificationServlet.BULK_UPDATE_FILE_PART)).thenReturn(upload);
+
+        final Result result = new EmailNotificationServlet(dao, osgiClock).doBulkUpdateEventTypes(request, buildTenant(kbTenantId), Optional.<Integer>empty());
+        Assert.assertEquals(result.status().get().value(), 200);
+        final BulkUpdateResult bulkUpdateResult = result.get();
+        Assert.assertEquals(bulkUpdateResult.getAccounts(), 1);
+        Assert.assertEquals(bulkUpdateResult.getInsertedEventTypes(), 1);
+        Assert.assertTrue(dao.isEventTypeRegistered(kbAccountId, kbTenantId, ExtBusEventType.INVOICE_CREATION));
+
+        // Parsed from the spooled file, rather than from the body read in memory
+        Mockito.verify(request, Mockito.never()).body();
+        Mockito.verify(upload).close();
+    }
+
+    @Test(groups = "slow")
+    public void getConfigurationsOfManyAccounts() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final List<UUID> kbAccountIds = new ArrayList<>();
+        final Map<UUID, List<ExtBusEventType>> eventTypesPerAccount = new HashMap<>();
+        for (int i = 0; i < ConfigurationDao.DEFAULT_BATCH_SIZE * 2 + 10; i++) {
+            final UUID kbAccountId = UUID.randomUUID();
+            kbAccountIds.add(kbAccountId);
+            // Nothing registered in the first chunk
+            if (i >= ConfigurationDao.DEFAULT_BATCH_SIZE && i % 10 == 0) {
+                eventTypesPerAccount.put(kbAccountId, ImmutableList.of(ExtBusEventType.INVOICE_CREATION));
+            }
+        }
+        dao.updateConfigurations(eventTypesPerAccount, kbTenantId, osgiClock.getClock().getUTCNow());
+
+        final Result result = new EmailNotificationServlet(dao, osgiClock).getEventTypes(kbAccountIds, buildTenant(kbTenantId));
+        Assert.assertEquals(result.status().get().value(), 200);
+        final InputStream body = result.get();
+        final JsonNode configurations = new ObjectMapper().readTree(body);
+        Assert.assertEquals(configurations.size(), eventTypesPerAccount.size());
+        for (final JsonNode configuration : configurations) {
+            Assert.assertTrue(eventTypesPerAccount.containsKey(UUID.fromString(configuration.get("kbAccountId").asText())));
+        }
+
+        Assert.assertEquals(new EmailNotificationServlet(dao, osgiClock).getEventTypes(kbAccountIds, buildTenant(UUID.randomUUID())).status().get().value(), 404);
+    }
+
+    @Test(groups = "slow")
+    public void pageThroughTenantConfigurations() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final Map<UUID, List<ExtBusEventType>> eventTypesPerAccount = new HashMap<>();
+        for (int i = 0; i < ConfigurationDao.DEFAULT_BATCH_SIZE * 2 + 100; i++) {
+            eventTypesPerAccount.put(UUID.randomUUID(), ImmutableList.of(ExtBusEventType.INVOICE_CREATION));
+        }
+        dao.updateConfigurations(eventTypesPerAccount, kbTenantId, osgiClock.getClock().getUTCNow());
+
+        final EmailNotificationServlet servlet = new EmailNotificationServlet(dao, osgiClock);
+        final Tenant tenant = buildTenant(kbTenantId);
+        final Set<UUID> listedAccountIds = new HashSet<>();
+        Optional<Long> afterRecordId = Optional.empty();
+        int pages = 0;
+        JsonNode page;
+        do {
+            final Result result = servlet.getTenantEventTypes(tenant, afterRecordId, Optional.of(700));
+            Assert.assertEquals(result.status().get().value(), 200);
+            page = new ObjectMapper().readTree((InputStream) result.get());
+            for (final JsonNode configuration : page) {
+                Assert.assertTrue(listedAccountIds.add(UUID.fromString(configuration.get("kbAccountId").asText())));
+                afterRecordId = Optional.of(configuration.get("recordId").asLong());
+            }
+            pages++;
+        } while (page.size() == 700);
+
+        Assert.assertEquals(pages, 2);
+        Assert.assertEquals(listedAccountIds, eventTypesPerAccount.keySet());
+    }
+
+    @Test(groups = "slow")
+    public void pageThroughBitmaskTenantConfigurations() throws Exception {
+        // One row per account, holding all its event types: the page size is a number of accounts
+        final ConfigurationDao bitmaskDao = Mockito.spy(EmbeddedDbHelper.instance().getConfigurationDao(ConfigurationDao.StorageModel.BITMASK));
+        final List<ExtBusEventType> eventTypes = ImmutableList.of(ExtBusEventType.INVOICE_CREATION, ExtBusEventType.INVOICE_PAYMENT_SUCCESS, ExtBusEventType.PAYMENT_FAILED);
+        final UUID kbTenantId = UUID.randomUUID();
+        final Map<UUID, List<ExtBusEventType>> eventTypesPerAccount = new HashMap<>();
+        for (int i = 0; i < ConfigurationDao.DEFAULT_BATCH_SIZE * 2 + 100; i++) {
+            eventTypesPerAccount.put(UUID.randomUUID(), eventTypes);
+        }
+        bitmaskDao.updateConfigurations(eventTypesPerAccount, kbTenantId, osgiClock.getClock().getUTCNow());
+
+        final EmailNotificationServlet servlet = new EmailNotificationServlet(bitmaskDao, osgiClock);
+        final Tenant tenant = buildTenant(kbTenantId);
+        final Map<UUID, Integer> eventTypeCounts = new HashMap<>();
+        Optional<Long> afterRecordId = Optional.empty();
+        final List<Integer> pageSizes = new ArrayList<>();
+        Set<UUID> pageAccountIds;
+        do {
+            final Result result = servlet.getTenantEventTypes(tenant, afterRecordId, Optional.of(700));
+            Assert.assertEquals(result.status().get().value(), 200);
+            pageAccountIds = new HashSet<>();
+            for (final JsonNode configuration : new ObjectMapper().readTree((InputStream) result.get())) {
+                final UUID kbAccountId = UUID.fromString(configuration.get("kbAccountId").asText());
+                pageAccountIds.add(kbAccountId);
+                eventTypeCounts.merge(kbAccountId, 1, Integer::sum);
+                afterRecordId = Optional.of(configuration.get("recordId").asLong());
+            }
+            pageSizes.add(pageAccountIds.size());
+        } while (pageAccountIds.size() == 700);
+
+        Assert.assertEquals(pageSizes, ImmutableList.of(700, 400));
+        Assert.assertEquals(eventTypeCounts.keySet(), eventTypesPerAccount.keySet());
+        for (final int eventTypeCount : eventTypeCounts.values()) {
+            Assert.assertEquals(eventTypeCount, eventTypes.size());
+        }
+        // 500 and 200 accounts for the first page, then a short chunk of 400 accounts: no empty query
+        Mockito.verify(bitmaskDao, Mockito.times(3)).getEventTypesPage(Mockito.eq(kbTenantId), Mockito.any(), Mockito.anyInt());
+    }
+
+    private static ByteArrayInputStream toStream(final String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
     private Tenant buildTenant(final UUID kbTenantId) throws IOException {
         final Tenant tenant = (Tenant) Mockito.mock(Tenant.class);
         Mockito.when(tenant.getId()).thenReturn(kbTenantId);
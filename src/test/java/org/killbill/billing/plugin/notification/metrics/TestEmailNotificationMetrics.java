@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.metrics;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.commons.metrics.api.Counter;
+import org.killbill.commons.metrics.api.Gauge;
+import org.killbill.commons.metrics.api.MetricRegistry;
+import org.killbill.commons.metrics.api.Timer;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestEmailNotificationMetrics {
+
+    @Test(groups = "fast")
+    public void testMetricName() {
+        final UUID tenantId = UUID.fromString("0f8fad5b-d9cb-469f-a165-70867728950e");
+        Assert.assertEquals(EmailNotificationMetrics.metricName("render"), "killbill-email-notifications.render");
+        Assert.assertEquals(EmailNotificationMetrics.metricName("events",
+                                                                EmailNotificationMetrics.TAG_EVENT_TYPE, ExtBusEventType.INVOICE_CREATION,
+                                                                EmailNotificationMetrics.TAG_TENANT, tenantId,
+                                                                EmailNotificationMetrics.TAG_OUTCOME, EmailNotificationMetrics.OUTCOME_SENT),
+                            "killbill-email-notifications.events;eventType=INVOICE_CREATION;tenant=0f8fad5b-d9cb-469f-a165-70867728950e;outcome=sent");
+        // Missing and reserved values can't break the encoding
+        Assert.assertEquals(EmailNotificationMetrics.metricName("send", EmailNotificationMetrics.TAG_TENANT, null, "key", "a=b;c d"),
+                            "killbill-email-notifications.send;tenant=none;key=a_b_c_d");
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalArgumentException.class)
+    public void testOddNumberOfTags() {
+        EmailNotificationMetrics.metricName("events", EmailNotificationMetrics.TAG_TENANT);
+    }
+
+    @Test(groups = "fast")
+    public void testUpdatesAreDroppedWithoutRegistry() {
+        EmailNotificationMetrics.NOOP.recordTiming("render", 10L);
+        EmailNotificationMetrics.NOOP.increment("events", EmailNotificationMetrics.TAG_OUTCOME, EmailNotificationMetrics.OUTCOME_FAILED);
+        EmailNotificationMetrics.NOOP.recordValue("template.bodySize", 1024L);
+    }
+
+    @Test(groups = "fast")
+    public void testUpdatesArePublished() {
+        final MetricRegistry registry = Mockito.mock(MetricRegistry.class);
+        final Timer timer = Mockito.mock(Timer.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(registry.timer("killbill-email-notifications.send;outcome=sent")).thenReturn(timer);
+        Mockito.when(registry.counter("killbill-email-notifications.events;outcome=filtered")).thenReturn(counter);
+
+        final EmailNotificationMetrics metrics = new EmailNotificationMetrics(() -> registry);
+        metrics.recordTiming("send", 1500L, EmailNotificationMetrics.TAG_OUTCOME, EmailNotificationMetrics.OUTCOME_SENT);
+        metrics.increment("events", EmailNotificationMetrics.TAG_OUTCOME, EmailNotificationMetrics.OUTCOME_FILTERED);
+
+        Mockito.verify(timer).update(1500L, TimeUnit.NANOSECONDS);
+        Mockito.verify(counter).inc(1);
+    }
+
+    @Test(groups = "fast")
+    public void testGaugesAreRegisteredOnceTheRegistryIsAvailable() {
+        final MetricRegistry registry = Mockito.mock(MetricRegistry.class);
+        Mockito.when(registry.timer(Mockito.anyString())).thenReturn(Mockito.mock(Timer.class));
+        final AtomicReference<MetricRegistry> registryReference = new AtomicReference<MetricRegistry>();
+        final EmailNotificationMetrics metrics = new EmailNotificationMetrics(registryReference::get);
+
+        // No registry yet
+        final Gauge<Integer> gauge = () -> 3;
+        metrics.registerGauge("pipeline.send.queueSize", gauge);
+        metrics.recordTiming("send", 1500L);
+
+        registryReference.set(registry);
+        metrics.recordTiming("send", 1500L);
+        metrics.recordTiming("send", 1500L);
+        Mockito.verify(registry, Mockito.times(1)).gauge("killbill-email-notifications.pipeline.send.queueSize", gauge);
+
+        metrics.unregisterGauges();
+        Mockito.verify(registry).remove("killbill-email-notifications.pipeline.send.queueSize");
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sql.DataSource;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.entitlement.api.Entitlement.EntitlementState;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.notification.plugin.api.ExtBusEvent;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.notification.plugin.api.NotificationPluginApiRetryException;
+import org.killbill.billing.notification.plugin.api.boilerplate.plugin.ExtBusEventImp;
+import org.killbill.billing.payment.api.TransactionStatus;
+import org.killbill.billing.plugin.notification.EmbeddedDbHelper;
+import org.killbill.billing.plugin.notification.dao.ConfigurationDao;
+import org.killbill.billing.plugin.notification.email.SmtpSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * End-to-end load test of the listener: events are replayed at a fixed rate, against in-memory Kill Bill APIs, the
+ * embedded database (for the registrations) and a local SMTP sink.
+ * <p>
+ * Events are dispatched open-loop, as the bus would: latencies are measured from the time each event was due, so that
+ * a saturated listener shows up as growing latencies instead of a lower dispatch rate. In asynchronous mode, the
+ * handler only queues the event: the throughput then comes from the emails accepted by the sink, once the pipeline
+ * is drained.
+ * <p>
+ * To run it (options are the {@code emailNotifications.load.*} system properties, see {@link Options}):
+ * <pre>
+ * {@code
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.killbill.billing.plugin.notification.setup.EmailNotificationLoadHarness \
+ *     -Dorg.killbill.billing.dbi.test.h2=true \
+ *     -DemailNotifications.load.rate=500 -DemailNotifications.load.duration=60
+ * }
+ * </pre>
+ */
+public class EmailNotificationLoadHarness {
+
+    static final String PROPERTY_PREFIX = "emailNotifications.load.";
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailNotificationLoadHarness.class);
+
+    private static final int REGISTRATION_BATCH_SIZE = 1000;
+
+    private final Options options;
+    private final DataSource dataSource;
+    private final SmtpSink smtpSink;
+
+    public EmailNotificationLoadHarness(final Options options, final DataSource dataSource, final SmtpSink smtpSink) {
+        this.options = options;
+        this.dataSource = dataSource;
+        this.smtpSink = smtpSink;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Options options = Options.fromSystemProperties();
+        EmbeddedDbHelper.instance().startDb();
+        try (final SmtpSink smtpSink = new SmtpSink(false)) {
+            final Report report = new EmailNotificationLoadHarness(options, EmbeddedDbHelper.instance().getDataSource(), smtpSink).run();
+            System.out.println(options);
+            System.out.println(report);
+        } finally {
+            EmbeddedDbHelper.instance().stopDB();
+        }
+    }
+
+    public Report run() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final InMemoryKillbillApi killbillApi = new InMemoryKillbillApi();
+        final ConfigurationDao configurationDao = new ConfigurationDao(dataSource);
+        final List<Fixture> fixtures = createFixtures(killbillApi, configurationDao, kbTenantId);
+
+        final Map<UUID, Fixture> fixturesPerAccount = new HashMap<UUID, Fixture>();
+        for (final Fixture fixture : fixtures) {
+            fixturesPerAccount.put(fixture.accountId, fixture);
+        }
+        final List<ExtBusEvent> events = createEvents(fixtures, kbTenantId);
+        int expectedEmails = 0;
+        for (final ExtBusEvent event : events) {
+            if (fixturesPerAccount.get(event.getAccountId()).registered) {
+                expectedEmails++;
+            }
+        }
+
+        final EmailNotificationListener listener = createListener(killbillApi, configurationDao);
+        listener.start();
+
+        final int messagesBefore = smtpSink.getMessageCount();
+        final long[] latenciesNanos = new long[events.size()];
+        final AtomicInteger retries = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        // Unbounded queue: the backlog of the bus
+        final ExecutorService busExecutor = Executors.newFixedThreadPool(options.busThreads,
+                                                                         new ThreadFactoryBuilder().setNameFormat("load-bus-%d")
+                                                                                                   .setDaemon(true)
+                                                                                                   .build());
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        final long startNanos = System.nanoTime();
+        final long dispatchedNanos;
+        final long endNanos;
+        try {
+            for (int i = 0; i < events.size(); i++) {
+                final long dueNanos = startNanos + i * intervalNanos;
+                long waitNanos;
+                while ((waitNanos = dueNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+
+                final int index = i;
+                busExecutor.execute(() -> {
+                    try {
+                        listener.handleKillbillEvent(events.get(index));
+                    } catch (final NotificationPluginApiRetryException e) {
+                        retries.incrementAndGet();
+                    } catch (final RuntimeException e) {
+                        if (errors.incrementAndGet() == 1) {
+                            logger.warn("Unexpected failure for event {}", events.get(index), e);
+                        }
+                    } finally {
+                        latenciesNanos[index] = System.nanoTime() - dueNanos;
+                    }
+                });
+            }
+            dispatchedNanos = System.nanoTime();
+
+            busExecutor.shutdown();
+            Preconditions.checkState(busExecutor.awaitTermination(options.drainTimeoutSeconds, TimeUnit.SECONDS), "Bus threads didn't complete in time");
+        } finally {
+            busExecutor.shutdownNow();
+            // Drains the asynchronous pipeline
+            listener.shutdown();
+            endNanos = System.nanoTime();
+        }
+
+        return new Report(events.size(),
+                          expectedEmails,
+                          smtpSink.getMessageCount() - messagesBefore,
+                          retries.get(),
+                          errors.get(),
+                          dispatchedNanos - startNanos,
+                          endNanos - startNanos,
+                          latenciesNanos);
+    }
+
+    private EmailNotificationListener createListener(final InMemoryKillbillApi killbillApi, final ConfigurationDao configurationDao) throws Exception {
+        return InMemoryListenerFactory.createListener(killbillApi,
+                                                      InMemoryListenerFactory.createDataSource(dataSource),
+                                                      configurationDao,
+                                                      smtpSink,
+                                                      ImmutableMap.of(EmailNotificationActivator.PROPERTY_PREFIX + "async.enabled", String.valueOf(options.async),
+                                                                      // Failed sends are reported as retries instead
+                                                                      EmailNotificationActivator.PROPERTY_PREFIX + "outbox.enabled", "false"));
+    }
+
+    private List<Fixture> createFixtures(final InMemoryKillbillApi killbillApi, final ConfigurationDao configurationDao, final UUID kbTenantId) throws Exception {
+        final int registeredAccounts = (int) Math.round(options.accounts * options.registeredRatio);
+        final List<Fixture> fixtures = new ArrayList<Fixture>(options.accounts);
+        final Map<UUID, List<ExtBusEventType>> registrations = new HashMap<UUID, List<ExtBusEventType>>();
+        for (int i = 0; i < options.accounts; i++) {
+            final Account account = killbillApi.createAccount("customer-" + i + "@example.com", ImmutableList.of("billing-" + i + "@example.com"));
+            final Fixture fixture = new Fixture(account.getId(),
+                                                killbillApi.createInvoice(account, options.invoiceItems, null).getId(),
+                                                killbillApi.createInvoice(account, options.invoiceItems, TransactionStatus.SUCCESS).getId(),
+                                                killbillApi.createInvoice(account, options.invoiceItems, TransactionStatus.PAYMENT_FAILURE).getId(),
+                                                // Both the requested and the effective cancellation emails
+                                                killbillApi.createSubscription(account, i % 2 == 0 ? EntitlementState.CANCELLED : EntitlementState.ACTIVE).getId(),
+                                                i < registeredAccounts);
+            final Invoice upcomingInvoice = killbillApi.createInvoice(account, options.invoiceItems, null);
+            killbillApi.setUpcomingInvoice(account, upcomingInvoice);
+            fixtures.add(fixture);
+
+            if (fixture.registered) {
+                registrations.put(account.getId(), EmailNotificationListener.EVENTS_TO_CONSIDER);
+                if (registrations.size() == REGISTRATION_BATCH_SIZE) {
+                    configurationDao.updateConfigurations(registrations, kbTenantId, new DateTime());
+                    registrations.clear();
+                }
+            }
+        }
+        if (!registrations.isEmpty()) {
+            configurationDao.updateConfigurations(registrations, kbTenantId, new DateTime());
+        }
+        return fixtures;
+    }
+
+    private List<ExtBusEvent> createEvents(final List<Fixture> fixtures, final UUID kbTenantId) {
+        final List<ExtBusEventType> eventTypes = ImmutableList.copyOf(options.eventMix.keySet());
+        final int[] cumulativeWeights = new int[eventTypes.size()];
+        int totalWeight = 0;
+        for (int i = 0; i < eventTypes.size(); i++) {
+            totalWeight += options.eventMix.get(eventTypes.get(i));
+            cumulativeWeights[i] = totalWeight;
+        }
+        Preconditions.checkArgument(totalWeight > 0, "The event mix is empty");
+
+        // Generated upfront, so that the dispatch loop only dispatches
+        final Random random = new Random(options.seed);
+        final int eventCount = (int) (options.rate * options.durationSeconds);
+        final List<ExtBusEvent> events = new ArrayList<ExtBusEvent>(eventCount);
+        for (int i = 0; i < eventCount; i++) {
+            int typeIndex = Arrays.binarySearch(cumulativeWeights, random.nextInt(totalWeight) + 1);
+            if (typeIndex < 0) {
+                typeIndex = -typeIndex - 1;
+            }
+            final Fixture fixture = fixtures.get(random.nextInt(fixtures.size()));
+            events.add(createEvent(eventTypes.get(typeIndex), fixture, kbTenantId));
+        }
+        return events;
+    }
+
+    private static ExtBusEvent createEvent(final ExtBusEventType eventType, final Fixture fixture, final UUID kbTenantId) {
+        final ObjectType objectType;
+        final UUID objectId;
+        switch (eventType) {
+            case INVOICE_CREATION:
+                objectType = ObjectType.INVOICE;
+                objectId = fixture.invoiceId;
+                break;
+            case INVOICE_PAYMENT_SUCCESS:
+                objectType = ObjectType.INVOICE;
+                objectId = fixture.paidInvoiceId;
+                break;
+            case INVOICE_PAYMENT_FAILED:
+                objectType = ObjectType.INVOICE;
+                objectId = fixture.unpaidInvoiceId;
+                break;
+            case SUBSCRIPTION_CANCEL:
+                objectType = ObjectType.SUBSCRIPTION;
+                objectId = fixture.subscriptionId;
+                break;
+            case INVOICE_NOTIFICATION:
+                objectType = ObjectType.ACCOUNT;
+                objectId = fixture.accountId;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported event type " + eventType);
+        }
+        return new ExtBusEventImp.Builder<>().withEventType(eventType)
+                                             .withObjectType(objectType)
+                                             .withObjectId(objectId)
+                                             .withAccountId(fixture.accountId)
+                                             .withTenantId(kbTenantId)
+                                             .build();
+    }
+
+    private static final class Fixture {
+
+        private final UUID accountId;
+        private final UUID invoiceId;
+        private final UUID paidInvoiceId;
+        private final UUID unpaidInvoiceId;
+        private final UUID subscriptionId;
+        private final boolean registered;
+
+        private Fixture(final UUID accountId, final UUID invoiceId, final UUID paidInvoiceId, final UUID unpaidInvoiceId,
+                        final UUID subscriptionId, final boolean registered) {
+            this.accountId = accountId;
+            this.invoiceId = invoiceId;
+            this.paidInvoiceId = paidInvoiceId;
+            this.unpaidInvoiceId = unpaidInvoiceId;
+            this.subscriptionId = subscriptionId;
+            this.registered = registered;
+        }
+    }
+
+    /**
+     * Options of a run, read from the {@code emailNotifications.load.*} system properties by {@link #main(String[])}.
+     */
+    public static final class Options {
+
+        // All the events the listener sends emails for, invoices first as for a typical billing run
+        static final Map<ExtBusEventType, Integer> DEFAULT_EVENT_MIX = ImmutableMap.of(ExtBusEventType.INVOICE_CREATION, 40,
+                                                                                       ExtBusEventType.INVOICE_PAYMENT_SUCCESS, 30,
+                                                                                       ExtBusEventType.INVOICE_PAYMENT_FAILED, 10,
+                                                                                       ExtBusEventType.SUBSCRIPTION_CANCEL, 10,
+                                                                                       ExtBusEventType.INVOICE_NOTIFICATION, 10);
+
+        // Events per second
+        int rate = 200;
+        long durationSeconds = 30;
+        int accounts = 1000;
+        int invoiceItems = 10;
+        // Share of the accounts registered for the events, the others are filtered out
+        double registeredRatio = 1.0;
+        Map<ExtBusEventType, Integer> eventMix = DEFAULT_EVENT_MIX;
+        boolean async = false;
+        int busThreads = 8;
+        long drainTimeoutSeconds = 300;
+        long seed = 42;
+
+        public static Options fromSystemProperties() {
+            final Options options = new Options();
+            options.rate = Integer.getInteger(PROPERTY_PREFIX + "rate", options.rate);
+            options.durationSeconds = Long.getLong(PROPERTY_PREFIX + "duration", options.durationSeconds);
+            options.accounts = Integer.getInteger(PROPERTY_PREFIX + "accounts", options.accounts);
+            options.invoiceItems = Integer.getInteger(PROPERTY_PREFIX + "invoiceItems", options.invoiceItems);
+            options.registeredRatio = Double.parseDouble(System.getProperty(PROPERTY_PREFIX + "registeredRatio", String.valueOf(options.registeredRatio)));
+            options.async = Boolean.parseBoolean(System.getProperty(PROPERTY_PREFIX + "async", String.valueOf(options.async)));
+            options.busThreads = Integer.getInteger(PROPERTY_PREFIX + "busThreads", options.busThreads);
+            options.drainTimeoutSeconds = Long.getLong(PROPERTY_PREFIX + "drainTimeout", options.drainTimeoutSeconds);
+            options.seed = Long.getLong(PROPERTY_PREFIX + "seed", options.seed);
+            // E.g. INVOICE_CREATION:80,INVOICE_PAYMENT_SUCCESS:20
+            final String eventMix = System.getProperty(PROPERTY_PREFIX + "eventMix");
+            if (eventMix != null) {
+                options.eventMix = parseEventMix(eventMix);
+            }
+            return options;
+        }
+
+        static Map<ExtBusEventType, Integer> parseEventMix(final String eventMix) {
+            final ImmutableMap.Builder<ExtBusEventType, Integer> weights = ImmutableMap.builder();
+            for (final Map.Entry<String, String> entry : Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator(':').split(eventMix).entrySet()) {
+                final ExtBusEventType eventType = ExtBusEventType.valueOf(entry.getKey().trim());
+                Preconditions.checkArgument(EmailNotificationListener.EVENTS_TO_CONSIDER.contains(eventType), "No email is sent for %s", eventType);
+                weights.put(eventType, Integer.valueOf(entry.getValue().trim()));
+            }
+            return weights.build();
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("rate", rate)
+                              .add("durationSeconds", durationSeconds)
+                              .add("accounts", accounts)
+                              .add("invoiceItems", invoiceItems)
+                              .add("registeredRatio", registeredRatio)
+                              .add("eventMix", eventMix)
+                              .add("async", async)
+                              .add("busThreads", busThreads)
+                              .toString();
+        }
+    }
+
+    public static final class Report {
+
+        private final int events;
+        private final int expectedEmails;
+        private final int deliveredEmails;
+        private final int retries;
+        private final int errors;
+        private final long dispatchNanos;
+        private final long elapsedNanos;
+        private final long[] sortedLatenciesNanos;
+
+        Report(final int events, final int expectedEmails, final int deliveredEmails, final int retries, final int errors,
+               final long dispatchNanos, final long elapsedNanos, final long[] latenciesNanos) {
+            this.events = events;
+            this.expectedEmails = expectedEmails;
+            this.deliveredEmails = deliveredEmails;
+            this.retries = retries;
+            this.errors = errors;
+            this.dispatchNanos = dispatchNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.sortedLatenciesNanos = latenciesNanos.clone();
+            Arrays.sort(this.sortedLatenciesNanos);
+        }
+
+        public int getEvents() {
+            return events;
+        }
+
+        public int getExpectedEmails() {
+            return expectedEmails;
+        }
+
+        public int getDeliveredEmails() {
+            return deliveredEmails;
+        }
+
+        public int getRetries() {
+            return retries;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+
+        public double getEventsPerSecond() {
+            return perSecond(events, dispatchNanos);
+        }
+
+        // Until the last email was accepted by the sink
+        public double getEmailsPerSecond() {
+            return perSecond(deliveredEmails, elapsedNanos);
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return latency of the handler, from the time the event was due
+         */
+        public double getLatencyMs(final double percentile) {
+            if (sortedLatenciesNanos.length == 0) {
+                return 0;
+            }
+            final int index = (int) Math.ceil(percentile / 100 * sortedLatenciesNanos.length) - 1;
+            return sortedLatenciesNanos[Math.max(0, Math.min(index, sortedLatenciesNanos.length - 1))] / 1e6;
+        }
+
+        private static double perSecond(final int count, final long nanos) {
+            return nanos == 0 ? 0 : count * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("events=%d (%.1f/s), emails=%d/%d (%.1f/s), retries=%d, errors=%d, " +
+                                 "latency ms p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f",
+                                 events, getEventsPerSecond(), deliveredEmails, expectedEmails, getEmailsPerSecond(), retries, errors,
+                                 getLatencyMs(50), getLatencyMs(90), getLatencyMs(99), getLatencyMs(99.9), getLatencyMs(100));
+        }
+    }
+}
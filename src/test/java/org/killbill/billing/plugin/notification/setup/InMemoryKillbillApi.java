@@ -0,0 +1,307 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.account.api.AccountEmail;
+import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.account.api.boilerplate.AccountEmailImp;
+import org.killbill.billing.account.api.boilerplate.AccountImp;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.catalog.api.boilerplate.PlanImp;
+import org.killbill.billing.entitlement.api.Entitlement.EntitlementState;
+import org.killbill.billing.entitlement.api.Subscription;
+import org.killbill.billing.entitlement.api.SubscriptionApi;
+import org.killbill.billing.entitlement.api.SubscriptionApiException;
+import org.killbill.billing.entitlement.api.boilerplate.SubscriptionImp;
+import org.killbill.billing.invoice.api.DryRunArguments;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.invoice.api.InvoicePayment;
+import org.killbill.billing.invoice.api.InvoiceUserApi;
+import org.killbill.billing.invoice.api.boilerplate.InvoiceImp;
+import org.killbill.billing.invoice.api.boilerplate.InvoiceItemImp;
+import org.killbill.billing.invoice.api.boilerplate.InvoicePaymentImp;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.Payment;
+import org.killbill.billing.payment.api.PaymentApi;
+import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.payment.api.PaymentTransaction;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionStatus;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.api.boilerplate.PaymentImp;
+import org.killbill.billing.payment.api.boilerplate.PaymentTransactionImp;
+import org.killbill.billing.security.api.SecurityApi;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.mockito.Mockito;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Kill Bill APIs backed by maps, for the load harness and the listener tests.
+ * <p>
+ * Only the calls made by the listener are implemented. The mocks are stub-only: they don't record the invocations,
+ * which would otherwise grow without bound over a long run.
+ */
+class InMemoryKillbillApi {
+
+    private static final LocalDate INVOICE_DATE = new LocalDate(2026, 1, 1);
+
+    // Mostly subscription charges, with their taxes and a few usage items
+    private static final InvoiceItemType[] ITEM_TYPES = {InvoiceItemType.RECURRING,
+                                                         InvoiceItemType.TAX,
+                                                         InvoiceItemType.RECURRING,
+                                                         InvoiceItemType.TAX,
+                                                         InvoiceItemType.USAGE};
+
+    private final Map<UUID, Account> accounts = new ConcurrentHashMap<UUID, Account>();
+    private final Map<UUID, List<AccountEmail>> accountEmails = new ConcurrentHashMap<UUID, List<AccountEmail>>();
+    private final Map<UUID, Invoice> invoices = new ConcurrentHashMap<UUID, Invoice>();
+    // Result of the dry runs, per account
+    private final Map<UUID, Invoice> upcomingInvoices = new ConcurrentHashMap<UUID, Invoice>();
+    private final Map<UUID, Payment> payments = new ConcurrentHashMap<UUID, Payment>();
+    // Per entitlement id
+    private final Map<UUID, Subscription> subscriptions = new ConcurrentHashMap<UUID, Subscription>();
+
+    private final OSGIKillbillAPI killbillAPI;
+
+    private volatile boolean closed;
+
+    InMemoryKillbillApi() throws Exception {
+        final AccountUserApi accountUserApi = stubOnlyMock(AccountUserApi.class);
+        Mockito.when(accountUserApi.getAccountById(Mockito.<UUID>any(), Mockito.<TenantContext>any()))
+               .thenAnswer(invocation -> {
+                   final UUID accountId = invocation.getArgument(0);
+                   final Account account = accounts.get(accountId);
+                   if (account == null) {
+                       throw new AccountApiException(ErrorCode.ACCOUNT_DOES_NOT_EXIST_FOR_ID, accountId);
+                   }
+                   return account;
+               });
+        Mockito.when(accountUserApi.getEmails(Mockito.<UUID>any(), Mockito.<TenantContext>any()))
+               .thenAnswer(invocation -> {
+                   final List<AccountEmail> emails = accountEmails.get(invocation.<UUID>getArgument(0));
+                   return emails == null ? ImmutableList.<AccountEmail>of() : emails;
+               });
+
+        final InvoiceUserApi invoiceUserApi = stubOnlyMock(InvoiceUserApi.class);
+        Mockito.when(invoiceUserApi.getInvoice(Mockito.<UUID>any(), Mockito.<TenantContext>any()))
+               .thenAnswer(invocation -> {
+                   final UUID invoiceId = invocation.getArgument(0);
+                   final Invoice invoice = invoices.get(invoiceId);
+                   if (invoice == null) {
+                       throw new InvoiceApiException(ErrorCode.INVOICE_NOT_FOUND, invoiceId);
+                   }
+                   return invoice;
+               });
+        Mockito.when(invoiceUserApi.triggerDryRunInvoiceGeneration(Mockito.<UUID>any(),
+                                                                   Mockito.<LocalDate>any(),
+                                                                   Mockito.<DryRunArguments>any(),
+                                                                   Mockito.<Iterable<PluginProperty>>any(),
+                                                                   Mockito.<CallContext>any()))
+               .thenAnswer(invocation -> upcomingInvoices.get(invocation.<UUID>getArgument(0)));
+
+        final PaymentApi paymentApi = stubOnlyMock(PaymentApi.class);
+        Mockito.when(paymentApi.getPayment(Mockito.<UUID>any(), Mockito.anyBoolean(), Mockito.anyBoolean(),
+                                           Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any()))
+               .thenAnswer(invocation -> {
+                   final UUID paymentId = invocation.getArgument(0);
+                   final Payment payment = payments.get(paymentId);
+                   if (payment == null) {
+                       throw new PaymentApiException(ErrorCode.PAYMENT_NO_SUCH_PAYMENT, paymentId);
+                   }
+                   return payment;
+               });
+
+        final SubscriptionApi subscriptionApi = stubOnlyMock(SubscriptionApi.class);
+        Mockito.when(subscriptionApi.getSubscriptionForEntitlementId(Mockito.<UUID>any(), Mockito.anyBoolean(), Mockito.<TenantContext>any()))
+               .thenAnswer(invocation -> {
+                   final UUID entitlementId = invocation.getArgument(0);
+                   final Subscription subscription = subscriptions.get(entitlementId);
+                   if (subscription == null) {
+                       throw new SubscriptionApiException(ErrorCode.SUB_INVALID_SUBSCRIPTION_ID, entitlementId);
+                   }
+                   return subscription;
+               });
+
+        // No per-tenant templates, translations or plugin configuration: the defaults are used
+        final TenantUserApi tenantUserApi = stubOnlyMock(TenantUserApi.class);
+        Mockito.when(tenantUserApi.getTenantValuesForKey(Mockito.anyString(), Mockito.<TenantContext>any()))
+               .thenReturn(ImmutableList.<String>of());
+
+        // Once closed (e.g. by the activator), the APIs aren't available anymore, as with the closed service trackers
+        killbillAPI = stubOnlyMock(OSGIKillbillAPI.class);
+        Mockito.when(killbillAPI.getAccountUserApi()).thenAnswer(invocation -> closed ? null : accountUserApi);
+        Mockito.when(killbillAPI.getInvoiceUserApi()).thenAnswer(invocation -> closed ? null : invoiceUserApi);
+        Mockito.when(killbillAPI.getPaymentApi()).thenAnswer(invocation -> closed ? null : paymentApi);
+        Mockito.when(killbillAPI.getSubscriptionApi()).thenAnswer(invocation -> closed ? null : subscriptionApi);
+        Mockito.when(killbillAPI.getTenantUserApi()).thenAnswer(invocation -> closed ? null : tenantUserApi);
+        // Login and logout are no-ops
+        final SecurityApi securityApi = stubOnlyMock(SecurityApi.class);
+        Mockito.when(killbillAPI.getSecurityApi()).thenAnswer(invocation -> closed ? null : securityApi);
+        Mockito.doAnswer(invocation -> {
+            closed = true;
+            return null;
+        }).when(killbillAPI).close();
+    }
+
+    OSGIKillbillAPI getKillbillAPI() {
+        return killbillAPI;
+    }
+
+    Account createAccount(final String email, final List<String> ccEmails) {
+        final Account account = new AccountImp.Builder<>().withId(UUID.randomUUID())
+                                                          .withExternalKey(email)
+                                                          .withName("Sylvie Dupond")
+                                                          .withFirstNameLength(7)
+                                                          .withEmail(email)
+                                                          .withBillCycleDayLocal(1)
+                                                          .withCurrency(Currency.USD)
+                                                          .withTimeZone(DateTimeZone.UTC)
+                                                          .withLocale("en_US")
+                                                          .withAddress1("1234 Trumpet street")
+                                                          .withCompanyName("SauvonsLaTerre")
+                                                          .withCity("San Francisco")
+                                                          .withStateOrProvince("CA")
+                                                          .withPostalCode("94110")
+                                                          .withCountry("USA")
+                                                          .build();
+        final List<AccountEmail> emails = new ArrayList<AccountEmail>(ccEmails.size());
+        for (final String ccEmail : ccEmails) {
+            emails.add(new AccountEmailImp.Builder<>().withId(UUID.randomUUID())
+                                                      .withAccountId(account.getId())
+                                                      .withEmail(ccEmail)
+                                                      .build());
+        }
+        accounts.put(account.getId(), account);
+        accountEmails.put(account.getId(), ImmutableList.copyOf(emails));
+        return account;
+    }
+
+    /**
+     * @param paymentStatus status of the payment made for the invoice, null if it wasn't paid
+     */
+    Invoice createInvoice(final Account account, final int itemCount, final TransactionStatus paymentStatus) {
+        final UUID invoiceId = UUID.randomUUID();
+        final List<InvoiceItem> items = new ArrayList<InvoiceItem>(itemCount);
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < itemCount; i++) {
+            final BigDecimal amount = new BigDecimal(10 + i % 90).add(new BigDecimal("0.99"));
+            final String planName = "plan-" + (i % 20) + "-monthly";
+            items.add(new InvoiceItemImp.Builder<>().withId(UUID.randomUUID())
+                                                    .withInvoiceId(invoiceId)
+                                                    .withAccountId(account.getId())
+                                                    .withInvoiceItemType(ITEM_TYPES[i % ITEM_TYPES.length])
+                                                    .withStartDate(INVOICE_DATE)
+                                                    .withEndDate(INVOICE_DATE.plusMonths(1))
+                                                    .withAmount(amount)
+                                                    .withCurrency(account.getCurrency())
+                                                    .withPlanName(planName)
+                                                    .withPrettyPlanName(planName)
+                                                    .withDescription("Item " + i)
+                                                    .build());
+            total = total.add(amount);
+        }
+
+        final List<InvoicePayment> invoicePayments = new ArrayList<InvoicePayment>(1);
+        if (paymentStatus != null) {
+            final Payment payment = createPayment(account, TransactionType.PURCHASE, paymentStatus, total);
+            invoicePayments.add(new InvoicePaymentImp.Builder<>().withId(UUID.randomUUID())
+                                                                 .withInvoiceId(invoiceId)
+                                                                 .withPaymentId(payment.getId())
+                                                                 .withAmount(total)
+                                                                 .withCurrency(account.getCurrency())
+                                                                 .build());
+        }
+        final boolean paid = paymentStatus == TransactionStatus.SUCCESS;
+
+        final Invoice invoice = new InvoiceImp.Builder<>().withId(invoiceId)
+                                                          .withAccountId(account.getId())
+                                                          .withInvoiceItems(items)
+                                                          .withNumberOfItems(items.size())
+                                                          .withPayments(invoicePayments)
+                                                          .withNumberOfPayments(invoicePayments.size())
+                                                          .withInvoiceNumber(1234)
+                                                          .withInvoiceDate(INVOICE_DATE)
+                                                          .withTargetDate(INVOICE_DATE)
+                                                          .withCurrency(account.getCurrency())
+                                                          .withChargedAmount(total)
+                                                          .withOriginalChargedAmount(total)
+                                                          .withPaidAmount(paid ? total : BigDecimal.ZERO)
+                                                          .withBalance(paid ? BigDecimal.ZERO : total)
+                                                          .build();
+        invoices.put(invoiceId, invoice);
+        return invoice;
+    }
+
+    void setUpcomingInvoice(final Account account, final Invoice invoice) {
+        upcomingInvoices.put(account.getId(), invoice);
+    }
+
+    Subscription createSubscription(final Account account, final EntitlementState state) {
+        final Subscription subscription = new SubscriptionImp.Builder<>().withId(UUID.randomUUID())
+                                                                         .withAccountId(account.getId())
+                                                                         .withState(state)
+                                                                         .withChargedThroughDate(INVOICE_DATE.plusMonths(1))
+                                                                         .withLastActivePlan(new PlanImp.Builder<>().withName("plan-0-monthly").build())
+                                                                         .build();
+        subscriptions.put(subscription.getId(), subscription);
+        return subscription;
+    }
+
+    private Payment createPayment(final Account account, final TransactionType transactionType, final TransactionStatus transactionStatus, final BigDecimal amount) {
+        final UUID paymentId = UUID.randomUUID();
+        final PaymentTransaction transaction = new PaymentTransactionImp.Builder<>().withId(UUID.randomUUID())
+                                                                                    .withPaymentId(paymentId)
+                                                                                    .withTransactionType(transactionType)
+                                                                                    .withTransactionStatus(transactionStatus)
+                                                                                    .withEffectiveDate(new DateTime(2026, 1, 2, 0, 0, DateTimeZone.UTC))
+                                                                                    .withAmount(amount)
+                                                                                    .withCurrency(account.getCurrency())
+                                                                                    .withProcessedAmount(amount)
+                                                                                    .withProcessedCurrency(account.getCurrency())
+                                                                                    .build();
+        final Payment payment = new PaymentImp.Builder<>().withId(paymentId)
+                                                          .withAccountId(account.getId())
+                                                          .withCurrency(account.getCurrency())
+                                                          .withTransactions(ImmutableList.<PaymentTransaction>of(transaction))
+                                                          .build();
+        payments.put(paymentId, payment);
+        return payment;
+    }
+
+    private static <T> T stubOnlyMock(final Class<T> clazz) {
+        return Mockito.mock(clazz, Mockito.withSettings().stubOnly());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.killbill.billing.osgi.libs.killbill.OSGIConfigPropertiesService;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillClock;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillDataSource;
+import org.killbill.billing.plugin.notification.dao.ConfigurationDao;
+import org.killbill.billing.plugin.notification.email.SmtpSink;
+import org.killbill.billing.plugin.notification.metrics.EmailNotificationMetrics;
+import org.killbill.clock.DefaultClock;
+import org.mockito.Mockito;
+
+/**
+ * Listeners wired to the in-memory Kill Bill APIs and a local SMTP sink, for the load harness and the listener tests.
+ */
+final class InMemoryListenerFactory {
+
+    private InMemoryListenerFactory() {
+    }
+
+    /**
+     * @param properties plugin properties, on top of the SMTP ones
+     */
+    static EmailNotificationListener createListener(final InMemoryKillbillApi killbillApi,
+                                                    final OSGIKillbillDataSource dataSource,
+                                                    final ConfigurationDao configurationDao,
+                                                    final SmtpSink smtpSink,
+                                                    final Map<String, String> properties) throws Exception {
+        final Properties allProperties = new Properties();
+        allProperties.setProperty("org.killbill.invoice.dryRunNotificationSchedule", "7d");
+        allProperties.setProperty("org.killbill.mail.smtp.host", smtpSink.getHost());
+        allProperties.setProperty("org.killbill.mail.smtp.port", String.valueOf(smtpSink.getPort()));
+        allProperties.setProperty("org.killbill.mail.from", "killbill@example.com");
+        allProperties.setProperty(EmailNotificationActivator.PROPERTY_PREFIX + "smtp.host", smtpSink.getHost());
+        allProperties.setProperty(EmailNotificationActivator.PROPERTY_PREFIX + "smtp.port", String.valueOf(smtpSink.getPort()));
+        allProperties.setProperty(EmailNotificationActivator.PROPERTY_PREFIX + "smtp.defaultSender", "killbill@example.com");
+        allProperties.setProperty(EmailNotificationActivator.PROPERTY_PREFIX + "smtp.sendHTMLEmail", "true");
+        allProperties.putAll(properties);
+
+        final OSGIConfigPropertiesService configProperties = Mockito.mock(OSGIConfigPropertiesService.class, Mockito.withSettings().stubOnly());
+        Mockito.when(configProperties.getString(Mockito.anyString())).thenAnswer(invocation -> allProperties.getProperty(invocation.getArgument(0)));
+        Mockito.when(configProperties.getProperties()).thenReturn(allProperties);
+
+        final OSGIKillbillClock clock = Mockito.mock(OSGIKillbillClock.class, Mockito.withSettings().stubOnly());
+        Mockito.when(clock.getClock()).thenReturn(new DefaultClock());
+
+        final EmailNotificationConfigurationHandler configurationHandler = new EmailNotificationConfigurationHandler(null,
+                                                                                                                      EmailNotificationActivator.PLUGIN_NAME,
+                                                                                                                      killbillApi.getKillbillAPI(),
+                                                                                                                      dataSource);
+        configurationHandler.setDefaultConfigurable(configurationHandler.createConfigurable(allProperties));
+
+        return new EmailNotificationListener(clock,
+                                             killbillApi.getKillbillAPI(),
+                                             configProperties,
+                                             dataSource,
+                                             configurationDao,
+                                             configurationHandler,
+                                             null,
+                                             EmailNotificationMetrics.NOOP);
+    }
+
+    /**
+     * @return the data source, as provided to the plugin: once closed (e.g. by the activator), connections can't be
+     * obtained anymore
+     */
+    static OSGIKillbillDataSource createDataSource(final DataSource dataSource) throws SQLException {
+        final AtomicBoolean closed = new AtomicBoolean();
+        final DataSource closableDataSource = Mockito.mock(DataSource.class, Mockito.withSettings().stubOnly());
+        Mockito.when(closableDataSource.getConnection()).thenAnswer(invocation -> {
+            if (closed.get()) {
+                throw new SQLException("The data source is closed");
+            }
+            return dataSource.getConnection();
+        });
+
+        final OSGIKillbillDataSource osgiDataSource = Mockito.mock(OSGIKillbillDataSource.class, Mockito.withSettings().stubOnly());
+        Mockito.when(osgiDataSource.getDataSource()).thenReturn(closableDataSource);
+        Mockito.doAnswer(invocation -> {
+            closed.set(true);
+            return null;
+        }).when(osgiDataSource).close();
+        return osgiDataSource;
+    }
+}
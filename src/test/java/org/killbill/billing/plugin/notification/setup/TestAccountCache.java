@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.killbill.billing.account.api.Account;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+
+public class TestAccountCache {
+
+    @Test(groups = "fast")
+    public void testInvalidation() {
+        final AccountCache accountCache = new AccountCache(AccountCache.DEFAULT_MAX_SIZE, AccountCache.DEFAULT_TTL_MS);
+        final UUID tenantId = UUID.randomUUID();
+        final UUID accountId = UUID.randomUUID();
+        final Account account = Mockito.mock(Account.class);
+        final List<String> ccEmails = ImmutableList.of("cc@example.com");
+
+        Assert.assertSame(accountCache.getAccount(tenantId, accountId, () -> account), account);
+        Assert.assertSame(accountCache.getCcEmails(tenantId, accountId, () -> ccEmails), ccEmails);
+        Assert.assertSame(accountCache.getAccountIfPresent(tenantId, accountId), account);
+        Assert.assertSame(accountCache.getCcEmailsIfPresent(tenantId, accountId), ccEmails);
+        // Entries are per tenant
+        Assert.assertNull(accountCache.getAccountIfPresent(UUID.randomUUID(), accountId));
+
+        // ACCOUNT_CHANGE
+        accountCache.invalidate(tenantId, accountId);
+        Assert.assertNull(accountCache.getAccountIfPresent(tenantId, accountId));
+        Assert.assertNull(accountCache.getCcEmailsIfPresent(tenantId, accountId));
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidationDuringLookup() {
+        final AccountCache accountCache = new AccountCache(AccountCache.DEFAULT_MAX_SIZE, AccountCache.DEFAULT_TTL_MS);
+        final UUID tenantId = UUID.randomUUID();
+        final UUID accountId = UUID.randomUUID();
+        final Account previousAccount = Mockito.mock(Account.class);
+
+        // ACCOUNT_CHANGE handled while the previous account is loading
+        Assert.assertSame(accountCache.getAccount(tenantId, accountId, () -> {
+            accountCache.invalidate(tenantId, accountId);
+            return previousAccount;
+        }), previousAccount);
+        Assert.assertNull(accountCache.getAccountIfPresent(tenantId, accountId));
+
+        final Account account = Mockito.mock(Account.class);
+        Assert.assertSame(accountCache.getAccount(tenantId, accountId, () -> account), account);
+        Assert.assertSame(accountCache.getAccount(tenantId, accountId, () -> previousAccount), account);
+    }
+
+    @Test(groups = "fast")
+    public void testExpiration() {
+        final AtomicLong nanos = new AtomicLong();
+        final AccountCache accountCache = new AccountCache(AccountCache.DEFAULT_MAX_SIZE, 1000, new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+        final UUID tenantId = UUID.randomUUID();
+        final UUID accountId = UUID.randomUUID();
+        accountCache.getCcEmails(tenantId, accountId, () -> ImmutableList.of("cc@example.com"));
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        Assert.assertNotNull(accountCache.getCcEmailsIfPresent(tenantId, accountId));
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        Assert.assertNull(accountCache.getCcEmailsIfPresent(tenantId, accountId));
+    }
+}
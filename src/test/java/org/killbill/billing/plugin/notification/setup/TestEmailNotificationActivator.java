@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.util.UUID;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.notification.plugin.api.boilerplate.plugin.ExtBusEventImp;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillDataSource;
+import org.killbill.billing.plugin.notification.EmbeddedDbHelper;
+import org.killbill.billing.plugin.notification.TestBase;
+import org.killbill.billing.plugin.notification.email.SmtpSink;
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TestEmailNotificationActivator extends TestBase {
+
+    @Test(groups = "slow")
+    public void testQueuedEmailsAreSentOnStop() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final InMemoryKillbillApi inMemoryKillbillApi = new InMemoryKillbillApi();
+        final Account account = inMemoryKillbillApi.createAccount("customer@example.com", ImmutableList.<String>of());
+        final Invoice invoice = inMemoryKillbillApi.createInvoice(account, 5, null);
+        dao.updateConfigurationPerAccount(account.getId(), kbTenantId, ImmutableList.of(ExtBusEventType.INVOICE_CREATION), clock.getUTCNow());
+
+        final OSGIKillbillDataSource dataSource = InMemoryListenerFactory.createDataSource(EmbeddedDbHelper.instance().getDataSource());
+        final EmailNotificationActivator activator = new EmailNotificationActivator() {
+            {
+                // Released by the base activator on stop
+                killbillAPI = inMemoryKillbillApi.getKillbillAPI();
+                this.dataSource = dataSource;
+            }
+        };
+
+        try (final SmtpSink smtpSink = new SmtpSink(false)) {
+            final EmailNotificationListener listener = InMemoryListenerFactory.createListener(inMemoryKillbillApi,
+                                                                                              dataSource,
+                                                                                              dao,
+                                                                                              smtpSink,
+                                                                                              ImmutableMap.of(EmailNotificationActivator.PROPERTY_PREFIX + "async.enabled", "true",
+                                                                                                              EmailNotificationActivator.PROPERTY_PREFIX + "async.fetch.threads", "1",
+                                                                                                              EmailNotificationActivator.PROPERTY_PREFIX + "async.send.threads", "1"));
+            listener.start();
+            activator.setEmailNotificationListener(listener);
+
+            for (int i = 0; i < 50; i++) {
+                listener.handleKillbillEvent(new ExtBusEventImp.Builder<>().withEventType(ExtBusEventType.INVOICE_CREATION)
+                                                                           .withObjectType(ObjectType.INVOICE)
+                                                                           .withObjectId(invoice.getId())
+                                                                           .withAccountId(account.getId())
+                                                                           .withTenantId(kbTenantId)
+                                                                           .build());
+            }
+            int queuedJobs = 0;
+            for (final int queueSize : listener.getPipelineQueueSizes().values()) {
+                queuedJobs += queueSize;
+            }
+            Assert.assertTrue(queuedJobs > 0);
+
+            final BundleContext bundleContext = Mockito.mock(BundleContext.class);
+            Mockito.when(bundleContext.getBundle()).thenReturn(Mockito.mock(Bundle.class));
+            activator.stop(bundleContext);
+
+            // The events were acknowledged on the bus: all the emails must have been sent before the APIs are released
+            Assert.assertEquals(smtpSink.getMessageCount(), 50);
+            Assert.assertNull(inMemoryKillbillApi.getKillbillAPI().getAccountUserApi());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.util.Map;
+import java.util.UUID;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.notification.plugin.api.ExtBusEvent;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.notification.plugin.api.NotificationPluginApiRetryException;
+import org.killbill.billing.notification.plugin.api.boilerplate.plugin.ExtBusEventImp;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillDataSource;
+import org.killbill.billing.plugin.notification.EmbeddedDbHelper;
+import org.killbill.billing.plugin.notification.TestBase;
+import org.killbill.billing.plugin.notification.dao.EmailOutboxDao;
+import org.killbill.billing.plugin.notification.email.SmtpSink;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TestEmailNotificationListener extends TestBase {
+
+    private InMemoryKillbillApi inMemoryKillbillApi;
+    private OSGIKillbillDataSource dataSource;
+    private EmailOutboxDao outboxDao;
+    private SmtpSink smtpSink;
+    private ExtBusEvent event;
+
+    @BeforeMethod(groups = "slow")
+    public void setUpListener() throws Exception {
+        inMemoryKillbillApi = new InMemoryKillbillApi();
+        dataSource = InMemoryListenerFactory.createDataSource(EmbeddedDbHelper.instance().getDataSource());
+        outboxDao = EmbeddedDbHelper.instance().getEmailOutboxDao();
+        smtpSink = new SmtpSink();
+
+        final UUID kbTenantId = UUID.randomUUID();
+        final Account account = inMemoryKillbillApi.createAccount("customer@example.com", ImmutableList.<String>of());
+        final Invoice invoice = inMemoryKillbillApi.createInvoice(account, 5, null);
+        dao.updateConfigurationPerAccount(account.getId(), kbTenantId, ImmutableList.of(ExtBusEventType.INVOICE_CREATION), clock.getUTCNow());
+        event = new ExtBusEventImp.Builder<>().withEventType(ExtBusEventType.INVOICE_CREATION)
+                                              .withObjectType(ObjectType.INVOICE)
+                                              .withObjectId(invoice.getId())
+                                              .withAccountId(account.getId())
+                                              .withTenantId(kbTenantId)
+                                              .build();
+    }
+
+    @AfterMethod(groups = "slow")
+    public void tearDownListener() throws Exception {
+        smtpSink.close();
+    }
+
+    @Test(groups = "slow")
+    public void testFailedEmailsAreStoredInTheOutbox() throws Exception {
+        // The outbox is enabled by default
+        final EmailNotificationListener listener = createListener(ImmutableMap.<String, String>of());
+        try {
+            smtpSink.setFailing(true);
+            // Not retried by the bus
+            listener.handleKillbillEvent(event);
+
+            Assert.assertEquals(smtpSink.getMessageCount(), 0);
+            Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_PENDING), 1);
+        } finally {
+            listener.shutdown();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testBusRetriesWhenTheOutboxIsUnavailable() throws Exception {
+        final EmailNotificationListener listener = createListener(ImmutableMap.<String, String>of());
+        try {
+            smtpSink.setFailing(true);
+            // The email can't be stored
+            dataSource.close();
+            try {
+                listener.handleKillbillEvent(event);
+                Assert.fail("The bus should retry the event");
+            } catch (final NotificationPluginApiRetryException ignored) {
+            }
+        } finally {
+            listener.shutdown();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testBusRetriesWhenTheOutboxIsDisabled() throws Exception {
+        final EmailNotificationListener listener = createListener(ImmutableMap.of(EmailNotificationActivator.PROPERTY_PREFIX + "outbox.enabled", "false"));
+        try {
+            smtpSink.setFailing(true);
+            try {
+                listener.handleKillbillEvent(event);
+                Assert.fail("The bus should retry the event");
+            } catch (final NotificationPluginApiRetryException ignored) {
+            }
+            Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_PENDING), 0);
+        } finally {
+            listener.shutdown();
+        }
+    }
+
+    private EmailNotificationListener createListener(final Map<String, String> properties) throws Exception {
+        final EmailNotificationListener listener = InMemoryListenerFactory.createListener(inMemoryKillbillApi, dataSource, dao, smtpSink, properties);
+        listener.start();
+        return listener;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.notification.EmbeddedDbHelper;
+import org.killbill.billing.plugin.notification.TestBase;
+import org.killbill.billing.plugin.notification.email.SmtpSink;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+// Short runs, to make sure the harness itself keeps working
+public class TestEmailNotificationLoadHarness extends TestBase {
+
+    @Test(groups = "fast")
+    public void testParseEventMix() {
+        Assert.assertEquals(EmailNotificationLoadHarness.Options.parseEventMix("INVOICE_CREATION:80, INVOICE_PAYMENT_SUCCESS:20"),
+                            ImmutableMap.of(ExtBusEventType.INVOICE_CREATION, 80, ExtBusEventType.INVOICE_PAYMENT_SUCCESS, 20));
+        try {
+            EmailNotificationLoadHarness.Options.parseEventMix("ACCOUNT_CREATION:10");
+            Assert.fail("Only the events sending emails can be replayed");
+        } catch (final IllegalArgumentException e) {
+            Assert.assertEquals(e.getMessage(), "No email is sent for ACCOUNT_CREATION");
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testAllEventsAreDelivered() throws Exception {
+        final EmailNotificationLoadHarness.Options options = createOptions();
+        try (final SmtpSink smtpSink = new SmtpSink(false)) {
+            final EmailNotificationLoadHarness.Report report = new EmailNotificationLoadHarness(options, EmbeddedDbHelper.instance().getDataSource(), smtpSink).run();
+
+            Assert.assertEquals(report.getEvents(), 100);
+            Assert.assertEquals(report.getExpectedEmails(), 100);
+            Assert.assertEquals(report.getDeliveredEmails(), 100);
+            Assert.assertEquals(report.getRetries(), 0);
+            Assert.assertEquals(report.getErrors(), 0);
+            Assert.assertTrue(report.getLatencyMs(50) <= report.getLatencyMs(100));
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testUnregisteredAccountsAreFiltered() throws Exception {
+        final EmailNotificationLoadHarness.Options options = createOptions();
+        options.registeredRatio = 0.5;
+        options.async = true;
+        try (final SmtpSink smtpSink = new SmtpSink(false)) {
+            final EmailNotificationLoadHarness.Report report = new EmailNotificationLoadHarness(options, EmbeddedDbHelper.instance().getDataSource(), smtpSink).run();
+
+            Assert.assertTrue(report.getExpectedEmails() < report.getEvents());
+            Assert.assertEquals(report.getDeliveredEmails(), report.getExpectedEmails());
+            Assert.assertEquals(report.getErrors(), 0);
+        }
+    }
+
+    private static EmailNotificationLoadHarness.Options createOptions() {
+        final EmailNotificationLoadHarness.Options options = new EmailNotificationLoadHarness.Options();
+        options.rate = 50;
+        options.durationSeconds = 2;
+        options.accounts = 20;
+        options.invoiceItems = 5;
+        options.busThreads = 4;
+        return options;
+    }
+}
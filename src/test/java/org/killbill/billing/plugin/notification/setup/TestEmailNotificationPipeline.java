@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestEmailNotificationPipeline {
+
+    @Test(groups = "fast")
+    public void testJobsGoThroughAllStages() throws Exception {
+        final List<String> trace = Collections.synchronizedList(new ArrayList<String>());
+        final EmailNotificationPipeline pipeline = new EmailNotificationPipeline(job -> trace.add("fetch"), 2, 10,
+                                                                                 job -> trace.add("render"), 2, 10,
+                                                                                 job -> trace.add("send"), 2, 10);
+        pipeline.submit(new EmailNotificationJob(null, null));
+
+        Assert.assertTrue(pipeline.drain(10000));
+        Assert.assertEquals(trace, ImmutableList.of("fetch", "render", "send"));
+    }
+
+    @Test(groups = "fast")
+    public void testStageCanStopJob() throws Exception {
+        final AtomicInteger rendered = new AtomicInteger();
+        final AtomicInteger sent = new AtomicInteger();
+        // E.g. event type not enabled for the account
+        final EmailNotificationPipeline pipeline = new EmailNotificationPipeline(job -> false, 1, 10,
+                                                                                 job -> rendered.incrementAndGet() > 0, 1, 10,
+                                                                                 job -> sent.incrementAndGet() > 0, 1, 10);
+        for (int i = 0; i < 5; i++) {
+            pipeline.submit(new EmailNotificationJob(null, null));
+        }
+
+        Assert.assertTrue(pipeline.drain(10000));
+        Assert.assertEquals(rendered.get(), 0);
+        Assert.assertEquals(sent.get(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testSubmitterRunsJobWhenQueueIsFull() throws Exception {
+        final CountDownLatch blockFetch = new CountDownLatch(1);
+        final List<String> fetchThreads = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger sent = new AtomicInteger();
+        final EmailNotificationPipeline pipeline = new EmailNotificationPipeline(job -> {
+                                                                                     fetchThreads.add(Thread.currentThread().getName());
+                                                                                     if (Thread.currentThread().getName().startsWith("email-notifications-fetch")) {
+                                                                                         await(blockFetch);
+                                                                                     }
+                                                                                     return true;
+                                                                                 }, 1, 1,
+                                                                                 job -> true, 1, 10,
+                                                                                 job -> sent.incrementAndGet() > 0, 1, 10);
+
+        // First job blocks the worker, second one fills the queue, third one runs in the caller
+        for (int i = 0; i < 3; i++) {
+            pipeline.submit(new EmailNotificationJob(null, null));
+        }
+        Assert.assertTrue(fetchThreads.contains(Thread.currentThread().getName()));
+        Assert.assertEquals(pipeline.getFetchQueueSize(), 1);
+
+        blockFetch.countDown();
+        Assert.assertTrue(pipeline.drain(10000));
+        Assert.assertEquals(sent.get(), 3);
+        Assert.assertEquals(pipeline.getFetchQueueSize(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testDrainTimeout() throws Exception {
+        final CountDownLatch blockSend = new CountDownLatch(1);
+        final EmailNotificationPipeline pipeline = new EmailNotificationPipeline(job -> true, 1, 10,
+                                                                                 job -> true, 1, 10,
+                                                                                 job -> await(blockSend), 1, 10);
+        pipeline.submit(new EmailNotificationJob(null, null));
+        pipeline.submit(new EmailNotificationJob(null, null));
+
+        Assert.assertFalse(pipeline.drain(100));
+        blockSend.countDown();
+    }
+
+    private static boolean await(final CountDownLatch latch) {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
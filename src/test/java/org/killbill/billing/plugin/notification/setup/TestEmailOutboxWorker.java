@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.plugin.notification.EmbeddedDbHelper;
+import org.killbill.billing.plugin.notification.TestBase;
+import org.killbill.billing.plugin.notification.dao.EmailOutboxDao;
+import org.killbill.billing.plugin.notification.email.EmailSender;
+import org.killbill.billing.plugin.notification.email.SmtpProperties;
+import org.killbill.billing.plugin.notification.email.SmtpSink;
+import org.killbill.billing.plugin.notification.metrics.EmailNotificationMetrics;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestEmailOutboxWorker extends TestBase {
+
+    private static final String FROM = "billing@example.com";
+    private static final String TO = "customer@example.com";
+    private static final long INITIAL_BACKOFF_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private SmtpSink smtpSink;
+    private EmailSender emailSender;
+    private EmailOutboxDao outboxDao;
+
+    @BeforeMethod(groups = "slow")
+    public void setUpOutbox() throws Exception {
+        smtpSink = new SmtpSink();
+        emailSender = new EmailSender(smtpSink.getHost(), smtpSink.getPort(), null, null, FROM, false, false, false, "us-east-1", false);
+        outboxDao = EmbeddedDbHelper.instance().getEmailOutboxDao();
+    }
+
+    @AfterMethod(groups = "slow")
+    public void tearDownOutbox() throws Exception {
+        emailSender.close();
+        smtpSink.close();
+    }
+
+    @Test(groups = "fast")
+    public void testExponentialBackoff() {
+        final EmailOutboxWorker worker = new EmailOutboxWorker(null, null, null, null, EmailNotificationMetrics.NOOP,
+                                                               EmailOutboxWorker.DEFAULT_BATCH_SIZE,
+                                                               EmailOutboxWorker.DEFAULT_POLL_INTERVAL_MS,
+                                                               EmailOutboxWorker.DEFAULT_CLAIM_TIMEOUT_MS,
+                                                               EmailOutboxWorker.DEFAULT_MAX_ATTEMPTS,
+                                                               TimeUnit.SECONDS.toMillis(30),
+                                                               TimeUnit.MINUTES.toMillis(10),
+                                                               EmailOutboxWorker.DEFAULT_SHUTDOWN_TIMEOUT_MS);
+        Assert.assertEquals(worker.getBackoffMs(1), TimeUnit.SECONDS.toMillis(30));
+        Assert.assertEquals(worker.getBackoffMs(2), TimeUnit.SECONDS.toMillis(60));
+        Assert.assertEquals(worker.getBackoffMs(3), TimeUnit.SECONDS.toMillis(120));
+        Assert.assertEquals(worker.getBackoffMs(6), TimeUnit.MINUTES.toMillis(10));
+        Assert.assertEquals(worker.getBackoffMs(Integer.MAX_VALUE), TimeUnit.MINUTES.toMillis(10));
+    }
+
+    @Test(groups = "slow")
+    public void testDeliveredEmailsAreDeleted() throws Exception {
+        insert(TO);
+        final EmailOutboxWorker worker = createWorker(EmailOutboxWorker.DEFAULT_MAX_ATTEMPTS);
+
+        Assert.assertEquals(worker.poll(), 1);
+        Assert.assertEquals(smtpSink.getMessageCount(), 1);
+        Assert.assertTrue(smtpSink.getMessages().get(0).contains("Subject: Invoice"));
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_PENDING), 0);
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_FAILED), 0);
+
+        Assert.assertEquals(worker.poll(), 0);
+        Assert.assertEquals(smtpSink.getMessageCount(), 1);
+    }
+
+    @Test(groups = "slow")
+    public void testFailedDeliveriesAreRescheduled() throws Exception {
+        insert(TO);
+        final EmailOutboxWorker worker = createWorker(EmailOutboxWorker.DEFAULT_MAX_ATTEMPTS);
+
+        smtpSink.setFailing(true);
+        Assert.assertEquals(worker.poll(), 1);
+        Assert.assertEquals(smtpSink.getMessageCount(), 0);
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_PENDING), 1);
+
+        // Not retried before the backoff
+        smtpSink.setFailing(false);
+        Assert.assertEquals(worker.poll(), 0);
+
+        clock.setTime(clock.getUTCNow().plus(INITIAL_BACKOFF_MS));
+        Assert.assertEquals(worker.poll(), 1);
+        Assert.assertEquals(smtpSink.getMessageCount(), 1);
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_PENDING), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testEmailsAreMarkedFailedAfterMaxAttempts() throws Exception {
+        insert(TO);
+        final EmailOutboxWorker worker = createWorker(2);
+
+        smtpSink.setFailing(true);
+        Assert.assertEquals(worker.poll(), 1);
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_PENDING), 1);
+
+        clock.setTime(clock.getUTCNow().plus(INITIAL_BACKOFF_MS));
+        Assert.assertEquals(worker.poll(), 1);
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_PENDING), 0);
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_FAILED), 1);
+
+        // Not retried anymore
+        smtpSink.setFailing(false);
+        clock.setTime(clock.getUTCNow().plusDays(1));
+        Assert.assertEquals(worker.poll(), 0);
+        Assert.assertEquals(smtpSink.getMessageCount(), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testInvalidEmailsAreMarkedFailed() throws Exception {
+        // Rejected by the sender validation (EmailNotificationException): retrying won't help
+        insert("not an email address");
+        final EmailOutboxWorker worker = createWorker(EmailOutboxWorker.DEFAULT_MAX_ATTEMPTS);
+
+        Assert.assertEquals(worker.poll(), 1);
+        Assert.assertEquals(smtpSink.getMessageCount(), 0);
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_PENDING), 0);
+        Assert.assertEquals(outboxDao.countByStatus(EmailOutboxDao.STATUS_FAILED), 1);
+    }
+
+    private void insert(final String to) throws SQLException {
+        final DateTime now = clock.getUTCNow();
+        outboxDao.insert(UUID.randomUUID(), UUID.randomUUID(), ExtBusEventType.INVOICE_CREATION, ImmutableList.of(to),
+                         ImmutableList.<String>of(), "Invoice", "<p>Total: 10.00</p>", true, now, "Connection refused", now);
+    }
+
+    private EmailOutboxWorker createWorker(final int maxAttempts) {
+        final SmtpProperties smtpProperties = new SmtpProperties(smtpSink.getHost(), smtpSink.getPort(), false, null, null, false, FROM);
+        return new EmailOutboxWorker(outboxDao,
+                                     emailSender,
+                                     entry -> smtpProperties,
+                                     osgiClock,
+                                     EmailNotificationMetrics.NOOP,
+                                     EmailOutboxWorker.DEFAULT_BATCH_SIZE,
+                                     EmailOutboxWorker.DEFAULT_POLL_INTERVAL_MS,
+                                     EmailOutboxWorker.DEFAULT_CLAIM_TIMEOUT_MS,
+                                     maxAttempts,
+                                     INITIAL_BACKOFF_MS,
+                                     EmailOutboxWorker.DEFAULT_MAX_BACKOFF_MS,
+                                     EmailOutboxWorker.DEFAULT_SHUTDOWN_TIMEOUT_MS);
+    }
+}
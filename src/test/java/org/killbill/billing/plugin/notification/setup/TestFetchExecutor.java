@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.setup;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.plugin.notification.exception.EmailNotificationErrorCode;
+import org.killbill.billing.plugin.notification.exception.EmailNotificationException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestFetchExecutor {
+
+    @Test(groups = "fast")
+    public void testSequentialLookups() throws Exception {
+        final FetchExecutor fetchExecutor = new FetchExecutor(0, 1000);
+        final Thread caller = Thread.currentThread();
+
+        final Future<Thread> future = fetchExecutor.submit(Thread::currentThread);
+        // Already done, in the calling thread
+        Assert.assertTrue(future.isDone());
+        Assert.assertSame(fetchExecutor.await(future, "account"), caller);
+        fetchExecutor.shutdown();
+    }
+
+    @Test(groups = "fast")
+    public void testParallelLookups() throws Exception {
+        final FetchExecutor fetchExecutor = new FetchExecutor(2, 5000);
+        // Only passed if both lookups run at the same time
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+
+        final Future<Thread> accountFuture = fetchExecutor.submit(() -> {
+            barrier.await(5, TimeUnit.SECONDS);
+            return Thread.currentThread();
+        });
+        final Future<Thread> invoiceFuture = fetchExecutor.submit(() -> {
+            barrier.await(5, TimeUnit.SECONDS);
+            return Thread.currentThread();
+        });
+
+        final Thread accountThread = fetchExecutor.await(accountFuture, "account");
+        final Thread invoiceThread = fetchExecutor.await(invoiceFuture, "invoice");
+        Assert.assertNotSame(accountThread, invoiceThread);
+        Assert.assertNotSame(accountThread, Thread.currentThread());
+        fetchExecutor.shutdown();
+    }
+
+    @Test(groups = "fast")
+    public void testFailuresAreRethrownAsIs() throws Exception {
+        for (final int parallelism : new int[]{0, 2}) {
+            final FetchExecutor fetchExecutor = new FetchExecutor(parallelism, 5000);
+
+            final AccountApiException accountApiException = new AccountApiException(ErrorCode.ACCOUNT_DOES_NOT_EXIST_FOR_ID, UUID.randomUUID());
+            try {
+                fetchExecutor.await(fetchExecutor.submit(() -> {
+                    throw accountApiException;
+                }), "account");
+                Assert.fail("The lookup failure should be rethrown");
+            } catch (final AccountApiException e) {
+                Assert.assertSame(e, accountApiException);
+            }
+
+            final IllegalStateException runtimeException = new IllegalStateException("Broken");
+            try {
+                fetchExecutor.await(fetchExecutor.submit(() -> {
+                    throw runtimeException;
+                }), "invoice");
+                Assert.fail("The lookup failure should be rethrown");
+            } catch (final IllegalStateException e) {
+                Assert.assertSame(e, runtimeException);
+            }
+
+            // Not thrown by the Kill Bill APIs
+            final IOException otherException = new IOException("Broken");
+            try {
+                fetchExecutor.await(fetchExecutor.submit(() -> {
+                    throw otherException;
+                }), "account emails");
+                Assert.fail("The lookup failure should be reported");
+            } catch (final EmailNotificationException e) {
+                Assert.assertEquals(e.getCode(), EmailNotificationErrorCode.FETCH_FAILED.getCode());
+                Assert.assertSame(e.getCause(), otherException);
+            }
+            fetchExecutor.shutdown();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testTimeout() throws Exception {
+        final FetchExecutor fetchExecutor = new FetchExecutor(1, 50);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean completed = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        final Future<String> future = fetchExecutor.submit(() -> {
+            try {
+                release.await();
+                completed.set(true);
+                return "account";
+            } finally {
+                done.countDown();
+            }
+        });
+
+        try {
+            fetchExecutor.await(future, "account");
+            Assert.fail("The lookup should time out");
+        } catch (final EmailNotificationException e) {
+            Assert.assertEquals(e.getCode(), EmailNotificationErrorCode.FETCH_TIMEOUT.getCode());
+            Assert.assertEquals(e.getMessage(), "Timed out after 50 ms fetching account.");
+        }
+
+        // The abandoned lookup runs to completion, without being interrupted
+        release.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(completed.get());
+
+        // Reused thread
+        Assert.assertFalse(fetchExecutor.await(fetchExecutor.submit(() -> Thread.currentThread().isInterrupted()), "account emails"));
+        fetchExecutor.shutdown();
+    }
+
+    @Test(groups = "fast")
+    public void testAbandon() throws Exception {
+        final FetchExecutor fetchExecutor = new FetchExecutor(1, 5000);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean completed = new AtomicBoolean();
+        final AtomicBoolean pendingRan = new AtomicBoolean();
+
+        final Future<Boolean> running = fetchExecutor.submit(() -> {
+            started.countDown();
+            release.await();
+            completed.set(true);
+            return true;
+        });
+        final Future<Boolean> pending = fetchExecutor.submit(() -> pendingRan.getAndSet(true));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // E.g. the account doesn't have any email
+        fetchExecutor.abandon(running, pending, null);
+        release.countDown();
+
+        Assert.assertFalse(fetchExecutor.await(fetchExecutor.submit(() -> Thread.currentThread().isInterrupted()), "account emails"));
+        Assert.assertTrue(completed.get());
+        Assert.assertFalse(pendingRan.get());
+        Assert.assertTrue(pending.isCancelled());
+        fetchExecutor.shutdown();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.templates;
+
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.samskivert.mustache.DefaultCollector;
+import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.MustacheException;
+
+public class TestMethodHandleCollector {
+
+    private static final String TEMPLATE = "{{item.name}} {{item.formattedAmount}} {{#item.paid}}paid{{/item.paid}} {{item.currency}} " +
+                                           "{{item.description}} {{item.quantity}} {{text.hello}} {{items.1.name}}";
+
+    @Test(groups = "fast")
+    public void testSameOutputAsDefaultCollector() {
+        final Map<String, Object> data = ImmutableMap.<String, Object>of("item", new Item("Plan A", "$10.00"),
+                                                                         "text", ImmutableMap.of("hello", "Hello"),
+                                                                         "items", ImmutableList.of(new Item("Plan B", "$1.00"), new Item("Plan C", "$2.00")));
+
+        final String expected = new MustacheTemplateEngine(MustacheTemplateEngine.DEFAULT_MAX_CACHE_WEIGHT, new DefaultCollector()).executeTemplateText(TEMPLATE, data);
+        Assert.assertEquals(expected, "Plan A $10.00 paid USD Plan A item 3 Hello Plan C");
+        Assert.assertEquals(new MustacheTemplateEngine().executeTemplateText(TEMPLATE, data), expected);
+    }
+
+    @Test(groups = "fast")
+    public void testFetchersAreSharedAcrossTemplates() {
+        final MethodHandleCollector collector = new MethodHandleCollector();
+        final Mustache.VariableFetcher fetcher = collector.createFetcher(new Item("Plan A", "$10.00"), "formattedAmount");
+        Assert.assertSame(collector.createFetcher(new Item("Plan B", "$1.00"), "formattedAmount"), fetcher);
+        Assert.assertNull(collector.createFetcher(new Item("Plan A", "$10.00"), "unknown"));
+
+        // Each engine compiles its own templates, but both use the collector resolutions
+        final Mustache.Compiler compiler = Mustache.compiler().withCollector(collector);
+        Assert.assertEquals(compiler.compile("{{formattedAmount}}").execute(new Item("Plan C", "$2.00")), "$2.00");
+        Assert.assertEquals(compiler.compile("[{{formattedAmount}}]").execute(new Item("Plan D", "$3.00")), "[$3.00]");
+    }
+
+    @Test(groups = "fast")
+    public void testGetterFailure() {
+        try {
+            new MustacheTemplateEngine().executeTemplateText("{{item.broken}}", ImmutableMap.<String, Object>of("item", new Item("Plan A", "$10.00")));
+            Assert.fail("The getter failure should be reported");
+        } catch (final MustacheException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public static class BaseItem {
+
+        // Field, resolved by the default collector
+        public final int quantity = 3;
+
+        private final String name;
+
+        public BaseItem(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return name + " item";
+        }
+    }
+
+    private static final class Item extends BaseItem {
+
+        private final String formattedAmount;
+
+        private Item(final String name, final String formattedAmount) {
+            super(name);
+            this.formattedAmount = formattedAmount;
+        }
+
+        public String getFormattedAmount() {
+            return formattedAmount;
+        }
+
+        public boolean isPaid() {
+            return true;
+        }
+
+        public String currency() {
+            return "USD";
+        }
+
+        public String getBroken() {
+            throw new IllegalStateException("Broken");
+        }
+    }
+}
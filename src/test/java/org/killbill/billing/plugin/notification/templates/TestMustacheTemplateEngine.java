@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2026 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.notification.templates;
+
+import java.io.StringWriter;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestMustacheTemplateEngine {
+
+    @Test(groups = "fast")
+    public void testCompiledTemplatesAreReused() {
+        final MustacheTemplateEngine engine = new MustacheTemplateEngine();
+        final Map<String, Object> data = ImmutableMap.<String, Object>of("name", "Sylvie");
+
+        Assert.assertEquals(engine.executeTemplateText("Hello {{name}}!", data), "Hello Sylvie!");
+        Assert.assertEquals(engine.getCacheStats().missCount(), 1);
+        Assert.assertEquals(engine.getCacheStats().hitCount(), 0);
+
+        // Same text, different instance
+        Assert.assertEquals(engine.executeTemplateText(new String("Hello {{name}}!"), ImmutableMap.<String, Object>of("name", "Bob")), "Hello Bob!");
+        Assert.assertEquals(engine.getCacheStats().missCount(), 1);
+        Assert.assertEquals(engine.getCacheStats().hitCount(), 1);
+
+        Assert.assertEquals(engine.executeTemplateText("Bye {{name}}!", data), "Bye Sylvie!");
+        Assert.assertEquals(engine.getCacheStats().missCount(), 2);
+        Assert.assertEquals(engine.getCacheSize(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testExecuteTemplateIntoWriter() throws Exception {
+        final MustacheTemplateEngine engine = new MustacheTemplateEngine();
+        final Map<String, Object> data = ImmutableMap.<String, Object>of("name", "Sylvie");
+
+        final StringWriter writer = new StringWriter();
+        engine.executeTemplate("Hello {{name}}!", data, writer);
+        Assert.assertEquals(writer.toString(), "Hello Sylvie!");
+
+        // Same compiled template
+        Assert.assertEquals(engine.executeTemplateText("Hello {{name}}!", data), "Hello Sylvie!");
+        Assert.assertEquals(engine.getCacheStats().missCount(), 1);
+        Assert.assertEquals(engine.getCacheStats().hitCount(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testCacheIsBoundedByTemplateSize() {
+        final MustacheTemplateEngine engine = new MustacheTemplateEngine(16);
+        final Map<String, Object> data = ImmutableMap.<String, Object>of("name", "Sylvie");
+
+        Assert.assertEquals(engine.executeTemplateText("A {{name}}", data), "A Sylvie");
+        Assert.assertEquals(engine.executeTemplateText("B {{name}}", data), "B Sylvie");
+        Assert.assertEquals(engine.getCacheSize(), 1);
+        Assert.assertEquals(engine.getCacheStats().evictionCount(), 1);
+
+        // Larger than the whole cache: still rendered, but not retained
+        Assert.assertEquals(engine.executeTemplateText("A very long template for {{name}}", data), "A very long template for Sylvie");
+    }
+}